@@ -0,0 +1,272 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.api.config.FosConfig;
+import com.feedzai.fos.common.validation.NotNull;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Admission control of the scoring requests of a server.
+ * <p/>
+ * Requests are only admitted while the number of requests being scored (or waiting to be scored) for each of their
+ * models and for their connection is below the configured limits. Requests over the limits are shed right away with
+ * an {@link OverloadedException}, instead of queueing behind requests that already cannot meet their deadlines.
+ * <p/>
+ * Admitted requests that wait in the queue for longer than their queue timeout are shed as well when they reach a
+ * scoring thread, since their scores would reach the caller too late to be useful. Requests can carry a queue
+ * timeout of their own, the {@link #getQueueTimeoutMillis() default one} applies to the others.
+ * <p/>
+ * A single instance should be shared by every transport of a server, so that the limits of a model hold across
+ * transports.
+ *
+ * @since 1.0.11
+ */
+public class AdmissionControl {
+    /**
+     * Admits every request and never sheds queued requests.
+     */
+    public static final AdmissionControl UNLIMITED = new AdmissionControl(0, 0, 0);
+
+    /**
+     * The requests admitted for each model.
+     */
+    private final ConcurrentMap<UUID, Integer> models = new ConcurrentHashMap<>();
+
+    /**
+     * The requests admitted for each connection.
+     */
+    private final ConcurrentMap<Object, Integer> connections = new ConcurrentHashMap<>();
+
+    private final int maxPerModel;
+    private final int maxPerConnection;
+    private final long queueTimeoutMillis;
+
+    /**
+     * Creates a new admission control configured from the FOS configuration.
+     *
+     * @param config the FOS configuration
+     */
+    public AdmissionControl(FosConfig config) {
+        this(config.getScoringMaxPerModel(), config.getScoringMaxPerConnection(), config.getScoringQueueTimeout());
+    }
+
+    /**
+     * Creates a new admission control.
+     *
+     * @param maxPerModel        the maximum number of requests of each model admitted at the same time, {@code 0} for no limit
+     * @param maxPerConnection   the maximum number of requests of each connection admitted at the same time, {@code 0} for no limit
+     * @param queueTimeoutMillis the maximum time in milliseconds a request without a timeout of its own may wait to be scored,
+     *                           {@code 0} for no limit
+     */
+    public AdmissionControl(int maxPerModel, int maxPerConnection, long queueTimeoutMillis) {
+        checkArgument(maxPerModel >= 0, "The maximum number of requests per model cannot be negative");
+        checkArgument(maxPerConnection >= 0, "The maximum number of requests per connection cannot be negative");
+        checkArgument(queueTimeoutMillis >= 0, "The queue timeout cannot be negative");
+
+        this.maxPerModel = maxPerModel;
+        this.maxPerConnection = maxPerConnection;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    /**
+     * Admits a request, if its models and connection are below their limits.
+     *
+     * @param connection the connection of the request (any object identifying it)
+     * @param modelIds   the models of the request
+     * @return the permit of the request, to be {@link Permit#close() closed} once the request is answered
+     * @throws OverloadedException if the request is over the limits of its connection or of any of its models
+     */
+    @NotNull
+    public Permit admit(@NotNull Object connection, @NotNull List<UUID> modelIds) throws OverloadedException {
+        checkNotNull(connection, "The connection cannot be null");
+
+        if (maxPerConnection > 0 && !acquire(connections, connection, maxPerConnection)) {
+            throw new OverloadedException(String.format("Too many concurrent scoring requests from %s (limit %d)", connection, maxPerConnection));
+        }
+        if (maxPerModel > 0) {
+            for (int i = 0; i < modelIds.size(); i++) {
+                if (!acquire(models, modelIds.get(i), maxPerModel)) {
+                    for (int j = 0; j < i; j++) {
+                        release(models, modelIds.get(j));
+                    }
+                    if (maxPerConnection > 0) {
+                        release(connections, connection);
+                    }
+                    throw new OverloadedException(String.format("Too many concurrent scoring requests for model %s (limit %d)", modelIds.get(i), maxPerModel));
+                }
+            }
+        }
+        return new Permit(connection, modelIds);
+    }
+
+    /**
+     * Gets the queue timeout of a request.
+     *
+     * @param requestTimeoutMillis the queue timeout carried by the request, {@code 0} if none
+     * @return the queue timeout in nanoseconds, {@code 0} for no limit
+     */
+    public long queueTimeoutNanos(long requestTimeoutMillis) {
+        return TimeUnit.MILLISECONDS.toNanos(requestTimeoutMillis > 0 ? requestTimeoutMillis : queueTimeoutMillis);
+    }
+
+    /**
+     * Sheds a request that waited for too long to be scored.
+     *
+     * @param receivedNanos     when the request was received, from {@link System#nanoTime()}
+     * @param queueTimeoutNanos the queue timeout of the request in nanoseconds, {@code 0} for no limit
+     * @throws OverloadedException if the request waited for longer than its queue timeout
+     */
+    public static void checkQueueTime(long receivedNanos, long queueTimeoutNanos) throws OverloadedException {
+        if (queueTimeoutNanos <= 0) {
+            return;
+        }
+        long waited = System.nanoTime() - receivedNanos;
+        if (waited > queueTimeoutNanos) {
+            throw new OverloadedException(String.format("Scoring request waited %d ms in the queue (timeout %d ms)",
+                    TimeUnit.NANOSECONDS.toMillis(waited), TimeUnit.NANOSECONDS.toMillis(queueTimeoutNanos)));
+        }
+    }
+
+    /**
+     * Takes a slot of a key if it is below the limit.
+     *
+     * @param counts the requests admitted for each key
+     * @param key    the key
+     * @param limit  the maximum number of requests of the key
+     * @param <K>    the type of the keys
+     * @return {@code true} if a slot was taken
+     */
+    private static <K> boolean acquire(ConcurrentMap<K, Integer> counts, K key, final int limit) {
+        final boolean[] acquired = {false};
+        counts.compute(key, (k, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= limit) {
+                return count;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * Gives back a slot of a key, forgetting keys without requests.
+     *
+     * @param counts the requests admitted for each key
+     * @param key    the key
+     * @param <K>    the type of the keys
+     */
+    private static <K> void release(ConcurrentMap<K, Integer> counts, K key) {
+        counts.compute(key, (k, count) -> count == null || count <= 1 ? null : count - 1);
+    }
+
+    /**
+     * Gets the number of requests of a model admitted and not answered yet.
+     *
+     * @param modelId the id of the model
+     * @return the number of requests, always {@code 0} without a limit per model
+     */
+    public int getAdmitted(UUID modelId) {
+        Integer count = models.get(modelId);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Gets the maximum number of requests of each model admitted at the same time.
+     *
+     * @return the limit, {@code 0} for no limit
+     */
+    public int getMaxPerModel() {
+        return maxPerModel;
+    }
+
+    /**
+     * Gets the maximum number of requests of each connection admitted at the same time.
+     *
+     * @return the limit, {@code 0} for no limit
+     */
+    public int getMaxPerConnection() {
+        return maxPerConnection;
+    }
+
+    /**
+     * Gets the maximum time a request without a queue timeout of its own may wait to be scored.
+     *
+     * @return the queue timeout in milliseconds, {@code 0} for no limit
+     */
+    public long getQueueTimeoutMillis() {
+        return queueTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this).
+                add("maxPerModel", maxPerModel).
+                add("maxPerConnection", maxPerConnection).
+                add("queueTimeoutMillis", queueTimeoutMillis).
+                toString();
+    }
+
+    /**
+     * The slots taken by an admitted request, given back when closed.
+     */
+    public final class Permit implements AutoCloseable {
+        private final Object connection;
+        private final List<UUID> modelIds;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Permit(Object connection, List<UUID> modelIds) {
+            this.connection = connection;
+            this.modelIds = modelIds;
+        }
+
+        /**
+         * Gives back the slots of the request, only the first call has effect.
+         */
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (maxPerConnection > 0) {
+                release(connections, connection);
+            }
+            if (maxPerModel > 0) {
+                for (UUID modelId : modelIds) {
+                    release(models, modelId);
+                }
+            }
+        }
+    }
+}
@@ -31,11 +31,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import static org.apache.commons.lang3.Validate.notBlank;
 
 /**
  * Represents a field (e.g. feature) that an instance of the model must have.
+ * <p/>
+ * Values that cannot be parsed are replaced by {@link #MISSING_VALUE} and counted in {@link #getUnparsableCount()}.
+ * The first one is logged right away, the following ones are summarized in at most one warning every
+ * {@value #LOG_INTERVAL_SECONDS} seconds per attribute, so that a misbehaving upstream system cannot flood the logs.
  *
  * @author Marco Jorge (marco.jorge@feedzai.com)
  */
@@ -55,8 +61,36 @@ public abstract class Attribute implements Serializable {
     @JsonIgnore
     public static final String MISSING_VALUE_STR = "?";
 
+    /**
+     * The minimum interval between warnings about unparsable values of the same attribute.
+     */
+    @JsonIgnore
+    public static final long LOG_INTERVAL_SECONDS = 10;
+
+    private static final AtomicLongFieldUpdater<Attribute> UNPARSABLE = AtomicLongFieldUpdater.newUpdater(Attribute.class, "unparsable");
+    private static final AtomicLongFieldUpdater<Attribute> NEXT_LOG = AtomicLongFieldUpdater.newUpdater(Attribute.class, "nextLog");
+
     String name;
 
+    /**
+     * The number of values that could not be parsed.
+     */
+    @JsonIgnore
+    private transient volatile long unparsable;
+
+    /**
+     * When the next warning about unparsable values can be logged, from {@link System#nanoTime()}, {@code 0} before
+     * the first one.
+     */
+    @JsonIgnore
+    private transient volatile long nextLog;
+
+    /**
+     * The value of {@link #unparsable} when the last warning was logged.
+     */
+    @JsonIgnore
+    private transient volatile long logged;
+
     protected Attribute(String name) {
         notBlank(name, "The name of the field cannot be blank");
 
@@ -82,22 +116,69 @@ public abstract class Attribute implements Serializable {
     protected abstract double parse(Object original) throws FOSException;
 
     /**
-     * Parses the provided value for the current Attribute configuration.
+     * Parses the provided value for the current Attribute configuration without throwing exceptions.
+     * <p/>
+     * Values that cannot be parsed must be answered with {@link #unparsable(Object)}. The default implementation
+     * delegates to {@link #parse(Object)}, subclasses should override it to avoid the cost of the exception.
      *
-     * @param original The original value of the field.
+     * @param original The original value of the field, not {@link #MISSING_VALUE_STR}.
      * @return The value in the correct representation for the classifier or missing value.
      */
-    public double parseOrMissing(@NotNull Object original) {
+    protected double tryParse(Object original) {
         try {
-            if (original.equals(MISSING_VALUE_STR)) {
-                return MISSING_VALUE;
-            }
-
             return this.parse(original);
         } catch (FOSException e) {
-            logger.warn("Failed to parse {} using missing value instead", original);
+            return unparsable(original);
+        }
+    }
+
+    /**
+     * Parses the provided value for the current Attribute configuration.
+     *
+     * @param original The original value of the field.
+     * @return The value in the correct representation for the classifier or missing value.
+     */
+    public double parseOrMissing(@NotNull Object original) {
+        if (original.equals(MISSING_VALUE_STR)) {
             return MISSING_VALUE;
         }
+
+        return this.tryParse(original);
+    }
+
+    /**
+     * Records a value that could not be parsed, logging it if no warning was logged for this attribute in the last
+     * {@value #LOG_INTERVAL_SECONDS} seconds.
+     *
+     * @param original The value that could not be parsed.
+     * @return {@link #MISSING_VALUE}
+     */
+    protected final double unparsable(Object original) {
+        long total = UNPARSABLE.incrementAndGet(this);
+
+        long now = System.nanoTime();
+        long next = nextLog;
+        if ((next == 0 || now - next >= 0) && NEXT_LOG.compareAndSet(this, next, (now + TimeUnit.SECONDS.toNanos(LOG_INTERVAL_SECONDS)) | 1)) {
+            long since = total - logged;
+            logged = total;
+            if (next == 0) {
+                logger.warn("Failed to parse {} for {} using missing value instead (further failures are reported every {} seconds)", original, name, LOG_INTERVAL_SECONDS);
+            } else {
+                logger.warn("Failed to parse {} values for {} using missing value instead, last one was {}", since, name, original);
+            }
+        }
+        return MISSING_VALUE;
+    }
+
+    /**
+     * Gets the number of values of this field that could not be parsed and were replaced by missing values
+     * since the attribute was created.
+     *
+     * @return the number of unparsable values
+     */
+    @JsonIgnore
+    public long getUnparsableCount() {
+        return unparsable;
     }
 
     @Override
@@ -25,14 +25,15 @@ package com.feedzai.fos.api;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.feedzai.fos.common.kryo.ColumnarInstance;
 import com.feedzai.fos.common.validation.NotBlank;
+import com.feedzai.fos.common.validation.NotNull;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 import static com.google.common.base.Objects.toStringHelper;
@@ -43,10 +44,19 @@ import static com.google.common.base.Preconditions.checkArgument;
  * A CategoricalAttribute will be mapped into the underlying implementation categorical type.
  * It holds a list of all possible categorical values and the ability to replace a unknown categorical value
  * by a default value.
+ * <p/>
+ * Values are looked up in a hash table, unknown values are reported by {@link #indexOf(Object)} and
+ * {@link #tryParse(Object)} without throwing exceptions.
  */
 public final class CategoricalAttribute extends Attribute {
     private List<String> categoricalInstances;
 
+    /**
+     * The index of each categorical value, rebuilt on first use after Java deserialization.
+     */
+    @JsonIgnore
+    private transient volatile CategoryTable table;
+
     /**
      * Creates a new categorical with the given <code>name</code>, <code>type</code> and <code>categoricalInstances</code>.
      * <p/> The <code>categoricalInstances</code> is the set of possible values that the field can take.
@@ -67,6 +77,7 @@ public final class CategoricalAttribute extends Attribute {
         Arrays.sort(sorted);
 
         this.categoricalInstances = ImmutableList.copyOf(sorted);
+        this.table = new CategoryTable(this.categoricalInstances);
     }
 
     /**
@@ -78,15 +89,44 @@ public final class CategoricalAttribute extends Attribute {
         return ImmutableList.copyOf(categoricalInstances);
     }
 
+    /**
+     * Gets the index of a value in the sorted list of {@link #getCategoricalInstances() categorical values}.
+     * <p/>
+     * Values are compared by their {@link Object#toString() string representation}, a
+     * {@link ColumnarInstance.CategoricalIndex} is taken as the index itself.
+     *
+     * @param value the value
+     * @return the index of the value, {@code -1} if it is not one of the categorical values
+     */
+    public int indexOf(@NotNull Object value) {
+        if (value instanceof ColumnarInstance.CategoricalIndex) {
+            // already resolved by a columnar instance
+            int index = ((ColumnarInstance.CategoricalIndex) value).getIndex();
+            return index < categoricalInstances.size() ? Math.max(index, -1) : -1;
+        }
+
+        CategoryTable current = table;
+        if (current == null) {
+            table = current = new CategoryTable(categoricalInstances);
+        }
+        return current.indexOf(value.toString());
+    }
+
     @Override
     protected double parse(Object original) throws FOSException {
-        String value = original.toString();
-        int index = Collections.binarySearch(categoricalInstances, value);
-
+        int index = indexOf(original);
         if (index < 0) {
             throw new FOSException(String.format("Failed to parse %s", original));
         }
+        return index;
+    }
 
+    @Override
+    protected double tryParse(Object original) {
+        int index = indexOf(original);
+        if (index < 0) {
+            return unparsable(original);
+        }
         return index;
     }
 
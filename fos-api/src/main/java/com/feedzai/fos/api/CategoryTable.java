@@ -0,0 +1,100 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import java.util.List;
+
+/**
+ * Open addressing hash table from the values of a {@link CategoricalAttribute} to their index in the sorted list
+ * of values.
+ * <p/>
+ * Uses linear probing with a load factor of at most 1/2 and keeps the hash of every key, so that a lookup
+ * usually costs one hash (cached by {@link String}) and one {@link String#equals(Object)}, regardless of the
+ * number of values.
+ * <p/>
+ * This class is immutable and thus thread safe.
+ *
+ * @since 1.0.11
+ */
+final class CategoryTable {
+    private final String[] keys;
+    private final int[] hashes;
+    private final int[] indexes;
+    private final int mask;
+
+    /**
+     * Creates a new table for the given values.
+     *
+     * @param values the distinct values, in the order that defines their index
+     */
+    CategoryTable(List<String> values) {
+        int capacity = 2;
+        while (capacity < values.size() * 2) {
+            capacity <<= 1;
+        }
+
+        this.keys = new String[capacity];
+        this.hashes = new int[capacity];
+        this.indexes = new int[capacity];
+        this.mask = capacity - 1;
+
+        for (int i = 0; i < values.size(); i++) {
+            String key = values.get(i);
+            int hash = mix(key.hashCode());
+            int slot = hash & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            hashes[slot] = hash;
+            indexes[slot] = i;
+        }
+    }
+
+    /**
+     * Gets the index of a value.
+     *
+     * @param value the value
+     * @return the index of the value, {@code -1} if it is unknown
+     */
+    int indexOf(String value) {
+        int hash = mix(value.hashCode());
+        int slot = hash & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash && key.equals(value)) {
+                return indexes[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Spreads the bits of {@link String#hashCode()}, whose low bits are poorly distributed for short keys.
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.common.kryo.ColumnarInstance;
+import com.feedzai.fos.common.kryo.ModelSchema;
+import com.feedzai.fos.common.validation.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Converts instances to the {@link ColumnarInstance columnar} representation of a model.
+ * <p/>
+ * Fields of {@link CategoricalAttribute categorical attributes} are stored as the index of their value, every
+ * other field is stored as a number. Values are parsed as by {@link FeatureEncoder}, those that cannot be parsed are
+ * stored as missing.
+ * <p/>
+ * Encoders created from a {@link ModelSchema} published by the scoring server stamp the instances with the version
+ * of the schema, so that the server rejects them once the model is reconfigured.
+ * <p/>
+ * This class is thread safe, the instances it creates are not.
+ *
+ * @since 1.0.11
+ */
+public final class ColumnarEncoder {
+    /**
+     * The attributes of the model.
+     */
+    private final Attribute[] attributes;
+
+    /**
+     * The categorical fields.
+     */
+    private final BitSet categorical;
+
+    /**
+     * Parses the value of each field.
+     */
+    private final FeatureEncoder features;
+
+    /**
+     * The version of the schema the instances are encoded with, {@code 0} if unknown.
+     */
+    private final int schemaVersion;
+
+    /**
+     * Creates a new encoder for the attributes of a model.
+     *
+     * @param attributes the attributes of the model, as in {@link ModelConfig#getAttributes()}
+     */
+    public ColumnarEncoder(List<Attribute> attributes) {
+        this(attributes, 0);
+    }
+
+    /**
+     * Creates a new encoder for the schema of a model published by the scoring server.
+     *
+     * @param schema the schema of the model, see {@link KryoScorer#getSchema(java.util.UUID)}
+     */
+    public ColumnarEncoder(ModelSchema schema) {
+        this(attributes(checkNotNull(schema, "Schema cannot be null")), schema.getVersion());
+    }
+
+    private ColumnarEncoder(List<Attribute> attributes, int schemaVersion) {
+        checkNotNull(attributes, "Attributes cannot be null");
+
+        this.attributes = attributes.toArray(new Attribute[attributes.size()]);
+        this.features = new FeatureEncoder(attributes);
+        this.categorical = new BitSet(this.attributes.length);
+        for (int i = 0; i < this.attributes.length; i++) {
+            if (this.attributes[i] instanceof CategoricalAttribute) {
+                categorical.set(i);
+            }
+        }
+        this.schemaVersion = schemaVersion;
+    }
+
+    /**
+     * Creates the attributes described by a schema.
+     *
+     * @param schema the schema of a model
+     * @return the attributes of the model
+     */
+    private static List<Attribute> attributes(ModelSchema schema) {
+        List<Attribute> attributes = new ArrayList<>(schema.size());
+        for (int i = 0; i < schema.size(); i++) {
+            if (schema.isCategorical(i)) {
+                attributes.add(new CategoricalAttribute(schema.getName(i), Arrays.asList(schema.getCategories(i))));
+            } else {
+                attributes.add(new NumericAttribute(schema.getName(i)));
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Creates a new instance for this model where every field is missing.
+     *
+     * @return a new columnar instance
+     */
+    @NotNull
+    public ColumnarInstance newInstance() {
+        ColumnarInstance instance = new ColumnarInstance(attributes.length, categorical);
+        instance.setSchemaVersion(schemaVersion);
+        return instance;
+    }
+
+    /**
+     * Converts an instance to the columnar representation.
+     *
+     * @param instance the values of the fields
+     * @return a new columnar instance
+     */
+    @NotNull
+    public ColumnarInstance encode(Object[] instance) {
+        ColumnarInstance columnar = newInstance();
+        encode(instance, columnar);
+        return columnar;
+    }
+
+    /**
+     * Converts an instance to the columnar representation, reusing an instance created by {@link #newInstance()}.
+     *
+     * @param instance the values of the fields
+     * @param target   the columnar instance to fill
+     */
+    public void encode(Object[] instance, ColumnarInstance target) {
+        checkArgument(instance.length == attributes.length, "Expected %s fields but got %s", attributes.length, instance.length);
+        checkArgument(target.size() == attributes.length, "Columnar instance has %s fields instead of %s", target.size(), attributes.length);
+
+        for (int i = 0; i < attributes.length; i++) {
+            if (instance[i] == null) {
+                target.setMissing(i);
+                continue;
+            }
+
+            double value = features.encode(i, instance[i]);
+            if (categorical.get(i)) {
+                target.setCategorical(i, Double.isNaN(value) ? -1 : (int) value);
+            } else {
+                target.setNumeric(i, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+/**
+ * Parses decimal numbers without throwing exceptions.
+ * <p/>
+ * Accepts the same numbers as {@link Double#parseDouble(String)}: optional sign, digits with an optional
+ * fraction, optional exponent and optional type suffix, surrounded by optional whitespace, as well as
+ * {@code NaN} and {@code Infinity}. Anything else is reported as {@link Double#NaN} instead of throwing a
+ * {@link NumberFormatException}. Hexadecimal numbers are rare enough to be handed to
+ * {@link Double#parseDouble(String)} as is.
+ * <p/>
+ * Numbers with up to 15 significant digits and a small exponent (the vast majority of the values seen in scoring
+ * requests) are converted with a single exact multiplication or division, which gives the same correctly rounded
+ * result as {@link Double#parseDouble(String)}. Other numbers are validated and then handed to it.
+ *
+ * @since 1.0.11
+ */
+final class DecimalParser {
+    /**
+     * Powers of ten that are exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * The largest number of significant digits that is exactly representable as a double.
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /**
+     * The largest number of significant digits accumulated in the mantissa (fits in a long).
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * Any exponent above this overflows (or underflows) a double.
+     */
+    private static final int MAX_EXPONENT = 9999;
+
+    private DecimalParser() {
+    }
+
+    /**
+     * Parses a decimal number.
+     *
+     * @param s the text to parse
+     * @return the number, or {@link Double#NaN} if the text is not a decimal number
+     */
+    static double parse(CharSequence s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            return Double.NaN;
+        }
+        if (s.charAt(i) == 'N' || s.charAt(i) == 'I') {
+            return special(s, i, end, negative);
+        }
+        if (i + 1 < end && s.charAt(i) == '0' && (s.charAt(i + 1) == 'x' || s.charAt(i + 1) == 'X')) {
+            return hexadecimal(s, start, end);
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        boolean truncated = false;
+        char c;
+
+        // integer part
+        while (i < end && (c = s.charAt(i)) >= '0' && c <= '9') {
+            any = true;
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+                truncated |= c != '0';
+            }
+            i++;
+        }
+
+        // fraction
+        if (i < end && s.charAt(i) == '.') {
+            i++;
+            while (i < end && (c = s.charAt(i)) >= '0' && c <= '9') {
+                any = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                } else {
+                    truncated |= c != '0';
+                }
+                i++;
+            }
+        }
+        if (!any) {
+            return Double.NaN;
+        }
+
+        // exponent
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                negativeExponent = s.charAt(i) == '-';
+                i++;
+            }
+            int value = 0;
+            boolean anyExponent = false;
+            while (i < end && (c = s.charAt(i)) >= '0' && c <= '9') {
+                anyExponent = true;
+                value = Math.min(MAX_EXPONENT, value * 10 + (c - '0'));
+                i++;
+            }
+            if (!anyExponent) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        // type suffix
+        if (i < end && "dDfF".indexOf(s.charAt(i)) >= 0) {
+            i++;
+        }
+        if (i != end) {
+            return Double.NaN;
+        }
+
+        if (mantissa == 0 && !truncated) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (!truncated && digits <= MAX_EXACT_DIGITS && exponent >= -22 && exponent <= 22) {
+            double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+
+        // valid, but needs the slow path to be correctly rounded
+        return Double.parseDouble(s.subSequence(start, end).toString());
+    }
+
+    /**
+     * Tells whether the text is {@code NaN}, as accepted by {@link #parse(CharSequence)}.
+     *
+     * @param s the text
+     * @return {@code true} if the text is {@code NaN}
+     */
+    static boolean isNaN(CharSequence s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start < end && (s.charAt(start) == '-' || s.charAt(start) == '+')) {
+            start++;
+        }
+        return matches(s, start, end, "NaN");
+    }
+
+    /**
+     * Parses a hexadecimal floating point number.
+     */
+    private static double hexadecimal(CharSequence s, int start, int end) {
+        try {
+            return Double.parseDouble(s.subSequence(start, end).toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Parses {@code NaN} and {@code Infinity}.
+     */
+    private static double special(CharSequence s, int start, int end, boolean negative) {
+        if (matches(s, start, end, "NaN")) {
+            return Double.NaN;
+        }
+        if (matches(s, start, end, "Infinity")) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        return Double.NaN;
+    }
+
+    private static boolean matches(CharSequence s, int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (s.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.common.kryo.ColumnarInstance;
+import com.feedzai.fos.common.validation.NotNull;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Converts instances to the feature vector of a model, as {@link Attribute#parseOrMissing(Object)} would for each
+ * field, in a single pass.
+ * <p/>
+ * The attributes are compiled once into the kind of each field, so that encoding an instance goes through direct
+ * calls to the non-throwing {@link Attribute#tryParse(Object)} of the final attribute classes:
+ * <ul>
+ * <li>numeric fields take {@link Double} and integral values as is and parse anything else as a decimal number;</li>
+ * <li>categorical fields take the {@link CategoricalAttribute#indexOf(Object) index} of the value, or of a
+ * {@link ColumnarInstance.CategoricalIndex};</li>
+ * <li>fields of any other {@link Attribute} are delegated to {@link Attribute#parseOrMissing(Object)}.</li>
+ * </ul>
+ * {@code null}, {@link Attribute#MISSING_VALUE_STR} and values that cannot be parsed are encoded as
+ * {@link Attribute#MISSING_VALUE}, the latter are counted by their attribute.
+ * <p/>
+ * This class is thread safe.
+ *
+ * @since 1.0.11
+ */
+public final class FeatureEncoder {
+    private static final byte NUMERIC = 0;
+    private static final byte CATEGORICAL = 1;
+    private static final byte OTHER = 2;
+
+    /**
+     * The attributes of the model.
+     */
+    private final Attribute[] attributes;
+
+    /**
+     * The kind of each field.
+     */
+    private final byte[] kinds;
+
+    /**
+     * The attribute of each numeric field, {@code null} for the other fields.
+     */
+    private final NumericAttribute[] numerics;
+
+    /**
+     * The attribute of each categorical field, {@code null} for the other fields.
+     */
+    private final CategoricalAttribute[] categoricals;
+
+    /**
+     * Creates a new encoder for the attributes of a model.
+     *
+     * @param attributes the attributes of the model, as in {@link ModelConfig#getAttributes()}
+     */
+    public FeatureEncoder(List<Attribute> attributes) {
+        checkNotNull(attributes, "Attributes cannot be null");
+
+        this.attributes = attributes.toArray(new Attribute[attributes.size()]);
+        this.kinds = new byte[this.attributes.length];
+        this.numerics = new NumericAttribute[this.attributes.length];
+        this.categoricals = new CategoricalAttribute[this.attributes.length];
+
+        for (int i = 0; i < this.attributes.length; i++) {
+            Attribute attribute = this.attributes[i];
+            if (attribute instanceof NumericAttribute) {
+                kinds[i] = NUMERIC;
+                numerics[i] = (NumericAttribute) attribute;
+            } else if (attribute instanceof CategoricalAttribute) {
+                kinds[i] = CATEGORICAL;
+                categoricals[i] = (CategoricalAttribute) attribute;
+            } else {
+                kinds[i] = OTHER;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of fields of the model.
+     *
+     * @return the size of the feature vectors
+     */
+    public int size() {
+        return attributes.length;
+    }
+
+    /**
+     * Converts an instance to its feature vector.
+     *
+     * @param instance the values of the fields
+     * @return a new feature vector
+     */
+    @NotNull
+    public double[] encode(Object[] instance) {
+        double[] features = new double[attributes.length];
+        encode(instance, features);
+        return features;
+    }
+
+    /**
+     * Converts an instance to its feature vector, reusing the given array.
+     *
+     * @param instance the values of the fields
+     * @param target   the array where the features will be written to, at least {@link #size()} long
+     */
+    public void encode(Object[] instance, double[] target) {
+        checkArgument(instance.length == attributes.length, "Expected %s fields but got %s", attributes.length, instance.length);
+        checkArgument(target.length >= attributes.length, "Feature vector has %s fields instead of %s", target.length, attributes.length);
+
+        for (int i = 0; i < attributes.length; i++) {
+            target[i] = encode(i, instance[i]);
+        }
+    }
+
+    /**
+     * Converts the value of a field.
+     *
+     * @param field the index of the field
+     * @param value the value of the field
+     * @return the encoded value, {@link Attribute#MISSING_VALUE} if it is missing or cannot be parsed
+     */
+    double encode(int field, Object value) {
+        if (value == null || Attribute.MISSING_VALUE_STR.equals(value)) {
+            return Attribute.MISSING_VALUE;
+        }
+
+        switch (kinds[field]) {
+            case NUMERIC:
+                return numerics[field].tryParse(value);
+            case CATEGORICAL:
+                return categoricals[field].tryParse(value);
+            default:
+                return attributes[field].parseOrMissing(value);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.common.kryo.DirectBufferPool;
+import com.feedzai.fos.common.kryo.KryoFrames;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Buffer settings of the Kryo scoring channel, for both {@link KryoScorer} connections and the
+ * {@link KryoScoringServer}.
+ * <p/>
+ * By default requests and responses are encoded into heap buffers. With direct buffers they are encoded into and
+ * decoded from {@link DirectBufferPool pooled} direct buffers that the socket reads into and writes from, so the
+ * bytes of a request go from the kernel to the deserializer without any copy through the heap. Direct buffers pay
+ * off for large requests (hundreds of fields or batches), both ends can use them independently.
+ * <p/>
+ * Buffers start with the configured size and grow as needed, up to the maximum frame size. The server goes back to
+ * a buffer of the configured size once a larger frame was handled.
+ *
+ * @since 1.0.11
+ */
+public final class KryoBufferConfig {
+    /**
+     * The default buffer settings: heap buffers of 1024 bytes and frames of up to {@link KryoFrames#MAX_FRAME_SIZE}.
+     */
+    public static final KryoBufferConfig DEFAULT = new KryoBufferConfig(false, 1024);
+
+    private final boolean direct;
+    private final int bufferSize;
+    private final int maxFrameSize;
+
+    /**
+     * Creates new buffer settings that accept frames of up to {@link KryoFrames#MAX_FRAME_SIZE}.
+     *
+     * @param direct     {@code true} to use pooled direct buffers, {@code false} for heap buffers
+     * @param bufferSize the initial size of the buffers in bytes
+     */
+    public KryoBufferConfig(boolean direct, int bufferSize) {
+        this(direct, bufferSize, KryoFrames.MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Creates new buffer settings.
+     *
+     * @param direct       {@code true} to use pooled direct buffers, {@code false} for heap buffers
+     * @param bufferSize   the initial size of the buffers in bytes
+     * @param maxFrameSize the maximum size in bytes of the frames read, larger frames close the connection, and of
+     *                     the requests sent by a {@link KryoScorer}, larger requests fail before being sent
+     */
+    public KryoBufferConfig(boolean direct, int bufferSize, int maxFrameSize) {
+        checkArgument(bufferSize > 0, "The buffer size must be positive");
+        checkArgument(maxFrameSize > 0, "The maximum frame size must be positive");
+
+        this.direct = direct;
+        this.bufferSize = bufferSize;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Gets if requests and responses are encoded into direct buffers.
+     *
+     * @return {@code true} for direct buffers, {@code false} for heap buffers
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Gets the initial size of the buffers.
+     *
+     * @return the buffer size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Gets the maximum size of the frames read, and of the requests sent by a {@link KryoScorer}.
+     *
+     * @return the maximum frame size in bytes
+     */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Allocates a buffer of the configured kind, taking direct buffers from the pool.
+     *
+     * @param capacity the minimum capacity of the buffer
+     * @return a new or pooled buffer
+     */
+    ByteBuffer allocate(int capacity) {
+        return direct ? DirectBufferPool.acquire(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Returns a buffer allocated with {@link #allocate(int)} to the pool, if pooled.
+     *
+     * @param buffer the buffer, ignored if {@code null}
+     */
+    void release(ByteBuffer buffer) {
+        DirectBufferPool.release(buffer);
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("direct", direct)
+                .add("bufferSize", bufferSize)
+                .add("maxFrameSize", maxFrameSize)
+                .toString();
+    }
+}
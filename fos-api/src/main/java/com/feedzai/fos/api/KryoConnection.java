@@ -0,0 +1,354 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.feedzai.fos.common.kryo.KryoFactory;
+import com.feedzai.fos.common.kryo.KryoFrames;
+import com.feedzai.fos.common.kryo.ModelSchema;
+import com.feedzai.fos.common.kryo.PooledByteBufferOutput;
+import com.feedzai.fos.common.kryo.ScoreBuffer;
+import com.feedzai.fos.common.kryo.UUIDRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A connection of the {@link KryoScorer} to a Kryo scoring server.
+ * <p/>
+ * Requests are written by the calling thread while holding the output lock, responses are read by
+ * a dedicated thread that completes the pending request with the same id.
+ * <p/>
+ * Model ids are sent in full the first time they are used on the connection and as small handles afterwards,
+ * see {@link UUIDRegistry}.
+ * <p/>
+ * With {@link KryoBufferConfig#isDirect() direct buffers} the connection is a blocking {@link SocketChannel} and
+ * frames are encoded into and decoded from pooled direct buffers, otherwise it uses the streams of a {@link Socket}.
+ */
+class KryoConnection {
+    private final static Logger logger = LoggerFactory.getLogger(KryoConnection.class);
+
+    /*
+     * Buffer size in bytes to be used for Kryo i/o.
+     * It should be noted that (beyond reasonable values)
+     * this does not impose any limits to the size of objects to be read/written
+     * if the internal buffer is exausted/underflows, kryo will flush or read
+     * more data from the associated inputstream.
+     *
+     */
+    public static final int BUFFER_SIZE = 1024;  // bytes
+    final Socket s; // socket that represents client connection
+    /**
+     * The channel of the socket with direct buffers, {@code null} with streams.
+     */
+    final SocketChannel channel;
+    final KryoBufferConfig buffers;
+    InputStream is;
+    OutputStream os;
+    Kryo kryo;
+    Output output;
+    /**
+     * The model ids already sent on this connection, guarded by the output lock.
+     */
+    final UUIDRegistry uuids = new UUIDRegistry();
+    /**
+     * The requests waiting for a response, by request id.
+     */
+    final Map<Integer, Response> pending = new ConcurrentHashMap<>();
+    /**
+     * Generates the request ids.
+     */
+    final AtomicInteger requestIds = new AtomicInteger();
+    /**
+     * Whether the connection can still be used to send requests.
+     */
+    volatile boolean open = true;
+    /**
+     * When the connection was last returned to the pool, in milliseconds.
+     */
+    volatile long lastUsed = System.currentTimeMillis();
+    /**
+     * Whether the loss of the connection was already counted as a failure of its server.
+     */
+    private final AtomicBoolean failureCounted = new AtomicBoolean();
+
+
+    KryoConnection(String host, int port) throws IOException {
+        this(host, port, KryoBufferConfig.DEFAULT);
+    }
+
+    KryoConnection(String host, int port, KryoBufferConfig buffers) throws IOException {
+        this.buffers = buffers;
+        if (buffers.isDirect()) {
+            channel = SocketChannel.open(new InetSocketAddress(host, port));
+            s = channel.socket();
+            output = new PooledByteBufferOutput(buffers.getBufferSize());
+        } else {
+            channel = null;
+            s = new Socket(host, port);
+            is = new BufferedInputStream(s.getInputStream(), buffers.getBufferSize());
+            os = s.getOutputStream();
+            output = new Output(buffers.getBufferSize(), -1);
+        }
+        // Disable naggle Algorithm to decrease latency
+        s.setTcpNoDelay(true);
+        kryo = KryoFactory.borrow();
+        uuids.bindWriter(kryo);
+
+        Thread reader = new Thread(this::readResponses, "fos-kryo-reader-" + host + ":" + port);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends a request without waiting for its response.
+     *
+     * @param type     the message type
+     * @param envelope the request envelope
+     * @param scores   the buffer to read the scores into, or {@code null} to complete the response with a new list
+     * @param <T>      the type of the response: a list of scores for scoring requests, a {@link ModelSchema}
+     *                 for schema requests
+     * @return the response of the request, completed exceptionally with an {@link IOException} if the connection
+     * is lost before the response arrives
+     * @throws IOException  if the request could not be written (the connection is closed)
+     * @throws FOSException if the request could not be encoded or exceeds the
+     *                      {@link KryoBufferConfig#getMaxFrameSize() maximum frame size}
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> send(byte type, Object envelope, ScoreBuffer scores) throws IOException, FOSException {
+        int id = requestIds.incrementAndGet();
+        Response response = new Response(scores);
+        pending.put(id, response);
+        if (!open) {
+            // the reader may have failed the pending requests before this one was added
+            pending.remove(id);
+            throw new EOFException("Connection closed by the scoring server");
+        }
+
+        synchronized (output) {
+            if (!open) {
+                // the Kryo instance of the connection was returned to the pool
+                pending.remove(id);
+                throw new EOFException("Connection closed by the scoring server");
+            }
+
+            int registered = uuids.size();
+            try {
+                KryoFrames.begin(output, type, id);
+                kryo.writeObject(output, envelope);
+                KryoFrames.end(output);
+            } catch (KryoException e) {
+                // the instance could not be encoded, nothing was written to the socket
+                uuids.rollback(registered);
+                pending.remove(id);
+                throw new FOSException("Unable to encode the scoring request", e);
+            }
+
+            int length = output.position() - KryoFrames.HEADER_SIZE;
+            if (length > buffers.getMaxFrameSize()) {
+                // the server would close the connection, failing the other requests in flight on it
+                uuids.rollback(registered);
+                pending.remove(id);
+                throw new FOSException("Scoring request of " + length + " bytes exceeds the maximum frame size of " + buffers.getMaxFrameSize() + " bytes");
+            }
+
+            try {
+                if (channel != null) {
+                    KryoFrames.write((ByteBufferOutput) output, channel);
+                } else {
+                    KryoFrames.write(output, os);
+                }
+            } catch (IOException e) {
+                pending.remove(id);
+                close();
+                throw e;
+            }
+        }
+        return (CompletableFuture<T>) response;
+    }
+
+    /**
+     * Reads the responses and completes the matching requests until the connection is closed.
+     */
+    private void readResponses() {
+        Input input = channel != null ? new ByteBufferInput(buffers.allocate(buffers.getBufferSize())) : new Input(buffers.getBufferSize());
+        // Kryo instances are not thread safe, the one of the connection belongs to the writers
+        Kryo kryo = KryoFactory.borrow();
+        IOException cause = new EOFException("Connection closed by the scoring server");
+        try {
+            while (channel != null ? KryoFrames.read(channel, (ByteBufferInput) input) : KryoFrames.read(is, input)) {
+                byte type = KryoFrames.readType(input);
+                int id = KryoFrames.readRequestId(input);
+                Response response = pending.remove(id);
+                if (response == null) {
+                    logger.warn("Discarding response to unknown request {}", id);
+                    continue;
+                }
+
+                try {
+                    complete(response, type, input, kryo);
+                } catch (RuntimeException | Error e) {
+                    // the response was already taken from the pending requests
+                    response.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        } catch (Exception e) {
+            if (open) {
+                logger.error("Error reading from the scoring server", e);
+                cause = e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+            }
+        } finally {
+            close();
+            for (Integer id : pending.keySet()) {
+                Response response = pending.remove(id);
+                if (response != null) {
+                    response.completeExceptionally(cause);
+                }
+            }
+
+            KryoFactory.release(kryo);
+            if (input instanceof ByteBufferInput) {
+                buffers.release(((ByteBufferInput) input).getByteBuffer());
+            }
+            synchronized (output) {
+                // no request can be written once closed
+                KryoFactory.release(this.kryo);
+                if (output instanceof ByteBufferOutput) {
+                    buffers.release(((ByteBufferOutput) output).getByteBuffer());
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes a response frame and completes the request it answers.
+     *
+     * @param response the request
+     * @param type     the response type
+     * @param input    the input holding the response frame
+     * @param kryo     the Kryo instance to decode with
+     */
+    private static void complete(Response response, byte type, Input input, Kryo kryo) {
+        switch (type) {
+            case KryoFrames.SCORES:
+                if (response.scores != null) {
+                    KryoFrames.readScores(input, response.scores);
+                    response.complete(null);
+                } else {
+                    response.complete(KryoFrames.readScores(input));
+                }
+                break;
+            case KryoFrames.SCHEMA:
+                response.complete(kryo.readObject(input, ModelSchema.class));
+                break;
+            case KryoFrames.ERROR:
+                response.completeExceptionally(new FOSException(input.readString()));
+                break;
+            case KryoFrames.OVERLOADED:
+                response.completeExceptionally(new OverloadedException(input.readString()));
+                break;
+            default:
+                response.completeExceptionally(new FOSException("Unknown response type " + type));
+        }
+    }
+
+    /**
+     * Whether the connection can still be used to send requests.
+     *
+     * @return {@code true} if the connection is open
+     */
+    boolean isOpen() {
+        return open && !s.isClosed();
+    }
+
+    /**
+     * Gets the number of requests waiting for a response.
+     *
+     * @return the number of requests in flight
+     */
+    int pending() {
+        return pending.size();
+    }
+
+    /**
+     * Records that the connection was lost, so that it counts as a single failure of its server however many
+     * requests were waiting on it.
+     *
+     * @return {@code true} the first time only
+     */
+    boolean countFailure() {
+        return failureCounted.compareAndSet(false, true);
+    }
+
+    /**
+     * Records that the connection was just used.
+     */
+    void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Closes the socket, failing the requests still waiting for a response.
+     */
+    void close() {
+        open = false;
+        try {
+            s.close();
+        } catch (IOException e) {
+            logger.debug("Error closing the connection to the scoring server", e);
+        }
+    }
+
+    /**
+     * The response of a request sent on a {@link KryoConnection}.
+     */
+    private static class Response extends CompletableFuture<Object> {
+        /**
+         * The buffer to read the scores into, or {@code null} to complete with a new list.
+         */
+        final ScoreBuffer scores;
+
+        Response(ScoreBuffer scores) {
+            this.scores = scores;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free pool of {@link KryoConnection connections} to a single Kryo scoring server.
+ * <p/>
+ * Idle connections are kept in a deque: the most recently used are borrowed first, so that the least recently
+ * used ones age at the tail and are closed once idle for longer than the idle timeout. Connections are only borrowed
+ * while writing a request, so a connection with requests still waiting for their responses is never idle. Connections
+ * are validated when borrowed and when released, closed connections (e.g. after an I/O error) are discarded.
+ *
+ * @since 1.0.11
+ */
+class KryoConnectionPool implements Closeable {
+    private final static Logger logger = LoggerFactory.getLogger(KryoConnectionPool.class);
+
+    private final String host;
+    private final int port;
+    private final KryoPoolConfig config;
+
+    /**
+     * The idle connections, the most recently used first.
+     */
+    private final Deque<KryoConnection> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * The number of open connections, borrowed or idle.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Limits the number of borrowed connections.
+     */
+    private final Semaphore available;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new pool, opening the configured number of warm-up connections.
+     * <p/>
+     * Connections that cannot be opened during warm-up are logged and opened later on demand.
+     *
+     * @param host   the host of the scoring server
+     * @param port   the port of the scoring server
+     * @param config the pool settings
+     */
+    KryoConnectionPool(String host, int port, KryoPoolConfig config) {
+        this.host = host;
+        this.port = port;
+        this.config = config;
+        this.available = new Semaphore(config.getMaxConnections());
+
+        for (int i = 0; i < config.getWarmUpConnections(); i++) {
+            try {
+                idle.offerLast(open());
+            } catch (IOException e) {
+                logger.warn("Unable to warm up connection to {}:{}", host, port, e);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Borrows a connection, opening a new one if none is idle.
+     *
+     * @return an open connection, to be given back with {@link #release(KryoConnection)}
+     * @throws IOException if the pool is closed, no connection was released in time or a new one could not be opened
+     */
+    KryoConnection borrow() throws IOException {
+        if (closed) {
+            throw new IOException("Connection pool is closed");
+        }
+
+        try {
+            if (!available.tryAcquire(config.getBorrowTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException(String.format("Timed out waiting for a connection to %s:%d", host, port));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection");
+        }
+
+        try {
+            KryoConnection con;
+            while ((con = idle.pollFirst()) != null) {
+                if (con.isOpen() && !expired(con)) {
+                    return con;
+                }
+                discard(con);
+            }
+            return open();
+        } catch (IOException | RuntimeException e) {
+            available.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives back a borrowed connection. Closed connections are discarded.
+     *
+     * @param con the connection to give back, null values are ignored
+     */
+    void release(KryoConnection con) {
+        if (con == null) {
+            return;
+        }
+
+        try {
+            if (!con.isOpen()) {
+                discard(con);
+                return;
+            }
+
+            con.touch();
+            idle.offerFirst(con);
+            if (closed && idle.removeFirstOccurrence(con)) {
+                // the pool was closed while the connection was borrowed
+                discard(con);
+            }
+            evictIdle();
+        } finally {
+            available.release();
+        }
+    }
+
+    /**
+     * Gets the number of open connections, borrowed or idle.
+     *
+     * @return the number of open connections
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Gets the number of idle connections.
+     *
+     * @return the number of idle connections
+     */
+    int idle() {
+        return idle.size();
+    }
+
+    /**
+     * Closes the idle connections. Borrowed connections are closed when released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        KryoConnection con;
+        while ((con = idle.pollFirst()) != null) {
+            discard(con);
+        }
+    }
+
+    private KryoConnection open() throws IOException {
+        size.incrementAndGet();
+        try {
+            return new KryoConnection(host, port, config.getBuffers());
+        } catch (IOException | RuntimeException e) {
+            size.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks if an idle connection has been idle for too long, has no request waiting for a response and is not
+     * needed to keep the minimum.
+     *
+     * @param con the connection to check
+     * @return {@code true} if the connection should be closed
+     */
+    private boolean expired(KryoConnection con) {
+        return config.getIdleTimeoutMillis() > 0
+                && System.currentTimeMillis() - con.lastUsed > config.getIdleTimeoutMillis()
+                && con.pending() == 0
+                && size.get() > config.getMinConnections();
+    }
+
+    /**
+     * Closes the least recently used idle connection if it expired.
+     */
+    private void evictIdle() {
+        KryoConnection oldest = idle.peekLast();
+        if (oldest != null && expired(oldest) && idle.removeLastOccurrence(oldest)) {
+            discard(oldest);
+        }
+    }
+
+    private void discard(KryoConnection con) {
+        size.decrementAndGet();
+        con.close();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.common.kryo.ScoreBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Kryo scoring server that a {@link KryoScorer} can send requests to.
+ * <p/>
+ * Keeps the pool of connections to the server, the number of requests in flight (to balance the load among
+ * servers) and, when connecting or talking to the server fails, for how long it should be avoided. The back-off
+ * doubles with every consecutive failure and is reset by the first successful response. A lost connection is a single
+ * failure, however many requests were waiting on it.
+ *
+ * @since 1.0.11
+ */
+class KryoEndpoint implements Closeable {
+    private final static Logger logger = LoggerFactory.getLogger(KryoEndpoint.class);
+
+    /**
+     * The time a server is avoided after its first failure.
+     */
+    static final long INITIAL_BACKOFF_MILLIS = 100;
+
+    /**
+     * The maximum time a server is avoided.
+     */
+    static final long MAX_BACKOFF_MILLIS = 30000;
+
+    private final String host;
+    private final int port;
+    private final KryoConnectionPool pool;
+
+    /**
+     * The number of requests waiting for a response.
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * The number of consecutive failures.
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * Until when the server should be avoided, in milliseconds.
+     */
+    private volatile long downUntil = 0;
+
+    /**
+     * Creates a new endpoint.
+     *
+     * @param host       the host of the scoring server
+     * @param port       the port of the scoring server
+     * @param poolConfig the connection pool settings
+     */
+    KryoEndpoint(String host, int port, KryoPoolConfig poolConfig) {
+        this.host = host;
+        this.port = port;
+        this.pool = new KryoConnectionPool(host, port, poolConfig);
+    }
+
+    /**
+     * Sends a request on a pooled connection.
+     *
+     * @param type     the message type
+     * @param envelope the request envelope
+     * @param scores   the buffer to read the scores into, or {@code null} to complete the response with a new list
+     * @param <T>      the type of the response
+     * @return the response of the request, completed exceptionally with an {@link IOException} if the server
+     * could not be reached or with a {@link FOSException} if the request failed
+     */
+    <T> CompletableFuture<T> send(byte type, Object envelope, ScoreBuffer scores) {
+        CompletableFuture<T> response;
+        KryoConnection con = null;
+        try {
+            con = pool.borrow();
+            response = con.send(type, envelope, scores);
+        } catch (IOException e) {
+            if (con == null || con.countFailure()) {
+                failed(e);
+            }
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+            return response;
+        } catch (Exception e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+            return response;
+        } finally {
+            pool.release(con);
+        }
+
+        KryoConnection connection = con;
+        outstanding.incrementAndGet();
+        return response.whenComplete((result, e) -> {
+            outstanding.decrementAndGet();
+            if (e == null) {
+                failures.set(0);
+            } else if (unwrap(e) instanceof IOException && connection.countFailure()) {
+                failed(unwrap(e));
+            }
+        });
+    }
+
+    /**
+     * Checks if requests can be sent to this server, i.e. it is not backing off after a failure.
+     *
+     * @param now the current time in milliseconds
+     * @return {@code true} if the server is available
+     */
+    boolean isAvailable(long now) {
+        return now >= downUntil;
+    }
+
+    /**
+     * Gets the number of requests waiting for a response.
+     *
+     * @return the number of requests in flight
+     */
+    int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Gets until when the server should be avoided.
+     *
+     * @return the time in milliseconds
+     */
+    long getDownUntil() {
+        return downUntil;
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+
+    /**
+     * Takes the server out of rotation for an exponentially growing period.
+     *
+     * @param cause the failure
+     */
+    private void failed(Throwable cause) {
+        int failed = failures.incrementAndGet();
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(failed - 1, 20));
+        downUntil = System.currentTimeMillis() + backoff;
+        logger.warn("Scoring server {} failed ({} consecutive failures), avoiding it for {} ms: {}", this, failed, backoff, cause.getMessage());
+    }
+
+    /**
+     * Gets the cause of a failure of a dependent future.
+     *
+     * @param e the failure
+     * @return the underlying cause
+     */
+    static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
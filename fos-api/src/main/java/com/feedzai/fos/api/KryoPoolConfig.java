@@ -0,0 +1,154 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Settings of the connection pool of a {@link KryoScorer}.
+ * <p/>
+ * As requests are pipelined, a connection is only borrowed while a request is written, so a handful of
+ * connections is usually enough for many concurrent callers.
+ *
+ * @since 1.0.11
+ */
+public final class KryoPoolConfig {
+    /**
+     * The default pool settings: no minimum, up to 16 connections, closed after one minute idle,
+     * waiting up to 5 seconds for a connection, no warm-up and {@link KryoBufferConfig#DEFAULT default buffers}.
+     */
+    public static final KryoPoolConfig DEFAULT = new KryoPoolConfig(0, 16, 60000, 5000, 0);
+
+    private final int minConnections;
+    private final int maxConnections;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final int warmUpConnections;
+    private final KryoBufferConfig buffers;
+
+    /**
+     * Creates new pool settings.
+     *
+     * @param minConnections      the number of connections that are kept open even when idle
+     * @param maxConnections      the maximum number of connections that can be borrowed at the same time
+     * @param idleTimeoutMillis   the time after which an idle connection is closed, or 0 to never close them
+     * @param borrowTimeoutMillis the maximum time to wait for a connection when all are borrowed
+     * @param warmUpConnections   the number of connections to open when the pool is created
+     */
+    public KryoPoolConfig(int minConnections, int maxConnections, long idleTimeoutMillis, long borrowTimeoutMillis, int warmUpConnections) {
+        this(minConnections, maxConnections, idleTimeoutMillis, borrowTimeoutMillis, warmUpConnections, KryoBufferConfig.DEFAULT);
+    }
+
+    /**
+     * Creates new pool settings with the given buffer settings for each connection.
+     *
+     * @param minConnections      the number of connections that are kept open even when idle
+     * @param maxConnections      the maximum number of connections that can be borrowed at the same time
+     * @param idleTimeoutMillis   the time after which an idle connection is closed, or 0 to never close them
+     * @param borrowTimeoutMillis the maximum time to wait for a connection when all are borrowed
+     * @param warmUpConnections   the number of connections to open when the pool is created
+     * @param buffers             the buffer settings of the connections
+     */
+    public KryoPoolConfig(int minConnections, int maxConnections, long idleTimeoutMillis, long borrowTimeoutMillis, int warmUpConnections, KryoBufferConfig buffers) {
+        checkArgument(minConnections >= 0, "The minimum number of connections cannot be negative");
+        checkArgument(maxConnections > 0 && maxConnections >= minConnections, "The maximum number of connections must be positive and at least the minimum");
+        checkArgument(idleTimeoutMillis >= 0, "The idle timeout cannot be negative");
+        checkArgument(borrowTimeoutMillis >= 0, "The borrow timeout cannot be negative");
+        checkArgument(warmUpConnections >= 0 && warmUpConnections <= maxConnections, "The warm-up connections must be between 0 and the maximum number of connections");
+
+        this.minConnections = minConnections;
+        this.maxConnections = maxConnections;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.warmUpConnections = warmUpConnections;
+        this.buffers = checkNotNull(buffers, "Buffer settings cannot be null");
+    }
+
+    /**
+     * Gets the number of connections that are kept open even when idle.
+     *
+     * @return the minimum number of connections
+     */
+    public int getMinConnections() {
+        return minConnections;
+    }
+
+    /**
+     * Gets the maximum number of connections that can be borrowed at the same time.
+     *
+     * @return the maximum number of connections
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Gets the time after which an idle connection is closed.
+     *
+     * @return the idle timeout in milliseconds, 0 if idle connections are never closed
+     */
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Gets the maximum time to wait for a connection when all are borrowed.
+     *
+     * @return the borrow timeout in milliseconds
+     */
+    public long getBorrowTimeoutMillis() {
+        return borrowTimeoutMillis;
+    }
+
+    /**
+     * Gets the number of connections to open when the pool is created.
+     *
+     * @return the number of warm-up connections
+     */
+    public int getWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    /**
+     * Gets the buffer settings of the connections.
+     *
+     * @return the buffer settings
+     */
+    public KryoBufferConfig getBuffers() {
+        return buffers;
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("minConnections", minConnections)
+                .add("maxConnections", maxConnections)
+                .add("idleTimeoutMillis", idleTimeoutMillis)
+                .add("borrowTimeoutMillis", borrowTimeoutMillis)
+                .add("warmUpConnections", warmUpConnections)
+                .add("buffers", buffers)
+                .toString();
+    }
+}
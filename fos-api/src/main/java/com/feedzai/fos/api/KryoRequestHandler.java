@@ -0,0 +1,445 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.feedzai.fos.api.metrics.MetricsRegistry;
+import com.feedzai.fos.api.metrics.Phase;
+import com.feedzai.fos.api.metrics.ScoringMetrics;
+import com.feedzai.fos.api.metrics.Transport;
+import com.feedzai.fos.common.kryo.BatchScoringRequestEnvelope;
+import com.feedzai.fos.common.kryo.ColumnarScoringRequestEnvelope;
+import com.feedzai.fos.common.kryo.KryoFrames;
+import com.feedzai.fos.common.kryo.ModelSchema;
+import com.feedzai.fos.common.kryo.ScoreBuffer;
+import com.feedzai.fos.common.kryo.ScoringRequestEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Server side of the Kryo scoring protocol.
+ * <p/>
+ * Decodes the requests read from a {@link KryoFrames frame} and encodes the frame that answers them.
+ * Shared by {@link KryoScoringEndpoint} and {@link KryoScoringServer} so that both speak the same protocol.
+ * <p/>
+ * Kryo instances are not thread safe, so callers provide their own.
+ * <p/>
+ * Requests are reported to the {@link MetricsRegistry} from the moment they are decoded until their response
+ * is encoded.
+ * <p/>
+ * {@link KryoFrames#SCHEMA_REQUEST Schema requests} are answered from the {@link ModelSchemaCache}, which also
+ * rejects columnar instances encoded with an outdated schema. Servers without one answer schema requests with an
+ * error and do not check columnar instances.
+ * <p/>
+ * Scoring requests go through the {@link AdmissionControl} of the server: requests over its limits, or that waited
+ * longer than their queue timeout to be scored, are answered right away with an {@link KryoFrames#OVERLOADED} frame.
+ *
+ * @since 1.0.11
+ */
+class KryoRequestHandler {
+    private final static Logger logger = LoggerFactory.getLogger(KryoRequestHandler.class);
+
+    /**
+     * The {@link com.feedzai.fos.api.Scorer} to use for scoring requests.
+     */
+    private final Scorer scorer;
+
+    /**
+     * The registry to report the requests to.
+     */
+    private final MetricsRegistry metrics;
+
+    /**
+     * The schemas of the models, {@code null} if not available.
+     */
+    private final ModelSchemaCache schemas;
+
+    /**
+     * The admission control of the scoring requests.
+     */
+    private final AdmissionControl admission;
+
+    /**
+     * Creates a new handler.
+     *
+     * @param scorer  the scorer to score the requests with
+     * @param metrics the registry to report the requests to
+     * @param schemas the schemas of the models, {@code null} if not available
+     */
+    KryoRequestHandler(Scorer scorer, MetricsRegistry metrics, ModelSchemaCache schemas) {
+        this(scorer, metrics, schemas, AdmissionControl.UNLIMITED);
+    }
+
+    /**
+     * Creates a new handler with admission control.
+     *
+     * @param scorer    the scorer to score the requests with
+     * @param metrics   the registry to report the requests to
+     * @param schemas   the schemas of the models, {@code null} if not available
+     * @param admission the admission control of the scoring requests
+     */
+    KryoRequestHandler(Scorer scorer, MetricsRegistry metrics, ModelSchemaCache schemas, AdmissionControl admission) {
+        this.scorer = scorer;
+        this.metrics = metrics;
+        this.schemas = schemas;
+        this.admission = admission;
+    }
+
+    /**
+     * Decodes the request held by a frame.
+     *
+     * @param kryo  the Kryo instance to decode with
+     * @param input the input holding the frame payload
+     * @return the decoded request
+     * @throws IOException if the frame is not a valid request
+     */
+    Request decode(Kryo kryo, Input input) throws IOException {
+        long start = System.nanoTime();
+        byte type = KryoFrames.readType(input);
+        int id = KryoFrames.readRequestId(input);
+
+        Request request;
+        List<UUID> modelIds;
+        int queueTimeout;
+        switch (type) {
+            case KryoFrames.SCHEMA_REQUEST:
+                // not a scoring request, not reported to the metrics
+                return new Request(type, id, kryo.readObject(input, UUID.class));
+            case KryoFrames.SCORE:
+                ScoringRequestEnvelope envelope = kryo.readObject(input, ScoringRequestEnvelope.class);
+                request = new Request(type, id, envelope);
+                modelIds = envelope.getUUIDs();
+                queueTimeout = envelope.getQueueTimeout();
+                break;
+            case KryoFrames.BATCH_SCORE:
+                BatchScoringRequestEnvelope batch = kryo.readObject(input, BatchScoringRequestEnvelope.class);
+                request = new Request(type, id, batch);
+                modelIds = batch.getUUIDs();
+                queueTimeout = batch.getQueueTimeout();
+                break;
+            case KryoFrames.COLUMNAR_SCORE:
+                ColumnarScoringRequestEnvelope columnar = kryo.readObject(input, ColumnarScoringRequestEnvelope.class);
+                request = new Request(type, id, columnar);
+                modelIds = columnar.getUUIDs();
+                queueTimeout = columnar.getQueueTimeout();
+                break;
+            default:
+                throw new IOException("Unknown request type " + type);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        request.received = start;
+        request.modelIds = modelIds;
+        request.queueTimeoutNanos = admission.queueTimeoutNanos(queueTimeout);
+        request.metrics = new ScoringMetrics[modelIds.size()];
+        for (int i = 0; i < request.metrics.length; i++) {
+            request.metrics[i] = metrics.get(Transport.KRYO, modelIds.get(i));
+            request.metrics[i].started();
+            request.metrics[i].record(Phase.DESERIALIZE, elapsed);
+        }
+        return request;
+    }
+
+    /**
+     * Admits a request, answering the scoring requests over the limits of the {@link AdmissionControl} with an
+     * {@link KryoFrames#OVERLOADED} frame.
+     *
+     * @param request    the decoded request
+     * @param connection the connection the request arrived on
+     * @param output     the output where the response frame of a rejected request will be written to
+     * @return {@code true} if the request can be processed, {@code false} if it was answered already
+     */
+    boolean admit(Request request, Object connection, Output output) {
+        if (request.type == KryoFrames.SCHEMA_REQUEST) {
+            return true;
+        }
+        try {
+            request.permit = admission.admit(connection, request.modelIds);
+            return true;
+        } catch (OverloadedException e) {
+            logger.debug("Rejected {}: {}", describe(request), e.getMessage());
+            reject(request, e.getMessage(), output);
+            return false;
+        }
+    }
+
+    /**
+     * Fulfills the request and encodes the response frame.
+     * <p/>
+     * Scoring errors are answered with an {@link KryoFrames#ERROR} frame, so that the connection can keep serving
+     * the other requests in flight. Requests that waited longer than their queue timeout are not scored and are
+     * answered with an {@link KryoFrames#OVERLOADED} frame.
+     *
+     * @param request the request to fulfill
+     * @param kryo    the Kryo instance to encode with
+     * @param output  the output where the response frame will be written to
+     * @param scores  the buffer to hold the scores while they are encoded
+     */
+    void process(Request request, Kryo kryo, Output output, ScoreBuffer scores) {
+        if (request.type == KryoFrames.SCHEMA_REQUEST) {
+            schema(request, kryo, output);
+            return;
+        }
+
+        try {
+            AdmissionControl.checkQueueTime(request.received, request.queueTimeoutNanos);
+        } catch (OverloadedException e) {
+            logger.debug("Rejected {}: {}", describe(request), e.getMessage());
+            reject(request, e.getMessage(), output);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            score(request, scores);
+        } catch (OverloadedException e) {
+            reject(request, e.getMessage(), output);
+            return;
+        } catch (Exception e) {
+            logger.error("Error scoring {}", describe(request), e);
+            error(request, String.valueOf(e.getMessage()), output);
+            request.finished(Phase.SCORE, System.nanoTime() - start, true);
+            return;
+        }
+
+        long scored = System.nanoTime();
+        request.record(Phase.SCORE, scored - start);
+
+        KryoFrames.begin(output, KryoFrames.SCORES, request.id);
+        KryoFrames.writeScores(output, scores);
+        KryoFrames.end(output);
+        request.finished(Phase.SERIALIZE, System.nanoTime() - scored, false);
+    }
+
+    /**
+     * Scores a request.
+     *
+     * @param request the request to score
+     * @param scores  the buffer where the scores will be written to
+     * @throws FOSException when scoring was not possible
+     */
+    private void score(Request request, ScoreBuffer scores) throws FOSException {
+        switch (request.type) {
+            case KryoFrames.BATCH_SCORE:
+                BatchScoringRequestEnvelope batch = (BatchScoringRequestEnvelope) request.payload;
+                scores.clear();
+                for (UUID modelId : batch.getUUIDs()) {
+                    scores.addAll(scorer.score(modelId, batch.getInstances()));
+                }
+                break;
+            case KryoFrames.COLUMNAR_SCORE:
+                ColumnarScoringRequestEnvelope columnar = (ColumnarScoringRequestEnvelope) request.payload;
+                checkSchema(columnar.getUUIDs(), columnar.getInstance().getSchemaVersion());
+                scorer.score(columnar.getUUIDs(), columnar.getInstance(), scores);
+                break;
+            default:
+                ScoringRequestEnvelope envelope = (ScoringRequestEnvelope) request.payload;
+                scorer.score(envelope.getUUIDs(), envelope.getInstance(), scores);
+        }
+    }
+
+    /**
+     * Answers a schema request with the schema of the model.
+     *
+     * @param request the schema request
+     * @param kryo    the Kryo instance to encode with
+     * @param output  the output where the response frame will be written to
+     */
+    private void schema(Request request, Kryo kryo, Output output) {
+        if (schemas == null) {
+            error(request, "Model schemas are not available on this server", output);
+            return;
+        }
+
+        ModelSchema schema;
+        try {
+            schema = schemas.get((UUID) request.payload);
+        } catch (Exception e) {
+            logger.error("Error getting the schema of model {}", request.payload, e);
+            error(request, String.valueOf(e.getMessage()), output);
+            return;
+        }
+
+        KryoFrames.begin(output, KryoFrames.SCHEMA, request.id);
+        kryo.writeObject(output, schema);
+        KryoFrames.end(output);
+    }
+
+    /**
+     * Checks that an instance was encoded with the current schema of the models.
+     *
+     * @param modelIds      the models to score the instance with
+     * @param schemaVersion the schema version of the instance, {@code 0} to skip the check
+     * @throws FOSException if the schema of any of the models is not the one the instance was encoded with
+     */
+    private void checkSchema(List<UUID> modelIds, int schemaVersion) throws FOSException {
+        if (schemas == null || schemaVersion == 0) {
+            return;
+        }
+        for (UUID modelId : modelIds) {
+            if (schemas.get(modelId).getVersion() != schemaVersion) {
+                throw new FOSException(String.format("Instance encoded with an outdated schema of model %s, request the schema again", modelId));
+            }
+        }
+    }
+
+    /**
+     * Describes a request for logging.
+     *
+     * @param request the request
+     * @return the description of the request
+     */
+    private static String describe(Request request) {
+        switch (request.type) {
+            case KryoFrames.BATCH_SCORE:
+                BatchScoringRequestEnvelope batch = (BatchScoringRequestEnvelope) request.payload;
+                return String.format("%d instances for models %s", batch.getInstances().size(), batch.getUUIDs());
+            case KryoFrames.COLUMNAR_SCORE:
+                ColumnarScoringRequestEnvelope columnar = (ColumnarScoringRequestEnvelope) request.payload;
+                return String.format("instance %s for models %s", columnar.getInstance(), columnar.getUUIDs());
+            default:
+                ScoringRequestEnvelope envelope = (ScoringRequestEnvelope) request.payload;
+                return String.format("instance %s for models %s", Arrays.toString(envelope.getInstance()), envelope.getUUIDs());
+        }
+    }
+
+    /**
+     * Answers a request that was shed because the server is overloaded with an {@link KryoFrames#OVERLOADED} frame
+     * and reports it as failed.
+     *
+     * @param request the rejected request
+     * @param message the reason of the rejection
+     * @param output  the output where the response frame will be written to
+     */
+    void reject(Request request, String message, Output output) {
+        KryoFrames.begin(output, KryoFrames.OVERLOADED, request.id);
+        output.writeString(message);
+        KryoFrames.end(output);
+        request.finished(Phase.SCORE, 0, true);
+    }
+
+    /**
+     * Encodes an error response frame.
+     *
+     * @param request the request that failed
+     * @param message the error message
+     * @param output  the output where the response frame will be written to
+     */
+    void error(Request request, String message, Output output) {
+        KryoFrames.begin(output, KryoFrames.ERROR, request.id);
+        output.writeString(message);
+        KryoFrames.end(output);
+    }
+
+    /**
+     * A decoded request.
+     */
+    static final class Request {
+        private static final ScoringMetrics[] NO_METRICS = new ScoringMetrics[0];
+
+        /**
+         * The message type.
+         */
+        final byte type;
+        /**
+         * The id to answer the request with.
+         */
+        final int id;
+        /**
+         * The decoded message.
+         */
+        final Object payload;
+        /**
+         * The models of the request, {@code null} for schema requests.
+         */
+        List<UUID> modelIds;
+        /**
+         * When the request was received, from {@link System#nanoTime()}.
+         */
+        long received;
+        /**
+         * The maximum time the request may wait to be scored in nanoseconds, {@code 0} for no limit.
+         */
+        long queueTimeoutNanos;
+        /**
+         * The slots taken by the request in the {@link AdmissionControl}, {@code null} if not admitted.
+         */
+        AdmissionControl.Permit permit;
+        /**
+         * The metrics of each model of the request.
+         */
+        ScoringMetrics[] metrics = NO_METRICS;
+
+        Request(byte type, int id, Object payload) {
+            this.type = type;
+            this.id = id;
+            this.payload = payload;
+        }
+
+        /**
+         * Gets the model that decides which thread scores the request.
+         *
+         * @return the first model of the request, {@code null} if none
+         */
+        UUID modelId() {
+            return modelIds == null || modelIds.isEmpty() ? null : modelIds.get(0);
+        }
+
+        /**
+         * Records the latency of a phase in the metrics of every model.
+         *
+         * @param phase the phase
+         * @param nanos the time spent in the phase, in nanoseconds
+         */
+        void record(Phase phase, long nanos) {
+            for (ScoringMetrics metric : metrics) {
+                metric.record(phase, nanos);
+            }
+        }
+
+        /**
+         * Records the latency of the last phase and reports the request as finished in the metrics of every model,
+         * giving back its slots in the {@link AdmissionControl}.
+         *
+         * @param phase  the last phase
+         * @param nanos  the time spent in the phase, in nanoseconds
+         * @param failed {@code true} if the request could not be scored
+         */
+        void finished(Phase phase, long nanos, boolean failed) {
+            if (permit != null) {
+                permit.close();
+            }
+            for (ScoringMetrics metric : metrics) {
+                metric.record(phase, nanos);
+                metric.finished(failed);
+            }
+        }
+    }
+}
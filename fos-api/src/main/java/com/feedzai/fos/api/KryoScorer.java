@@ -22,22 +22,33 @@
  */
 package com.feedzai.fos.api;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
-import com.feedzai.fos.common.kryo.CustomUUIDSerializer;
+import com.feedzai.fos.common.kryo.BatchScoringRequestEnvelope;
+import com.feedzai.fos.common.kryo.ColumnarInstance;
+import com.feedzai.fos.common.kryo.ColumnarScoringRequestEnvelope;
+import com.feedzai.fos.common.kryo.KryoFrames;
+import com.feedzai.fos.common.kryo.ModelSchema;
+import com.feedzai.fos.common.kryo.ScoreBuffer;
 import com.feedzai.fos.common.kryo.ScoringRequestEnvelope;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * This class implements FOS Scorer interface that
@@ -46,179 +57,340 @@ import java.util.UUID;
  *
  *
  * This class is thread safe. Multiple simultaneous scoring requests can be performed
- * from multiple threads. Each simultaneous scoring requests will run
- * on its own socket connection to the Kryo backend.
+ * from multiple threads, and the asynchronous methods never wait for the scores.
+ * Requests are pipelined: a connection is only held while a request is written, and the
+ * response is matched by request id when it arrives, so many requests can be in flight
+ * on a single socket connection and the server may answer them in any order.
+ *
+ * Batches of instances are sent in a single request, see {@link #score(java.util.List, java.util.List)}.
+ *
+ * Requests can be balanced among several scoring servers, see
+ * {@link #KryoScorer(java.util.List, KryoPoolConfig)}.
+ *
+ * Socket connections are pooled, see {@link KryoPoolConfig}.
  *
- * Socket connections are pooled
+ * Requests can carry a queue timeout, see {@link #KryoScorer(java.util.List, KryoPoolConfig, int)}. Requests the
+ * server sheds because it is overloaded fail with an {@link OverloadedException}.
  *
  * @author Miguel Duarte (miguel.duarte@feedzai.com)
  */
 public class KryoScorer implements Scorer {
     private final static Logger logger = LoggerFactory.getLogger(KryoScorer.class);
 
-    List<RemoteConnection> remoteConnections = new ArrayList<>();
-    private final String host;
-    private final int port;
+    /**
+     * The number of times a request is sent to another server when the server it was sent to cannot be reached.
+     */
+    static final int MAX_RETRIES = 2;
 
+    /**
+     * The scoring servers.
+     */
+    private final KryoEndpoint[] endpoints;
+
+    /**
+     * The maximum time in milliseconds the requests may wait to be scored, 0 for the default of the servers.
+     */
+    private final int queueTimeout;
+
+    /**
+     * The executor that sends the failed requests again, so that the reader threads of the connections never wait
+     * to connect to another server.
+     */
+    private final ThreadPoolExecutor retries;
 
     public KryoScorer(String host, int port) {
-        this.host = host;
-        this.port = port;
+        this(host, port, KryoPoolConfig.DEFAULT);
+    }
+
+    /**
+     * Creates a new scorer with the given connection pool settings.
+     *
+     * @param host       the host of the scoring server
+     * @param port       the port of the scoring server
+     * @param poolConfig the connection pool settings
+     * @since 1.0.11
+     */
+    public KryoScorer(String host, int port, KryoPoolConfig poolConfig) {
+        this(Collections.singletonList(InetSocketAddress.createUnresolved(host, port)), poolConfig);
+    }
+
+    /**
+     * Creates a new scorer that balances the requests among several scoring servers.
+     * <p/>
+     * Each request is sent to the least loaded of two servers picked at random (power of two choices), counting
+     * the requests in flight of each server. Servers that cannot be reached are avoided for an exponentially
+     * growing period, and the requests that failed because of it are sent to another server.
+     *
+     * @param endpoints  the addresses of the scoring servers
+     * @param poolConfig the connection pool settings of each server
+     * @since 1.0.11
+     */
+    public KryoScorer(List<InetSocketAddress> endpoints, KryoPoolConfig poolConfig) {
+        this(endpoints, poolConfig, 0);
+    }
+
+    /**
+     * Creates a new scorer that balances the requests among several scoring servers, whose requests carry a queue
+     * timeout.
+     * <p/>
+     * Servers do not score requests that waited for longer than the queue timeout to reach a scoring thread, they
+     * answer them right away with an {@link OverloadedException} instead. The timeout should be what is left of the
+     * latency budget of the caller once the scoring time and the network are accounted for.
+     *
+     * @param endpoints    the addresses of the scoring servers
+     * @param poolConfig   the connection pool settings of each server
+     * @param queueTimeout the maximum time in milliseconds the requests may wait to be scored, 0 for the default of
+     *                     the servers
+     * @since 1.0.11
+     */
+    public KryoScorer(List<InetSocketAddress> endpoints, KryoPoolConfig poolConfig, int queueTimeout) {
+        checkArgument(endpoints != null && !endpoints.isEmpty(), "At least one scoring server is required");
+        checkNotNull(poolConfig, "Pool settings cannot be null");
+        checkArgument(queueTimeout >= 0, "The queue timeout cannot be negative");
+        this.queueTimeout = queueTimeout;
+
+        this.endpoints = new KryoEndpoint[endpoints.size()];
+        for (int i = 0; i < this.endpoints.length; i++) {
+            InetSocketAddress address = endpoints.get(i);
+            this.endpoints[i] = new KryoEndpoint(address.getHostString(), address.getPort(), poolConfig);
+        }
+
+        this.retries = new ThreadPoolExecutor(this.endpoints.length, this.endpoints.length, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("fos-kryo-retry-%d")
+                        .setDaemon(true)
+                        .build());
+        this.retries.allowCoreThreadTimeOut(true);
     }
 
     @Override
     public List<double[]> score(List<UUID> modelIds, Object[] scorable) throws FOSException {
-        RemoteConnection con = null;
-        try {
-            con = getConnection();
-            List<double[]> scores = con.score(modelIds, scorable);
-            return scores;
-        } catch (Exception e) {
-            throw new FOSException(e.getMessage(), e);
-        } finally {
-            releaseConnection(con);
-        }
+        return get(scoreAsync(modelIds, scorable));
     }
 
     @Override
     public List<double[]> score(UUID modelId, List<Object[]> scorables) throws FOSException {
-        RemoteConnection con = null;
-        try {
-            con = getConnection();
-            List<double[]> scores = con.score(modelId, scorables);
-            return scores;
-        } catch (Exception e) {
-            throw new FOSException(e.getMessage(), e);
-        } finally {
-            releaseConnection(con);
-        }
+        return get(scoreAsync(modelId, scorables));
     }
 
     @Override
     public double[] score(UUID modelId, Object[] scorable) throws FOSException {
-        RemoteConnection con = null;
-        try {
-            con = getConnection();
-            double[] scores = con.score(modelId, scorable);
-            return scores;
-        } catch (Exception e) {
-            throw new FOSException(e.getMessage(), e);
-        } finally {
-            releaseConnection(con);
-        }
+        return get(scoreAsync(modelId, scorable));
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The scores are decoded straight into the buffer, which must not be used until this method returns.
+     */
+    @Override
+    public void score(List<UUID> modelIds, Object[] scorable, ScoreBuffer scores) throws FOSException {
+        get(send(KryoFrames.SCORE, new ScoringRequestEnvelope(modelIds, scorable, queueTimeout), scores));
+    }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The scores are decoded straight into the buffer, which must not be used until this method returns.
+     */
     @Override
-    public void close() throws FOSException {
-        try {
-            for (RemoteConnection connection : remoteConnections) {
-                connection.close();
-            }
-        } catch (Exception e) {
-            throw new FOSException(e.getMessage(), e);
-        }
+    public void score(List<UUID> modelIds, ColumnarInstance scorable, ScoreBuffer scores) throws FOSException {
+        get(send(KryoFrames.COLUMNAR_SCORE, new ColumnarScoringRequestEnvelope(modelIds, scorable, queueTimeout), scores));
+    }
+
+    @Override
+    public CompletableFuture<List<double[]>> scoreAsync(List<UUID> modelIds, Object[] scorable) {
+        return send(KryoFrames.SCORE, new ScoringRequestEnvelope(modelIds, scorable, queueTimeout), null);
+    }
+
+    @Override
+    public List<double[]> score(List<UUID> modelIds, ColumnarInstance scorable) throws FOSException {
+        return get(scoreAsync(modelIds, scorable));
+    }
+
+    @Override
+    public CompletableFuture<List<double[]>> scoreAsync(List<UUID> modelIds, ColumnarInstance scorable) {
+        return send(KryoFrames.COLUMNAR_SCORE, new ColumnarScoringRequestEnvelope(modelIds, scorable, queueTimeout), null);
+    }
+
+    @Override
+    public CompletableFuture<List<double[]>> scoreAsync(UUID modelId, List<Object[]> scorables) {
+        return scoreAsync(Collections.singletonList(modelId), scorables);
     }
 
     /**
-     * Gets a connection from the connection pool or creates a new connection
-     * if needed
-     * @return RemoteConnection
-     * @throws IOException if unable to create a new connection
+     * Score all <code>scorables</code> against all the given <code>modelIds</code> with a single request.
+     * <p/> The resulting scores are returned model by model: the score of <code>scorables(i)</code> with
+     * <code>modelIds(m)</code> is at position <code>m * scorables.size() + i</code>.
+     *
+     * @param modelIds  the list of models to score
+     * @param scorables the instances to score
+     * @return a list of scores double[], model by model
+     * @throws FOSException when scoring was not possible
+     * @since 1.0.11
      */
-    private RemoteConnection getConnection() throws IOException {
-        synchronized (remoteConnections) {
-            int size = remoteConnections.size();
-            if (size  != 0) {
-                return remoteConnections.remove(size - 1);
-            }
-        }
-        return new RemoteConnection(host, port);
+    public List<double[]> score(List<UUID> modelIds, List<Object[]> scorables) throws FOSException {
+        return get(scoreAsync(modelIds, scorables));
     }
 
     /**
-     * Returns a connection back to the pool
-     * to be reused later on.
+     * Asynchronous version of {@link #score(java.util.List, java.util.List)}.
      *
-     * @param con RemoteConnection to be returned to the pool. Null values are ignored
+     * @param modelIds  the list of models to score
+     * @param scorables the instances to score
+     * @return a future completed with the list of scores double[], model by model
+     * @since 1.0.11
      */
-    private void releaseConnection(RemoteConnection con) {
-        if (con == null) {
-            return;
-        }
-        synchronized (remoteConnections) {
-            remoteConnections.add(con);
-        }
+    public CompletableFuture<List<double[]>> scoreAsync(List<UUID> modelIds, List<Object[]> scorables) {
+        // the scoring server cannot create arbitrary list implementations
+        return send(KryoFrames.BATCH_SCORE, new BatchScoringRequestEnvelope(modelIds, new ArrayList<>(scorables), queueTimeout), null);
     }
 
     /**
-     * This class implements the internal Kryo scoring backend
+     * Gets the schema of a model from one of the scoring servers, to encode {@link ColumnarInstance columnar
+     * instances} with categorical codes instead of strings.
+     * <p/>
+     * Instances {@link ColumnarEncoder#ColumnarEncoder(ModelSchema) encoded} with a schema are rejected once the
+     * model is reconfigured, the schema must then be requested again.
+     *
+     * @param modelId the id of the model
+     * @return the schema of the model
+     * @throws FOSException if the model does not exist or the server does not publish schemas
+     * @since 1.0.11
      */
-    private static class RemoteConnection implements Scorer {
-        /*
-         * Buffer size in bytes to be used for Kryo i/o.
-         * It should be noted that (beyond reasonable values)
-         * this does not impose any limits to the size of objects to be read/written
-         * if the internal buffer is exausted/underflows, kryo will flush or read
-         * more data from the associated inputstream.
-         *
-         */
-        public static final int BUFFER_SIZE = 1024;  // bytes
-        final Socket s; // socket that represents client connection
-        InputStream is;
-        OutputStream os;
-        Kryo kryo;
-        Input input;
-        Output output;
-
-
-        RemoteConnection(String host, int port) throws IOException {
-            s = new Socket(host, port);
-            // Disable naggle Algorithm to decrease latency
-            s.setTcpNoDelay(true);
-            is = s.getInputStream();
-            os = s.getOutputStream();
-            kryo = new Kryo();
-            kryo.addDefaultSerializer(UUID.class, new CustomUUIDSerializer());
-            input = new Input(BUFFER_SIZE);
-            output = new Output(BUFFER_SIZE);
-            input.setInputStream(is);
-            output.setOutputStream(os);
-        }
+    public ModelSchema getSchema(UUID modelId) throws FOSException {
+        checkNotNull(modelId, "Model id cannot be null");
+        return get(this.<ModelSchema>send(KryoFrames.SCHEMA_REQUEST, modelId, null));
+    }
+
+    /**
+     * Sends a request to one of the scoring servers.
+     * <p/>
+     * Scoring is idempotent, so requests that fail because the server cannot be reached are sent again to
+     * another server. Retried requests are encoded again, so the instances must not be changed until the
+     * response completes. Failures are usually noticed by the reader thread of a connection, which must keep
+     * reading the other responses, so requests are sent again by the {@link #retries} executor.
+     *
+     * @param type     the message type
+     * @param envelope the request envelope
+     * @param scores   the buffer to read the scores into, or {@code null} to complete the response with a new list
+     * @param <T>      the type of the response
+     * @return the response of the request
+     */
+    private <T> CompletableFuture<T> send(byte type, Object envelope, ScoreBuffer scores) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        send(type, envelope, scores, result, null, 0);
+        return result;
+    }
 
+    private <T> void send(byte type, Object envelope, ScoreBuffer scores, CompletableFuture<T> result, KryoEndpoint previous, int attempt) {
+        KryoEndpoint endpoint = choose(previous);
+        endpoint.<T>send(type, envelope, scores).whenComplete((response, e) -> {
+            if (e == null) {
+                result.complete(response);
+                return;
+            }
 
-        @Override
-        public List<double[]> score(List<UUID> modelIds, Object[] scorable) throws FOSException {
-            try {
-                ScoringRequestEnvelope envelope = new ScoringRequestEnvelope(modelIds, scorable);
-                kryo.writeObject(output, envelope);
-                output.flush();
-                os.flush();
-                return kryo.readObject(input, ArrayList.class);
-            } catch (Exception e) {
-                throw new FOSException("Unable to score", e);
+            Throwable cause = KryoEndpoint.unwrap(e);
+            if (cause instanceof IOException && attempt < MAX_RETRIES) {
+                logger.debug("Retrying request sent to {} on another scoring server", endpoint, cause);
+                try {
+                    retries.execute(() -> send(type, envelope, scores, result, endpoint, attempt + 1));
+                } catch (RejectedExecutionException re) {
+                    result.completeExceptionally(new FOSException("Scorer closed while retrying the request", cause));
+                }
+            } else if (cause instanceof FOSException) {
+                result.completeExceptionally(cause);
+            } else {
+                result.completeExceptionally(new FOSException(cause.getMessage(), cause));
             }
+        });
+    }
+
+    /**
+     * Chooses the server to send a request to: the one with fewer requests in flight of two available servers
+     * picked at random.
+     * <p/>
+     * When no other server is available, the server that will be available the soonest is chosen.
+     *
+     * @param excluded the server to avoid (where the request just failed), or {@code null}
+     * @return the chosen server
+     */
+    KryoEndpoint choose(KryoEndpoint excluded) {
+        int n = endpoints.length;
+        if (n == 1) {
+            return endpoints[0];
+        }
+
+        long now = System.currentTimeMillis();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(n);
+        int second = (first + 1 + random.nextInt(n - 1)) % n;
+        KryoEndpoint a = usable(endpoints[first], excluded, now);
+        KryoEndpoint b = usable(endpoints[second], excluded, now);
+        if (a != null && b != null) {
+            return a.outstanding() <= b.outstanding() ? a : b;
+        } else if (a != null || b != null) {
+            return a != null ? a : b;
         }
 
-        @Override
-        public List<double[]> score(UUID modelId, List<Object[]> scorables) throws FOSException {
-            throw new FOSException("Not implemented");
+        // the two picks were unavailable, fall back to the least loaded available server
+        KryoEndpoint best = null;
+        for (KryoEndpoint endpoint : endpoints) {
+            if (usable(endpoint, excluded, now) != null && (best == null || endpoint.outstanding() < best.outstanding())) {
+                best = endpoint;
+            }
+        }
+        if (best != null) {
+            return best;
         }
 
-        @Override
-        public double[] score(UUID modelId, Object[] scorabl) throws FOSException {
-            throw new FOSException("Not implemented");
+        for (KryoEndpoint endpoint : endpoints) {
+            if (endpoint != excluded && (best == null || endpoint.getDownUntil() < best.getDownUntil())) {
+                best = endpoint;
+            }
         }
+        return best;
+    }
+
+    private static KryoEndpoint usable(KryoEndpoint endpoint, KryoEndpoint excluded, long now) {
+        return endpoint != excluded && endpoint.isAvailable(now) ? endpoint : null;
+    }
 
-        @Override
-        public void close() throws FOSException {
-            input.close();
-            output.close();
-            try {
-                s.close();
-            } catch (IOException e) {
-                throw new FOSException(e.getMessage(), e);
+    @Override
+    public CompletableFuture<double[]> scoreAsync(UUID modelId, Object[] scorable) {
+        return scoreAsync(Collections.singletonList(modelId), scorable).thenApply(scores -> scores.get(0));
+    }
+
+    /**
+     * Waits for the response of a request.
+     *
+     * @param response the pending response
+     * @param <T>      the type of the response
+     * @return the response
+     * @throws FOSException if the request failed or the thread was interrupted while waiting
+     */
+    private static <T> T get(CompletableFuture<T> response) throws FOSException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FOSException("Interrupted while waiting for the scores", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OverloadedException) {
+                // callers tell shed requests apart to retry them later
+                throw new OverloadedException(e.getCause().getMessage(), e.getCause());
             }
+            throw new FOSException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws FOSException {
+        retries.shutdown();
+        for (KryoEndpoint endpoint : endpoints) {
+            endpoint.close();
         }
     }
 }
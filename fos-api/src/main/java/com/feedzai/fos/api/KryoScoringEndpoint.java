@@ -25,18 +25,24 @@ package com.feedzai.fos.api;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.serializers.CollectionSerializer;
-import com.feedzai.fos.common.kryo.CustomUUIDSerializer;
+import com.feedzai.fos.api.metrics.Metrics;
+import com.feedzai.fos.api.metrics.MetricsRegistry;
+import com.feedzai.fos.common.kryo.KryoFactory;
+import com.feedzai.fos.common.kryo.KryoFrames;
+import com.feedzai.fos.common.kryo.ScoreBuffer;
 import com.feedzai.fos.common.kryo.ScoringRequestEnvelope;
+import com.feedzai.fos.common.kryo.UUIDRegistry;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.util.*;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * This class should be used to perform scoring requests
@@ -45,7 +51,12 @@ import java.util.*;
  * It listens on a socket input stream for Kryo serialized {@link ScoringRequestEnvelope}
  * objects, extracts them and forwards them to the local scorer.
  * <p/>
- * The scoring result is then Kryo encoded on the socket output stream.
+ * The scoring result is then Kryo encoded on the socket output stream. Both requests and
+ * responses are length prefixed as defined by {@link KryoFrames}.
+ * <p/>
+ * Each endpoint blocks a thread for as long as the client is connected, see {@link KryoScoringServer}
+ * for a server that multiplexes many clients over a few threads. Given a {@link ScoringExecutor}, the requests are
+ * scored by its threads instead, so that the concurrency of the scorer does not grow with the number of clients.
  *
  * @author Miguel Duarte (miguel.duarte@feedzai.com)
  * @since 1.0.6
@@ -67,6 +78,22 @@ public class KryoScoringEndpoint implements Runnable {
      * The {@link com.feedzai.fos.api.Scorer} to use for scoring messages.
      */
     Scorer scorer;
+    /**
+     * The registry to report the requests to.
+     */
+    MetricsRegistry metrics;
+    /**
+     * The schemas of the models, {@code null} if not available.
+     */
+    ModelSchemaCache schemas;
+    /**
+     * The executor that scores the requests, {@code null} to score them in the thread of the endpoint.
+     */
+    ScoringExecutor workers;
+    /**
+     * The admission control of the scoring requests.
+     */
+    AdmissionControl admission;
     /**
      * Flag to define if the
      */
@@ -80,46 +107,133 @@ public class KryoScoringEndpoint implements Runnable {
      * @throws IOException When a problem occurs in the socket communication channels.
      */
     public KryoScoringEndpoint(Socket client, Scorer scorer) throws IOException {
+        this(client, scorer, Metrics.getRegistry());
+    }
+
+    /**
+     * Creates a new instance of the {@link com.feedzai.fos.api.KryoScoringEndpoint} class.
+     *
+     * @param client  The socket to use during communication.
+     * @param scorer  The scorer to score the messages that arrive in the socket.
+     * @param metrics The registry to report the requests to.
+     * @throws IOException When a problem occurs in the socket communication channels.
+     */
+    public KryoScoringEndpoint(Socket client, Scorer scorer, MetricsRegistry metrics) throws IOException {
+        this(client, scorer, metrics, null);
+    }
+
+    /**
+     * Creates a new instance of the {@link com.feedzai.fos.api.KryoScoringEndpoint} class that publishes the
+     * schemas of the models.
+     *
+     * @param client  The socket to use during communication.
+     * @param scorer  The scorer to score the messages that arrive in the socket.
+     * @param metrics The registry to report the requests to.
+     * @param schemas The schemas of the models, {@code null} if not available.
+     * @throws IOException When a problem occurs in the socket communication channels.
+     */
+    public KryoScoringEndpoint(Socket client, Scorer scorer, MetricsRegistry metrics, ModelSchemaCache schemas) throws IOException {
+        this(client, scorer, metrics, schemas, null);
+    }
+
+    /**
+     * Creates a new instance of the {@link com.feedzai.fos.api.KryoScoringEndpoint} class that publishes the
+     * schemas of the models and scores the requests in a shared executor.
+     *
+     * @param client  The socket to use during communication.
+     * @param scorer  The scorer to score the messages that arrive in the socket.
+     * @param metrics The registry to report the requests to.
+     * @param schemas The schemas of the models, {@code null} if not available.
+     * @param workers The executor that scores the requests, {@code null} to score them in the thread of the endpoint.
+     * @throws IOException When a problem occurs in the socket communication channels.
+     */
+    public KryoScoringEndpoint(Socket client, Scorer scorer, MetricsRegistry metrics, ModelSchemaCache schemas, ScoringExecutor workers) throws IOException {
+        this(client, scorer, metrics, schemas, workers, AdmissionControl.UNLIMITED);
+    }
+
+    /**
+     * Creates a new instance of the {@link com.feedzai.fos.api.KryoScoringEndpoint} class that publishes the
+     * schemas of the models and scores the requests admitted by an admission control in a shared executor.
+     *
+     * @param client    The socket to use during communication.
+     * @param scorer    The scorer to score the messages that arrive in the socket.
+     * @param metrics   The registry to report the requests to.
+     * @param schemas   The schemas of the models, {@code null} if not available.
+     * @param workers   The executor that scores the requests, {@code null} to score them in the thread of the endpoint.
+     * @param admission The admission control of the scoring requests, usually shared by every endpoint of a server.
+     * @throws IOException When a problem occurs in the socket communication channels.
+     */
+    public KryoScoringEndpoint(Socket client, Scorer scorer, MetricsRegistry metrics, ModelSchemaCache schemas, ScoringExecutor workers, AdmissionControl admission) throws IOException {
         this.client = client;
         this.scorer = scorer;
+        this.metrics = metrics;
+        this.schemas = schemas;
+        this.workers = workers;
+        this.admission = checkNotNull(admission, "Admission control cannot be null");
     }
 
     @Override
     public void run() {
-        Kryo kryo = new Kryo();
-        kryo.addDefaultSerializer(UUID.class, new CustomUUIDSerializer());
-        // workaround for java.util.Arrays$ArrayList missing default constructor
-        kryo.register(Arrays.asList().getClass(), new CollectionSerializer() {
-            protected Collection create(Kryo kryo, Input input, Class<Collection> type) {
-                return new ArrayList();
-            }
-        });
+        KryoRequestHandler handler = new KryoRequestHandler(scorer, metrics, schemas, admission);
+        Object address = client.getRemoteSocketAddress();
+        Kryo kryo = KryoFactory.borrow();
+        new UUIDRegistry().bindReader(kryo);
 
         Input input = new Input(BUFFER_SIZE);
-        Output output = new Output(BUFFER_SIZE);
+        final Output output = new Output(BUFFER_SIZE, -1);
+        final ScoreBuffer scores = new ScoreBuffer();
 
-        ScoringRequestEnvelope request = null;
-        try (InputStream is = client.getInputStream();
+        try (InputStream is = new BufferedInputStream(client.getInputStream(), BUFFER_SIZE);
              OutputStream os = client.getOutputStream()) {
-            input.setInputStream(is);
-            output.setOutputStream(os);
-            while (running) {
-                request = kryo.readObject(input, ScoringRequestEnvelope.class);
-                List<double[]> scores = scorer.score(request.getUUIDs(),
-                        request.getInstance());
-                kryo.writeObject(output, scores);
-                output.flush();
-                os.flush();
+            while (running && KryoFrames.read(is, input)) {
+                // requests are answered in order, scoring errors are answered with an error frame
+                KryoRequestHandler.Request request = handler.decode(kryo, input);
+                if (handler.admit(request, address, output)) {
+                    process(handler, request, kryo, output, scores);
+                }
+                KryoFrames.write(output, os);
             }
         } catch (Exception e) {
-            if (request != null) {
-                logger.error("Error scoring instance {} for models {}", Arrays.toString(request.getInstance()), Arrays.toString(request.getUUIDs().toArray()), e);
-            } else {
-                logger.error("Error scoring instance", e);
+            if (running) {
+                logger.error("Error reading scoring request", e);
             }
         } finally {
             IOUtils.closeQuietly(client);
             running = false;
+            KryoFactory.release(kryo);
+        }
+    }
+
+    /**
+     * Fulfills a request in the executor, if any, and waits for its response to be encoded.
+     *
+     * @param handler the handler of the requests
+     * @param request the request to fulfill
+     * @param kryo    the Kryo instance to encode with
+     * @param output  the output where the response frame will be written to
+     * @param scores  the buffer to hold the scores while they are encoded
+     * @throws FOSException when waiting for the executor was interrupted
+     */
+    private void process(final KryoRequestHandler handler, final KryoRequestHandler.Request request, final Kryo kryo,
+                         final Output output, final ScoreBuffer scores) throws FOSException {
+        if (workers == null) {
+            handler.process(request, kryo, output, scores);
+            return;
+        }
+
+        try {
+            workers.call(request.modelId(), () -> {
+                handler.process(request, kryo, output, scores);
+                return null;
+            });
+        } catch (OverloadedException e) {
+            handler.reject(request, e.getMessage(), output);
+        } catch (FOSException e) {
+            // the connection is closed, give back the slots of a request that may never be answered
+            if (request.permit != null) {
+                request.permit.close();
+            }
+            throw e;
         }
     }
 
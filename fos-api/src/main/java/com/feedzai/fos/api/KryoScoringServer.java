@@ -0,0 +1,738 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.feedzai.fos.api.config.FosConfig;
+import com.feedzai.fos.api.metrics.Metrics;
+import com.feedzai.fos.api.metrics.MetricsRegistry;
+import com.feedzai.fos.common.kryo.KryoFactory;
+import com.feedzai.fos.common.kryo.KryoFrames;
+import com.feedzai.fos.common.kryo.PooledByteBufferOutput;
+import com.feedzai.fos.common.kryo.ScoreBuffer;
+import com.feedzai.fos.common.kryo.ScoringRequestEnvelope;
+import com.feedzai.fos.common.kryo.UUIDRegistry;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Non-blocking Kryo scoring server.
+ * <p/>
+ * Unlike {@link KryoScoringEndpoint}, which needs a dedicated thread for each connected client, this server
+ * multiplexes every client connection over a small number of selector driven I/O threads. Incoming bytes are
+ * accumulated per connection until a whole {@link KryoFrames frame} is available, the decoded
+ * {@link ScoringRequestEnvelope} is handed to a bounded worker pool that runs the {@link Scorer}, and the
+ * encoded scores are queued back to the I/O thread that owns the connection.
+ * <p/>
+ * Requests of the same connection are scored concurrently and answered as soon as they complete,
+ * possibly out of order; clients match responses with requests by the request id in each frame.
+ * <p/>
+ * The workers are a {@link ScoringExecutor}, either owned by the server or shared with the other transports of the
+ * FOS server. When its queue is full the {@link ScoringExecutor.RejectionPolicy rejection policy} applies: the I/O
+ * thread answers the request as {@link KryoFrames#OVERLOADED} right away (the default), waits for room in the queue,
+ * or scores the request itself (which stops it from reading more requests until the backlog is drained).
+ * <p/>
+ * Requests over the limits of the {@link AdmissionControl} are answered as {@link KryoFrames#OVERLOADED} by the I/O
+ * thread, without reaching the workers.
+ * <p/>
+ * With {@link KryoBufferConfig#isDirect() direct buffers} requests are read into pooled direct buffers and decoded
+ * in place, and responses are encoded into pooled direct buffers that are handed to the I/O thread as they are.
+ *
+ * @since 1.0.11
+ */
+public class KryoScoringServer implements Closeable {
+    /**
+     * The logger instance for the server.
+     */
+    private final static Logger logger = LoggerFactory.getLogger(KryoScoringServer.class);
+    /**
+     * The initial size of the Kryo buffers by default.
+     */
+    public static final int BUFFER_SIZE = 1024;
+    /**
+     * The number of requests that can be queued for each worker of an owned pool before the I/O threads start scoring.
+     */
+    public static final int QUEUED_REQUESTS_PER_WORKER = ScoringExecutor.QUEUED_REQUESTS_PER_THREAD;
+
+    /**
+     * The handler that decodes and fulfills requests.
+     */
+    private final KryoRequestHandler handler;
+    /**
+     * The port to listen on.
+     */
+    private final int port;
+    /**
+     * The bounded pool that runs the scorer.
+     */
+    private final ScoringExecutor workers;
+    /**
+     * {@code true} if the workers are owned by this server and shut down with it.
+     */
+    private final boolean ownWorkers;
+    /**
+     * The I/O threads, each one owning a selector and the connections registered in it.
+     */
+    private final IoLoop[] ioLoops;
+    /**
+     * The buffer settings.
+     */
+    private final KryoBufferConfig buffers;
+    /**
+     * Worker local Kryo state used to encode responses.
+     */
+    private final ThreadLocal<Encoder> encoders = new ThreadLocal<Encoder>() {
+        @Override
+        protected Encoder initialValue() {
+            return new Encoder();
+        }
+    };
+    /**
+     * The channel accepting new connections.
+     */
+    private ServerSocketChannel serverChannel;
+    /**
+     * Flag to define if the server is accepting and serving connections.
+     */
+    private volatile boolean running;
+
+    /**
+     * Creates a new server for the given scorer, reporting to the {@link Metrics#getRegistry() default metrics registry}
+     * and listening on {@link FosConfig#getScoringPort()} with
+     * {@link FosConfig#getThreadPoolSize()} workers and {@link FosConfig#getScoringIoThreads()} I/O threads.
+     *
+     * @param config the FOS configuration
+     * @param scorer the scorer to score the requests with
+     */
+    public KryoScoringServer(FosConfig config, Scorer scorer) {
+        this(config, scorer, null);
+    }
+
+    /**
+     * Creates a new server for the given scorer that publishes the schemas of the models, reporting to the
+     * {@link Metrics#getRegistry() default metrics registry} and listening on {@link FosConfig#getScoringPort()} with
+     * {@link FosConfig#getThreadPoolSize()} workers and {@link FosConfig#getScoringIoThreads()} I/O threads.
+     * <p/>
+     * The workers queue and reject the requests as set in the configuration, see
+     * {@link FosConfig#getScoringRejectionPolicy()}, and the requests are admitted by an {@link AdmissionControl} with
+     * its limits.
+     *
+     * @param config  the FOS configuration
+     * @param scorer  the scorer to score the requests with
+     * @param schemas the schemas of the models, {@code null} if not available
+     */
+    public KryoScoringServer(FosConfig config, Scorer scorer, ModelSchemaCache schemas) {
+        this(config.getScoringPort(), createWorkers(config), true, config.getScoringIoThreads(), scorer, Metrics.getRegistry(), schemas,
+                new KryoBufferConfig(config.isScoringDirectBuffers(), config.getScoringBufferSize(), config.getScoringMaxFrameSize()),
+                new AdmissionControl(config));
+    }
+
+    /**
+     * Creates a new server for the given scorer that publishes the schemas of the models and scores the requests in
+     * a shared executor, reporting to the {@link Metrics#getRegistry() default metrics registry} and listening on
+     * {@link FosConfig#getScoringPort()} with {@link FosConfig#getScoringIoThreads()} I/O threads.
+     * <p/>
+     * The executor is not shut down when the server is closed.
+     *
+     * @param config  the FOS configuration
+     * @param scorer  the scorer to score the requests with
+     * @param schemas the schemas of the models, {@code null} if not available
+     * @param workers the executor that runs the scorer
+     */
+    public KryoScoringServer(FosConfig config, Scorer scorer, ModelSchemaCache schemas, ScoringExecutor workers) {
+        this(config, scorer, schemas, workers, new AdmissionControl(config));
+    }
+
+    /**
+     * Creates a new server for the given scorer that publishes the schemas of the models and scores the requests
+     * admitted by a shared admission control in a shared executor, reporting to the
+     * {@link Metrics#getRegistry() default metrics registry} and listening on {@link FosConfig#getScoringPort()} with
+     * {@link FosConfig#getScoringIoThreads()} I/O threads.
+     * <p/>
+     * The executor is not shut down when the server is closed.
+     *
+     * @param config    the FOS configuration
+     * @param scorer    the scorer to score the requests with
+     * @param schemas   the schemas of the models, {@code null} if not available
+     * @param workers   the executor that runs the scorer
+     * @param admission the admission control of the scoring requests
+     */
+    public KryoScoringServer(FosConfig config, Scorer scorer, ModelSchemaCache schemas, ScoringExecutor workers, AdmissionControl admission) {
+        this(config.getScoringPort(), workers, config.getScoringIoThreads(), scorer, Metrics.getRegistry(), schemas,
+                new KryoBufferConfig(config.isScoringDirectBuffers(), config.getScoringBufferSize(), config.getScoringMaxFrameSize()), admission);
+    }
+
+    /**
+     * Creates a new server for the given scorer.
+     *
+     * @param port          the port to listen on ({@code 0} binds to any free port)
+     * @param workerThreads the number of threads running the scorer
+     * @param ioThreads     the number of threads reading and writing from the client connections
+     * @param scorer        the scorer to score the requests with
+     */
+    public KryoScoringServer(int port, int workerThreads, int ioThreads, Scorer scorer) {
+        this(port, workerThreads, ioThreads, scorer, Metrics.getRegistry());
+    }
+
+    /**
+     * Creates a new server for the given scorer.
+     *
+     * @param port          the port to listen on ({@code 0} binds to any free port)
+     * @param workerThreads the number of threads running the scorer
+     * @param ioThreads     the number of threads reading and writing from the client connections
+     * @param scorer        the scorer to score the requests with
+     * @param metrics       the registry to report the requests to
+     */
+    public KryoScoringServer(int port, int workerThreads, int ioThreads, Scorer scorer, MetricsRegistry metrics) {
+        this(port, workerThreads, ioThreads, scorer, metrics, null);
+    }
+
+    /**
+     * Creates a new server for the given scorer that publishes the schemas of the models.
+     *
+     * @param port          the port to listen on ({@code 0} binds to any free port)
+     * @param workerThreads the number of threads running the scorer
+     * @param ioThreads     the number of threads reading and writing from the client connections
+     * @param scorer        the scorer to score the requests with
+     * @param metrics       the registry to report the requests to
+     * @param schemas       the schemas of the models, {@code null} if not available
+     */
+    public KryoScoringServer(int port, int workerThreads, int ioThreads, Scorer scorer, MetricsRegistry metrics, ModelSchemaCache schemas) {
+        this(port, workerThreads, ioThreads, scorer, metrics, schemas, KryoBufferConfig.DEFAULT);
+    }
+
+    /**
+     * Creates a new server for the given scorer that publishes the schemas of the models, with the given buffer
+     * settings.
+     *
+     * @param port          the port to listen on ({@code 0} binds to any free port)
+     * @param workerThreads the number of threads running the scorer
+     * @param ioThreads     the number of threads reading and writing from the client connections
+     * @param scorer        the scorer to score the requests with
+     * @param metrics       the registry to report the requests to
+     * @param schemas       the schemas of the models, {@code null} if not available
+     * @param buffers       the buffer settings
+     */
+    public KryoScoringServer(int port, int workerThreads, int ioThreads, Scorer scorer, MetricsRegistry metrics, ModelSchemaCache schemas, KryoBufferConfig buffers) {
+        this(port, createWorkers(workerThreads), true, ioThreads, scorer, metrics, schemas, buffers, AdmissionControl.UNLIMITED);
+    }
+
+    /**
+     * Creates a new server for the given scorer that publishes the schemas of the models and scores the requests in
+     * a shared executor, with the given buffer settings.
+     * <p/>
+     * The executor is not shut down when the server is closed.
+     *
+     * @param port      the port to listen on ({@code 0} binds to any free port)
+     * @param workers   the executor that runs the scorer
+     * @param ioThreads the number of threads reading and writing from the client connections
+     * @param scorer    the scorer to score the requests with
+     * @param metrics   the registry to report the requests to
+     * @param schemas   the schemas of the models, {@code null} if not available
+     * @param buffers   the buffer settings
+     */
+    public KryoScoringServer(int port, ScoringExecutor workers, int ioThreads, Scorer scorer, MetricsRegistry metrics, ModelSchemaCache schemas, KryoBufferConfig buffers) {
+        this(port, workers, ioThreads, scorer, metrics, schemas, buffers, AdmissionControl.UNLIMITED);
+    }
+
+    /**
+     * Creates a new server for the given scorer that publishes the schemas of the models and scores the requests
+     * admitted by the given admission control in a shared executor, with the given buffer settings.
+     * <p/>
+     * The executor is not shut down when the server is closed.
+     *
+     * @param port      the port to listen on ({@code 0} binds to any free port)
+     * @param workers   the executor that runs the scorer
+     * @param ioThreads the number of threads reading and writing from the client connections
+     * @param scorer    the scorer to score the requests with
+     * @param metrics   the registry to report the requests to
+     * @param schemas   the schemas of the models, {@code null} if not available
+     * @param buffers   the buffer settings
+     * @param admission the admission control of the scoring requests
+     */
+    public KryoScoringServer(int port, ScoringExecutor workers, int ioThreads, Scorer scorer, MetricsRegistry metrics, ModelSchemaCache schemas, KryoBufferConfig buffers, AdmissionControl admission) {
+        this(port, workers, false, ioThreads, scorer, metrics, schemas, buffers, admission);
+    }
+
+    private KryoScoringServer(int port, ScoringExecutor workers, boolean ownWorkers, int ioThreads, Scorer scorer, MetricsRegistry metrics, ModelSchemaCache schemas, KryoBufferConfig buffers, AdmissionControl admission) {
+        checkArgument(ioThreads > 0, "The number of I/O threads must be positive");
+
+        this.port = port;
+        this.handler = new KryoRequestHandler(checkNotNull(scorer, "Scorer cannot be null"), checkNotNull(metrics, "Metrics registry cannot be null"), schemas,
+                checkNotNull(admission, "Admission control cannot be null"));
+        this.workers = checkNotNull(workers, "Workers cannot be null");
+        this.ownWorkers = ownWorkers;
+        this.ioLoops = new IoLoop[ioThreads];
+        this.buffers = checkNotNull(buffers, "Buffer settings cannot be null");
+    }
+
+    /**
+     * Creates the worker pool owned by a server, which rejects the requests as overloaded once its queue is full.
+     *
+     * @param workerThreads the number of threads running the scorer
+     * @return the worker pool
+     */
+    private static ScoringExecutor createWorkers(int workerThreads) {
+        checkArgument(workerThreads > 0, "The number of worker threads must be positive");
+        return new ScoringExecutor("fos-kryo-worker", workerThreads, workerThreads * QUEUED_REQUESTS_PER_WORKER,
+                ScoringExecutor.DEFAULT_REJECTION_POLICY, ScoringExecutor.Affinity.NONE);
+    }
+
+    /**
+     * Creates the worker pool owned by a server with the {@link FosConfig#getThreadPoolSize() threads}, queue size,
+     * rejection policy and affinity of the FOS configuration.
+     *
+     * @param config the FOS configuration
+     * @return the worker pool
+     */
+    private static ScoringExecutor createWorkers(FosConfig config) {
+        return new ScoringExecutor("fos-kryo-worker", config.getThreadPoolSize(), config.getScoringQueueSize(),
+                config.getScoringRejectionPolicy(), config.getScoringAffinity());
+    }
+
+    /**
+     * Binds the server socket and starts the acceptor and I/O threads.
+     *
+     * @throws IOException when binding the server socket was not possible
+     */
+    public synchronized void start() throws IOException {
+        checkArgument(!running, "Server already started");
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(new InetSocketAddress(port));
+        running = true;
+
+        for (int i = 0; i < ioLoops.length; i++) {
+            ioLoops[i] = new IoLoop(i);
+        }
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "fos-kryo-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        logger.info("Kryo scoring server listening on port {}", getPort());
+    }
+
+    /**
+     * Gets the port the server is bound to.
+     *
+     * @return the local port of the server socket
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections, closes every client connection and shuts down the worker pool if owned by the server.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        IOUtils.closeQuietly(serverChannel);
+        for (IoLoop loop : ioLoops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+        if (ownWorkers) {
+            workers.close();
+        }
+    }
+
+    /**
+     * Accepts new connections and distributes them among the I/O threads.
+     */
+    private void accept() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                // Disable naggle Algorithm to decrease latency
+                channel.socket().setTcpNoDelay(true);
+                ioLoops[next++ % ioLoops.length].register(channel);
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Error accepting scoring connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Worker local state to fulfill requests and encode their responses.
+     */
+    private class Encoder {
+        final Kryo kryo = KryoFactory.create();
+        final Output output = buffers.isDirect()
+                ? new PooledByteBufferOutput(buffers.getBufferSize())
+                : new Output(buffers.getBufferSize(), -1);
+        final ScoreBuffer scores = new ScoreBuffer();
+
+        /**
+         * Fulfills the request and encodes the response as a frame that can be written to the client.
+         *
+         * @param request the request to fulfill
+         * @return a buffer holding the response frame
+         */
+        ByteBuffer process(KryoRequestHandler.Request request) {
+            handler.process(request, kryo, output, scores);
+            return frame();
+        }
+
+        /**
+         * Answers a request that the workers did not accept with an error frame that can be written to the client.
+         *
+         * @param request the rejected request
+         * @param message the reason of the rejection
+         * @return a buffer holding the response frame
+         */
+        ByteBuffer reject(KryoRequestHandler.Request request, String message) {
+            handler.reject(request, message, output);
+            return frame();
+        }
+
+        /**
+         * Admits a request, answering it right away if it is over the limits of the admission control.
+         *
+         * @param request    the decoded request
+         * @param connection the connection the request arrived on
+         * @return {@code null} if the request was admitted, otherwise a buffer holding the response frame
+         */
+        ByteBuffer admit(KryoRequestHandler.Request request, Object connection) {
+            return handler.admit(request, connection, output) ? null : frame();
+        }
+
+        /**
+         * Takes the frame encoded in the output.
+         *
+         * @return a buffer holding the frame
+         */
+        private ByteBuffer frame() {
+            if (output instanceof ByteBufferOutput) {
+                // hand the buffer over to the I/O thread, which releases it once written
+                ByteBufferOutput direct = (ByteBufferOutput) output;
+                ByteBuffer frame = direct.getByteBuffer();
+                frame.limit(direct.position());
+                frame.position(0);
+                direct.setBuffer(buffers.allocate(buffers.getBufferSize()), -1);
+                return frame;
+            }
+            return ByteBuffer.wrap(Arrays.copyOf(output.getBuffer(), output.position()));
+        }
+    }
+
+    /**
+     * An I/O thread owning a selector and the connections registered in it.
+     */
+    private class IoLoop implements Runnable {
+        final Selector selector;
+        /**
+         * Channels accepted but not yet registered in the selector.
+         */
+        final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        /**
+         * Connections with responses queued by the workers.
+         */
+        final Queue<Connection> writable = new ConcurrentLinkedQueue<>();
+        /**
+         * Kryo state to decode requests, only used by this I/O thread.
+         */
+        final Kryo kryo = KryoFactory.create();
+        final Input input = buffers.isDirect() ? new ByteBufferInput() : new Input();
+
+        IoLoop(int id) throws IOException {
+            this.selector = Selector.open();
+            Thread thread = new Thread(this, "fos-kryo-io-" + id);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Hands a newly accepted channel to this I/O thread.
+         *
+         * @param channel the accepted channel
+         */
+        void register(SocketChannel channel) {
+            accepted.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Asks this I/O thread to write the responses queued in the given connection.
+         *
+         * @param connection the connection with queued responses
+         */
+        void flushLater(Connection connection) {
+            writable.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    registerAccepted();
+                    flushWritable();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                } catch (IOException e) {
+                    logger.error("Error in Kryo scoring I/O loop", e);
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            IOUtils.closeQuietly(selector);
+        }
+
+        private void registerAccepted() {
+            SocketChannel channel;
+            while ((channel = accepted.poll()) != null) {
+                try {
+                    Connection connection = new Connection(this, channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException e) {
+                    logger.error("Unable to register scoring connection", e);
+                    IOUtils.closeQuietly(channel);
+                }
+            }
+        }
+
+        private void flushWritable() {
+            Connection connection;
+            while ((connection = writable.poll()) != null) {
+                try {
+                    connection.flush();
+                } catch (IOException e) {
+                    logger.debug("Unable to write scoring response", e);
+                    connection.close();
+                }
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isValid() && key.isReadable()) {
+                    connection.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            } catch (Exception e) {
+                logger.error("Error reading scoring request, closing connection", e);
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * A client connection.
+     * <p/>
+     * Reads and writes happen in the owning I/O thread, workers only append responses to the outbound queue.
+     */
+    private class Connection {
+        final IoLoop loop;
+        final SocketChannel channel;
+        final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        /**
+         * The model ids received on this connection.
+         */
+        final UUIDRegistry uuids = new UUIDRegistry();
+        /**
+         * The address of the client, which identifies the connection to the admission control.
+         */
+        final Object address;
+        SelectionKey key;
+        ByteBuffer inbound = buffers.allocate(buffers.getBufferSize());
+
+        Connection(IoLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+            this.address = channel.socket().getRemoteSocketAddress();
+        }
+
+        /**
+         * Reads the available bytes and dispatches every complete request to the workers.
+         *
+         * @throws IOException when reading from the channel was not possible or the stream is corrupted
+         */
+        void read() throws IOException {
+            if (channel.read(inbound) < 0) {
+                close();
+                return;
+            }
+
+            inbound.flip();
+            while (inbound.remaining() >= KryoFrames.HEADER_SIZE) {
+                int length = KryoFrames.checkLength(inbound.getInt(inbound.position()), buffers.getMaxFrameSize());
+                int frameSize = KryoFrames.HEADER_SIZE + length;
+
+                if (inbound.remaining() < frameSize) {
+                    if (inbound.capacity() < frameSize) {
+                        // the frame does not fit, move what we have to a buffer that does
+                        ByteBuffer larger = buffers.allocate(frameSize);
+                        larger.put(inbound);
+                        buffers.release(inbound);
+                        inbound = larger;
+                        return;
+                    }
+                    break;
+                }
+
+                int start = inbound.position() + KryoFrames.HEADER_SIZE;
+                if (loop.input instanceof ByteBufferInput) {
+                    // decoded straight from the direct buffer the socket read into
+                    ByteBuffer frame = inbound.duplicate();
+                    frame.limit(start + length);
+                    frame.position(start);
+                    ((ByteBufferInput) loop.input).setBuffer(frame.slice());
+                } else {
+                    loop.input.setBuffer(inbound.array(), inbound.arrayOffset() + start, length);
+                }
+                // the Kryo instance is shared by the connections of the I/O thread
+                uuids.bindReader(loop.kryo);
+                final KryoRequestHandler.Request request = handler.decode(loop.kryo, loop.input);
+                inbound.position(inbound.position() + frameSize);
+
+                ByteBuffer rejected = encoders.get().admit(request, address);
+                if (rejected != null) {
+                    outbound.add(rejected);
+                    loop.flushLater(this);
+                    continue;
+                }
+
+                try {
+                    workers.execute(request.modelId(), new Runnable() {
+                        @Override
+                        public void run() {
+                            score(request);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    outbound.add(encoders.get().reject(request, "Scoring request rejected, the server is overloaded"));
+                    loop.flushLater(this);
+                }
+            }
+
+            int pending = inbound.remaining() < KryoFrames.HEADER_SIZE
+                    ? inbound.remaining() : KryoFrames.HEADER_SIZE + inbound.getInt(inbound.position());
+            if (inbound.capacity() > buffers.getBufferSize() && pending <= buffers.getBufferSize()) {
+                // the large frame was decoded, do not hold its buffer for the life of the connection
+                ByteBuffer smaller = buffers.allocate(buffers.getBufferSize());
+                smaller.put(inbound);
+                buffers.release(inbound);
+                inbound = smaller;
+            } else {
+                inbound.compact();
+            }
+        }
+
+        /**
+         * Fulfills the request and queues the response to be written by the I/O thread.
+         *
+         * @param request the request to fulfill
+         */
+        void score(KryoRequestHandler.Request request) {
+            outbound.add(encoders.get().process(request));
+            loop.flushLater(this);
+        }
+
+        /**
+         * Writes as many queued responses as the socket accepts, asking to be notified when
+         * the socket is writable again if some are left.
+         *
+         * @throws IOException when writing to the channel was not possible
+         */
+        void flush() throws IOException {
+            if (!key.isValid()) {
+                return;
+            }
+
+            ByteBuffer buffer;
+            while ((buffer = outbound.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                buffers.release(outbound.poll());
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        /**
+         * Closes the connection, returning its buffers to the pool.
+         */
+        void close() {
+            IOUtils.closeQuietly(channel);
+            if (inbound != null) {
+                buffers.release(inbound);
+                inbound = null;
+            }
+            ByteBuffer buffer;
+            while ((buffer = outbound.poll()) != null) {
+                buffers.release(buffer);
+            }
+        }
+    }
+}
@@ -80,6 +80,9 @@ public interface Manager {
      * Reconfigures the model identified by <code>modelId</code> with the given configuration.
      * <p/>
      * Reloads the model now using the classifier <code>model</code> (does not delete previous classifier file).
+     * <p/>
+     * Scoring must not pause during the reload: requests in flight finish with the previous classifier and later
+     * requests use the new one, which implementations can achieve with a {@link ModelRegistry}.
      *
      * @param modelId The id of the model to update.
      * @param config  The new configuration of the model.
@@ -92,6 +95,8 @@ public interface Manager {
      * Reconfigures the model identified by <code>modelId</code> with the given configuration.
      * <p/>
      * Reloads the model now using the classifier in the local file <code>localFileName</code> (does not delete previous classifier file).
+     * <p/>
+     * Scoring must not pause during the reload, see {@link #reconfigureModel(UUID, ModelConfig, Model)}.
      *
      * @param modelId    the id of the model to update
      * @param config     the new configuration of the model
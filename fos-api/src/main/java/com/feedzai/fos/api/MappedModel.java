@@ -0,0 +1,152 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link Model} whose representation (binary or PMML) is held in a memory mapped file instead of the heap.
+ * <p/>
+ * Large models (hundreds of MB) are never materialized as a single array: they are serialized in chunks of
+ * {@link #CHUNK_SIZE} bytes straight from the mapped file, and deserialized by spooling the chunks to a temporary
+ * file that is then mapped, so neither the client nor the server hold a copy of the model in the heap.
+ *
+ * @since 1.0.11
+ */
+public class MappedModel implements Model {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The size of the chunks the model is serialized in.
+     */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The format in which the model is represented (binary, PMML, etc).
+     */
+    private final ModelDescriptor.Format format;
+
+    /**
+     * The mapped representation of the model, serialized in chunks.
+     */
+    private transient ByteBuffer content;
+
+    /**
+     * Creates a new {@link MappedModel} by mapping the file of the given descriptor.
+     *
+     * @param descriptor The {@link ModelDescriptor} of the file with the model.
+     * @throws IOException If the file could not be mapped.
+     */
+    public MappedModel(ModelDescriptor descriptor) throws IOException {
+        this(descriptor.getFormat(), descriptor.map());
+    }
+
+    /**
+     * Creates a new {@link MappedModel} with the given representation.
+     *
+     * @param format  The format in which the model is represented (binary, PMML, etc).
+     * @param content The representation of the model, from its position to its limit.
+     */
+    public MappedModel(ModelDescriptor.Format format, ByteBuffer content) {
+        this.format = checkNotNull(format, "The format of the model must be defined");
+        this.content = checkNotNull(content, "The content of the model must be defined").slice();
+    }
+
+    /**
+     * Retrieves the format in which the model is represented (binary, PMML, etc).
+     *
+     * @return The format in which the model is represented.
+     */
+    public ModelDescriptor.Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Retrieves the representation of the model.
+     *
+     * @return A read only view of the representation of the model, with its own position and limit.
+     */
+    public ByteBuffer getContent() {
+        return content.asReadOnlyBuffer();
+    }
+
+    /**
+     * Retrieves the size of the representation of the model.
+     *
+     * @return The size in bytes.
+     */
+    public int getSize() {
+        return content.remaining();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        ByteBuffer source = content.duplicate();
+        byte[] chunk = new byte[Math.min(CHUNK_SIZE, source.remaining())];
+        out.writeInt(source.remaining());
+        while (source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid model size " + size);
+        }
+
+        File file = File.createTempFile("fos-model", format == ModelDescriptor.Format.PMML ? ".xml" : ".model");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            byte[] chunk = new byte[Math.min(CHUNK_SIZE, size)];
+            for (int remaining = size; remaining > 0; ) {
+                int length = Math.min(chunk.length, remaining);
+                in.readFully(chunk, 0, length);
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                remaining -= length;
+            }
+            content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            // the mapping outlives the file where the platform allows it
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
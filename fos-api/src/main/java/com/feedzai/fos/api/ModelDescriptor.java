@@ -22,7 +22,12 @@
  */
 package com.feedzai.fos.api;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.List;
 
@@ -77,6 +82,25 @@ public class ModelDescriptor implements Serializable {
         return format;
     }
 
+    /**
+     * Maps the file with the model into memory, read only.
+     * <p/>
+     * The contents are paged in by the operating system as they are read, instead of being copied into the heap,
+     * and the mapping remains valid after the file is deleted.
+     *
+     * @return The contents of the file with the model.
+     * @throws IOException If the file could not be mapped or is larger than 2 GB.
+     * @since 1.0.11
+     */
+    public MappedByteBuffer map() throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(modelFilePath).toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Model file " + modelFilePath + " is too large to be mapped (" + channel.size() + " bytes)");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
 
     /**
      * Possible model representation formats.
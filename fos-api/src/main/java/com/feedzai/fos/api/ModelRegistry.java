@@ -0,0 +1,437 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.common.validation.NotNull;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Versioned registry of the loaded models of a {@link Manager} implementation, that swaps models without pausing
+ * scoring.
+ * <p/>
+ * {@link #deploy(UUID, Callable) Deploying} a model loads (and warms) the new version in the background while the
+ * current version keeps scoring, and then publishes it with a single atomic swap. Scoring threads
+ * {@link #acquire(UUID) acquire} the current version of a model for the duration of a request, so a version that
+ * was replaced or removed is only {@link Retirer retired} (e.g. closed) once the requests in flight on it finish.
+ * <p/>
+ * Removing a model leaves a tombstone with a version number of its own, so that the deploys that started before the
+ * removal cannot bring the model back when their load finishes.
+ * <p/>
+ * Acquiring and releasing a version is lock free. This class is thread safe.
+ *
+ * @param <T> the type of the loaded models, specific of each implementation
+ * @since 1.0.11
+ */
+public class ModelRegistry<T> {
+    private final static Logger logger = LoggerFactory.getLogger(ModelRegistry.class);
+
+    /**
+     * The current version of each model, or the tombstone of the removed models.
+     */
+    private final ConcurrentMap<UUID, Version<T>> versions = new ConcurrentHashMap<>();
+
+    /**
+     * The source of the version numbers, increasing in the order deploys start.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The executor that loads the models.
+     */
+    private final Executor loader;
+
+    /**
+     * The executor owned by this registry, {@code null} if the loader was provided.
+     */
+    private final ExecutorService ownLoader;
+
+    /**
+     * Receives the versions once drained.
+     */
+    private final Retirer<? super T> retirer;
+
+    /**
+     * Creates a new registry that loads models in a thread of its own.
+     *
+     * @param retirer receives the versions that were replaced or removed once drained
+     */
+    public ModelRegistry(Retirer<? super T> retirer) {
+        this.ownLoader = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("fos-model-loader-%d")
+                .setDaemon(true)
+                .build());
+        this.loader = ownLoader;
+        this.retirer = checkNotNull(retirer, "The retirer must be defined");
+    }
+
+    /**
+     * Creates a new registry.
+     *
+     * @param loader  the executor where models are loaded
+     * @param retirer receives the versions that were replaced or removed once drained
+     */
+    public ModelRegistry(Executor loader, Retirer<? super T> retirer) {
+        this.ownLoader = null;
+        this.loader = checkNotNull(loader, "The loader must be defined");
+        this.retirer = checkNotNull(retirer, "The retirer must be defined");
+    }
+
+    /**
+     * Loads a new version of a model in the background and publishes it once loaded.
+     * <p/>
+     * The current version (if any) keeps scoring until the new one is published, and is retired once the requests
+     * in flight on it finish. If the load fails the current version is kept. When deploys of the same model overlap
+     * the version that started last wins, regardless of the order the loads finish. A deploy that started before the
+     * model was {@link #remove(UUID) removed} is not published.
+     *
+     * @param modelId the id of the model
+     * @param loader  loads (and warms) the new version of the model
+     * @return a future completed with the published version, or completed exceptionally with a {@link FOSException}
+     * if the load failed, a later deploy was published first or the model was removed
+     */
+    @NotNull
+    public CompletableFuture<Version<T>> deploy(final UUID modelId, final Callable<? extends T> loader) {
+        checkNotNull(modelId, "The model id must be defined");
+        checkNotNull(loader, "The loader must be defined");
+
+        final long version = sequence.incrementAndGet();
+        final CompletableFuture<Version<T>> future = new CompletableFuture<>();
+        this.loader.execute(() -> {
+            try {
+                future.complete(publish(new Version<>(this, modelId, version, loader.call())));
+            } catch (FOSException e) {
+                future.completeExceptionally(e);
+            } catch (Exception e) {
+                future.completeExceptionally(new FOSException("Could not load version " + version + " of model " + modelId, e));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Publishes an already loaded version of a model, replacing the current version.
+     *
+     * @param modelId the id of the model
+     * @param model   the loaded model
+     * @return the published version
+     */
+    @NotNull
+    public Version<T> publish(UUID modelId, T model) {
+        checkNotNull(modelId, "The model id must be defined");
+        try {
+            return publish(new Version<>(this, modelId, sequence.incrementAndGet(), model));
+        } catch (FOSException e) {
+            // a newer version cannot exist
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Swaps the current version of a model for a newer one.
+     *
+     * @param version the new version
+     * @return the new version
+     * @throws FOSException if a later version was published first or the model was removed after the new version
+     *                      started loading, in which case the new version is retired
+     */
+    private Version<T> publish(Version<T> version) throws FOSException {
+        while (true) {
+            Version<T> previous = versions.get(version.modelId);
+            if (previous != null && previous.version > version.version) {
+                version.release();
+                if (previous.removed) {
+                    throw new FOSException(String.format("Model %s was removed while version %d was loading", version.modelId, version.version));
+                }
+                throw new FOSException(String.format("Version %d of model %s was superseded by version %d", version.version, version.modelId, previous.version));
+            }
+            if (previous == null ? versions.putIfAbsent(version.modelId, version) == null : versions.replace(version.modelId, previous, version)) {
+                // drops the reference of the registry, the previous version is retired once drained
+                if (previous != null && !previous.removed) {
+                    previous.release();
+                }
+                return version;
+            }
+        }
+    }
+
+    /**
+     * Removes a model. Its current version is retired once the requests in flight on it finish.
+     *
+     * @param modelId the id of the model
+     * @return {@code true} if the model was registered
+     */
+    public boolean remove(UUID modelId) {
+        Version<T> tombstone = Version.tombstone(this, modelId, sequence.incrementAndGet());
+        while (true) {
+            Version<T> current = versions.get(modelId);
+            if (current == null ? versions.putIfAbsent(modelId, tombstone) == null : versions.replace(modelId, current, tombstone)) {
+                if (current == null || current.removed) {
+                    return false;
+                }
+                current.release();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Acquires the current version of a model, which is not retired until {@link Version#release() released}.
+     * <p/>
+     * Every acquired version must be released exactly once, see {@link #apply(UUID, ModelFunction)}.
+     *
+     * @param modelId the id of the model
+     * @return the current version of the model
+     * @throws FOSException if the model is not registered
+     */
+    @NotNull
+    public Version<T> acquire(UUID modelId) throws FOSException {
+        while (true) {
+            Version<T> current = versions.get(modelId);
+            if (current == null || current.removed) {
+                throw new FOSException("Unknown model " + modelId);
+            }
+            if (current.retain()) {
+                return current;
+            }
+            // swapped and drained since it was read, the next read sees the new version
+        }
+    }
+
+    /**
+     * Applies a function to the current version of a model, holding it for the duration of the call.
+     *
+     * @param modelId  the id of the model
+     * @param function the function to apply, e.g. scoring an instance
+     * @param <R>      the type of the result
+     * @return the result of the function
+     * @throws FOSException if the model is not registered or the function failed
+     */
+    public <R> R apply(UUID modelId, ModelFunction<? super T, R> function) throws FOSException {
+        Version<T> version = acquire(modelId);
+        try {
+            return function.apply(version.model);
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * Gets the ids of the registered models.
+     *
+     * @return a live view of the ids of the registered models
+     */
+    @NotNull
+    public Set<UUID> getModelIds() {
+        return Maps.filterValues(versions, version -> !version.removed).keySet();
+    }
+
+    /**
+     * Removes every model and stops the loader owned by this registry, if any.
+     * <p/>
+     * The versions in use are retired once the requests in flight on them finish.
+     */
+    public void close() {
+        for (UUID modelId : getModelIds()) {
+            remove(modelId);
+        }
+        if (ownLoader != null) {
+            ownLoader.shutdownNow();
+        }
+    }
+
+    /**
+     * Retires a drained version.
+     *
+     * @param version the version
+     */
+    private void retire(Version<T> version) {
+        try {
+            retirer.retire(version.modelId, version.model);
+        } catch (Exception e) {
+            logger.error("Error retiring version {} of model {}", version.version, version.modelId, e);
+        }
+    }
+
+    /**
+     * Receives the versions of the models once they are no longer used, to free their resources.
+     *
+     * @param <T> the type of the loaded models
+     */
+    @FunctionalInterface
+    public interface Retirer<T> {
+        /**
+         * Retires a version of a model that was replaced or removed and is no longer used by any request.
+         *
+         * @param modelId the id of the model
+         * @param model   the retired version of the model
+         * @throws Exception when freeing the resources of the model failed, the error is logged
+         */
+        void retire(UUID modelId, T model) throws Exception;
+    }
+
+    /**
+     * A function applied to a version of a model.
+     *
+     * @param <T> the type of the loaded models
+     * @param <R> the type of the result
+     */
+    @FunctionalInterface
+    public interface ModelFunction<T, R> {
+        /**
+         * Applies the function.
+         *
+         * @param model the current version of the model
+         * @return the result
+         * @throws FOSException when the function failed
+         */
+        R apply(T model) throws FOSException;
+    }
+
+    /**
+     * A version of a model, reference counted by the requests in flight on it.
+     *
+     * @param <T> the type of the loaded models
+     */
+    public static final class Version<T> {
+        private final ModelRegistry<T> registry;
+        private final UUID modelId;
+        private final long version;
+        private final T model;
+        /**
+         * If this is the tombstone of a removed model, which is never acquired nor retired.
+         */
+        private final boolean removed;
+        /**
+         * The requests in flight plus one while the version is current.
+         */
+        private final AtomicInteger references;
+
+        private Version(ModelRegistry<T> registry, UUID modelId, long version, T model) {
+            this(registry, modelId, version, model, false);
+        }
+
+        private Version(ModelRegistry<T> registry, UUID modelId, long version, T model, boolean removed) {
+            this.registry = registry;
+            this.modelId = modelId;
+            this.version = version;
+            this.model = model;
+            this.removed = removed;
+            this.references = new AtomicInteger(removed ? 0 : 1);
+        }
+
+        /**
+         * Creates the tombstone of a removed model.
+         *
+         * @param registry the registry of the model
+         * @param modelId  the id of the model
+         * @param version  the version number of the removal
+         * @param <T>      the type of the loaded models
+         * @return the tombstone
+         */
+        private static <T> Version<T> tombstone(ModelRegistry<T> registry, UUID modelId, long version) {
+            return new Version<>(registry, modelId, version, null, true);
+        }
+
+        /**
+         * Gets the loaded model.
+         *
+         * @return the loaded model
+         */
+        public T get() {
+            return model;
+        }
+
+        /**
+         * Gets the id of the model.
+         *
+         * @return the id of the model
+         */
+        public UUID getModelId() {
+            return modelId;
+        }
+
+        /**
+         * Gets the version number, increasing in the order the deploys of the registry started.
+         *
+         * @return the version number
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Checks if this version was retired.
+         *
+         * @return {@code true} if this version was replaced or removed and then drained
+         */
+        public boolean isRetired() {
+            return references.get() == 0;
+        }
+
+        /**
+         * Acquires a reference to this version unless it was already retired.
+         *
+         * @return {@code true} if acquired
+         */
+        private boolean retain() {
+            while (true) {
+                int count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Releases a reference acquired with {@link ModelRegistry#acquire(UUID)}.
+         */
+        public void release() {
+            int count = references.decrementAndGet();
+            checkState(count >= 0, "Version %s of model %s released more times than acquired", version, modelId);
+            if (count == 0) {
+                registry.retire(this);
+            }
+        }
+    }
+}
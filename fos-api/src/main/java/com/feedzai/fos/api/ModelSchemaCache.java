@@ -0,0 +1,99 @@
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.common.kryo.ModelSchema;
+import com.feedzai.fos.common.validation.NotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Server side cache of the {@link ModelSchema schemas} of the models of a {@link Manager}, published to Kryo clients
+ * in answer to {@link com.feedzai.fos.common.kryo.KryoFrames#SCHEMA_REQUEST schema requests} and used to reject
+ * columnar instances encoded with an outdated schema.
+ * <p/>
+ * Schemas are loaded from {@link Manager#listModels()} on first use and must be {@link #invalidate(UUID) invalidated}
+ * when a model is reconfigured or removed, as {@code RemoteManager} does.
+ * <p/>
+ * Fields of {@link CategoricalAttribute categorical attributes} are published with their values, every other field
+ * is published as numeric.
+ * <p/>
+ * This class is thread safe.
+ *
+ * @since 1.0.11
+ */
+public class ModelSchemaCache {
+    /**
+     * The manager of the models.
+     */
+    private final Manager manager;
+
+    /**
+     * The schemas loaded so far, by model id.
+     */
+    private final Map<UUID, ModelSchema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new cache for the models of the given manager.
+     *
+     * @param manager the manager of the models
+     */
+    public ModelSchemaCache(Manager manager) {
+        this.manager = checkNotNull(manager, "Manager cannot be null");
+    }
+
+    /**
+     * Gets the schema of a model.
+     *
+     * @param modelId the id of the model
+     * @return the schema of the model
+     * @throws FOSException if the model does not exist or its configuration could not be read
+     */
+    @NotNull
+    public ModelSchema get(UUID modelId) throws FOSException {
+        ModelSchema schema = schemas.get(modelId);
+        if (schema == null) {
+            ModelConfig config = manager.listModels().get(modelId);
+            if (config == null) {
+                throw new FOSException("Unknown model " + modelId);
+            }
+            schema = of(modelId, config.getAttributes());
+            schemas.put(modelId, schema);
+        }
+        return schema;
+    }
+
+    /**
+     * Discards the cached schema of a model, which will be loaded again on next use.
+     *
+     * @param modelId the id of the model
+     */
+    public void invalidate(UUID modelId) {
+        schemas.remove(modelId);
+    }
+
+    /**
+     * Creates the schema of a model.
+     *
+     * @param modelId    the id of the model
+     * @param attributes the attributes of the model
+     * @return the schema of the model
+     */
+    @NotNull
+    public static ModelSchema of(UUID modelId, List<Attribute> attributes) {
+        String[] names = new String[attributes.size()];
+        String[][] categories = new String[attributes.size()][];
+        for (int i = 0; i < names.length; i++) {
+            Attribute attribute = attributes.get(i);
+            names[i] = attribute.getName();
+            if (attribute instanceof CategoricalAttribute) {
+                List<String> values = ((CategoricalAttribute) attribute).getCategoricalInstances();
+                categories[i] = values.toArray(new String[values.size()]);
+            }
+        }
+        return new ModelSchema(modelId, names, categories);
+    }
+}
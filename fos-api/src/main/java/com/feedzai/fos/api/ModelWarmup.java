@@ -0,0 +1,361 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.api.config.FosConfig;
+import com.feedzai.fos.common.validation.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Warms up new models before they go live, so that their first requests do not pay for class loading and JIT
+ * compilation.
+ * <p/>
+ * Instances are scored in rounds of {@link #getRoundSize()} until the mean latency of a round is within
+ * {@link #getTolerance()} of the previous one, or {@link #getMaxInstances()} were scored. The instances are read from
+ * a CSV sample file (one instance per line, in the order of the attributes of the model) or generated from the
+ * {@link ModelConfig#getAttributes() attributes} of the model: a random category for {@link CategoricalAttribute
+ * categorical} attributes and a random number for the others.
+ * <p/>
+ * Combined with {@link ModelRegistry#deploy(java.util.UUID, Callable)} through
+ * {@link #loader(Callable, List, ScoreFunction)}, a model is only published once warm. The remote manager of the FOS
+ * server warms the models added through it before their ids are returned, scoring them with its local scorer.
+ *
+ * @since 1.0.11
+ */
+public class ModelWarmup {
+    private final static Logger logger = LoggerFactory.getLogger(ModelWarmup.class);
+
+    /**
+     * The default number of instances scored in each round.
+     */
+    public static final int DEFAULT_ROUND_SIZE = 500;
+
+    /**
+     * The default relative difference between the latencies of two rounds below which the latency is settled.
+     */
+    public static final double DEFAULT_TOLERANCE = 0.1;
+
+    /**
+     * A warm-up that never scores an instance.
+     */
+    public static final ModelWarmup DISABLED = new ModelWarmup(0, DEFAULT_ROUND_SIZE, DEFAULT_TOLERANCE, null);
+
+    private final int maxInstances;
+    private final int roundSize;
+    private final double tolerance;
+    private final File samples;
+
+    /**
+     * Creates a new warm-up.
+     *
+     * @param maxInstances the maximum number of instances to score, {@code 0} to disable the warm-up
+     * @param roundSize    the number of instances scored in each round
+     * @param tolerance    the relative difference between the mean latencies of two rounds below which the latency
+     *                     is settled
+     * @param samples      the CSV file with the sample instances, {@code null} for synthetic instances
+     */
+    public ModelWarmup(int maxInstances, int roundSize, double tolerance, File samples) {
+        checkArgument(maxInstances >= 0, "The maximum number of instances cannot be negative");
+        checkArgument(roundSize > 0, "The round size must be positive");
+        checkArgument(tolerance >= 0, "The tolerance cannot be negative");
+
+        this.maxInstances = maxInstances;
+        this.roundSize = roundSize;
+        this.tolerance = tolerance;
+        this.samples = samples;
+    }
+
+    /**
+     * Creates the warm-up set in the {@link FosConfig#WARMUP_INSTANCES} and {@link FosConfig#WARMUP_SAMPLES}
+     * parameters.
+     *
+     * @param config the FOS configuration
+     */
+    public ModelWarmup(FosConfig config) {
+        this(config.getWarmupInstances(), DEFAULT_ROUND_SIZE, DEFAULT_TOLERANCE,
+                config.getWarmupSamples() == null ? null : new File(config.getWarmupSamples()));
+    }
+
+    /**
+     * Gets if new models are warmed up.
+     *
+     * @return {@code true} if the maximum number of instances is positive
+     */
+    public boolean isEnabled() {
+        return maxInstances > 0;
+    }
+
+    /**
+     * Gets the maximum number of instances to score.
+     *
+     * @return the maximum number of instances
+     */
+    public int getMaxInstances() {
+        return maxInstances;
+    }
+
+    /**
+     * Gets the number of instances scored in each round.
+     *
+     * @return the round size
+     */
+    public int getRoundSize() {
+        return roundSize;
+    }
+
+    /**
+     * Gets the relative difference between the mean latencies of two rounds below which the latency is settled.
+     *
+     * @return the tolerance
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Wraps the loader of a model so that the model is warmed up once loaded, before it is returned.
+     *
+     * @param loader     loads the model
+     * @param attributes the attributes of the model
+     * @param function   scores an instance with the model
+     * @param <T>        the type of the loaded models
+     * @return the loader of the warm model, the loader itself if the warm-up is disabled
+     */
+    @NotNull
+    public <T> Callable<T> loader(final Callable<T> loader, final List<Attribute> attributes, final ScoreFunction<? super T> function) {
+        if (!isEnabled()) {
+            return loader;
+        }
+        return () -> {
+            T model = loader.call();
+            warmup(model, function, instances(attributes));
+            return model;
+        };
+    }
+
+    /**
+     * Gets the instances to warm up a model with: the samples if configured, synthetic instances otherwise.
+     *
+     * @param attributes the attributes of the model
+     * @return up to {@link #getRoundSize()} instances
+     * @throws FOSException if the sample file could not be read
+     */
+    @NotNull
+    public List<Object[]> instances(List<Attribute> attributes) throws FOSException {
+        if (samples != null) {
+            return readSamples(samples, roundSize);
+        }
+        return synthesize(attributes, roundSize, new Random(attributes.hashCode()));
+    }
+
+    /**
+     * Warms up a model by scoring the instances in rounds until its latency settles.
+     *
+     * @param model     the model
+     * @param function  scores an instance with the model
+     * @param instances the instances to score, reused in every round
+     * @param <T>       the type of the loaded models
+     * @return the result of the warm-up
+     * @throws FOSException if scoring an instance failed, the model should not go live
+     */
+    @NotNull
+    public <T> Result warmup(T model, ScoreFunction<? super T> function, List<Object[]> instances) throws FOSException {
+        checkArgument(!instances.isEmpty(), "There are no instances to warm up the model with");
+
+        int scored = 0;
+        int rounds = 0;
+        double previous = Double.NaN;
+        double mean = Double.NaN;
+        boolean settled = false;
+        while (scored < maxInstances && !settled) {
+            int size = Math.min(roundSize, maxInstances - scored);
+            long start = System.nanoTime();
+            for (int i = 0; i < size; i++) {
+                function.score(model, instances.get((scored + i) % instances.size()));
+            }
+            mean = (double) (System.nanoTime() - start) / size;
+            scored += size;
+            rounds++;
+
+            settled = Math.abs(mean - previous) <= tolerance * previous;
+            previous = mean;
+        }
+
+        Result result = new Result(scored, rounds, mean, settled);
+        logger.info("Model warmed up: {}", result);
+        return result;
+    }
+
+    /**
+     * Generates random instances that follow the given attributes.
+     *
+     * @param attributes the attributes of the model
+     * @param count      the number of instances
+     * @param random     the source of randomness
+     * @return the instances
+     */
+    @NotNull
+    public static List<Object[]> synthesize(List<Attribute> attributes, int count, Random random) {
+        List<Object[]> instances = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Object[] instance = new Object[attributes.size()];
+            for (int j = 0; j < instance.length; j++) {
+                Attribute attribute = attributes.get(j);
+                if (attribute instanceof CategoricalAttribute) {
+                    List<String> categories = ((CategoricalAttribute) attribute).getCategoricalInstances();
+                    instance[j] = categories.isEmpty() ? Attribute.MISSING_VALUE_STR : categories.get(random.nextInt(categories.size()));
+                } else {
+                    instance[j] = random.nextGaussian() * 100;
+                }
+            }
+            instances.add(instance);
+        }
+        return instances;
+    }
+
+    /**
+     * Reads sample instances from a CSV file, one instance per line with its values separated by commas.
+     *
+     * @param file  the CSV file
+     * @param limit the maximum number of instances to read
+     * @return the instances, with their values as strings
+     * @throws FOSException if the file could not be read or has no instances
+     */
+    @NotNull
+    public static List<Object[]> readSamples(File file, int limit) throws FOSException {
+        List<Object[]> instances = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while (instances.size() < limit && (line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    String[] values = line.split(",", -1);
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = values[i].trim();
+                    }
+                    instances.add(values);
+                }
+            }
+        } catch (IOException e) {
+            throw new FOSException("Could not read the warm-up samples from " + file, e);
+        }
+        if (instances.isEmpty()) {
+            throw new FOSException("No warm-up samples in " + file);
+        }
+        return instances;
+    }
+
+    /**
+     * Scores an instance with a model.
+     *
+     * @param <T> the type of the loaded models
+     */
+    @FunctionalInterface
+    public interface ScoreFunction<T> {
+        /**
+         * Scores an instance.
+         *
+         * @param model    the model
+         * @param instance the instance
+         * @return the scores
+         * @throws FOSException when scoring was not possible
+         */
+        double[] score(T model, Object[] instance) throws FOSException;
+    }
+
+    /**
+     * The result of a warm-up.
+     */
+    public static final class Result {
+        private final int instances;
+        private final int rounds;
+        private final double meanLatencyNanos;
+        private final boolean settled;
+
+        Result(int instances, int rounds, double meanLatencyNanos, boolean settled) {
+            this.instances = instances;
+            this.rounds = rounds;
+            this.meanLatencyNanos = meanLatencyNanos;
+            this.settled = settled;
+        }
+
+        /**
+         * Gets the number of instances scored.
+         *
+         * @return the number of instances scored
+         */
+        public int getInstances() {
+            return instances;
+        }
+
+        /**
+         * Gets the number of rounds scored.
+         *
+         * @return the number of rounds
+         */
+        public int getRounds() {
+            return rounds;
+        }
+
+        /**
+         * Gets the mean latency of the last round.
+         *
+         * @return the mean latency in nanoseconds
+         */
+        public double getMeanLatencyNanos() {
+            return meanLatencyNanos;
+        }
+
+        /**
+         * Gets if the latency settled before the maximum number of instances was scored.
+         *
+         * @return {@code true} if the latency settled
+         */
+        public boolean isSettled() {
+            return settled;
+        }
+
+        @Override
+        public String toString() {
+            return toStringHelper(this)
+                    .add("instances", instances)
+                    .add("rounds", rounds)
+                    .add("meanLatencyNanos", meanLatencyNanos)
+                    .add("settled", settled)
+                    .toString();
+        }
+    }
+}
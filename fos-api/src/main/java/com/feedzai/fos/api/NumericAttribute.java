@@ -38,15 +38,50 @@ public final class NumericAttribute extends Attribute {
 
     @Override
     protected double parse(Object original) throws FOSException {
-        if (original.getClass() == Double.class) {
-            return (Double) original;
+        double value = toDouble(original);
+        if (Double.isNaN(value) && !isNaN(original)) {
+            throw new FOSException(String.format("Failed to parse %s", original));
         }
+        return value;
+    }
 
-        try {
-            return Double.parseDouble(original.toString());
-        } catch (Exception e) {
-            throw new FOSException(e.getMessage(), e);
+    @Override
+    protected double tryParse(Object original) {
+        double value = toDouble(original);
+        if (Double.isNaN(value) && !isNaN(original)) {
+            return unparsable(original);
         }
+        return value;
+    }
+
+    /**
+     * Converts a value to a double without throwing exceptions.
+     *
+     * @param original the value
+     * @return the number, {@link Double#NaN} if the value is not a number
+     */
+    private static double toDouble(Object original) {
+        Class<?> type = original.getClass();
+        if (type == Double.class) {
+            return (Double) original;
+        }
+        if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+            return ((Number) original).longValue();
+        }
+        if (original instanceof CharSequence) {
+            return DecimalParser.parse((CharSequence) original);
+        }
+        return DecimalParser.parse(original.toString());
+    }
+
+    /**
+     * Tells whether a value that was converted to {@link Double#NaN} actually represents NaN.
+     *
+     * @param original the value
+     * @return {@code true} if the value is NaN, {@code false} if it could not be parsed
+     */
+    private static boolean isNaN(Object original) {
+        return original instanceof Number || DecimalParser.isNaN(original.toString());
     }
 
     @Override
@@ -0,0 +1,354 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.common.kryo.ColumnarInstance;
+import com.feedzai.fos.common.kryo.ScoreBuffer;
+import com.feedzai.fos.common.validation.NotNull;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link Scorer} that scores an instance against several models in parallel.
+ * <p/>
+ * {@link #score(java.util.List, Object[])} scores each model in a task of its own, so the latency of a request follows the
+ * slowest model instead of the sum of all of them. The scores are returned in the order of the models. Requests with fewer models than the threshold are scored sequentially by the
+ * underlying scorer, since the hand-off costs more than it saves.
+ * <p/>
+ * {@link #score(java.util.UUID, java.util.List)} splits batches larger than the chunk size into chunks of consecutive
+ * instances that are scored in parallel by the batch method of the underlying scorer. The fork-join pool lets idle
+ * threads steal the chunks of busy ones, and the scores are returned in the order of the instances.
+ * <p/>
+ * Parallel requests can be given a deadline, after which they fail with a {@link FOSException} instead of waiting for
+ * the models that are still scoring. Without a deadline the calling thread scores the first model or chunk itself,
+ * with a deadline it only waits for the tasks, so that it is never held past the deadline. The other methods are
+ * delegated to the underlying scorer.
+ *
+ * @since 1.0.11
+ */
+public class ParallelScorer implements Scorer {
+    /**
+     * The default minimum number of models of a request to score them in parallel.
+     */
+    public static final int DEFAULT_THRESHOLD = 4;
+
+    /**
+     * The default number of instances of a batch scored by each task.
+     */
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 256;
+
+    /**
+     * The underlying scorer.
+     */
+    private final Scorer scorer;
+
+    /**
+     * The executor that scores the models.
+     */
+    private final Executor executor;
+
+    /**
+     * The pool owned by this scorer, {@code null} if the executor was provided.
+     */
+    private final ForkJoinPool ownPool;
+
+    /**
+     * The minimum number of models of a request to score them in parallel.
+     */
+    private final int threshold;
+
+    /**
+     * The number of instances of a batch scored by each task, {@code 0} to score batches sequentially.
+     */
+    private final int batchChunkSize;
+
+    /**
+     * The default deadline of the requests in nanoseconds, {@code 0} for none.
+     */
+    private final long deadlineNanos;
+
+    /**
+     * Creates a new scorer that scores the models in a fork-join pool of its own.
+     *
+     * @param scorer         the underlying scorer
+     * @param parallelism    the parallelism of the pool
+     * @param threshold      the minimum number of models of a request to score them in parallel
+     * @param deadlineMillis the default deadline of the requests in milliseconds, {@code 0} for none
+     */
+    public ParallelScorer(Scorer scorer, int parallelism, int threshold, long deadlineMillis) {
+        this(scorer, parallelism, threshold, DEFAULT_BATCH_CHUNK_SIZE, deadlineMillis);
+    }
+
+    /**
+     * Creates a new scorer that scores the models and the chunks of the batches in a fork-join pool of its own.
+     *
+     * @param scorer         the underlying scorer
+     * @param parallelism    the parallelism of the pool
+     * @param threshold      the minimum number of models of a request to score them in parallel
+     * @param batchChunkSize the number of instances of a batch scored by each task, {@code 0} to score batches sequentially
+     * @param deadlineMillis the default deadline of the requests in milliseconds, {@code 0} for none
+     */
+    public ParallelScorer(Scorer scorer, int parallelism, int threshold, int batchChunkSize, long deadlineMillis) {
+        this(scorer, new ForkJoinPool(parallelism), threshold, batchChunkSize, deadlineMillis, true);
+    }
+
+    /**
+     * Creates a new scorer that scores the models in the given executor.
+     *
+     * @param scorer         the underlying scorer
+     * @param executor       the executor that scores the models
+     * @param threshold      the minimum number of models of a request to score them in parallel
+     * @param deadlineMillis the default deadline of the requests in milliseconds, {@code 0} for none
+     */
+    public ParallelScorer(Scorer scorer, Executor executor, int threshold, long deadlineMillis) {
+        this(scorer, executor, threshold, DEFAULT_BATCH_CHUNK_SIZE, deadlineMillis, false);
+    }
+
+    /**
+     * Creates a new scorer that scores the models and the chunks of the batches in the given executor.
+     *
+     * @param scorer         the underlying scorer
+     * @param executor       the executor that scores the models
+     * @param threshold      the minimum number of models of a request to score them in parallel
+     * @param batchChunkSize the number of instances of a batch scored by each task, {@code 0} to score batches sequentially
+     * @param deadlineMillis the default deadline of the requests in milliseconds, {@code 0} for none
+     */
+    public ParallelScorer(Scorer scorer, Executor executor, int threshold, int batchChunkSize, long deadlineMillis) {
+        this(scorer, executor, threshold, batchChunkSize, deadlineMillis, false);
+    }
+
+    private ParallelScorer(Scorer scorer, Executor executor, int threshold, int batchChunkSize, long deadlineMillis, boolean ownPool) {
+        checkArgument(threshold > 1, "The threshold must be at least 2 models");
+        checkArgument(batchChunkSize >= 0, "The batch chunk size cannot be negative");
+        checkArgument(deadlineMillis >= 0, "The deadline cannot be negative");
+
+        this.scorer = checkNotNull(scorer, "The underlying scorer must be defined");
+        this.executor = checkNotNull(executor, "The executor must be defined");
+        this.ownPool = ownPool ? (ForkJoinPool) executor : null;
+        this.threshold = threshold;
+        this.batchChunkSize = batchChunkSize;
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    }
+
+    @Override
+    @NotNull
+    public List<double[]> score(List<UUID> modelIds, Object[] scorable) throws FOSException {
+        return score(modelIds, scorable, deadlineNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Scores the <code>scorable</code> against the given <code>modelIds</code> with a deadline of its own.
+     *
+     * @param modelIds the list of models to score
+     * @param scorable the instance data to score
+     * @param deadline the maximum time to wait for the scores of a parallel request, {@code 0} for none
+     * @param unit     the unit of the deadline
+     * @return a list of scores double[] where each list position contains the score for each classifier
+     * @throws FOSException when scoring was not possible or the deadline expired
+     * @see #score(java.util.List, Object[])
+     */
+    @NotNull
+    public List<double[]> score(List<UUID> modelIds, final Object[] scorable, long deadline, TimeUnit unit) throws FOSException {
+        if (modelIds.size() < threshold) {
+            return scorer.score(modelIds, scorable);
+        }
+        return ImmutableList.copyOf(fork(modelIds.size(), i -> scorer.score(modelIds.get(i), scorable), unit.toNanos(deadline)));
+    }
+
+    @Override
+    @NotNull
+    public List<double[]> score(List<UUID> modelIds, final ColumnarInstance scorable) throws FOSException {
+        if (modelIds.size() < threshold) {
+            return scorer.score(modelIds, scorable);
+        }
+        return ImmutableList.copyOf(fork(modelIds.size(), i -> scorer.score(Collections.singletonList(modelIds.get(i)), scorable).get(0), deadlineNanos));
+    }
+
+    @Override
+    public void score(List<UUID> modelIds, Object[] scorable, ScoreBuffer scores) throws FOSException {
+        if (modelIds.size() < threshold) {
+            scorer.score(modelIds, scorable, scores);
+            return;
+        }
+        List<double[]> result = score(modelIds, scorable);
+        scores.clear();
+        scores.addAll(result);
+    }
+
+    @Override
+    public void score(List<UUID> modelIds, ColumnarInstance scorable, ScoreBuffer scores) throws FOSException {
+        if (modelIds.size() < threshold) {
+            scorer.score(modelIds, scorable, scores);
+            return;
+        }
+        List<double[]> result = score(modelIds, scorable);
+        scores.clear();
+        scores.addAll(result);
+    }
+
+    @Override
+    @NotNull
+    public List<double[]> score(UUID modelId, List<Object[]> scorables) throws FOSException {
+        return score(modelId, scorables, deadlineNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Scores all <code>scorables</code> against the given <code>modelId</code> with a deadline of its own.
+     *
+     * @param modelId   the id of the model
+     * @param scorables the instances to score
+     * @param deadline  the maximum time to wait for the scores of a parallel batch, {@code 0} for none
+     * @param unit      the unit of the deadline
+     * @return a list of scores double[] where each list position contains the score for each <code>scorable</code>
+     * @throws FOSException when scoring was not possible or the deadline expired
+     * @see #score(java.util.UUID, java.util.List)
+     */
+    @NotNull
+    public List<double[]> score(final UUID modelId, final List<Object[]> scorables, long deadline, TimeUnit unit) throws FOSException {
+        final int size = scorables.size();
+        if (batchChunkSize == 0 || size <= batchChunkSize) {
+            return scorer.score(modelId, scorables);
+        }
+
+        int chunks = (size + batchChunkSize - 1) / batchChunkSize;
+        List<List<double[]>> results = fork(chunks, i -> scorer.score(modelId, scorables.subList(i * batchChunkSize, Math.min(size, (i + 1) * batchChunkSize))), unit.toNanos(deadline));
+
+        List<double[]> scores = new ArrayList<>(size);
+        for (List<double[]> chunk : results) {
+            scores.addAll(chunk);
+        }
+        return scores;
+    }
+
+    @Override
+    @NotNull
+    public double[] score(UUID modelId, Object[] scorable) throws FOSException {
+        return scorer.score(modelId, scorable);
+    }
+
+    /**
+     * Runs each task in the executor. Without a deadline the calling thread runs the first one.
+     *
+     * @param count         the number of tasks
+     * @param task          runs the task with the given index
+     * @param deadlineNanos the maximum time to wait for the results, {@code 0} for none
+     * @param <T>           the type of the results
+     * @return the results of each task, in the order of the tasks
+     * @throws FOSException when any of the tasks failed or the deadline expired
+     */
+    private <T> List<T> fork(int count, Task<T> task, long deadlineNanos) throws FOSException {
+        long start = System.nanoTime();
+        // the calling thread cannot be interrupted by the deadline, so it only runs a task when there is none
+        int forked = deadlineNanos > 0 ? 0 : 1;
+        List<CompletableFuture<T>> futures = new ArrayList<>(count);
+        if (forked > 0) {
+            futures.add(null);
+        }
+        for (int i = forked; i < count; i++) {
+            final int index = i;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.run(index);
+                } catch (FOSException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+
+        List<T> results = new ArrayList<>(count);
+        try {
+            if (forked > 0) {
+                results.add(task.run(0));
+            }
+            for (int i = forked; i < count; i++) {
+                results.add(deadlineNanos > 0
+                        ? futures.get(i).get(deadlineNanos - (System.nanoTime() - start), TimeUnit.NANOSECONDS)
+                        : futures.get(i).get());
+            }
+        } catch (TimeoutException e) {
+            cancel(futures);
+            throw new FOSException(String.format("Scoring %d tasks exceeded the deadline of %d ms", count, TimeUnit.NANOSECONDS.toMillis(deadlineNanos)));
+        } catch (ExecutionException e) {
+            cancel(futures);
+            throw e.getCause() instanceof FOSException ? (FOSException) e.getCause() : new FOSException(e.getCause());
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new FOSException("Interrupted while scoring", e);
+        } catch (FOSException | RuntimeException e) {
+            cancel(futures);
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Cancels the tasks of a request, so that the ones that did not start yet are skipped.
+     *
+     * @param futures the futures of the tasks
+     */
+    private static void cancel(List<? extends CompletableFuture<?>> futures) {
+        for (CompletableFuture<?> future : futures) {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Stops the pool owned by this scorer, if any, and closes the underlying scorer.
+     *
+     * @throws FOSException when closing the underlying scorer was not possible
+     */
+    @Override
+    public void close() throws FOSException {
+        if (ownPool != null) {
+            ownPool.shutdown();
+        }
+        scorer.close();
+    }
+
+    /**
+     * Scores a single model of a request or a single chunk of a batch.
+     *
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    private interface Task<T> {
+        T run(int index) throws FOSException;
+    }
+}
@@ -22,16 +22,23 @@
  */
 package com.feedzai.fos.api;
 
+import com.feedzai.fos.common.kryo.ColumnarInstance;
+import com.feedzai.fos.common.kryo.ScoreBuffer;
 import com.feedzai.fos.common.validation.NotNull;
 import com.google.common.collect.ImmutableList;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class represents a scorer that is capable of scoring instances against a set of models.
  * <p/>
  * Each scorer can hold multiple models and MUST support multi-threaded usage.
+ * <p/>
+ * Every scoring method has an asynchronous variant. By default they run the blocking method on the calling
+ * thread and return an already completed future; scorers that can score without blocking the caller (e.g.
+ * remote scorers) override them.
  *
  * @author Marco Jorge (marco.jorge@feedzai.com)
  */
@@ -91,6 +98,134 @@ public interface Scorer  {
     @NotNull
     double[] score(UUID modelId, Object[] scorable) throws FOSException;
 
+    /**
+     * Score a {@link ColumnarInstance columnar} <code>scorable</code> against the given <code>modelIds</code>.
+     * <p/> The <code>scorable</code> must follow the attributes of the models, see {@link ColumnarEncoder}.
+     * <p/> By default the instance is converted with {@link ColumnarInstance#toObjects()} and scored with
+     * {@link #score(java.util.List, Object[])}.
+     *
+     * @param modelIds the list of models to score
+     * @param scorable the instance data to score
+     * @return a list of scores double[] where each list position contains the score for each classifier
+     * @throws FOSException when scoring was not possible
+     * @since 1.0.11
+     */
+    @NotNull
+    default List<double[]> score(List<UUID> modelIds, ColumnarInstance scorable) throws FOSException {
+        return score(modelIds, scorable.toObjects());
+    }
+
+    /**
+     * Score the <code>scorable</code> against the given <code>modelIds</code>, writing the scores
+     * into a reusable buffer instead of a new list.
+     * <p/> The buffer is cleared and then holds one score array per model, in the same order as the <code>modelIds</code>.
+     * <p/> By default the scores are copied from {@link #score(java.util.List, Object[])}; scorers that can produce
+     * the scores without allocating override it.
+     *
+     * @param modelIds the list of models to score
+     * @param scorable the instance data to score
+     * @param scores   the buffer where the scores will be written to
+     * @throws FOSException when scoring was not possible
+     * @since 1.0.11
+     */
+    default void score(List<UUID> modelIds, Object[] scorable, ScoreBuffer scores) throws FOSException {
+        List<double[]> result = score(modelIds, scorable);
+        scores.clear();
+        scores.addAll(result);
+    }
+
+    /**
+     * {@link ColumnarInstance Columnar} version of {@link #score(java.util.List, Object[], com.feedzai.fos.common.kryo.ScoreBuffer)}.
+     *
+     * @param modelIds the list of models to score
+     * @param scorable the instance data to score
+     * @param scores   the buffer where the scores will be written to
+     * @throws FOSException when scoring was not possible
+     * @since 1.0.11
+     */
+    default void score(List<UUID> modelIds, ColumnarInstance scorable, ScoreBuffer scores) throws FOSException {
+        List<double[]> result = score(modelIds, scorable);
+        scores.clear();
+        scores.addAll(result);
+    }
+
+    /**
+     * Asynchronous version of {@link #score(java.util.List, Object[])}.
+     *
+     * @param modelIds the list of models to score
+     * @param scorable the instance data to score
+     * @return a future completed with a list of scores double[] where each list position contains the score for
+     * each classifier, or completed exceptionally with a {@link FOSException} when scoring was not possible
+     */
+    @NotNull
+    default CompletableFuture<List<double[]>> scoreAsync(List<UUID> modelIds, Object[] scorable) {
+        CompletableFuture<List<double[]>> future = new CompletableFuture<>();
+        try {
+            future.complete(score(modelIds, scorable));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Asynchronous version of {@link #score(java.util.UUID, java.util.List)}.
+     *
+     * @param modelId   the id of the model
+     * @param scorables an array of instances to score
+     * @return a future completed with a list of scores double[] where each list position contains the score for
+     * each <code>scorable</code>, or completed exceptionally with a {@link FOSException} when scoring was not possible
+     */
+    @NotNull
+    default CompletableFuture<List<double[]>> scoreAsync(UUID modelId, List<Object[]> scorables) {
+        CompletableFuture<List<double[]>> future = new CompletableFuture<>();
+        try {
+            future.complete(score(modelId, scorables));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Asynchronous version of {@link #score(java.util.UUID, Object[])}.
+     *
+     * @param modelId   the id of the model
+     * @param scorable  the instance to score
+     * @return a future completed with the scores, or completed exceptionally with a {@link FOSException}
+     * when scoring was not possible
+     */
+    @NotNull
+    default CompletableFuture<double[]> scoreAsync(UUID modelId, Object[] scorable) {
+        CompletableFuture<double[]> future = new CompletableFuture<>();
+        try {
+            future.complete(score(modelId, scorable));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Asynchronous version of {@link #score(java.util.List, com.feedzai.fos.common.kryo.ColumnarInstance)}.
+     *
+     * @param modelIds the list of models to score
+     * @param scorable the instance data to score
+     * @return a future completed with a list of scores double[] where each list position contains the score for
+     * each classifier, or completed exceptionally with a {@link FOSException} when scoring was not possible
+     * @since 1.0.11
+     */
+    @NotNull
+    default CompletableFuture<List<double[]>> scoreAsync(List<UUID> modelIds, ColumnarInstance scorable) {
+        CompletableFuture<List<double[]>> future = new CompletableFuture<>();
+        try {
+            future.complete(score(modelIds, scorable));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     /**
      * Frees any resources allocated to this scorer.
      *
@@ -0,0 +1,428 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.api.config.FosConfig;
+import com.feedzai.fos.common.validation.NotNull;
+import com.feedzai.fos.common.validation.Nullable;
+
+import java.io.Closeable;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bounded executor that runs the scoring requests of every transport of a server.
+ * <p/>
+ * A fixed number of threads score the requests queued in bounded queues, so the concurrency of a server does not
+ * grow with the number of connected clients. When the queues are full the {@link RejectionPolicy} decides what
+ * happens to new requests, by default they are {@link RejectionPolicy#ABORT rejected}. Once the executor is
+ * {@link #close() closed} new requests are always rejected, whatever the policy.
+ * <p/>
+ * With {@link Affinity#MODEL model affinity} each thread has a queue of its own and the requests of a model are
+ * always scored by the same thread, which keeps the model hot in the caches of the core that runs it. Otherwise the
+ * threads share a single queue.
+ * <p/>
+ * Requests submitted from a scoring thread (e.g. a scorer that scores through another scorer) run in the calling
+ * thread, so that they cannot deadlock waiting for a thread of their own executor.
+ *
+ * @since 1.0.11
+ */
+public class ScoringExecutor implements Executor, Closeable {
+    /**
+     * The default number of requests that can be queued for each thread.
+     */
+    public static final int QUEUED_REQUESTS_PER_THREAD = 64;
+
+    /**
+     * The default rejection policy, which sheds the requests over the capacity of the executor.
+     */
+    public static final RejectionPolicy DEFAULT_REJECTION_POLICY = RejectionPolicy.ABORT;
+
+    /**
+     * The executor that owns the current thread, {@code null} if not a scoring thread.
+     */
+    private static final ThreadLocal<ScoringExecutor> owner = new ThreadLocal<>();
+
+    /**
+     * What happens to the requests submitted while the queues are full.
+     */
+    public enum RejectionPolicy {
+        /**
+         * The submitting thread scores the request itself, which slows the submitter down until the backlog drains.
+         * <p/>
+         * The number of requests scored at once is then no longer bounded by the number of threads.
+         */
+        CALLER_RUNS,
+        /**
+         * The request fails right away.
+         */
+        ABORT,
+        /**
+         * The submitting thread waits until there is room in the queue.
+         */
+        BLOCK
+    }
+
+    /**
+     * How requests are assigned to the threads.
+     */
+    public enum Affinity {
+        /**
+         * Any thread scores any request.
+         */
+        NONE,
+        /**
+         * The requests of a model are always scored by the same thread.
+         */
+        MODEL
+    }
+
+    /**
+     * The pools that score the requests, a single one shared by all threads or one per thread with model affinity.
+     */
+    private final ThreadPoolExecutor[] lanes;
+
+    /**
+     * The lane of the next request without a model.
+     */
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final int threads;
+    private final int queueSize;
+    private final RejectionPolicy rejectionPolicy;
+    private final Affinity affinity;
+
+    /**
+     * Creates a new executor with {@link FosConfig#getThreadPoolSize()} threads, configured from the FOS
+     * configuration.
+     *
+     * @param config the FOS configuration
+     */
+    public ScoringExecutor(FosConfig config) {
+        this("fos-scoring", config.getThreadPoolSize(), config.getScoringQueueSize(), config.getScoringRejectionPolicy(), config.getScoringAffinity());
+    }
+
+    /**
+     * Creates a new executor.
+     *
+     * @param name            the prefix of the names of the threads
+     * @param threads         the number of threads that score the requests
+     * @param queueSize       the maximum number of requests waiting for a thread, {@code 0} for
+     *                        {@link #QUEUED_REQUESTS_PER_THREAD} per thread
+     * @param rejectionPolicy what happens to the requests submitted while the queues are full
+     * @param affinity        how requests are assigned to the threads
+     */
+    public ScoringExecutor(String name, int threads, int queueSize, RejectionPolicy rejectionPolicy, Affinity affinity) {
+        checkArgument(threads > 0, "The number of threads must be positive");
+        checkArgument(queueSize >= 0, "The queue size cannot be negative");
+        checkNotNull(name, "The thread name cannot be null");
+
+        this.threads = threads;
+        this.queueSize = queueSize > 0 ? queueSize : threads * QUEUED_REQUESTS_PER_THREAD;
+        this.rejectionPolicy = checkNotNull(rejectionPolicy, "The rejection policy cannot be null");
+        this.affinity = checkNotNull(affinity, "The affinity cannot be null");
+
+        RejectedExecutionHandler handler = handler(rejectionPolicy);
+        ThreadFactory factory = threadFactory(name);
+        if (affinity == Affinity.MODEL) {
+            int laneQueueSize = Math.max(1, this.queueSize / threads);
+            this.lanes = new ThreadPoolExecutor[threads];
+            for (int i = 0; i < threads; i++) {
+                lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(laneQueueSize), factory, handler);
+            }
+        } else {
+            this.lanes = new ThreadPoolExecutor[]{
+                    new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                            new ArrayBlockingQueue<Runnable>(this.queueSize), factory, handler)
+            };
+        }
+    }
+
+    /**
+     * Creates the threads of the executor, marking them as owned by it.
+     *
+     * @param name the prefix of the names of the threads
+     * @return the thread factory
+     */
+    private ThreadFactory threadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(() -> {
+                owner.set(this);
+                task.run();
+            }, name + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates the handler that applies a rejection policy.
+     * <p/>
+     * Requests submitted once the executor is shut down are rejected whatever the policy, so that their futures fail
+     * instead of never completing.
+     *
+     * @param policy the rejection policy
+     * @return the rejected execution handler
+     */
+    private static RejectedExecutionHandler handler(RejectionPolicy policy) {
+        switch (policy) {
+            case ABORT:
+                return (task, executor) -> {
+                    throw new RejectedExecutionException(executor.isShutdown() ? "Scoring executor is shut down" : "Scoring queue is full");
+                };
+            case BLOCK:
+                return (task, executor) -> {
+                    checkRunning(executor);
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for room in the scoring queue", e);
+                    }
+                    // shut down while waiting, the threads may be gone before they take it
+                    if (executor.isShutdown() && executor.getQueue().remove(task)) {
+                        checkRunning(executor);
+                    }
+                };
+            default:
+                return (task, executor) -> {
+                    checkRunning(executor);
+                    task.run();
+                };
+        }
+    }
+
+    /**
+     * Rejects a request if the executor is shut down.
+     *
+     * @param executor the pool the request was submitted to
+     * @throws RejectedExecutionException if the pool is shut down
+     */
+    private static void checkRunning(ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Scoring executor is shut down");
+        }
+    }
+
+    /**
+     * Scores a request without model affinity.
+     *
+     * @param task the request
+     * @throws RejectedExecutionException if the queue is full and the rejection policy is {@link RejectionPolicy#ABORT}
+     */
+    @Override
+    public void execute(@NotNull Runnable task) {
+        execute(null, task);
+    }
+
+    /**
+     * Scores a request of a model.
+     *
+     * @param modelId the model of the request, {@code null} if none
+     * @param task    the request
+     * @throws RejectedExecutionException if the queue is full and the rejection policy is {@link RejectionPolicy#ABORT}
+     */
+    public void execute(@Nullable UUID modelId, @NotNull Runnable task) {
+        if (owner.get() == this) {
+            task.run();
+        } else {
+            lane(modelId).execute(task);
+        }
+    }
+
+    /**
+     * Scores a request of a model asynchronously.
+     *
+     * @param modelId the model of the request, {@code null} if none
+     * @param task    the request
+     * @param <T>     the type of the result
+     * @return a future completed with the result of the request, or exceptionally if it failed or was rejected
+     *         (with an {@link OverloadedException}, or a {@link RejectedExecutionException} once closed)
+     */
+    @NotNull
+    public <T> CompletableFuture<T> submit(@Nullable UUID modelId, @NotNull final Callable<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            execute(modelId, () -> {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(isShutdown() ? e : new OverloadedException("Scoring request rejected, the server is overloaded", e));
+        }
+        return future;
+    }
+
+    /**
+     * Scores a request of a model and waits for its result.
+     *
+     * @param modelId the model of the request, {@code null} if none
+     * @param task    the request
+     * @param <T>     the type of the result
+     * @return the result of the request
+     * @throws OverloadedException        when the request was rejected
+     * @throws FOSException               when the request failed or the caller was interrupted while waiting
+     * @throws RejectedExecutionException when the executor is closed
+     */
+    public <T> T call(@Nullable UUID modelId, @NotNull Callable<T> task) throws FOSException {
+        try {
+            return submit(modelId, task).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FOSException) {
+                throw (FOSException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new FOSException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FOSException("Interrupted while waiting for scoring", e);
+        }
+    }
+
+    /**
+     * Gets the pool of a request.
+     *
+     * @param modelId the model of the request, {@code null} if none
+     * @return the pool that scores the request
+     */
+    private ThreadPoolExecutor lane(UUID modelId) {
+        if (lanes.length == 1) {
+            return lanes[0];
+        }
+        int hash = modelId != null ? modelId.hashCode() : next.getAndIncrement();
+        return lanes[(hash & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    /**
+     * Checks if the executor was {@link #close() closed}.
+     *
+     * @return {@code true} if closed
+     */
+    public boolean isShutdown() {
+        return lanes[0].isShutdown();
+    }
+
+    /**
+     * Gets the number of threads that score the requests.
+     *
+     * @return the number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Gets the maximum number of requests waiting for a thread.
+     *
+     * @return the queue size
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Gets what happens to the requests submitted while the queues are full.
+     *
+     * @return the rejection policy
+     */
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    /**
+     * Gets how requests are assigned to the threads.
+     *
+     * @return the affinity
+     */
+    public Affinity getAffinity() {
+        return affinity;
+    }
+
+    /**
+     * Gets the number of requests waiting for a thread.
+     *
+     * @return the number of queued requests
+     */
+    public int getQueued() {
+        int queued = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            queued += lane.getQueue().size();
+        }
+        return queued;
+    }
+
+    /**
+     * Gets the number of requests being scored.
+     *
+     * @return the number of active threads
+     */
+    public int getActive() {
+        int active = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            active += lane.getActiveCount();
+        }
+        return active;
+    }
+
+    /**
+     * Stops accepting requests, the queued ones are still scored. Later requests are rejected.
+     */
+    @Override
+    public void close() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this).
+                add("threads", threads).
+                add("queueSize", queueSize).
+                add("rejectionPolicy", rejectionPolicy).
+                add("affinity", affinity).
+                toString();
+    }
+}
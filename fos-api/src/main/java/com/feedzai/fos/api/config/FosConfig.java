@@ -22,6 +22,11 @@
  */
 package com.feedzai.fos.api.config;
 
+import com.feedzai.fos.api.AdmissionControl;
+import com.feedzai.fos.api.ParallelScorer;
+import com.feedzai.fos.api.ScoringExecutor;
+import com.feedzai.fos.api.metrics.JmxMetricsRegistry;
+import com.feedzai.fos.common.kryo.KryoFrames;
 import com.google.common.base.Objects;
 import org.apache.commons.configuration.Configuration;
 
@@ -61,12 +66,96 @@ public class FosConfig {
      */
     public static final String HEADER_LOCATION = "fos.headerLocation";
     /**
-     * The config fqn for the size of the thread pool classifier.
+     * The config fqn for the number of threads that score the requests of every transport, see {@link ScoringExecutor}.
      */
     public static final String THREADPOOL_SIZE = "fos.threadPoolSize";
+    /**
+     * The config fqn for starting the non-blocking Kryo scoring server.
+     */
+    public static final String SCORING_SERVER = "fos.scoringServer";
+    /**
+     * The config fqn for the number of I/O threads of the Kryo scoring server.
+     */
+    public static final String SCORING_IO_THREADS = "fos.scoringIoThreads";
+    /**
+     * The config fqn for the class name of the {@link com.feedzai.fos.api.metrics.MetricsRegistry MetricsRegistry} to use.
+     */
+    public static final String METRICS_REGISTRY = "fos.metricsRegistry";
+    /**
+     * The config fqn for using direct buffers in the Kryo scoring server.
+     */
+    public static final String SCORING_DIRECT_BUFFERS = "fos.scoringDirectBuffers";
+    /**
+     * The config fqn for the initial size in bytes of the buffers of the Kryo scoring server.
+     */
+    public static final String SCORING_BUFFER_SIZE = "fos.scoringBufferSize";
+    /**
+     * The config fqn for the maximum size in bytes of the frames read by the Kryo scoring server.
+     */
+    public static final String SCORING_MAX_FRAME_SIZE = "fos.scoringMaxFrameSize";
+    /**
+     * The config fqn for the maximum number of instances scored to warm up new models (0 disables the warm-up).
+     */
+    public static final String WARMUP_INSTANCES = "fos.warmupInstances";
+    /**
+     * The config fqn for the CSV file with the sample instances to warm up new models with.
+     */
+    public static final String WARMUP_SAMPLES = "fos.warmupSamples";
+    /**
+     * The config fqn for the number of threads that score the models of a request in parallel (0 scores them sequentially).
+     */
+    public static final String SCORING_PARALLELISM = "fos.scoringParallelism";
+    /**
+     * The config fqn for the minimum number of models of a request to score them in parallel.
+     */
+    public static final String SCORING_PARALLEL_THRESHOLD = "fos.scoringParallelThreshold";
+    /**
+     * The config fqn for the deadline in milliseconds of the requests scored in parallel (0 for none).
+     */
+    public static final String SCORING_DEADLINE = "fos.scoringDeadline";
+    /**
+     * The config fqn for the number of instances of a batch scored by each parallel task (0 scores batches sequentially).
+     */
+    public static final String SCORING_BATCH_CHUNK_SIZE = "fos.scoringBatchChunkSize";
+    /**
+     * The config fqn for the maximum number of scoring requests waiting for a thread of the scoring executor (0 for 64 per thread).
+     */
+    public static final String SCORING_QUEUE_SIZE = "fos.scoringQueueSize";
+    /**
+     * The config fqn for what happens to the scoring requests submitted while the queues of the scoring executor are full.
+     */
+    public static final String SCORING_REJECTION_POLICY = "fos.scoringRejectionPolicy";
+    /**
+     * The config fqn for how scoring requests are assigned to the threads of the scoring executor.
+     */
+    public static final String SCORING_AFFINITY = "fos.scoringAffinity";
+    /**
+     * The config fqn for the maximum number of scoring requests of each model admitted at the same time (0 for no limit).
+     */
+    public static final String SCORING_MAX_PER_MODEL = "fos.scoringMaxPerModel";
+    /**
+     * The config fqn for the maximum number of scoring requests of each connection admitted at the same time (0 for no limit).
+     */
+    public static final String SCORING_MAX_PER_CONNECTION = "fos.scoringMaxPerConnection";
+    /**
+     * The config fqn for the maximum time in milliseconds a scoring request may wait to be scored (0 for no limit).
+     */
+    public static final String SCORING_QUEUE_TIMEOUT = "fos.scoringQueueTimeout";
 
     public static final int DEFAULT_SCORING_PORT = 2534;
 
+    public static final int DEFAULT_SCORING_IO_THREADS = 2;
+
+    public static final int DEFAULT_SCORING_BUFFER_SIZE = 1024;
+
+    public static final int DEFAULT_SCORING_MAX_FRAME_SIZE = KryoFrames.MAX_FRAME_SIZE;
+
+    public static final int DEFAULT_WARMUP_INSTANCES = 0;
+
+    public static final int DEFAULT_SCORING_PARALLELISM = 0;
+
+    public static final String DEFAULT_HEADER_LOCATION = "models";
+
     /**
      * The configuration object that contains all the configured properties in a key value format.
      */
@@ -89,13 +178,85 @@ public class FosConfig {
      */
     private String headerLocation;
     /**
-     * The size of the thread pool classifier.
+     * The number of threads that score the requests of every transport.
      */
     private int threadPoolSize;
     /**
      * The port to use for fast scoring.
      */
     private int scoringPort;
+    /**
+     * Defines if FOS should run its own non-blocking Kryo scoring server.
+     */
+    private boolean scoringServer;
+    /**
+     * The number of I/O threads of the Kryo scoring server.
+     */
+    private int scoringIoThreads;
+    /**
+     * The class name of the {@link com.feedzai.fos.api.metrics.MetricsRegistry MetricsRegistry} to use.
+     */
+    private String metricsRegistry;
+    /**
+     * Defines if the Kryo scoring server uses direct buffers.
+     */
+    private boolean scoringDirectBuffers;
+    /**
+     * The initial size in bytes of the buffers of the Kryo scoring server.
+     */
+    private int scoringBufferSize;
+    /**
+     * The maximum size in bytes of the frames read by the Kryo scoring server.
+     */
+    private int scoringMaxFrameSize;
+    /**
+     * The maximum number of instances scored to warm up new models.
+     */
+    private int warmupInstances;
+    /**
+     * The CSV file with the sample instances to warm up new models with, {@code null} for synthetic instances.
+     */
+    private String warmupSamples;
+    /**
+     * The number of threads that score the models of a request in parallel.
+     */
+    private int scoringParallelism;
+    /**
+     * The minimum number of models of a request to score them in parallel.
+     */
+    private int scoringParallelThreshold;
+    /**
+     * The deadline in milliseconds of the requests scored in parallel.
+     */
+    private long scoringDeadline;
+    /**
+     * The number of instances of a batch scored by each parallel task.
+     */
+    private int scoringBatchChunkSize;
+    /**
+     * The maximum number of scoring requests waiting for a thread of the scoring executor.
+     */
+    private int scoringQueueSize;
+    /**
+     * What happens to the scoring requests submitted while the queues of the scoring executor are full.
+     */
+    private ScoringExecutor.RejectionPolicy scoringRejectionPolicy;
+    /**
+     * How scoring requests are assigned to the threads of the scoring executor.
+     */
+    private ScoringExecutor.Affinity scoringAffinity;
+    /**
+     * The maximum number of scoring requests of each model admitted at the same time.
+     */
+    private int scoringMaxPerModel;
+    /**
+     * The maximum number of scoring requests of each connection admitted at the same time.
+     */
+    private int scoringMaxPerConnection;
+    /**
+     * The maximum time in milliseconds a scoring request may wait to be scored.
+     */
+    private long scoringQueueTimeout;
 
     /**
      * Creates a new instance of the {@link FosConfig} class.
@@ -109,9 +270,27 @@ public class FosConfig {
         this.embeddedRegistry = configuration.getBoolean(EMBEDDED_REGISTRY, false);
         this.registryPort = configuration.getInt(REGISTRY_PORT, Registry.REGISTRY_PORT);
         this.factoryName = configuration.getString(FACTORY_NAME);
-        this.headerLocation = configuration.getString(HEADER_LOCATION, "models");
+        this.headerLocation = configuration.getString(HEADER_LOCATION, DEFAULT_HEADER_LOCATION);
         this.threadPoolSize = configuration.getInt(THREADPOOL_SIZE, 20);
         this.scoringPort = configuration.getInt(SCORING_PORT, DEFAULT_SCORING_PORT);
+        this.scoringServer = configuration.getBoolean(SCORING_SERVER, false);
+        this.scoringIoThreads = configuration.getInt(SCORING_IO_THREADS, DEFAULT_SCORING_IO_THREADS);
+        this.metricsRegistry = configuration.getString(METRICS_REGISTRY, JmxMetricsRegistry.class.getName());
+        this.scoringDirectBuffers = configuration.getBoolean(SCORING_DIRECT_BUFFERS, false);
+        this.scoringBufferSize = configuration.getInt(SCORING_BUFFER_SIZE, DEFAULT_SCORING_BUFFER_SIZE);
+        this.scoringMaxFrameSize = configuration.getInt(SCORING_MAX_FRAME_SIZE, DEFAULT_SCORING_MAX_FRAME_SIZE);
+        this.warmupInstances = configuration.getInt(WARMUP_INSTANCES, DEFAULT_WARMUP_INSTANCES);
+        this.warmupSamples = configuration.getString(WARMUP_SAMPLES, null);
+        this.scoringParallelism = configuration.getInt(SCORING_PARALLELISM, DEFAULT_SCORING_PARALLELISM);
+        this.scoringParallelThreshold = configuration.getInt(SCORING_PARALLEL_THRESHOLD, ParallelScorer.DEFAULT_THRESHOLD);
+        this.scoringDeadline = configuration.getLong(SCORING_DEADLINE, 0);
+        this.scoringBatchChunkSize = configuration.getInt(SCORING_BATCH_CHUNK_SIZE, ParallelScorer.DEFAULT_BATCH_CHUNK_SIZE);
+        this.scoringQueueSize = configuration.getInt(SCORING_QUEUE_SIZE, 0);
+        this.scoringRejectionPolicy = ScoringExecutor.RejectionPolicy.valueOf(configuration.getString(SCORING_REJECTION_POLICY, ScoringExecutor.DEFAULT_REJECTION_POLICY.name()));
+        this.scoringAffinity = ScoringExecutor.Affinity.valueOf(configuration.getString(SCORING_AFFINITY, ScoringExecutor.Affinity.NONE.name()));
+        this.scoringMaxPerModel = configuration.getInt(SCORING_MAX_PER_MODEL, 0);
+        this.scoringMaxPerConnection = configuration.getInt(SCORING_MAX_PER_CONNECTION, 0);
+        this.scoringQueueTimeout = configuration.getLong(SCORING_QUEUE_TIMEOUT, 0);
     }
 
     /**
@@ -160,9 +339,9 @@ public class FosConfig {
     }
 
     /**
-     * Gets the size of the thread pool classifier.
+     * Gets the number of threads that score the requests of every transport, see {@link ScoringExecutor}.
      *
-     * @return The size of the thread pool classifier.
+     * @return The number of scoring threads.
      */
     public int getThreadPoolSize() {
         return threadPoolSize;
@@ -177,6 +356,172 @@ public class FosConfig {
         return scoringPort;
     }
 
+    /**
+     * Gets if FOS should run its own non-blocking Kryo scoring server on the {@link #getScoringPort() scoring port}.
+     * <p/>
+     * Implementations that already expose a Kryo endpoint on that port should leave this disabled.
+     *
+     * @return {@code true} if FOS should start the Kryo scoring server, {@code false} otherwise.
+     */
+    public boolean isScoringServer() {
+        return scoringServer;
+    }
+
+    /**
+     * Gets the number of I/O threads of the Kryo scoring server.
+     *
+     * @return The number of I/O threads of the Kryo scoring server.
+     */
+    public int getScoringIoThreads() {
+        return scoringIoThreads;
+    }
+
+    /**
+     * Gets the class name of the {@link com.feedzai.fos.api.metrics.MetricsRegistry MetricsRegistry} to report the
+     * scoring requests to. The class must have a public no-argument constructor.
+     *
+     * @return The class name of the metrics registry, {@link JmxMetricsRegistry} by default.
+     */
+    public String getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * Gets if the Kryo scoring server reads and writes the requests with pooled direct buffers instead of heap buffers.
+     *
+     * @return {@code true} if the Kryo scoring server uses direct buffers, {@code false} otherwise.
+     */
+    public boolean isScoringDirectBuffers() {
+        return scoringDirectBuffers;
+    }
+
+    /**
+     * Gets the initial size of the buffers of the Kryo scoring server, which grow as needed.
+     *
+     * @return The initial size in bytes of the buffers of the Kryo scoring server.
+     */
+    public int getScoringBufferSize() {
+        return scoringBufferSize;
+    }
+
+    /**
+     * Gets the maximum size of the frames read by the Kryo scoring server, larger frames close the connection.
+     *
+     * @return the maximum frame size in bytes
+     */
+    public int getScoringMaxFrameSize() {
+        return scoringMaxFrameSize;
+    }
+
+    /**
+     * Gets the maximum number of instances scored to warm up a new model before it goes live, see {@link com.feedzai.fos.api.ModelWarmup ModelWarmup}.
+     *
+     * @return The maximum number of warm-up instances, {@code 0} if new models are not warmed up.
+     */
+    public int getWarmupInstances() {
+        return warmupInstances;
+    }
+
+    /**
+     * Gets the CSV file with the sample instances to warm up new models with.
+     *
+     * @return The path of the file, {@code null} if new models are warmed up with synthetic instances.
+     */
+    public String getWarmupSamples() {
+        return warmupSamples;
+    }
+
+    /**
+     * Gets the number of threads that score the models of a request in parallel, see {@link com.feedzai.fos.api.ParallelScorer ParallelScorer}.
+     *
+     * @return The number of threads, {@code 0} if the models are scored sequentially.
+     */
+    public int getScoringParallelism() {
+        return scoringParallelism;
+    }
+
+    /**
+     * Gets the minimum number of models of a request to score them in parallel, smaller requests are scored sequentially.
+     *
+     * @return The minimum number of models.
+     */
+    public int getScoringParallelThreshold() {
+        return scoringParallelThreshold;
+    }
+
+    /**
+     * Gets the deadline of the requests scored in parallel, after which they fail instead of waiting for the slowest models.
+     *
+     * @return The deadline in milliseconds, {@code 0} for none.
+     */
+    public long getScoringDeadline() {
+        return scoringDeadline;
+    }
+
+    /**
+     * Gets the number of instances of a batch scored by each parallel task when {@link #getScoringParallelism() parallelism} is enabled, smaller batches are scored sequentially.
+     *
+     * @return The number of instances, {@code 0} if batches are scored sequentially.
+     */
+    public int getScoringBatchChunkSize() {
+        return scoringBatchChunkSize;
+    }
+
+    /**
+     * Gets the maximum number of scoring requests waiting for one of the {@link #getThreadPoolSize() scoring threads}.
+     *
+     * @return The maximum number of queued requests, {@code 0} for {@link ScoringExecutor#QUEUED_REQUESTS_PER_THREAD} per thread.
+     */
+    public int getScoringQueueSize() {
+        return scoringQueueSize;
+    }
+
+    /**
+     * Gets what happens to the scoring requests submitted while the queues of the scoring executor are full,
+     * {@link ScoringExecutor#DEFAULT_REJECTION_POLICY} by default.
+     *
+     * @return The rejection policy.
+     */
+    public ScoringExecutor.RejectionPolicy getScoringRejectionPolicy() {
+        return scoringRejectionPolicy;
+    }
+
+    /**
+     * Gets how scoring requests are assigned to the threads of the scoring executor.
+     *
+     * @return The affinity.
+     */
+    public ScoringExecutor.Affinity getScoringAffinity() {
+        return scoringAffinity;
+    }
+
+    /**
+     * Gets the maximum number of scoring requests of each model admitted at the same time, the others are shed, see {@link AdmissionControl}.
+     *
+     * @return The maximum number of requests, {@code 0} for no limit.
+     */
+    public int getScoringMaxPerModel() {
+        return scoringMaxPerModel;
+    }
+
+    /**
+     * Gets the maximum number of scoring requests of each connection (each client host for RMI) admitted at the same time, the others are shed.
+     *
+     * @return The maximum number of requests, {@code 0} for no limit.
+     */
+    public int getScoringMaxPerConnection() {
+        return scoringMaxPerConnection;
+    }
+
+    /**
+     * Gets the maximum time a scoring request without a queue timeout of its own may wait to be scored, after which it is shed.
+     *
+     * @return The queue timeout in milliseconds, {@code 0} for no limit.
+     */
+    public long getScoringQueueTimeout() {
+        return scoringQueueTimeout;
+    }
+
     @Override
     public String toString() {
         return Objects.toStringHelper(this).
@@ -187,6 +532,24 @@ public class FosConfig {
                 add("headerLocation", headerLocation).
                 add("threadPoolSize", threadPoolSize).
                 add("scoringPort", scoringPort).
+                add("scoringServer", scoringServer).
+                add("scoringIoThreads", scoringIoThreads).
+                add("metricsRegistry", metricsRegistry).
+                add("scoringDirectBuffers", scoringDirectBuffers).
+                add("scoringBufferSize", scoringBufferSize).
+                add("scoringMaxFrameSize", scoringMaxFrameSize).
+                add("warmupInstances", warmupInstances).
+                add("warmupSamples", warmupSamples).
+                add("scoringParallelism", scoringParallelism).
+                add("scoringParallelThreshold", scoringParallelThreshold).
+                add("scoringDeadline", scoringDeadline).
+                add("scoringBatchChunkSize", scoringBatchChunkSize).
+                add("scoringQueueSize", scoringQueueSize).
+                add("scoringRejectionPolicy", scoringRejectionPolicy).
+                add("scoringAffinity", scoringAffinity).
+                add("scoringMaxPerModel", scoringMaxPerModel).
+                add("scoringMaxPerConnection", scoringMaxPerConnection).
+                add("scoringQueueTimeout", scoringQueueTimeout).
                 toString();
     }
 
@@ -0,0 +1,47 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the values of the attributes of a model that could not be parsed, see {@link JmxMetricsRegistry}.
+ *
+ * @since 1.0.11
+ */
+public interface AttributeMetricsMXBean {
+    /**
+     * Gets the number of values that could not be parsed, for all the attributes of the model.
+     *
+     * @return the number of unparsable values
+     */
+    long getUnparsable();
+
+    /**
+     * Gets the number of values that could not be parsed, by attribute name.
+     *
+     * @return the number of unparsable values of each attribute
+     * @see com.feedzai.fos.api.Attribute#getUnparsableCount()
+     */
+    Map<String, Long> getUnparsableByAttribute();
+}
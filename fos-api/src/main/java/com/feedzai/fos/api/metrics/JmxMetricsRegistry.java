@@ -0,0 +1,288 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api.metrics;
+
+import com.feedzai.fos.api.Attribute;
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link MetricsRegistry} that keeps {@link LatencyHistogram latency histograms} and counters in memory and
+ * publishes them as a {@link ScoringMetricsMXBean} for each model and transport, named
+ * {@code com.feedzai.fos:type=ScoringMetrics,transport=<transport>,model=<model id>}.
+ * <p/>
+ * The {@link #register(UUID, List) registered} attributes of each model are published as an
+ * {@link AttributeMetricsMXBean}, named {@code com.feedzai.fos:type=AttributeMetrics,model=<model id>}.
+ *
+ * @since 1.0.11
+ */
+public class JmxMetricsRegistry implements MetricsRegistry {
+    private final static Logger logger = LoggerFactory.getLogger(JmxMetricsRegistry.class);
+
+    /**
+     * The JMX domain of the metrics.
+     */
+    public static final String DOMAIN = "com.feedzai.fos";
+
+    private final MBeanServer server;
+    private final Map<Transport, ConcurrentMap<UUID, ModelMetrics>> metrics = new EnumMap<>(Transport.class);
+
+    /**
+     * Creates a new registry publishing to the platform MBean server.
+     */
+    public JmxMetricsRegistry() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * Creates a new registry publishing to the given MBean server.
+     *
+     * @param server the MBean server
+     */
+    public JmxMetricsRegistry(MBeanServer server) {
+        this.server = checkNotNull(server, "MBean server cannot be null");
+        for (Transport transport : Transport.values()) {
+            metrics.put(transport, new ConcurrentHashMap<UUID, ModelMetrics>());
+        }
+    }
+
+    @Override
+    public ModelMetrics get(Transport transport, UUID modelId) {
+        ConcurrentMap<UUID, ModelMetrics> byModel = metrics.get(transport);
+        ModelMetrics result = byModel.get(modelId);
+        if (result == null) {
+            ModelMetrics created = new ModelMetrics();
+            result = byModel.putIfAbsent(modelId, created);
+            if (result == null) {
+                result = created;
+                register(transport, modelId, created);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void register(UUID modelId, List<Attribute> attributes) {
+        try {
+            ObjectName name = attributesName(modelId);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new AttributeMetrics(attributes), name);
+        } catch (JMException e) {
+            logger.warn("Unable to publish the attribute metrics of model {}", modelId, e);
+        }
+    }
+
+    /**
+     * Unpublishes the metrics of a model.
+     *
+     * @param modelId the id of the model
+     */
+    @Override
+    public void remove(UUID modelId) {
+        for (Transport transport : Transport.values()) {
+            if (metrics.get(transport).remove(modelId) != null) {
+                try {
+                    server.unregisterMBean(name(transport, modelId));
+                } catch (JMException e) {
+                    logger.debug("Unable to unregister the {} scoring metrics of model {}", transport, modelId, e);
+                }
+            }
+        }
+
+        try {
+            ObjectName name = attributesName(modelId);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.debug("Unable to unregister the attribute metrics of model {}", modelId, e);
+        }
+    }
+
+    /**
+     * Gets the JMX name of the metrics of a model.
+     *
+     * @param transport the transport
+     * @param modelId   the id of the model
+     * @return the object name
+     * @throws JMException if the name is invalid
+     */
+    public static ObjectName name(Transport transport, UUID modelId) throws JMException {
+        return new ObjectName(String.format("%s:type=ScoringMetrics,transport=%s,model=%s", DOMAIN, transport.name().toLowerCase(), modelId));
+    }
+
+    /**
+     * Gets the JMX name of the attribute metrics of a model.
+     *
+     * @param modelId the id of the model
+     * @return the object name
+     * @throws JMException if the name is invalid
+     */
+    public static ObjectName attributesName(UUID modelId) throws JMException {
+        return new ObjectName(String.format("%s:type=AttributeMetrics,model=%s", DOMAIN, modelId));
+    }
+
+    private void register(Transport transport, UUID modelId, ModelMetrics modelMetrics) {
+        try {
+            ObjectName name = name(transport, modelId);
+            if (server.isRegistered(name)) {
+                // left behind by another registry on the same server
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(modelMetrics, name);
+        } catch (JMException e) {
+            logger.warn("Unable to publish the {} scoring metrics of model {}", transport, modelId, e);
+        }
+    }
+
+    /**
+     * The attribute metrics of a model.
+     */
+    private static class AttributeMetrics implements AttributeMetricsMXBean {
+        private final List<Attribute> attributes;
+
+        AttributeMetrics(List<Attribute> attributes) {
+            this.attributes = ImmutableList.copyOf(attributes);
+        }
+
+        @Override
+        public long getUnparsable() {
+            long total = 0;
+            for (Attribute attribute : attributes) {
+                total += attribute.getUnparsableCount();
+            }
+            return total;
+        }
+
+        @Override
+        public Map<String, Long> getUnparsableByAttribute() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (Attribute attribute : attributes) {
+                result.put(attribute.getName(), attribute.getUnparsableCount());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The metrics of a model and transport.
+     */
+    public static class ModelMetrics implements ScoringMetrics, ScoringMetricsMXBean {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final LatencyHistogram[] latencies = new LatencyHistogram[Phase.values().length];
+
+        ModelMetrics() {
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public void started() {
+            requests.incrementAndGet();
+            inFlight.incrementAndGet();
+        }
+
+        @Override
+        public void record(Phase phase, long nanos) {
+            latencies[phase.ordinal()].record(nanos);
+        }
+
+        @Override
+        public void finished(boolean failed) {
+            inFlight.decrementAndGet();
+            if (failed) {
+                errors.incrementAndGet();
+            }
+        }
+
+        /**
+         * Gets the latency histogram of a phase.
+         *
+         * @param phase the phase
+         * @return the histogram, in nanoseconds
+         */
+        public LatencyHistogram getLatency(Phase phase) {
+            return latencies[phase.ordinal()];
+        }
+
+        @Override
+        public long getRequests() {
+            return requests.get();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.get();
+        }
+
+        @Override
+        public long getInFlight() {
+            return inFlight.get();
+        }
+
+        @Override
+        public LatencySnapshot getDeserializeLatency() {
+            return LatencySnapshot.of(getLatency(Phase.DESERIALIZE));
+        }
+
+        @Override
+        public LatencySnapshot getScoreLatency() {
+            return LatencySnapshot.of(getLatency(Phase.SCORE));
+        }
+
+        @Override
+        public LatencySnapshot getSerializeLatency() {
+            return LatencySnapshot.of(getLatency(Phase.SERIALIZE));
+        }
+
+        @Override
+        public void reset() {
+            requests.set(0);
+            errors.set(0);
+            for (LatencyHistogram latency : latencies) {
+                latency.reset();
+            }
+        }
+    }
+}
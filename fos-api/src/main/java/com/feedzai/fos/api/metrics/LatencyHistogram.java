@@ -0,0 +1,177 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with a bounded relative error, in the spirit of HdrHistogram.
+ * <p/>
+ * Values below {@value #SUB_BUCKETS} are counted exactly, larger values fall in buckets that double in width
+ * with each power of two, each split in {@value #SUB_BUCKETS}/2 linear sub-buckets. This keeps the error of any
+ * reported percentile below 1% with a fixed footprint (about 36KB) regardless of the number of recorded values.
+ * <p/>
+ * Values are nanoseconds, anything above {@link #MAX_VALUE} is counted in the last bucket.
+ *
+ * @since 1.0.11
+ */
+public class LatencyHistogram {
+    /**
+     * The number of sub-buckets of the first bucket, sets the precision of the histogram.
+     */
+    static final int SUB_BUCKETS = 256;
+    /**
+     * The largest value tracked with the histogram precision (one hour).
+     */
+    public static final long MAX_VALUE = TimeUnit.HOURS.toNanos(1);
+
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param nanos the value, negative values are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(Math.min(value, MAX_VALUE)));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return the largest value, {@code 0} if none was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return the mean, {@code 0} if no value was recorded
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    /**
+     * Gets the value at the given percentile: no more than {@code percentile}% of the recorded values are
+     * larger than the returned value, within the precision of the histogram.
+     * <p/>
+     * Values recorded concurrently may or may not be accounted for.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile, {@code 0} if no value was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Discards all recorded values.
+     * <p/>
+     * Values recorded concurrently may or may not be discarded.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Gets the index of the bucket that counts the given value.
+     *
+     * @param value a value between 0 and {@link #MAX_VALUE}
+     * @return the bucket index
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (subBucket - HALF_SUB_BUCKETS);
+    }
+
+    /**
+     * Gets the largest value counted by a bucket.
+     *
+     * @param index the bucket index
+     * @return the largest value of the bucket
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api.metrics;
+
+import com.google.common.base.Objects;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency percentiles of a {@link LatencyHistogram} at some point in time, in microseconds.
+ *
+ * @since 1.0.11
+ */
+public class LatencySnapshot {
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    /**
+     * Creates a new snapshot with the given values.
+     *
+     * @param count the number of recorded values
+     * @param mean  the mean latency
+     * @param p50   the median latency
+     * @param p90   the 90th percentile latency
+     * @param p99   the 99th percentile latency
+     * @param p999  the 99.9th percentile latency
+     * @param max   the largest latency
+     */
+    @ConstructorProperties({"count", "mean", "p50", "p90", "p99", "p999", "max"})
+    public LatencySnapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    /**
+     * Creates a snapshot of the given histogram.
+     *
+     * @param histogram the histogram, holding nanoseconds
+     * @return the snapshot, in microseconds
+     */
+    public static LatencySnapshot of(LatencyHistogram histogram) {
+        return new LatencySnapshot(histogram.getCount(),
+                histogram.getMean() / 1000,
+                micros(histogram.getValueAtPercentile(50)),
+                micros(histogram.getValueAtPercentile(90)),
+                micros(histogram.getValueAtPercentile(99)),
+                micros(histogram.getValueAtPercentile(99.9)),
+                micros(histogram.getMax()));
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).
+                add("count", count).
+                add("mean", mean).
+                add("p50", p50).
+                add("p90", p90).
+                add("p99", p99).
+                add("p999", p999).
+                add("max", max).
+                toString();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api.metrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Holds the {@link MetricsRegistry} used by the scoring transports that were not given one explicitly.
+ * <p/>
+ * Defaults to a {@link JmxMetricsRegistry}, the FOS server replaces it with the registry configured in
+ * {@link com.feedzai.fos.api.config.FosConfig#METRICS_REGISTRY}. Transports read the registry when they are
+ * created, so it must be set before.
+ *
+ * @since 1.0.11
+ */
+public final class Metrics {
+    /**
+     * The registry in use, created on first use.
+     */
+    private static volatile MetricsRegistry registry;
+
+    private Metrics() {
+    }
+
+    /**
+     * Gets the registry used by default.
+     *
+     * @return the registry
+     */
+    public static MetricsRegistry getRegistry() {
+        MetricsRegistry result = registry;
+        if (result == null) {
+            synchronized (Metrics.class) {
+                if (registry == null) {
+                    registry = new JmxMetricsRegistry();
+                }
+                result = registry;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the registry used by default.
+     *
+     * @param registry the registry, {@link MetricsRegistry#NONE} disables the metrics
+     */
+    public static void setRegistry(MetricsRegistry registry) {
+        Metrics.registry = checkNotNull(registry, "Metrics registry cannot be null");
+    }
+}
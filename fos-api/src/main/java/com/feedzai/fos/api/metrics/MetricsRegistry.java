@@ -0,0 +1,82 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api.metrics;
+
+import com.feedzai.fos.api.Attribute;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Provides the {@link ScoringMetrics} of each model and transport.
+ * <p/>
+ * This is the extension point to publish the scoring metrics to a monitoring system, the default
+ * implementation is {@link JmxMetricsRegistry}. See {@link Metrics} to choose the registry used by the server.
+ *
+ * @since 1.0.11
+ */
+public interface MetricsRegistry {
+    /**
+     * Does not record anything.
+     */
+    MetricsRegistry NONE = new MetricsRegistry() {
+        @Override
+        public ScoringMetrics get(Transport transport, UUID modelId) {
+            return ScoringMetrics.NONE;
+        }
+    };
+
+    /**
+     * Gets the metrics of a model for the requests arriving through the given transport.
+     * <p/>
+     * Called for every request, implementations should return the same instance for the same arguments
+     * rather than create a new one each time.
+     *
+     * @param transport the transport the requests arrive through
+     * @param modelId   the id of the model
+     * @return the metrics to report the requests to
+     */
+    ScoringMetrics get(Transport transport, UUID modelId);
+
+    /**
+     * Publishes the {@link Attribute#getUnparsableCount() unparsable value counters} of the attributes a model
+     * parses its instances with, replacing those previously published for the model.
+     * <p/>
+     * Does nothing by default.
+     *
+     * @param modelId    the id of the model
+     * @param attributes the attributes of the model
+     */
+    default void register(UUID modelId, List<Attribute> attributes) {
+    }
+
+    /**
+     * Discards the metrics of a model that was removed.
+     * <p/>
+     * Does nothing by default.
+     *
+     * @param modelId the id of the model
+     */
+    default void remove(UUID modelId) {
+    }
+}
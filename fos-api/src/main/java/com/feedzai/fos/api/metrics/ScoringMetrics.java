@@ -0,0 +1,73 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api.metrics;
+
+/**
+ * Records the scoring requests of a model arriving through a {@link Transport}.
+ * <p/>
+ * Every request is reported with {@link #started()}, the latency of its phases with {@link #record(Phase, long)}
+ * and its outcome with {@link #finished(boolean)}. Requests for several models are reported to each of them.
+ * <p/>
+ * Implementations are called from many threads concurrently and in the scoring path, they must be thread safe
+ * and must not block.
+ *
+ * @since 1.0.11
+ */
+public interface ScoringMetrics {
+    /**
+     * Does not record anything.
+     */
+    ScoringMetrics NONE = new ScoringMetrics() {
+        @Override
+        public void started() {
+        }
+
+        @Override
+        public void record(Phase phase, long nanos) {
+        }
+
+        @Override
+        public void finished(boolean failed) {
+        }
+    };
+
+    /**
+     * Reports that a request arrived and is now in flight.
+     */
+    void started();
+
+    /**
+     * Records the latency of a phase of a request.
+     *
+     * @param phase the phase
+     * @param nanos the time spent in the phase, in nanoseconds
+     */
+    void record(Phase phase, long nanos);
+
+    /**
+     * Reports that a request reported with {@link #started()} is no longer in flight.
+     *
+     * @param failed {@code true} if the request could not be scored
+     */
+    void finished(boolean failed);
+}
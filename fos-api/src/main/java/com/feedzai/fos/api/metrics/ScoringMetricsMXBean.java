@@ -0,0 +1,79 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api.metrics;
+
+/**
+ * JMX view of the scoring metrics of a model and transport, see {@link JmxMetricsRegistry}.
+ * <p/>
+ * Latencies are in microseconds and accumulate since the server started or the last {@link #reset()}.
+ *
+ * @since 1.0.11
+ */
+public interface ScoringMetricsMXBean {
+    /**
+     * Gets the number of requests received.
+     *
+     * @return the number of requests
+     */
+    long getRequests();
+
+    /**
+     * Gets the number of requests that could not be scored.
+     *
+     * @return the number of failed requests
+     */
+    long getErrors();
+
+    /**
+     * Gets the number of requests being processed.
+     *
+     * @return the number of requests in flight
+     */
+    long getInFlight();
+
+    /**
+     * Gets the latency of decoding the requests.
+     *
+     * @return the {@link Phase#DESERIALIZE} latency
+     */
+    LatencySnapshot getDeserializeLatency();
+
+    /**
+     * Gets the latency of scoring the requests.
+     *
+     * @return the {@link Phase#SCORE} latency
+     */
+    LatencySnapshot getScoreLatency();
+
+    /**
+     * Gets the latency of encoding the responses.
+     *
+     * @return the {@link Phase#SERIALIZE} latency
+     */
+    LatencySnapshot getSerializeLatency();
+
+    /**
+     * Discards the recorded latencies and resets the request and error counters.
+     */
+    void reset();
+}
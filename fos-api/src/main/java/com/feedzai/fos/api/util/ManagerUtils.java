@@ -24,12 +24,18 @@ package com.feedzai.fos.api.util;
 
 import com.feedzai.fos.api.*;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.UUID;
 
 /**
@@ -68,11 +74,83 @@ public class ManagerUtils {
             return createModelBinaryFile(location, uuid, ((ModelBinary) model).getBinary());
         } else if (model instanceof ModelPMML) {
             return createModelPMMLFile(location, uuid, ((ModelPMML) model).getPMML());
+        } else if (model instanceof MappedModel) {
+            MappedModel mapped = (MappedModel) model;
+            return createModelFile(location, uuid, mapped.getFormat(), mapped.getContent());
         } else {
             throw new RuntimeException("Unknown Model instance " + model.getClass().getSimpleName());
         }
     }
 
+    /**
+     * Creates a new empty {@link java.io.File} for a model of the given format, to be written by the caller.
+     *
+     * @param location The target location where the model will be written to, created if missing.
+     * @param uuid     The UUID the name of the file starts with.
+     * @param format   The format in which the model is represented.
+     * @return The File where the model is to be written to.
+     * @throws java.io.IOException If the file could not be created.
+     * @since 1.0.11
+     */
+    public static File createModelFile(File location, UUID uuid, ModelDescriptor.Format format) throws IOException {
+        if (!location.mkdirs() && !location.isDirectory()) {
+            throw new IOException("Could not create the model location " + location);
+        }
+        return File.createTempFile(uuid.toString(), suffix(format), location);
+    }
+
+    /**
+     * Creates a new {@link java.io.File} for a model of the given format and streams the model representation to it
+     * in chunks, without holding the whole model in memory.
+     *
+     * @param location The target location where the model will be written to.
+     * @param uuid     The UUID of the model.
+     * @param format   The format in which the model is represented.
+     * @param stream   The stream with the model representation, read until its end but not closed.
+     * @return The File where the model was written to.
+     * @throws java.io.IOException If reading the stream or saving to disk was not possible.
+     * @since 1.0.11
+     */
+    public static File createModelFile(File location, UUID uuid, ModelDescriptor.Format format, InputStream stream) throws IOException {
+        File file = createModelFile(location, uuid, format);
+        try (OutputStream os = new FileOutputStream(file)) {
+            IOUtils.copyLarge(stream, os, new byte[MappedModel.CHUNK_SIZE]);
+        }
+        return file;
+    }
+
+    /**
+     * Creates a new {@link java.io.File} for a model of the given format and writes the model representation to it
+     * through a {@link FileChannel}, so that mapped representations are written without a copy in the heap.
+     *
+     * @param location The target location where the model will be written to.
+     * @param uuid     The UUID of the model.
+     * @param format   The format in which the model is represented.
+     * @param content  The model representation, from its position to its limit.
+     * @return The File where the model was written to.
+     * @throws java.io.IOException If saving to disk was not possible.
+     * @since 1.0.11
+     */
+    public static File createModelFile(File location, UUID uuid, ModelDescriptor.Format format, ByteBuffer content) throws IOException {
+        File file = createModelFile(location, uuid, format);
+        try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Gets the suffix of the files with models of the given format.
+     *
+     * @param format The format in which the model is represented.
+     * @return {@code .xml} for PMML models, {@code .model} otherwise.
+     */
+    private static String suffix(ModelDescriptor.Format format) {
+        return format == ModelDescriptor.Format.PMML ? ".xml" : ".model";
+    }
+
     /**
      * Creates a file in {@code <location>/<id>.model} and serializes the given byte array to it.
      *
@@ -23,6 +23,7 @@
 package com.feedzai.fos.server.remote.api;
 
 import com.feedzai.fos.api.FOSException;
+import com.feedzai.fos.api.KryoPoolConfig;
 import com.feedzai.fos.api.KryoScorer;
 import com.feedzai.fos.api.Manager;
 import com.feedzai.fos.api.Model;
@@ -32,6 +33,9 @@ import com.feedzai.fos.api.Scorer;
 import com.feedzai.fos.common.validation.NotBlank;
 import com.google.common.base.Optional;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
@@ -39,6 +43,7 @@ import java.rmi.registry.Registry;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.zip.CRC32;
 
 /**
  * FOS Remote manager local adapter.
@@ -48,6 +53,11 @@ import java.util.UUID;
  * @since 0.3.0
  */
 public class FOSManagerAdapter implements Manager {
+    /**
+     * The size of the chunks models are {@link #uploadModel(ModelConfig, ModelDescriptor) uploaded} in.
+     */
+    public static final int UPLOAD_CHUNK_SIZE = 1024 * 1024;
+
     private final KryoScorer kryoScorer;
     IRemoteManager manager;
 
@@ -74,6 +84,91 @@ public class FOSManagerAdapter implements Manager {
         }
     }
 
+    /**
+     * Uploads a local classifier in chunks and adds a new model with it.
+     * <p/>
+     * Unlike {@link #addModel(ModelConfig, ModelDescriptor)}, the descriptor refers to a file of the client. The file
+     * is {@link ModelDescriptor#map() mapped} and sent in chunks of {@link #UPLOAD_CHUNK_SIZE} bytes, so neither the
+     * client nor the server hold the whole classifier in memory.
+     *
+     * @param modelConfig the configuration of the model
+     * @param descriptor  the {@link ModelDescriptor} describing the local classifier
+     * @return the id of the new model
+     * @throws FOSException when uploading or adding the model was not possible
+     * @since 1.0.11
+     */
+    public UUID uploadModel(ModelConfig modelConfig, ModelDescriptor descriptor) throws FOSException {
+        try {
+            UUID uploadId = manager.beginModelUpload(descriptor.getFormat());
+            return manager.commitModelUpload(uploadId, modelConfig, upload(uploadId, descriptor));
+        } catch (RemoteException e) {
+            throw new FOSException(e);
+        }
+    }
+
+    /**
+     * Uploads a local classifier in chunks and reconfigures an existing model with it.
+     *
+     * @param uuid        the id of the model to update
+     * @param modelConfig the new configuration of the model
+     * @param descriptor  the {@link ModelDescriptor} describing the local classifier
+     * @throws FOSException when uploading or reconfiguring the model was not possible
+     * @see #uploadModel(ModelConfig, ModelDescriptor)
+     * @since 1.0.11
+     */
+    public void uploadModel(UUID uuid, ModelConfig modelConfig, ModelDescriptor descriptor) throws FOSException {
+        try {
+            UUID uploadId = manager.beginModelUpload(descriptor.getFormat());
+            manager.commitModelUpload(uploadId, uuid, modelConfig, upload(uploadId, descriptor));
+        } catch (RemoteException e) {
+            throw new FOSException(e);
+        }
+    }
+
+    /**
+     * Sends the chunks of a local classifier, aborting the upload if not possible.
+     *
+     * @param uploadId   the id of the upload
+     * @param descriptor the {@link ModelDescriptor} describing the local classifier
+     * @return the CRC32 of the whole classifier
+     * @throws RemoteException when sending a chunk was not possible
+     * @throws FOSException    when reading the classifier was not possible or a chunk was rejected
+     */
+    private long upload(UUID uploadId, ModelDescriptor descriptor) throws RemoteException, FOSException {
+        boolean sent = false;
+        try {
+            ByteBuffer content = descriptor.map();
+            CRC32 checksum = new CRC32();
+            CRC32 chunkChecksum = new CRC32();
+            byte[] chunk = new byte[Math.min(UPLOAD_CHUNK_SIZE, content.remaining())];
+            while (content.hasRemaining()) {
+                long offset = content.position();
+                if (content.remaining() < chunk.length) {
+                    chunk = new byte[content.remaining()];
+                }
+                content.get(chunk);
+                chunkChecksum.reset();
+                chunkChecksum.update(chunk);
+                checksum.update(chunk);
+                manager.uploadModelChunk(uploadId, offset, chunk, chunkChecksum.getValue());
+            }
+            sent = true;
+            return checksum.getValue();
+        } catch (RemoteException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new FOSException("Could not read the model file " + descriptor.getModelFilePath(), e);
+        } finally {
+            if (!sent) {
+                try {
+                    manager.abortModelUpload(uploadId);
+                } catch (RemoteException | FOSException e) {
+                    // the upload expires on the server
+                }
+            }
+        }
+    }
+
     @Override
     public void removeModel(UUID uuid) throws FOSException {
         try {
@@ -217,6 +312,23 @@ public class FOSManagerAdapter implements Manager {
         return new FOSManagerAdapter(iRemoteManager, new KryoScorer(registryHostname, kryoPort));
     }
 
+    /**
+     * Creates an adapter that scores with Kryo, balancing the requests among several scoring servers.
+     *
+     * @param registryHostname the host of the RMI registry of the manager
+     * @param registryPort     the port of the RMI registry of the manager
+     * @param kryoEndpoints    the addresses of the Kryo scoring servers
+     * @param poolConfig       the connection pool settings of each scoring server
+     * @return a new adapter
+     * @throws RemoteException   if the registry could not be contacted
+     * @throws NotBoundException if the manager is not bound in the registry
+     * @since 1.0.11
+     */
+    public static FOSManagerAdapter createKryo(String registryHostname, int registryPort, List<InetSocketAddress> kryoEndpoints, KryoPoolConfig poolConfig) throws RemoteException, NotBoundException {
+        IRemoteManager iRemoteManager = getiRemoteManager(registryHostname, registryPort);
+        return new FOSManagerAdapter(iRemoteManager, new KryoScorer(kryoEndpoints, poolConfig));
+    }
+
     private static IRemoteManager getiRemoteManager(String registryHostname, int registryPort) throws RemoteException, NotBoundException {
         Registry fosRegistry = LocateRegistry.getRegistry(registryHostname,
                 registryPort);
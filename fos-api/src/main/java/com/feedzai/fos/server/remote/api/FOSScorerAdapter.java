@@ -23,25 +23,61 @@
 package com.feedzai.fos.server.remote.api;
 
 import com.feedzai.fos.api.FOSException;
+import com.feedzai.fos.api.OverloadedException;
 import com.feedzai.fos.api.Scorer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.rmi.RemoteException;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * FOS Scorer local adapter.
+ * <p/>
+ * RMI calls block until the remote scorer answers, so the asynchronous methods run them on an {@link Executor}.
+ * Unless one is given, a shared pool with a daemon thread per processor is used, with room for
+ * {@link #PENDING_REQUESTS_PER_THREAD} pending requests per thread. Requests that the executor rejects
+ * fail their future instead of creating more threads.
  *
  * @author Miguel Duarte (miguel.duarte@feedzai.com)
  * @since 13.1.0
  */
 public class FOSScorerAdapter implements Scorer {
+    /**
+     * The number of asynchronous requests that can wait for each thread of the default executor.
+     */
+    public static final int PENDING_REQUESTS_PER_THREAD = 1024;
 
     private final RemoteScorer scorer;
 
+    /**
+     * The executor that runs the RMI calls of the asynchronous methods.
+     */
+    private final Executor executor;
+
     public FOSScorerAdapter(RemoteScorer scorer) {
+        this(scorer, DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * Creates a new adapter that runs the asynchronous scoring requests on the given executor.
+     *
+     * @param scorer   the remote scorer
+     * @param executor the executor that runs the RMI calls of the asynchronous methods
+     * @since 1.0.11
+     */
+    public FOSScorerAdapter(RemoteScorer scorer, Executor executor) {
         this.scorer = scorer;
+        this.executor = checkNotNull(executor, "Executor cannot be null");
     }
 
     @Override
@@ -49,7 +85,7 @@ public class FOSScorerAdapter implements Scorer {
         try {
             return scorer.score(uuids, objects);
         } catch (RemoteException e) {
-            throw new FOSException(e);
+            throw translate(e);
         }
     }
 
@@ -58,7 +94,7 @@ public class FOSScorerAdapter implements Scorer {
         try {
             return scorer.score(uuid, objects);
         } catch (RemoteException e) {
-            throw new FOSException(e);
+            throw translate(e);
         }
     }
 
@@ -67,10 +103,25 @@ public class FOSScorerAdapter implements Scorer {
         try {
             return scorer.score(uuid, scorable);
         } catch (RemoteException e) {
-            throw new FOSException(e);
+            throw translate(e);
         }
     }
 
+    @Override
+    public CompletableFuture<List<double[]>> scoreAsync(List<UUID> uuids, Object[] objects) {
+        return async(() -> score(uuids, objects));
+    }
+
+    @Override
+    public CompletableFuture<List<double[]>> scoreAsync(UUID uuid, List<Object[]> objects) {
+        return async(() -> score(uuid, objects));
+    }
+
+    @Override
+    public CompletableFuture<double[]> scoreAsync(UUID uuid, Object[] scorable) {
+        return async(() -> score(uuid, scorable));
+    }
+
     @Override
     public void close() throws FOSException {
         try {
@@ -79,4 +130,68 @@ public class FOSScorerAdapter implements Scorer {
             throw new FOSException(e);
         }
     }
+
+    /**
+     * Runs a blocking RMI call in the executor.
+     *
+     * @param call the call to run
+     * @param <T>  the type of the result of the call
+     * @return the future result of the call, failed if the executor rejected it
+     */
+    private <T> CompletableFuture<T> async(RemoteCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(call.call());
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new FOSException("Too many pending asynchronous scoring requests", e));
+        }
+        return future;
+    }
+
+    /**
+     * Translates the exception of an RMI call, keeping requests shed by an overloaded server apart.
+     *
+     * @param e the exception of the RMI call
+     * @return the exception to throw
+     */
+    private static FOSException translate(RemoteException e) {
+        if (e.getCause() instanceof OverloadedException) {
+            return new OverloadedException(e.getCause().getMessage(), e);
+        }
+        return new FOSException(e);
+    }
+
+    /**
+     * A blocking scoring call.
+     *
+     * @param <T> the type of the result
+     */
+    private interface RemoteCall<T> {
+        T call() throws FOSException;
+    }
+
+    /**
+     * Lazily created pool shared by the adapters that were not given an executor.
+     */
+    private static class DefaultExecutor {
+        static final Executor INSTANCE = create(Runtime.getRuntime().availableProcessors());
+
+        private static Executor create(int threads) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(threads * PENDING_REQUESTS_PER_THREAD),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("fos-rmi-scorer-%d")
+                            .setDaemon(true)
+                            .build());
+            // idle adapters do not keep threads around
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
 }
@@ -64,6 +64,73 @@ public interface IRemoteManager extends Remote {
      */
     UUID addModel(ModelConfig config, @NotBlank ModelDescriptor descriptor) throws RemoteException, FOSException;
 
+    /**
+     * Begins a chunked upload of a classifier, for classifiers too large to be sent in a single call.
+     * <p/>
+     * The chunks are sent in order with {@link #uploadModelChunk(UUID, long, byte[], long)} and written straight to
+     * the model location of the server, the upload is then committed as a new model with
+     * {@link #commitModelUpload(UUID, ModelConfig, long)} or as the new classifier of an existing model with
+     * {@link #commitModelUpload(UUID, UUID, ModelConfig, long)}. Uploads that are neither committed nor
+     * {@link #abortModelUpload(UUID) aborted} expire after a period of inactivity.
+     *
+     * @param format the format in which the classifier is represented
+     * @return the id of the upload
+     * @throws RemoteException when starting the upload was not possible
+     * @since 1.0.11
+     */
+    UUID beginModelUpload(ModelDescriptor.Format format) throws RemoteException, FOSException;
+
+    /**
+     * Appends a chunk to an upload.
+     * <p/>
+     * A chunk that was already received is ignored, so that chunks can be sent again when a call fails.
+     *
+     * @param uploadId the id of the upload
+     * @param offset   the offset of the chunk in the classifier
+     * @param chunk    the bytes of the chunk
+     * @param checksum the CRC32 of the chunk
+     * @throws RemoteException when writing the chunk was not possible
+     * @throws FOSException    when the upload does not exist, the chunk is out of order or its checksum does not match
+     * @since 1.0.11
+     */
+    void uploadModelChunk(UUID uploadId, long offset, byte[] chunk, long checksum) throws RemoteException, FOSException;
+
+    /**
+     * Completes an upload and adds a new model with the given configuration and the uploaded classifier.
+     *
+     * @param uploadId the id of the upload
+     * @param config   the configuration of the model
+     * @param checksum the CRC32 of the whole classifier
+     * @return the id of the new model
+     * @throws RemoteException when creating the classifier was not possible
+     * @throws FOSException    when the upload does not exist or the checksum does not match, which discards the upload
+     * @since 1.0.11
+     */
+    UUID commitModelUpload(UUID uploadId, ModelConfig config, long checksum) throws RemoteException, FOSException;
+
+    /**
+     * Completes an upload and reconfigures the model identified by <code>modelId</code> with the given configuration
+     * and the uploaded classifier.
+     *
+     * @param uploadId the id of the upload
+     * @param modelId  the id of the model to update
+     * @param config   the new configuration of the model
+     * @param checksum the CRC32 of the whole classifier
+     * @throws RemoteException when reconfiguring the model was not possible
+     * @throws FOSException    when the upload does not exist or the checksum does not match, which discards the upload
+     * @since 1.0.11
+     */
+    void commitModelUpload(UUID uploadId, UUID modelId, ModelConfig config, long checksum) throws RemoteException, FOSException;
+
+    /**
+     * Aborts an upload and deletes the chunks received so far. Unknown uploads are ignored.
+     *
+     * @param uploadId the id of the upload
+     * @throws RemoteException when aborting the upload was not possible
+     * @since 1.0.11
+     */
+    void abortModelUpload(UUID uploadId) throws RemoteException, FOSException;
+
     /**
      * Removes the model identified by <code>modelId</code> from the list of active scorers (does not delete classifier file).
      *
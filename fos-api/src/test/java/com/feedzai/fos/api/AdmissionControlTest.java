@@ -0,0 +1,195 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.api.metrics.MetricsRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdmissionControlTest {
+    private static final long SCORE_MILLIS = 300;
+
+    private final UUID model1 = UUID.randomUUID();
+    private final UUID model2 = UUID.randomUUID();
+
+    private ScoringExecutor executor;
+    private KryoScoringServer server;
+    private KryoScorer client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    @Test
+    public void testModelLimit() throws Exception {
+        AdmissionControl admission = new AdmissionControl(2, 0, 0);
+
+        AdmissionControl.Permit first = admission.admit("a", Arrays.asList(model1, model2));
+        AdmissionControl.Permit second = admission.admit("b", Collections.singletonList(model1));
+        assertEquals(2, admission.getAdmitted(model1));
+
+        try {
+            admission.admit("c", Arrays.asList(model2, model1));
+            fail("Model 1 is at its limit");
+        } catch (OverloadedException e) {
+            assertTrue(e.getMessage().contains(model1.toString()));
+        }
+        // the slot taken for model 2 was given back
+        assertEquals(1, admission.getAdmitted(model2));
+
+        second.close();
+        second.close();
+        assertEquals(1, admission.getAdmitted(model1));
+        admission.admit("c", Arrays.asList(model2, model1)).close();
+
+        first.close();
+        assertEquals(0, admission.getAdmitted(model1));
+        assertEquals(0, admission.getAdmitted(model2));
+    }
+
+    @Test
+    public void testConnectionLimit() throws Exception {
+        AdmissionControl admission = new AdmissionControl(0, 1, 0);
+
+        AdmissionControl.Permit permit = admission.admit("a", Collections.singletonList(model1));
+        admission.admit("b", Collections.singletonList(model1)).close();
+        try {
+            admission.admit("a", Collections.singletonList(model2));
+            fail("Connection a is at its limit");
+        } catch (OverloadedException e) {
+            assertTrue(e.getMessage().contains("a"));
+        }
+
+        permit.close();
+        admission.admit("a", Collections.singletonList(model2)).close();
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        AdmissionControl admission = new AdmissionControl(0, 0, 100);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), admission.queueTimeoutNanos(0));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), admission.queueTimeoutNanos(20));
+
+        AdmissionControl.checkQueueTime(System.nanoTime(), admission.queueTimeoutNanos(0));
+        AdmissionControl.checkQueueTime(System.nanoTime() - TimeUnit.SECONDS.toNanos(1), 0);
+        try {
+            AdmissionControl.checkQueueTime(System.nanoTime() - TimeUnit.SECONDS.toNanos(1), admission.queueTimeoutNanos(0));
+            fail("The request waited for longer than the timeout");
+        } catch (OverloadedException e) {
+            assertTrue(e.getMessage().contains("timeout 100 ms"));
+        }
+    }
+
+    @Test
+    public void testKryoModelLimit() throws Exception {
+        start(4, new AdmissionControl(1, 0, 0), 0);
+
+        CompletableFuture<double[]> first = client.scoreAsync(model1, new Object[]{1.0});
+        Thread.sleep(SCORE_MILLIS / 3);
+
+        long start = System.nanoTime();
+        try {
+            client.score(model1, new Object[]{1.0});
+            fail("Model 1 is at its limit");
+        } catch (OverloadedException e) {
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < SCORE_MILLIS);
+        }
+
+        // other models are still admitted
+        assertEquals(2.0, client.score(model2, new Object[]{2.0})[0], 0);
+        assertEquals(1.0, first.get(5, TimeUnit.SECONDS)[0], 0);
+        assertEquals(3.0, client.score(model1, new Object[]{3.0})[0], 0);
+    }
+
+    @Test
+    public void testKryoQueueTimeout() throws Exception {
+        start(1, AdmissionControl.UNLIMITED, (int) SCORE_MILLIS / 3);
+
+        CompletableFuture<double[]> first = client.scoreAsync(model1, new Object[]{1.0});
+        CompletableFuture<double[]> second = client.scoreAsync(model2, new Object[]{2.0});
+
+        assertEquals(1.0, first.get(5, TimeUnit.SECONDS)[0], 0);
+        try {
+            second.get(5, TimeUnit.SECONDS);
+            fail("The second request waited in the queue for longer than its timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OverloadedException);
+        }
+    }
+
+    /**
+     * Starts a Kryo scoring server whose requests take {@link #SCORE_MILLIS} to score, and a client.
+     *
+     * @param threads      the number of scoring threads of the server
+     * @param admission    the admission control of the server
+     * @param queueTimeout the queue timeout of the requests of the client
+     */
+    private void start(int threads, AdmissionControl admission, int queueTimeout) throws Exception {
+        executor = new ScoringExecutor("test", threads, 0, ScoringExecutor.RejectionPolicy.ABORT, ScoringExecutor.Affinity.NONE);
+        server = new KryoScoringServer(0, executor, 1, new SlowScorer(), MetricsRegistry.NONE, null, KryoBufferConfig.DEFAULT, admission);
+        server.start();
+        List<InetSocketAddress> endpoints = Collections.singletonList(InetSocketAddress.createUnresolved("localhost", server.getPort()));
+        client = new KryoScorer(endpoints, KryoPoolConfig.DEFAULT, queueTimeout);
+    }
+
+    /**
+     * Scores each instance with its first field after {@link #SCORE_MILLIS}.
+     */
+    private static class SlowScorer implements Scorer {
+        @Override
+        public double[] score(UUID modelId, Object[] scorable) throws FOSException {
+            try {
+                Thread.sleep(SCORE_MILLIS);
+            } catch (InterruptedException e) {
+                throw new FOSException(e);
+            }
+            return new double[]{(Double) scorable[0]};
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
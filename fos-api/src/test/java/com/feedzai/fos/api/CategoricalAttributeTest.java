@@ -24,12 +24,16 @@ package com.feedzai.fos.api;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.feedzai.fos.common.kryo.ColumnarInstance;
+import org.apache.commons.lang3.SerializationUtils;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -98,6 +102,16 @@ public class CategoricalAttributeTest {
         assertTrue("Faulty categorical value must be replaced", Double.isNaN(field.parseOrMissing("non_existant")));
     }
 
+    @Test
+    public void testUnparsableCount() throws Exception {
+        field.parseOrMissing("1");
+        field.parseOrMissing(Attribute.MISSING_VALUE_STR);
+        field.parseOrMissing("non_existant");
+        field.parseOrMissing("other");
+
+        assertEquals(2, field.getUnparsableCount());
+    }
+
     @Test(expected = NullPointerException.class)
     public void testSetNullValue() throws Exception {
         assertTrue("Null is not accepted", Double.isNaN(field.parseOrMissing(null)));
@@ -108,6 +122,40 @@ public class CategoricalAttributeTest {
         assertTrue("Missing value must be handled as missing", Double.isNaN(field.parseOrMissing(Attribute.MISSING_VALUE_STR)));
     }
 
+    @Test
+    public void testIndexOf() throws Exception {
+        assertEquals(0, field.indexOf("1"));
+        assertEquals(1, field.indexOf(2));
+        assertEquals(-1, field.indexOf("3"));
+        assertEquals(1, field.indexOf(new ColumnarInstance.CategoricalIndex(1)));
+        assertEquals(-1, field.indexOf(new ColumnarInstance.CategoricalIndex(2)));
+        assertEquals(-1, field.indexOf(new ColumnarInstance.CategoricalIndex(-5)));
+    }
+
+    @Test
+    public void testHighCardinality() throws Exception {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            values.add("merchant-" + i);
+        }
+        Collections.shuffle(values, new Random(7));
+        field = new CategoricalAttribute(name, values);
+
+        List<String> sorted = field.getCategoricalInstances();
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals("Index must be the position in the sorted values", i, field.indexOf(sorted.get(i)));
+        }
+        assertEquals(-1, field.indexOf("merchant-5000"));
+    }
+
+    @Test
+    public void testJavaSerialization() throws Exception {
+        CategoricalAttribute deserialized = SerializationUtils.clone(field);
+
+        assertEquals(field, deserialized);
+        assertEquals(1, deserialized.indexOf("2"));
+    }
+
     @Test
     public void testJackson() throws Exception {
         List<Attribute> attributes = new ArrayList<>();
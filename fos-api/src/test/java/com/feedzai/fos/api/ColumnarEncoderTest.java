@@ -0,0 +1,115 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.feedzai.fos.common.kryo.ColumnarInstance;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the columnar instance encoding.
+ */
+public class ColumnarEncoderTest {
+    private List<Attribute> attributes;
+    private ColumnarEncoder encoder;
+
+    @Before
+    public void setup() {
+        attributes = Arrays.<Attribute>asList(
+                new NumericAttribute("amount"),
+                new CategoricalAttribute("country", Arrays.asList("PT", "ES", "FR")),
+                new NumericAttribute("age"),
+                new CategoricalAttribute("card", Arrays.asList("debit", "credit")));
+        encoder = new ColumnarEncoder(attributes);
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        ColumnarInstance instance = encoder.encode(new Object[]{10.5, "PT", "?", "unknown"});
+
+        assertEquals(4, instance.size());
+        assertFalse(instance.isCategorical(0));
+        assertTrue(instance.isCategorical(1));
+        assertEquals(10.5, instance.getNumeric(0), 0.001);
+        // categorical values are sorted
+        assertEquals(2, instance.getCategorical(1));
+        assertTrue("Missing value must be handled as missing", instance.isMissing(2));
+        assertTrue("Faulty categorical value must be handled as missing", instance.isMissing(3));
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        ColumnarInstance instance = encoder.newInstance();
+
+        encoder.encode(new Object[]{1.0, "?", 2.0, "debit"}, instance);
+        assertTrue(instance.isMissing(1));
+
+        encoder.encode(new Object[]{1.0, "ES", null, "debit"}, instance);
+        assertFalse(instance.isMissing(1));
+        assertEquals(0, instance.getCategorical(1));
+        assertTrue("Null must be handled as missing", instance.isMissing(2));
+    }
+
+    @Test
+    public void testParseObjects() throws Exception {
+        Object[] original = {10.5, "FR", "?", "credit"};
+        Object[] objects = encoder.encode(original).toObjects();
+
+        for (int i = 0; i < attributes.size(); i++) {
+            double expected = attributes.get(i).parseOrMissing(original[i]);
+            double actual = attributes.get(i).parseOrMissing(objects[i]);
+            assertEquals(Double.isNaN(expected), Double.isNaN(actual));
+            if (!Double.isNaN(expected)) {
+                assertEquals(expected, actual, 0.001);
+            }
+        }
+    }
+
+    @Test
+    public void testKryo() throws Exception {
+        ColumnarInstance instance = encoder.encode(new Object[]{10.5, "FR", "?", "credit"});
+
+        Kryo kryo = new Kryo();
+        Output output = new Output(16, -1);
+        kryo.writeObject(output, instance);
+        ColumnarInstance read = kryo.readObject(new Input(output.toBytes()), ColumnarInstance.class);
+
+        assertArrayEquals(instance.toObjects(), read.toObjects());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongSize() throws Exception {
+        encoder.encode(new Object[]{10.5});
+    }
+}
@@ -0,0 +1,60 @@
+package com.feedzai.fos.api;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link DecimalParser}.
+ */
+public class DecimalParserTest {
+
+    @Test
+    public void testSameAsParseDouble() {
+        String[] values = {"0", "-0", "1", "+1", "-213.3", "456.456", "0.1", ".5", "5.", "1e10", "1.5E-7", "-2.5e+3",
+                "3.14159d", "2f", " 42 ", "123456789012345", "1234567890123456789012", "0.000000000000000000001",
+                "9007199254740993", "1e308", "1e309", "4.9e-324", "1e-400", "NaN", "Infinity", "-Infinity", "0x1p3", "-0X1.8P1"};
+
+        for (String value : values) {
+            assertSame(value, Double.parseDouble(value), DecimalParser.parse(value));
+        }
+    }
+
+    @Test
+    public void testRandomValues() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            double value = i % 2 == 0 ? random.nextDouble() * Math.pow(10, random.nextInt(40) - 20) : Double.longBitsToDouble(random.nextLong());
+            String text = Double.toString(value);
+            assertSame(text, value, DecimalParser.parse(text));
+
+            String rounded = String.format("%.4f", value * 1000);
+            assertSame(rounded, Double.parseDouble(rounded), DecimalParser.parse(rounded));
+        }
+    }
+
+    @Test
+    public void testInvalidValues() {
+        String[] values = {"", " ", "-", "+", ".", "e5", "1e", "1e+", "1.2.3", "1,5", "abc", "1a", "--1", "0x", "0xg", "nan", "Inf", "1 2"};
+
+        for (String value : values) {
+            assertTrue(value, Double.isNaN(DecimalParser.parse(value)));
+        }
+    }
+
+    @Test
+    public void testIsNaN() {
+        assertTrue(DecimalParser.isNaN("NaN"));
+        assertTrue(DecimalParser.isNaN(" -NaN "));
+        assertFalse(DecimalParser.isNaN("nan"));
+        assertFalse(DecimalParser.isNaN("abc"));
+    }
+
+    private static void assertSame(String text, double expected, double actual) {
+        assertEquals(text, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+    }
+}
@@ -0,0 +1,81 @@
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.common.kryo.ColumnarInstance;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link FeatureEncoder}.
+ */
+public class FeatureEncoderTest {
+    private static final double EPS = 1e-9;
+
+    private List<Attribute> attributes;
+    private FeatureEncoder encoder;
+
+    @Before
+    public void setup() {
+        attributes = Arrays.<Attribute>asList(
+                new NumericAttribute("amount"),
+                new CategoricalAttribute("country", Arrays.asList("PT", "ES", "FR")),
+                new NumericAttribute("count"));
+        encoder = new FeatureEncoder(attributes);
+    }
+
+    @Test
+    public void testEncode() {
+        double[] features = encoder.encode(new Object[]{12.5, "PT", 3});
+
+        assertArrayEquals(new double[]{12.5, 2, 3}, features, EPS);
+    }
+
+    @Test
+    public void testSameAsParseOrMissing() {
+        Object[][] instances = {
+                {"12.5", "ES", "-3"},
+                {1L, "FR", new BigDecimal("1.25")},
+                {0.1f, "?", "?"},
+                {"1e3", "IT", "not a number"},
+                {"NaN", "PT", " 7 "}
+        };
+
+        double[] features = new double[encoder.size()];
+        for (Object[] instance : instances) {
+            encoder.encode(instance, features);
+            for (int i = 0; i < instance.length; i++) {
+                assertEquals(Arrays.toString(instance), attributes.get(i).parseOrMissing(instance[i]), features[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testMissingValues() {
+        double[] features = encoder.encode(new Object[]{null, "unknown", "?"});
+
+        for (double feature : features) {
+            assertTrue(Double.isNaN(feature));
+        }
+    }
+
+    @Test
+    public void testCategoricalIndex() {
+        ColumnarInstance.CategoricalIndex known = new ColumnarInstance.CategoricalIndex(1);
+        ColumnarInstance.CategoricalIndex unknown = new ColumnarInstance.CategoricalIndex(3);
+
+        assertEquals(1, encoder.encode(new Object[]{1.0, known, 1.0})[1], EPS);
+        assertTrue(Double.isNaN(encoder.encode(new Object[]{1.0, unknown, 1.0})[1]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfFields() {
+        encoder.encode(new Object[]{1.0, "PT"});
+    }
+}
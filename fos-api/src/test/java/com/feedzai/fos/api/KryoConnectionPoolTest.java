@@ -0,0 +1,135 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.common.kryo.KryoFrames;
+import com.feedzai.fos.common.kryo.ScoringRequestEnvelope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link KryoConnectionPool}.
+ */
+public class KryoConnectionPoolTest {
+    private KryoScoringServer server;
+    private KryoConnectionPool pool;
+
+    @Before
+    public void setup() throws Exception {
+        server = new KryoScoringServer(0, 2, 1, new KryoScoringServerTest.SumScorer());
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.close();
+        }
+        server.close();
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        pool = new KryoConnectionPool("localhost", server.getPort(), new KryoPoolConfig(0, 4, 0, 100, 3));
+
+        assertEquals(3, pool.size());
+        assertEquals(3, pool.idle());
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        pool = new KryoConnectionPool("localhost", server.getPort(), new KryoPoolConfig(0, 4, 0, 100, 0));
+
+        KryoConnection con = pool.borrow();
+        pool.release(con);
+
+        assertSame(con, pool.borrow());
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testDiscardClosed() throws Exception {
+        pool = new KryoConnectionPool("localhost", server.getPort(), new KryoPoolConfig(0, 4, 0, 100, 0));
+
+        KryoConnection con = pool.borrow();
+        con.close();
+        pool.release(con);
+
+        assertEquals(0, pool.size());
+        assertNotSame(con, pool.borrow());
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception {
+        pool = new KryoConnectionPool("localhost", server.getPort(), new KryoPoolConfig(1, 4, 1, 100, 0));
+
+        KryoConnection first = pool.borrow();
+        KryoConnection second = pool.borrow();
+        pool.release(first);
+        Thread.sleep(10);
+        pool.release(second);
+
+        // the oldest idle connection is closed, the minimum is kept
+        assertEquals(1, pool.size());
+        assertSame(second, pool.borrow());
+    }
+
+    @Test
+    public void testIdleTimeoutKeepsPendingRequests() throws Exception {
+        pool = new KryoConnectionPool("localhost", server.getPort(), new KryoPoolConfig(0, 4, 1, 100, 0));
+
+        KryoConnection first = pool.borrow();
+        KryoConnection second = pool.borrow();
+        CompletableFuture<List<double[]>> response = first.send(KryoFrames.SCORE,
+                new ScoringRequestEnvelope(Arrays.asList(UUID.randomUUID()), new Object[]{KryoScoringServerTest.SumScorer.SLOW}), null);
+        pool.release(first);
+        Thread.sleep(10);
+        pool.release(second);
+
+        // the oldest idle connection is still waiting for a response
+        assertEquals(2, pool.size());
+        assertTrue(first.isOpen());
+        assertEquals(1, response.get(5, TimeUnit.SECONDS).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMaxConnections() throws Exception {
+        pool = new KryoConnectionPool("localhost", server.getPort(), new KryoPoolConfig(0, 1, 0, 10, 0));
+
+        pool.borrow();
+        pool.borrow();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.common.kryo.KryoFrames;
+import com.feedzai.fos.common.kryo.ScoringRequestEnvelope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the load balancing and failover of the {@link KryoScorer} among several scoring servers.
+ */
+public class KryoScorerTest {
+    /**
+     * Epsilon for comparing doubles.
+     */
+    private static final double EPS = 0.001;
+
+    private KryoScoringServer first;
+    private KryoScoringServer second;
+    private CountingScorer firstScorer;
+    private CountingScorer secondScorer;
+    private KryoScorer client;
+
+    @Before
+    public void setup() throws Exception {
+        firstScorer = new CountingScorer();
+        secondScorer = new CountingScorer();
+        first = new KryoScoringServer(0, 2, 1, firstScorer);
+        second = new KryoScoringServer(0, 2, 1, secondScorer);
+        first.start();
+        second.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testBalance() throws Exception {
+        client = new KryoScorer(Arrays.asList(address(first.getPort()), address(second.getPort())), KryoPoolConfig.DEFAULT);
+
+        for (int i = 0; i < 200; i++) {
+            assertArrayEquals(new double[]{i, 0.0}, client.score(UUID.randomUUID(), new Object[]{(double) i}), EPS);
+        }
+
+        assertTrue("Both servers must be used", firstScorer.count.get() > 0 && secondScorer.count.get() > 0);
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        int unused;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            unused = socket.getLocalPort();
+        }
+        client = new KryoScorer(Arrays.asList(address(unused), address(first.getPort())), KryoPoolConfig.DEFAULT);
+
+        for (int i = 0; i < 50; i++) {
+            assertArrayEquals(new double[]{i, 0.0}, client.score(UUID.randomUUID(), new Object[]{(double) i}), EPS);
+        }
+    }
+
+    @Test
+    public void testServerStopped() throws Exception {
+        client = new KryoScorer(Arrays.asList(address(first.getPort()), address(second.getPort())), KryoPoolConfig.DEFAULT);
+        for (int i = 0; i < 20; i++) {
+            client.score(UUID.randomUUID(), new Object[]{1.0});
+        }
+
+        second.close();
+
+        for (int i = 0; i < 50; i++) {
+            assertArrayEquals(new double[]{i, 0.0}, client.score(UUID.randomUUID(), new Object[]{(double) i}), EPS);
+        }
+    }
+
+    @Test
+    public void testLostConnectionIsOneFailure() throws Exception {
+        KryoEndpoint endpoint = new KryoEndpoint("localhost", first.getPort(), new KryoPoolConfig(0, 1, 0, 1000, 0));
+        try {
+            List<CompletableFuture<List<double[]>>> responses = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                responses.add(endpoint.send(KryoFrames.SCORE,
+                        new ScoringRequestEnvelope(Arrays.asList(UUID.randomUUID()), new Object[]{KryoScoringServerTest.SumScorer.SLOW}), null));
+            }
+
+            first.close();
+            for (CompletableFuture<List<double[]>> response : responses) {
+                try {
+                    response.get(5, TimeUnit.SECONDS);
+                    fail("The server was closed");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IOException);
+                }
+            }
+
+            // the requests were pipelined on a single connection, its loss is the first failure of the server
+            assertTrue(endpoint.getDownUntil() <= System.currentTimeMillis() + KryoEndpoint.INITIAL_BACKOFF_MILLIS);
+        } finally {
+            endpoint.close();
+        }
+    }
+
+    private static InetSocketAddress address(int port) {
+        return InetSocketAddress.createUnresolved("localhost", port);
+    }
+
+    /**
+     * Counts the scored instances.
+     */
+    static class CountingScorer extends KryoScoringServerTest.SumScorer {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public List<double[]> score(List<UUID> modelIds, Object[] scorable) throws FOSException {
+            count.incrementAndGet();
+            return super.score(modelIds, scorable);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.feedzai.fos.common.kryo.DirectBufferPool;
+import com.feedzai.fos.common.kryo.KryoFactory;
+import com.feedzai.fos.common.kryo.KryoFrames;
+import com.feedzai.fos.common.kryo.PooledByteBufferOutput;
+import com.feedzai.fos.common.kryo.ScoringRequestEnvelope;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the {@link KryoScoringServerTest} with direct buffers on both ends, starting small so that they must grow.
+ */
+public class KryoScoringServerDirectBuffersTest extends KryoScoringServerTest {
+    @Override
+    protected KryoBufferConfig buffers() {
+        return new KryoBufferConfig(true, 64);
+    }
+
+    @Test
+    public void testChannelFrames() throws Exception {
+        Pipe pipe = Pipe.open();
+        PooledByteBufferOutput output = new PooledByteBufferOutput(16);
+        Object[] instance = new Object[2000];
+        Arrays.fill(instance, 1.5);
+
+        KryoFrames.begin(output, KryoFrames.SCORE, 42);
+        KryoFactory.create().writeObject(output, new ScoringRequestEnvelope(Arrays.asList(UUID.randomUUID()), instance));
+        KryoFrames.end(output);
+        assertEquals(output.position() - KryoFrames.HEADER_SIZE, output.getByteBuffer().getInt(0));
+
+        ByteBufferInput input = new ByteBufferInput(DirectBufferPool.acquire(16));
+        Thread writer = new Thread(() -> {
+            try {
+                KryoFrames.write(output, pipe.sink());
+                pipe.sink().close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+
+        assertTrue(KryoFrames.read(pipe.source(), input));
+        assertTrue(input.getByteBuffer().isDirect());
+        assertEquals(KryoFrames.SCORE, KryoFrames.readType(input));
+        assertEquals(42, KryoFrames.readRequestId(input));
+        assertArrayEquals(instance, KryoFactory.create().readObject(input, ScoringRequestEnvelope.class).getInstance());
+        assertFalse(KryoFrames.read(pipe.source(), input));
+        writer.join();
+
+        DirectBufferPool.release(input.getByteBuffer());
+        DirectBufferPool.release(output.getByteBuffer());
+    }
+
+    @Test
+    public void testBufferPool() throws Exception {
+        ByteBuffer buffer = DirectBufferPool.acquire(1500);
+        assertTrue(buffer.isDirect());
+        assertEquals(2048, buffer.capacity());
+        buffer.position(10);
+        DirectBufferPool.release(buffer);
+
+        ByteBuffer reused = DirectBufferPool.acquire(2000);
+        assertTrue(reused == buffer);
+        assertEquals(0, reused.position());
+        DirectBufferPool.release(reused);
+    }
+}
@@ -0,0 +1,571 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.feedzai.fos.api.metrics.JmxMetricsRegistry;
+import com.feedzai.fos.api.metrics.MetricsRegistry;
+import com.feedzai.fos.api.metrics.Phase;
+import com.feedzai.fos.api.metrics.Transport;
+import com.feedzai.fos.common.kryo.ColumnarInstance;
+import com.feedzai.fos.common.kryo.KryoFactory;
+import com.feedzai.fos.common.kryo.KryoFrames;
+import com.feedzai.fos.common.kryo.ModelSchema;
+import com.feedzai.fos.common.kryo.ScoreBuffer;
+import com.feedzai.fos.common.kryo.ScoringRequestEnvelope;
+import com.feedzai.fos.common.kryo.UUIDRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServerFactory;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@link KryoScoringServer} with the {@link KryoScorer} client.
+ */
+public class KryoScoringServerTest {
+    /**
+     * Epsilon for comparing doubles.
+     */
+    private static final double EPS = 0.001;
+
+    private KryoScoringServer server;
+    private KryoScorer client;
+
+    @Before
+    public void setup() throws Exception {
+        server = new KryoScoringServer(0, 4, 2, new SumScorer(), MetricsRegistry.NONE, null, buffers());
+        server.start();
+        client = new KryoScorer("localhost", server.getPort(), new KryoPoolConfig(0, 16, 60000, 5000, 0, buffers()));
+    }
+
+    /**
+     * Gets the buffer settings of the server and the client.
+     *
+     * @return the buffer settings
+     */
+    protected KryoBufferConfig buffers() {
+        return KryoBufferConfig.DEFAULT;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testScore() throws Exception {
+        List<UUID> models = Arrays.asList(UUID.randomUUID(), UUID.randomUUID());
+
+        List<double[]> scores = client.score(models, new Object[]{1.0, 2.0, "?"});
+
+        assertEquals(models.size(), scores.size());
+        assertArrayEquals(new double[]{3.0, 0.0}, scores.get(0), EPS);
+        assertArrayEquals(new double[]{3.0, 1.0}, scores.get(1), EPS);
+    }
+
+    @Test
+    public void testLargeRequest() throws Exception {
+        Object[] instance = new Object[10000];
+        Arrays.fill(instance, 1.0);
+
+        List<double[]> scores = client.score(Arrays.asList(UUID.randomUUID()), instance);
+
+        assertArrayEquals(new double[]{10000.0, 0.0}, scores.get(0), EPS);
+    }
+
+    @Test
+    public void testMaxFrameSize() throws Exception {
+        KryoBufferConfig buffers = new KryoBufferConfig(buffers().isDirect(), 64, 4096);
+        KryoScoringServer limited = new KryoScoringServer(0, 1, 1, new SumScorer(), MetricsRegistry.NONE, null, buffers);
+        limited.start();
+        KryoScorer limitedClient = new KryoScorer("localhost", limited.getPort());
+        try {
+            List<UUID> models = Arrays.asList(UUID.randomUUID());
+            Object[] instance = new Object[100];
+            Arrays.fill(instance, 1.0);
+            // frames larger than the initial buffer are still read, and its buffer is given back afterwards
+            for (int i = 0; i < 3; i++) {
+                assertArrayEquals(new double[]{100.0, 0.0}, limitedClient.score(models, instance).get(0), EPS);
+                assertArrayEquals(new double[]{1.0, 0.0}, limitedClient.score(models, new Object[]{1.0}).get(0), EPS);
+            }
+
+            Object[] large = new Object[1000];
+            Arrays.fill(large, 1.0);
+            try {
+                limitedClient.score(models, large);
+                fail("The request is larger than the maximum frame size");
+            } catch (FOSException e) {
+                // the server closed the connection
+            }
+        } finally {
+            limitedClient.close();
+            limited.close();
+        }
+    }
+
+    @Test
+    public void testOversizedRequest() throws Exception {
+        KryoBufferConfig buffers = new KryoBufferConfig(buffers().isDirect(), 64, 4096);
+        KryoScorer limitedClient = new KryoScorer("localhost", server.getPort(), new KryoPoolConfig(0, 1, 60000, 5000, 0, buffers));
+        try {
+            List<UUID> models = Arrays.asList(UUID.randomUUID());
+            Object[] large = new Object[1000];
+            Arrays.fill(large, 1.0);
+            try {
+                limitedClient.score(models, large);
+                fail("The request is larger than the maximum frame size");
+            } catch (FOSException e) {
+                assertTrue(e.getMessage().contains("maximum frame size"));
+            }
+
+            // the request was never sent, and the model id it registered was rolled back
+            assertArrayEquals(new double[]{1.0, 0.0}, limitedClient.score(models, new Object[]{1.0}).get(0), EPS);
+        } finally {
+            limitedClient.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentClients() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<double[]>>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final double value = i;
+                futures.add(executor.submit(new Callable<List<double[]>>() {
+                    @Override
+                    public List<double[]> call() throws Exception {
+                        return client.score(Arrays.asList(UUID.randomUUID()), new Object[]{value});
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                assertArrayEquals(new double[]{i, 0.0}, futures.get(i).get().get(0), EPS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        JmxMetricsRegistry metrics = new JmxMetricsRegistry(MBeanServerFactory.newMBeanServer());
+        KryoScoringServer instrumented = new KryoScoringServer(0, 2, 1, new SumScorer(), metrics);
+        instrumented.start();
+        KryoScorer instrumentedClient = new KryoScorer("localhost", instrumented.getPort());
+        try {
+            UUID model = UUID.randomUUID();
+            instrumentedClient.score(Arrays.asList(model), new Object[]{1.0});
+            try {
+                instrumentedClient.score(Arrays.asList(model), new Object[]{SumScorer.FAIL});
+                fail("Scoring should have failed");
+            } catch (FOSException e) {
+                // expected
+            }
+
+            JmxMetricsRegistry.ModelMetrics modelMetrics = metrics.get(Transport.KRYO, model);
+            assertEquals(2, modelMetrics.getRequests());
+            assertEquals(1, modelMetrics.getErrors());
+            assertEquals(0, modelMetrics.getInFlight());
+            assertEquals(2, modelMetrics.getLatency(Phase.DESERIALIZE).getCount());
+            assertEquals(2, modelMetrics.getLatency(Phase.SCORE).getCount());
+            assertEquals(1, modelMetrics.getLatency(Phase.SERIALIZE).getCount());
+            assertEquals(0, metrics.get(Transport.RMI, model).getRequests());
+        } finally {
+            instrumentedClient.close();
+            instrumented.close();
+        }
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        List<UUID> models = Arrays.asList(UUID.randomUUID(), UUID.randomUUID());
+        List<Object[]> instances = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            instances.add(new Object[]{(double) i, "?"});
+        }
+
+        List<double[]> scores = client.score(models, instances);
+
+        // model by model
+        assertEquals(models.size() * instances.size(), scores.size());
+        for (int m = 0; m < models.size(); m++) {
+            for (int i = 0; i < instances.size(); i++) {
+                assertArrayEquals(new double[]{i, 0.0}, scores.get(m * instances.size() + i), EPS);
+            }
+        }
+    }
+
+    @Test
+    public void testLargeBatch() throws Exception {
+        List<Object[]> instances = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            instances.add(new Object[]{(double) i, 1.0});
+        }
+
+        List<double[]> scores = client.score(UUID.randomUUID(), instances);
+
+        assertEquals(instances.size(), scores.size());
+        for (int i = 0; i < scores.size(); i++) {
+            assertArrayEquals(new double[]{i + 1.0, 0.0}, scores.get(i), EPS);
+        }
+    }
+
+    @Test
+    public void testColumnar() throws Exception {
+        List<UUID> models = Arrays.asList(UUID.randomUUID(), UUID.randomUUID());
+        ColumnarEncoder encoder = new ColumnarEncoder(Arrays.<Attribute>asList(
+                new NumericAttribute("a"),
+                new CategoricalAttribute("b", Arrays.asList("x", "y")),
+                new NumericAttribute("c")));
+
+        List<double[]> scores = client.score(models, encoder.encode(new Object[]{1.0, "y", 2.5}));
+
+        assertEquals(models.size(), scores.size());
+        assertArrayEquals(new double[]{3.5, 0.0}, scores.get(0), EPS);
+        assertArrayEquals(new double[]{3.5, 1.0}, scores.get(1), EPS);
+    }
+
+    @Test
+    public void testSchema() throws Exception {
+        UUID model = UUID.randomUUID();
+        Map<UUID, ModelConfig> models = new HashMap<>();
+        models.put(model, new ModelConfig(Arrays.<Attribute>asList(
+                new NumericAttribute("a"),
+                new CategoricalAttribute("b", Arrays.asList("x", "y"))), new HashMap<String, String>()));
+        ModelSchemaCache schemas = new ModelSchemaCache(listing(models));
+        KryoScoringServer published = new KryoScoringServer(0, 2, 1, new SumScorer(), MetricsRegistry.NONE, schemas);
+        published.start();
+        KryoScorer publishedClient = new KryoScorer("localhost", published.getPort());
+        try {
+            ModelSchema schema = publishedClient.getSchema(model);
+            assertEquals(model, schema.getModelId());
+            assertEquals(schemas.get(model).getVersion(), schema.getVersion());
+            assertEquals(2, schema.size());
+            assertEquals("a", schema.getName(0));
+            assertFalse(schema.isCategorical(0));
+            assertArrayEquals(new String[]{"x", "y"}, schema.getCategories(1));
+
+            ColumnarInstance instance = new ColumnarEncoder(schema).encode(new Object[]{1.5, "y"});
+            assertEquals(schema.getVersion(), instance.getSchemaVersion());
+            assertArrayEquals(new double[]{1.5, 0.0}, publishedClient.score(Arrays.asList(model), instance).get(0), EPS);
+
+            // the model is reconfigured with another dictionary, instances encoded with the old one are rejected
+            models.put(model, new ModelConfig(Arrays.<Attribute>asList(
+                    new NumericAttribute("a"),
+                    new CategoricalAttribute("b", Arrays.asList("w", "x", "y"))), new HashMap<String, String>()));
+            schemas.invalidate(model);
+            try {
+                publishedClient.score(Arrays.asList(model), instance);
+                fail("Outdated schema should have been rejected");
+            } catch (FOSException e) {
+                assertTrue(e.getMessage().contains("outdated schema"));
+            }
+
+            instance = new ColumnarEncoder(publishedClient.getSchema(model)).encode(new Object[]{1.5, "y"});
+            assertArrayEquals(new double[]{1.5, 0.0}, publishedClient.score(Arrays.asList(model), instance).get(0), EPS);
+
+            try {
+                publishedClient.getSchema(UUID.randomUUID());
+                fail("Unknown models have no schema");
+            } catch (FOSException e) {
+                // expected
+            }
+        } finally {
+            publishedClient.close();
+            published.close();
+        }
+    }
+
+    @Test(expected = FOSException.class)
+    public void testSchemaNotPublished() throws Exception {
+        client.getSchema(UUID.randomUUID());
+    }
+
+    @Test
+    public void testScoreBuffer() throws Exception {
+        List<UUID> models = Arrays.asList(UUID.randomUUID(), UUID.randomUUID());
+        ScoreBuffer scores = new ScoreBuffer(1, 1);
+
+        for (int i = 0; i < 10; i++) {
+            client.score(models, new Object[]{(double) i}, scores);
+
+            assertEquals(models.size(), scores.size());
+            assertArrayEquals(new double[]{i, 0.0}, scores.toArray(0), EPS);
+            assertArrayEquals(new double[]{i, 1.0}, scores.toArray(1), EPS);
+            assertEquals(i, scores.get(1, 0), EPS);
+        }
+    }
+
+    @Test
+    public void testScoreAsync() throws Exception {
+        UUID model = UUID.randomUUID();
+        List<CompletableFuture<double[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(client.scoreAsync(model, new Object[]{(double) i}));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertArrayEquals(new double[]{i, 0.0}, futures.get(i).get(), EPS);
+        }
+    }
+
+    @Test
+    public void testScoreAsyncError() throws Exception {
+        CompletableFuture<List<double[]>> future = client.scoreAsync(Arrays.asList(UUID.randomUUID()), new Object[]{SumScorer.FAIL});
+
+        try {
+            future.get();
+            fail("Scoring should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FOSException);
+        }
+    }
+
+    @Test
+    public void testScoringErrorKeepsConnection() throws Exception {
+        List<UUID> models = Arrays.asList(UUID.randomUUID());
+
+        try {
+            client.score(models, new Object[]{SumScorer.FAIL});
+            fail("Scoring should have failed");
+        } catch (FOSException e) {
+            assertTrue(e.getMessage().contains(SumScorer.FAIL));
+        }
+
+        assertArrayEquals(new double[]{2.0, 0.0}, client.score(models, new Object[]{2.0}).get(0), EPS);
+    }
+
+    @Test
+    public void testOutOfOrderResponses() throws Exception {
+        Kryo kryo = KryoFactory.create();
+        Output output = new Output(1024, -1);
+        Input input = new Input(1024);
+        List<UUID> models = Arrays.asList(UUID.randomUUID());
+
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            KryoFrames.begin(output, KryoFrames.SCORE, 1);
+            kryo.writeObject(output, new ScoringRequestEnvelope(models, new Object[]{1.0, SumScorer.SLOW}));
+            KryoFrames.end(output);
+            KryoFrames.write(output, os);
+
+            KryoFrames.begin(output, KryoFrames.SCORE, 2);
+            kryo.writeObject(output, new ScoringRequestEnvelope(models, new Object[]{2.0}));
+            KryoFrames.end(output);
+            KryoFrames.write(output, os);
+
+            // the fast request is answered while the slow one is still being scored
+            int[] ids = new int[2];
+            double[] sums = new double[2];
+            for (int i = 0; i < ids.length; i++) {
+                assertTrue(KryoFrames.read(is, input));
+                assertEquals(KryoFrames.SCORES, KryoFrames.readType(input));
+                ids[i] = KryoFrames.readRequestId(input);
+                sums[i] = KryoFrames.readScores(input).get(0)[0];
+            }
+
+            assertArrayEquals(new int[]{2, 1}, ids);
+            assertArrayEquals(new double[]{2.0, 1.0}, sums, EPS);
+        }
+    }
+
+    @Test
+    public void testInternedModelIds() throws Exception {
+        Kryo kryo = KryoFactory.create();
+        UUIDRegistry uuids = new UUIDRegistry();
+        uuids.bindWriter(kryo);
+        Output output = new Output(1024, -1);
+        Input input = new Input(1024);
+        // UUIDs are written as two variable length longs, these take 9 bytes each
+        List<UUID> models = Arrays.asList(new UUID(Long.MAX_VALUE, Long.MIN_VALUE), new UUID(Long.MIN_VALUE, Long.MAX_VALUE));
+
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            int[] sizes = new int[3];
+            for (int i = 0; i < sizes.length; i++) {
+                KryoFrames.begin(output, KryoFrames.SCORE, i);
+                kryo.writeObject(output, new ScoringRequestEnvelope(models, new Object[]{(double) i}));
+                KryoFrames.end(output);
+                sizes[i] = output.position();
+                KryoFrames.write(output, os);
+
+                assertTrue(KryoFrames.read(is, input));
+                assertEquals(KryoFrames.SCORES, KryoFrames.readType(input));
+                assertEquals(i, KryoFrames.readRequestId(input));
+                List<double[]> scores = KryoFrames.readScores(input);
+                assertArrayEquals(new double[]{i, 0.0}, scores.get(0), EPS);
+                assertArrayEquals(new double[]{i, 1.0}, scores.get(1), EPS);
+            }
+
+            // the model ids are only sent in full in the first request
+            assertEquals(2, uuids.size());
+            assertEquals(sizes[0] - 2 * 18, sizes[1]);
+            assertEquals(sizes[1], sizes[2]);
+        }
+
+        uuids.rollback(1);
+        assertEquals(1, uuids.size());
+    }
+
+    @Test
+    public void testRegisteredClasses() throws Exception {
+        Kryo kryo = KryoFactory.create();
+        Output output = new Output(1024, -1);
+        List<UUID> models = Arrays.asList(UUID.randomUUID(), UUID.randomUUID());
+        Object[] instance = new Object[]{1.0, "a", null, 2};
+
+        kryo.writeObject(output, new ScoringRequestEnvelope(models, instance));
+        // the classes are sent as registration ids instead of names
+        assertFalse(new String(output.toBytes(), StandardCharsets.ISO_8859_1).contains("java."));
+
+        ScoringRequestEnvelope read = kryo.readObject(new Input(output.toBytes()), ScoringRequestEnvelope.class);
+        assertEquals(models, read.getUUIDs());
+        assertArrayEquals(instance, read.getInstance());
+    }
+
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        final UUID model = UUID.randomUUID();
+        List<Object[]> instances = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            instances.add(new Object[]{(double) i});
+        }
+
+        List<CompletableFuture<double[]>> futures = new ArrayList<>();
+        for (Object[] instance : instances) {
+            // all the instances are written before the first response is read
+            futures.add(client.scoreAsync(model, instance));
+        }
+        List<double[]> scores = new ArrayList<>();
+        for (CompletableFuture<double[]> future : futures) {
+            scores.add(future.get());
+        }
+
+        assertEquals(instances.size(), scores.size());
+        for (int i = 0; i < scores.size(); i++) {
+            assertArrayEquals(new double[]{i, 0.0}, scores.get(i), EPS);
+        }
+    }
+
+    /**
+     * Creates a manager that only lists the given models.
+     *
+     * @param models the models
+     * @return the manager
+     */
+    private static Manager listing(Map<UUID, ModelConfig> models) {
+        return (Manager) Proxy.newProxyInstance(Manager.class.getClassLoader(), new Class<?>[]{Manager.class}, (proxy, method, args) -> {
+            if (method.getName().equals("listModels")) {
+                return models;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    /**
+     * Scores each model with the sum of the numeric fields and the position of the model in the request.
+     * <p/>
+     * Instances holding {@link #FAIL} cannot be scored, instances holding {@link #SLOW} take a while to score.
+     */
+    static class SumScorer implements Scorer {
+        static final String FAIL = "fail";
+        static final String SLOW = "slow";
+
+        @Override
+        public List<double[]> score(List<UUID> modelIds, Object[] scorable) throws FOSException {
+            check(scorable);
+            List<double[]> scores = new ArrayList<>();
+            for (int i = 0; i < modelIds.size(); i++) {
+                scores.add(new double[]{sum(scorable), i});
+            }
+            return scores;
+        }
+
+        @Override
+        public double[] score(UUID modelId, Object[] scorable) throws FOSException {
+            check(scorable);
+            return new double[]{sum(scorable), 0};
+        }
+
+        @Override
+        public void close() throws FOSException {
+        }
+
+        private void check(Object[] scorable) throws FOSException {
+            List<Object> values = Arrays.asList(scorable);
+            if (values.contains(FAIL)) {
+                throw new FOSException("Instance marked to " + FAIL);
+            }
+            if (values.contains(SLOW)) {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    throw new FOSException(e.getMessage(), e);
+                }
+            }
+        }
+
+        private double sum(Object[] scorable) {
+            double sum = 0;
+            for (Object value : scorable) {
+                if (value instanceof Number) {
+                    sum += ((Number) value).doubleValue();
+                }
+            }
+            return sum;
+        }
+    }
+}
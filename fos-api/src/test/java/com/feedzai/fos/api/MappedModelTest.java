@@ -0,0 +1,121 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.api.util.ManagerUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedModelTest {
+    private File folder;
+    private byte[] binary;
+    private ModelDescriptor descriptor;
+
+    @Before
+    public void setup() throws Exception {
+        folder = File.createTempFile("fos-models", "");
+        folder.delete();
+        folder.mkdirs();
+
+        // spans a few chunks and ends with a partial one
+        binary = new byte[3 * MappedModel.CHUNK_SIZE + 123];
+        new Random(42).nextBytes(binary);
+        File file = new File(folder, "model.model");
+        FileUtils.writeByteArrayToFile(file, binary);
+        descriptor = new ModelDescriptor(ModelDescriptor.Format.BINARY, file.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Test
+    public void testMap() throws Exception {
+        assertArrayEquals(binary, toArray(descriptor.map()));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        MappedModel model = new MappedModel(descriptor);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(model);
+        }
+        MappedModel deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            deserialized = (MappedModel) in.readObject();
+        }
+
+        assertEquals(ModelDescriptor.Format.BINARY, deserialized.getFormat());
+        assertEquals(binary.length, deserialized.getSize());
+        assertArrayEquals(binary, toArray(deserialized.getContent()));
+        // the content of the original model was not consumed
+        assertArrayEquals(binary, toArray(model.getContent()));
+    }
+
+    @Test
+    public void testCreateModelFile() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        File mapped = ManagerUtils.createModelFile(folder, uuid, new MappedModel(descriptor));
+        File streamed = ManagerUtils.createModelFile(folder, uuid, ModelDescriptor.Format.PMML, new ByteArrayInputStream(binary));
+
+        assertEquals(folder, mapped.getParentFile());
+        assertTrue(mapped.getName().startsWith(uuid.toString()) && mapped.getName().endsWith(".model"));
+        assertTrue(streamed.getName().endsWith(".xml"));
+        assertArrayEquals(binary, FileUtils.readFileToByteArray(mapped));
+        assertArrayEquals(binary, FileUtils.readFileToByteArray(streamed));
+    }
+
+    @Test
+    public void testSlice() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(binary);
+        buffer.position(100).limit(200);
+        MappedModel model = new MappedModel(ModelDescriptor.Format.BINARY, buffer);
+
+        assertEquals(100, model.getSize());
+        assertEquals(binary[100], model.getContent().get());
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+}
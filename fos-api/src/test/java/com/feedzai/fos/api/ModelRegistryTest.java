@@ -0,0 +1,202 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModelRegistryTest {
+    private final UUID modelId = UUID.randomUUID();
+    private final List<String> retired = Collections.synchronizedList(new ArrayList<String>());
+    private final ModelRegistry<String> registry = new ModelRegistry<>((id, model) -> retired.add(model));
+
+    @Test
+    public void testSwapDrainsInFlightRequests() throws Exception {
+        registry.publish(modelId, "v1");
+        ModelRegistry.Version<String> inFlight = registry.acquire(modelId);
+
+        ModelRegistry.Version<String> v2 = registry.deploy(modelId, () -> "v2").get(10, TimeUnit.SECONDS);
+        assertEquals("v2", registry.apply(modelId, model -> model));
+        assertTrue(v2.getVersion() > inFlight.getVersion());
+
+        // the request in flight keeps scoring with the old version until it finishes
+        assertEquals("v1", inFlight.get());
+        assertFalse(inFlight.isRetired());
+        assertTrue(retired.isEmpty());
+
+        inFlight.release();
+        assertTrue(inFlight.isRetired());
+        assertEquals(Collections.singletonList("v1"), retired);
+    }
+
+    @Test
+    public void testFailedDeployKeepsCurrentVersion() throws Exception {
+        registry.publish(modelId, "v1");
+        try {
+            registry.deploy(modelId, () -> {
+                throw new IllegalStateException("corrupted");
+            }).get(10, TimeUnit.SECONDS);
+            fail("The load failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FOSException);
+        }
+        assertEquals("v1", registry.apply(modelId, model -> model));
+        assertTrue(retired.isEmpty());
+    }
+
+    @Test
+    public void testSupersededDeploy() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        ModelRegistry<String> registry = new ModelRegistry<>(command -> new Thread(command).start(), (id, model) -> retired.add(model));
+
+        CompletableFuture<ModelRegistry.Version<String>> slow = registry.deploy(modelId, () -> {
+            loading.await();
+            return "slow";
+        });
+        registry.deploy(modelId, () -> "fast").get(10, TimeUnit.SECONDS);
+        loading.countDown();
+
+        try {
+            slow.get(10, TimeUnit.SECONDS);
+            fail("The slow deploy started first");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FOSException);
+        }
+        assertEquals("fast", registry.apply(modelId, model -> model));
+        assertEquals(Collections.singletonList("slow"), retired);
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        registry.publish(modelId, "v1");
+        assertTrue(registry.getModelIds().contains(modelId));
+
+        assertTrue(registry.remove(modelId));
+        assertFalse(registry.remove(modelId));
+        assertEquals(Collections.singletonList("v1"), retired);
+        try {
+            registry.acquire(modelId);
+            fail("The model was removed");
+        } catch (FOSException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRemoveWhileDeploying() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        ModelRegistry<String> registry = new ModelRegistry<>(command -> new Thread(command).start(), (id, model) -> retired.add(model));
+        registry.publish(modelId, "v1");
+
+        CompletableFuture<ModelRegistry.Version<String>> deploy = registry.deploy(modelId, () -> {
+            loading.await();
+            return "v2";
+        });
+        assertTrue(registry.remove(modelId));
+        loading.countDown();
+
+        try {
+            deploy.get(10, TimeUnit.SECONDS);
+            fail("The model was removed while the deploy was loading");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FOSException);
+        }
+        assertFalse(registry.getModelIds().contains(modelId));
+        assertEquals(Arrays.asList("v1", "v2"), retired);
+        try {
+            registry.acquire(modelId);
+            fail("The model was removed");
+        } catch (FOSException e) {
+            // expected
+        }
+
+        // deploys that start after the removal add the model again
+        registry.deploy(modelId, () -> "v3").get(10, TimeUnit.SECONDS);
+        assertEquals("v3", registry.apply(modelId, model -> model));
+    }
+
+    @Test
+    public void testConcurrentSwaps() throws Exception {
+        final AtomicInteger live = new AtomicInteger();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final ModelRegistry<AtomicBoolean> registry = new ModelRegistry<>((id, model) -> {
+            // a retired version must never be scored again
+            model.set(false);
+            live.decrementAndGet();
+        });
+
+        live.incrementAndGet();
+        registry.publish(modelId, new AtomicBoolean(true));
+
+        Thread[] scorers = new Thread[4];
+        for (int i = 0; i < scorers.length; i++) {
+            scorers[i] = new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        registry.apply(modelId, model -> {
+                            if (!model.get()) {
+                                throw new IllegalStateException("Scored with a retired version");
+                            }
+                            return null;
+                        });
+                    }
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            });
+            scorers[i].start();
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            live.incrementAndGet();
+            registry.publish(modelId, new AtomicBoolean(true));
+        }
+        running.set(false);
+        for (Thread scorer : scorers) {
+            scorer.join();
+        }
+
+        assertEquals(null, error.get());
+        assertEquals(1, live.get());
+        registry.close();
+        assertEquals(0, live.get());
+    }
+}
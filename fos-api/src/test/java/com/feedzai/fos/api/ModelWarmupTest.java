@@ -0,0 +1,133 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ModelWarmupTest {
+    private final List<Attribute> attributes = Arrays.<Attribute>asList(
+            new NumericAttribute("amount"),
+            new CategoricalAttribute("country", Arrays.asList("pt", "es", "fr")));
+
+    @Test
+    public void testSynthesize() throws Exception {
+        List<Object[]> instances = ModelWarmup.synthesize(attributes, 100, new Random(1));
+
+        assertEquals(100, instances.size());
+        for (Object[] instance : instances) {
+            assertEquals(2, instance.length);
+            assertTrue(instance[0] instanceof Double);
+            assertTrue(Arrays.asList("pt", "es", "fr").contains(instance[1]));
+        }
+    }
+
+    @Test
+    public void testReadSamples() throws Exception {
+        File file = File.createTempFile("warmup", ".csv");
+        try {
+            Files.write(file.toPath(), "1.5, pt\n\n2,es\n3,fr\n".getBytes(StandardCharsets.UTF_8));
+
+            List<Object[]> samples = ModelWarmup.readSamples(file, 2);
+            assertEquals(2, samples.size());
+            assertArrayEquals(new Object[]{"1.5", "pt"}, samples.get(0));
+            assertArrayEquals(new Object[]{"2", "es"}, samples.get(1));
+
+            ModelWarmup warmup = new ModelWarmup(10, 5, 0.1, file);
+            assertEquals(3, warmup.instances(attributes).size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWarmupSettles() throws Exception {
+        AtomicInteger scored = new AtomicInteger();
+        ModelWarmup warmup = new ModelWarmup(1000000, 100, Double.MAX_VALUE, null);
+
+        ModelWarmup.Result result = warmup.warmup("model", (model, instance) -> {
+            scored.incrementAndGet();
+            return new double[]{0.5};
+        }, warmup.instances(attributes));
+
+        // an unbounded tolerance settles on the second round
+        assertTrue(result.isSettled());
+        assertEquals(2, result.getRounds());
+        assertEquals(200, result.getInstances());
+        assertEquals(200, scored.get());
+    }
+
+    @Test
+    public void testWarmupLimit() throws Exception {
+        ModelWarmup warmup = new ModelWarmup(250, 100, 0, null);
+
+        ModelWarmup.Result result = warmup.warmup("model", (model, instance) -> new double[]{0.5}, warmup.instances(attributes));
+        assertEquals(250, result.getInstances());
+        assertEquals(3, result.getRounds());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        Callable<String> loader = () -> "model";
+        ModelWarmup warmup = new ModelWarmup(0, 100, 0.1, null);
+
+        assertFalse(warmup.isEnabled());
+        assertSame(loader, warmup.loader(loader, attributes, (model, instance) -> new double[0]));
+    }
+
+    @Test
+    public void testModelGoesLiveOnceWarm() throws Exception {
+        final UUID modelId = UUID.randomUUID();
+        final ModelRegistry<String> registry = new ModelRegistry<>((id, model) -> {
+        });
+        final AtomicInteger visibleWhileWarming = new AtomicInteger();
+        ModelWarmup warmup = new ModelWarmup(300, 100, 0, null);
+
+        registry.deploy(modelId, warmup.loader(() -> "model", attributes, (model, instance) -> {
+            if (registry.getModelIds().contains(modelId)) {
+                visibleWhileWarming.incrementAndGet();
+            }
+            return new double[]{0.5};
+        })).get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, visibleWhileWarming.get());
+        assertEquals("model", registry.apply(modelId, model -> model));
+        registry.close();
+    }
+}
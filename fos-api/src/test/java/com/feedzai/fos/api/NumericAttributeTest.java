@@ -77,4 +77,22 @@ public class NumericAttributeTest {
         assertTrue("Missing value must be handled as missing", Double.isNaN(field.parseOrMissing(Attribute.MISSING_VALUE_STR)));
     }
 
+    @Test
+    public void testUnparsableCount() throws Exception {
+        field.parseOrMissing("NaN");
+        field.parseOrMissing(Attribute.MISSING_VALUE_STR);
+        field.parseOrMissing(12.0);
+        assertEquals("Only unparsable values must be counted", 0, field.getUnparsableCount());
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue("Unparsable value must be replaced", Double.isNaN(field.parseOrMissing("abc" + i)));
+        }
+        assertEquals(1000, field.getUnparsableCount());
+    }
+
+    @Test(expected = FOSException.class)
+    public void testParseThrows() throws Exception {
+        field.parse("abc");
+    }
+
 }
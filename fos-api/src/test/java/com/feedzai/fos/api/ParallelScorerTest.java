@@ -0,0 +1,217 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import com.feedzai.fos.common.kryo.ScoreBuffer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelScorerTest {
+    private static final long MODEL_MILLIS = 100;
+
+    private final List<UUID> modelIds = new ArrayList<>();
+    private final Map<UUID, Integer> indexes = new ConcurrentHashMap<>();
+    private final AtomicInteger sequentialRequests = new AtomicInteger();
+    private final SlowScorer slow = new SlowScorer();
+    private ParallelScorer scorer;
+
+    public ParallelScorerTest() {
+        for (int i = 0; i < 8; i++) {
+            UUID modelId = UUID.randomUUID();
+            modelIds.add(modelId);
+            indexes.put(modelId, i);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (scorer != null) {
+            scorer.close();
+        }
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        scorer = new ParallelScorer(slow, 8, 4, 0);
+
+        long start = System.nanoTime();
+        List<double[]> scores = scorer.score(modelIds, new Object[]{1.0});
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(modelIds.size(), scores.size());
+        for (int i = 0; i < scores.size(); i++) {
+            assertEquals(i, scores.get(i)[0], 0);
+        }
+        assertTrue("Took " + elapsed + " ms", elapsed < MODEL_MILLIS * modelIds.size() / 2);
+        assertEquals(0, sequentialRequests.get());
+
+        ScoreBuffer buffer = new ScoreBuffer();
+        scorer.score(modelIds, new Object[]{1.0}, buffer);
+        assertEquals(modelIds.size(), buffer.size());
+        assertEquals(7, buffer.get(7, 0), 0);
+    }
+
+    @Test
+    public void testSequentialBelowThreshold() throws Exception {
+        scorer = new ParallelScorer(slow, 8, 4, 0);
+
+        List<double[]> scores = scorer.score(modelIds.subList(0, 3), new Object[]{1.0});
+        assertEquals(3, scores.size());
+        assertEquals(2, scores.get(2)[0], 0);
+        assertEquals(1, sequentialRequests.get());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        scorer = new ParallelScorer(slow, 8, 4, 0);
+
+        long start = System.nanoTime();
+        try {
+            scorer.score(modelIds, new Object[]{1.0}, MODEL_MILLIS / 2, TimeUnit.MILLISECONDS);
+            fail("The models take longer than the deadline");
+        } catch (FOSException e) {
+            assertTrue(e.getMessage().contains("deadline"));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < MODEL_MILLIS * 3);
+    }
+
+    @Test
+    public void testDeadlineWithSlowFirstModel() throws Exception {
+        scorer = new ParallelScorer(slow, 8, 4, 0);
+        slow.slowest = modelIds.get(0);
+
+        long start = System.nanoTime();
+        try {
+            scorer.score(modelIds, new Object[]{1.0}, MODEL_MILLIS * 2, TimeUnit.MILLISECONDS);
+            fail("The first model takes longer than the deadline");
+        } catch (FOSException e) {
+            assertTrue(e.getMessage().contains("deadline"));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < MODEL_MILLIS * 5);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        scorer = new ParallelScorer(slow, 8, 4, 0);
+        slow.failing = modelIds.get(5);
+
+        try {
+            scorer.score(modelIds, new Object[]{1.0});
+            fail("A model failed");
+        } catch (FOSException e) {
+            assertEquals("Failed " + modelIds.get(5), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final AtomicInteger batches = new AtomicInteger();
+        Scorer echo = new Scorer() {
+            @Override
+            public List<double[]> score(UUID modelId, List<Object[]> scorables) throws FOSException {
+                batches.incrementAndGet();
+                threads.add(Thread.currentThread().getName());
+                try {
+                    Thread.sleep(MODEL_MILLIS / 10);
+                } catch (InterruptedException e) {
+                    throw new FOSException(e);
+                }
+                return Scorer.super.score(modelId, scorables);
+            }
+
+            @Override
+            public double[] score(UUID modelId, Object[] scorable) {
+                return new double[]{(Double) scorable[0]};
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        scorer = new ParallelScorer(echo, 4, 4, 10, 0);
+
+        List<Object[]> instances = new ArrayList<>();
+        for (int i = 0; i < 95; i++) {
+            instances.add(new Object[]{(double) i});
+        }
+
+        List<double[]> scores = scorer.score(modelIds.get(0), instances);
+        assertEquals(instances.size(), scores.size());
+        for (int i = 0; i < scores.size(); i++) {
+            assertEquals(i, scores.get(i)[0], 0);
+        }
+        assertEquals(10, batches.get());
+        assertTrue(threads.size() > 1);
+
+        // batches that fit in a chunk are scored by the calling thread
+        batches.set(0);
+        assertEquals(10, scorer.score(modelIds.get(0), instances.subList(0, 10)).size());
+        assertEquals(1, batches.get());
+    }
+
+    /**
+     * Scores each model with its index after {@link #MODEL_MILLIS}, or ten times as long for the slowest model.
+     */
+    private class SlowScorer implements Scorer {
+        volatile UUID failing;
+        volatile UUID slowest;
+
+        @Override
+        public List<double[]> score(List<UUID> modelIds, Object[] scorable) throws FOSException {
+            sequentialRequests.incrementAndGet();
+            return Scorer.super.score(modelIds, scorable);
+        }
+
+        @Override
+        public double[] score(UUID modelId, Object[] scorable) throws FOSException {
+            try {
+                Thread.sleep(modelId.equals(slowest) ? MODEL_MILLIS * 10 : MODEL_MILLIS);
+            } catch (InterruptedException e) {
+                throw new FOSException(e);
+            }
+            if (modelId.equals(failing)) {
+                throw new FOSException("Failed " + modelId);
+            }
+            return new double[]{indexes.get(modelId)};
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScoringExecutorTest {
+    private ScoringExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    @Test
+    public void testCall() throws Exception {
+        executor = new ScoringExecutor("test", 2, 0, ScoringExecutor.RejectionPolicy.ABORT, ScoringExecutor.Affinity.NONE);
+        assertEquals(2 * ScoringExecutor.QUEUED_REQUESTS_PER_THREAD, executor.getQueueSize());
+
+        String thread = executor.call(null, () -> Thread.currentThread().getName());
+        assertTrue(thread.startsWith("test-"));
+
+        // nested requests run in the scoring thread instead of waiting for another one
+        assertTrue(executor.call(null, () -> Thread.currentThread().getName().equals(executor.call(null, () -> Thread.currentThread().getName()))));
+
+        try {
+            executor.call(null, () -> {
+                throw new FOSException("Failed");
+            });
+            fail("The request failed");
+        } catch (FOSException e) {
+            assertEquals("Failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testModelAffinity() throws Exception {
+        executor = new ScoringExecutor("test", 4, 0, ScoringExecutor.RejectionPolicy.ABORT, ScoringExecutor.Affinity.MODEL);
+
+        UUID modelId = UUID.randomUUID();
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        for (int i = 0; i < 50; i++) {
+            threads.add(executor.call(modelId, () -> Thread.currentThread().getName()));
+        }
+        assertEquals(1, threads.size());
+
+        threads.clear();
+        for (int i = 0; i < 50; i++) {
+            threads.add(executor.call(UUID.randomUUID(), () -> Thread.currentThread().getName()));
+        }
+        assertTrue(threads.size() > 1);
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        executor = new ScoringExecutor("test", 1, 1, ScoringExecutor.RejectionPolicy.ABORT, ScoringExecutor.Affinity.NONE);
+        CountDownLatch release = block();
+
+        // one request queued, the next one is rejected
+        CompletableFuture<Integer> queued = executor.submit(null, () -> 1);
+        CompletableFuture<Integer> rejected = executor.submit(null, () -> 2);
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            executor.call(null, () -> 3);
+            fail("The queue is full");
+        } catch (FOSException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        release.countDown();
+        assertEquals(1, (int) queued.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCallerRuns() throws Exception {
+        executor = new ScoringExecutor("test", 1, 1, ScoringExecutor.RejectionPolicy.CALLER_RUNS, ScoringExecutor.Affinity.NONE);
+        CountDownLatch release = block();
+
+        executor.submit(null, () -> 1);
+        assertEquals(Thread.currentThread().getName(), executor.call(null, () -> Thread.currentThread().getName()));
+        release.countDown();
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        executor = new ScoringExecutor("test", 1, 1, ScoringExecutor.RejectionPolicy.BLOCK, ScoringExecutor.Affinity.NONE);
+        final CountDownLatch release = block();
+        executor.submit(null, () -> 1);
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        }).start();
+
+        long start = System.nanoTime();
+        String thread = executor.call(null, () -> Thread.currentThread().getName());
+        assertTrue(thread.startsWith("test-"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+        assertEquals(0, executor.getQueued());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        executor = new ScoringExecutor("test", 1, 0, ScoringExecutor.RejectionPolicy.BLOCK, ScoringExecutor.Affinity.NONE);
+        executor.close();
+
+        CompletableFuture<Integer> future = executor.submit(null, () -> 1);
+        assertTrue(future.isCompletedExceptionally());
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void testCallerRunsAfterClose() throws Exception {
+        executor = new ScoringExecutor("test", 1, 1, ScoringExecutor.RejectionPolicy.CALLER_RUNS, ScoringExecutor.Affinity.NONE);
+        executor.close();
+        assertTrue(executor.isShutdown());
+
+        // the caller does not run requests once closed, their futures fail instead of never completing
+        CompletableFuture<Integer> future = executor.submit(null, () -> 1);
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("The executor is closed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        try {
+            executor.call(null, () -> 2);
+            fail("The executor is closed");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Occupies the only thread of the executor until the returned latch is released.
+     *
+     * @return the latch that releases the thread
+     */
+    private CountDownLatch block() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        return release;
+    }
+}
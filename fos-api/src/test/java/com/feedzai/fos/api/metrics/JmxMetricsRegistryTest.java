@@ -0,0 +1,119 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api.metrics;
+
+import com.feedzai.fos.api.Attribute;
+import com.feedzai.fos.api.CategoricalAttribute;
+import com.feedzai.fos.api.NumericAttribute;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link JmxMetricsRegistry}.
+ */
+public class JmxMetricsRegistryTest {
+    private MBeanServer server;
+    private JmxMetricsRegistry registry;
+
+    @Before
+    public void setup() {
+        server = MBeanServerFactory.newMBeanServer();
+        registry = new JmxMetricsRegistry(server);
+    }
+
+    @Test
+    public void testSameMetricsForSameModel() {
+        UUID model = UUID.randomUUID();
+
+        assertSame(registry.get(Transport.KRYO, model), registry.get(Transport.KRYO, model));
+        assertFalse(registry.get(Transport.KRYO, model) == registry.get(Transport.RMI, model));
+    }
+
+    @Test
+    public void testPublishedThroughJmx() throws Exception {
+        UUID model = UUID.randomUUID();
+        ScoringMetrics metrics = registry.get(Transport.RMI, model);
+        metrics.started();
+        metrics.record(Phase.SCORE, 2000000);
+        metrics.finished(true);
+        metrics.started();
+
+        ObjectName name = JmxMetricsRegistry.name(Transport.RMI, model);
+        assertEquals(2L, server.getAttribute(name, "Requests"));
+        assertEquals(1L, server.getAttribute(name, "Errors"));
+        assertEquals(1L, server.getAttribute(name, "InFlight"));
+
+        CompositeData score = (CompositeData) server.getAttribute(name, "ScoreLatency");
+        assertEquals(1L, score.get("count"));
+        assertEquals(2000L, (Long) score.get("p99"), 20);
+
+        server.invoke(name, "reset", new Object[0], new String[0]);
+        assertEquals(0L, server.getAttribute(name, "Requests"));
+    }
+
+    @Test
+    public void testAttributeMetrics() throws Exception {
+        UUID model = UUID.randomUUID();
+        List<Attribute> attributes = Arrays.<Attribute>asList(
+                new NumericAttribute("amount"),
+                new CategoricalAttribute("country", Arrays.asList("PT", "ES")));
+        registry.register(model, attributes);
+
+        attributes.get(0).parseOrMissing("abc");
+        attributes.get(1).parseOrMissing("FR");
+        attributes.get(1).parseOrMissing("IT");
+
+        ObjectName name = JmxMetricsRegistry.attributesName(model);
+        assertEquals(3L, server.getAttribute(name, "Unparsable"));
+        TabularData byAttribute = (TabularData) server.getAttribute(name, "UnparsableByAttribute");
+        assertEquals(1L, byAttribute.get(new Object[]{"amount"}).get("value"));
+        assertEquals(2L, byAttribute.get(new Object[]{"country"}).get("value"));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        UUID model = UUID.randomUUID();
+        registry.get(Transport.KRYO, model);
+        registry.register(model, Arrays.<Attribute>asList(new NumericAttribute("amount")));
+        assertTrue(server.isRegistered(JmxMetricsRegistry.name(Transport.KRYO, model)));
+
+        registry.remove(model);
+
+        assertFalse(server.isRegistered(JmxMetricsRegistry.name(Transport.KRYO, model)));
+        assertFalse(server.isRegistered(JmxMetricsRegistry.attributesName(model)));
+    }
+}
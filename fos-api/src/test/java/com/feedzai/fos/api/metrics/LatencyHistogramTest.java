@@ -0,0 +1,103 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.api.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setup() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void testBuckets() {
+        long previous = -1;
+        for (int i = 0; i <= LatencyHistogram.index(LatencyHistogram.MAX_VALUE); i++) {
+            long highest = LatencyHistogram.highestEquivalentValue(i);
+            assertEquals("Bucket bounds must be contiguous", i, LatencyHistogram.index(previous + 1));
+            assertEquals(i, LatencyHistogram.index(highest));
+            assertTrue("Buckets must be within 1% of their values", highest - previous <= Math.max(1, previous / 100 + 1));
+            previous = highest;
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000000, histogram.getMax());
+        assertEquals(50000500, histogram.getMean(), 1);
+        assertWithinPercent(50000000, histogram.getValueAtPercentile(50));
+        assertWithinPercent(99000000, histogram.getValueAtPercentile(99));
+        assertWithinPercent(99900000, histogram.getValueAtPercentile(99.9));
+        assertEquals(100000000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        histogram.record(3);
+        histogram.record(7);
+        histogram.record(-5);
+
+        assertEquals(0, histogram.getValueAtPercentile(0));
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(7, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testValuesAboveMax() {
+        histogram.record(LatencyHistogram.MAX_VALUE * 2);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(LatencyHistogram.MAX_VALUE * 2, histogram.getMax());
+        assertTrue(histogram.getValueAtPercentile(100) >= LatencyHistogram.MAX_VALUE);
+    }
+
+    @Test
+    public void testReset() {
+        histogram.record(1000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    private static void assertWithinPercent(long expected, long actual) {
+        assertEquals(expected, actual, expected / 100.0);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * $#
+ * FOS API
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.server.remote.api;
+
+import com.feedzai.fos.api.FOSException;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FOSScorerAdapterTest {
+    @Test
+    public void testAsyncThreadsAreBounded() throws Exception {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        FOSScorerAdapter adapter = new FOSScorerAdapter(remote(threads));
+
+        List<CompletableFuture<double[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(adapter.scoreAsync(UUID.randomUUID(), new Object[]{(double) i}));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertArrayEquals(new double[]{i}, futures.get(i).get(10, TimeUnit.SECONDS), 0);
+        }
+
+        assertTrue(threads.size() <= Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    public void testAsyncRejected() throws Exception {
+        FOSScorerAdapter adapter = new FOSScorerAdapter(remote(ConcurrentHashMap.newKeySet()), command -> {
+            throw new RejectedExecutionException("Full");
+        });
+
+        CompletableFuture<double[]> future = adapter.scoreAsync(UUID.randomUUID(), new Object[]{1.0});
+        try {
+            future.get();
+            fail("The executor rejected the request");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FOSException);
+            assertTrue(e.getCause().getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    /**
+     * Creates a remote scorer that takes a while to score each instance with its first field.
+     *
+     * @param threads the names of the threads that called the scorer
+     * @return the remote scorer
+     */
+    private static RemoteScorer remote(Set<String> threads) {
+        return (RemoteScorer) Proxy.newProxyInstance(RemoteScorer.class.getClassLoader(), new Class<?>[]{RemoteScorer.class}, (proxy, method, args) -> {
+            if (method.getName().equals("score") && args[1] instanceof Object[]) {
+                threads.add(Thread.currentThread().getName());
+                Thread.sleep(5);
+                return new double[]{(Double) ((Object[]) args[1])[0]};
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * $#
+ * FOS Benchmarks
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.benchmarks;
+
+import com.feedzai.fos.api.Attribute;
+import com.feedzai.fos.api.CategoricalAttribute;
+import com.feedzai.fos.api.FeatureEncoder;
+import com.feedzai.fos.api.NumericAttribute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Attribute#parseOrMissing(Object)} of numeric and categorical attributes, for valid, missing
+ * and unparsable values, and the {@link FeatureEncoder} equivalent for a whole instance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class AttributeParseBenchmark {
+    /**
+     * The number of values of the categorical attribute.
+     */
+    @Param({"10", "1000"})
+    int categories;
+
+    private NumericAttribute numeric;
+    private CategoricalAttribute categorical;
+    private Object number;
+    private Object numberString;
+    private Object category;
+    private List<Attribute> attributes;
+    private Object[] instance;
+    private FeatureEncoder encoder;
+    private double[] features;
+
+    @Setup
+    public void setup() {
+        List<String> values = new ArrayList<>(categories);
+        for (int i = 0; i < categories; i++) {
+            values.add("category" + i);
+        }
+
+        numeric = new NumericAttribute("numeric");
+        categorical = new CategoricalAttribute("categorical", values);
+        number = 42.5;
+        numberString = "42.5";
+        category = values.get(categories / 2);
+
+        attributes = Arrays.<Attribute>asList(numeric, categorical, numeric, numeric);
+        instance = new Object[]{number, category, numberString, "not a number"};
+        encoder = new FeatureEncoder(attributes);
+        features = new double[encoder.size()];
+    }
+
+    @Benchmark
+    public double numericDouble() {
+        return numeric.parseOrMissing(number);
+    }
+
+    @Benchmark
+    public double numericString() {
+        return numeric.parseOrMissing(numberString);
+    }
+
+    @Benchmark
+    public double numericUnparsable() {
+        return numeric.parseOrMissing("not a number");
+    }
+
+    @Benchmark
+    public double numericMissing() {
+        return numeric.parseOrMissing(Attribute.MISSING_VALUE_STR);
+    }
+
+    @Benchmark
+    public double categoricalKnown() {
+        return categorical.parseOrMissing(category);
+    }
+
+    @Benchmark
+    public double categoricalUnknown() {
+        return categorical.parseOrMissing("unknown");
+    }
+
+    @Benchmark
+    public double categoricalMissing() {
+        return categorical.parseOrMissing(Attribute.MISSING_VALUE_STR);
+    }
+
+    @Benchmark
+    public double[] instanceParseOrMissing() {
+        for (int i = 0; i < instance.length; i++) {
+            features[i] = attributes.get(i).parseOrMissing(instance[i]);
+        }
+        return features;
+    }
+
+    @Benchmark
+    public double[] instanceEncoder() {
+        encoder.encode(instance, features);
+        return features;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * $#
+ * FOS Benchmarks
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.benchmarks;
+
+import com.feedzai.fos.api.FOSException;
+import com.feedzai.fos.api.KryoScorer;
+import com.feedzai.fos.api.KryoScoringEndpoint;
+import com.feedzai.fos.api.KryoScoringServer;
+import com.feedzai.fos.common.kryo.ScoreBuffer;
+import com.feedzai.fos.impl.dummy.DummyScorer;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of the {@link KryoScorer} to an in-process scoring server backed by a {@link DummyScorer},
+ * so that only the transport is measured.
+ * <p/>
+ * The {@code endpoint} transport uses a thread per connection running a {@link KryoScoringEndpoint}, the
+ * {@code server} transport uses the non-blocking {@link KryoScoringServer}. Run with {@code -t} to add
+ * concurrent clients.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class KryoScorerBenchmark {
+    /**
+     * The scoring server implementation.
+     */
+    @Param({"endpoint", "server"})
+    String transport;
+
+    /**
+     * The number of fields of the instance.
+     */
+    @Param({"10", "300"})
+    int fields;
+
+    private ServerSocket endpointSocket;
+    private KryoScoringServer server;
+    private KryoScorer scorer;
+    private List<UUID> modelIds;
+    private Object[] instance;
+
+    @Setup
+    public void setup() throws IOException {
+        int port;
+        if ("server".equals(transport)) {
+            server = new KryoScoringServer(0, Runtime.getRuntime().availableProcessors(), 2, new DummyScorer());
+            server.start();
+            port = server.getPort();
+        } else {
+            endpointSocket = new ServerSocket(0);
+            port = endpointSocket.getLocalPort();
+            Thread acceptor = new Thread(this::acceptEndpoints, "benchmark-kryo-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        scorer = new KryoScorer("localhost", port);
+        modelIds = Arrays.asList(UUID.randomUUID());
+        instance = new Object[fields];
+        for (int i = 0; i < fields; i++) {
+            instance[i] = (double) i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws FOSException {
+        scorer.close();
+        IOUtils.closeQuietly(server);
+        IOUtils.closeQuietly(endpointSocket);
+    }
+
+    @Benchmark
+    public List<double[]> score() throws FOSException {
+        return scorer.score(modelIds, instance);
+    }
+
+    @Benchmark
+    public ScoreBuffer scoreIntoBuffer(ThreadState state) throws FOSException {
+        scorer.score(modelIds, instance, state.scores);
+        return state.scores;
+    }
+
+    /**
+     * Per thread reusable scores.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final ScoreBuffer scores = new ScoreBuffer();
+    }
+
+    private void acceptEndpoints() {
+        try {
+            while (true) {
+                Socket client = endpointSocket.accept();
+                client.setTcpNoDelay(true);
+                Thread endpoint = new Thread(new KryoScoringEndpoint(client, new DummyScorer()), "benchmark-kryo-endpoint");
+                endpoint.setDaemon(true);
+                endpoint.start();
+            }
+        } catch (IOException e) {
+            // the benchmark is over
+        }
+    }
+}
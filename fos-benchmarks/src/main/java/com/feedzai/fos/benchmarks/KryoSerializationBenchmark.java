@@ -0,0 +1,149 @@
+/*
+ * $#
+ * FOS Benchmarks
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.benchmarks;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.feedzai.fos.api.Attribute;
+import com.feedzai.fos.api.CategoricalAttribute;
+import com.feedzai.fos.api.ColumnarEncoder;
+import com.feedzai.fos.api.NumericAttribute;
+import com.feedzai.fos.common.kryo.ColumnarInstance;
+import com.feedzai.fos.common.kryo.CustomUUIDSerializer;
+import com.feedzai.fos.common.kryo.KryoFactory;
+import com.feedzai.fos.common.kryo.ScoringRequestEnvelope;
+import com.feedzai.fos.common.kryo.UUIDRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kryo round trips (encode and decode) of the messages of the Kryo scoring channel.
+ * <p/>
+ * Instances have one categorical field for every 4 fields, the rest are numeric. The interned variants use the
+ * {@link KryoFactory Kryo configuration of the scoring channel}, with the classes registered and the model ids
+ * encoded as the handles of a {@link UUIDRegistry}, as the scoring channel does once a model id was sent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class KryoSerializationBenchmark {
+    /**
+     * The number of fields of the instance.
+     */
+    @Param({"10", "300"})
+    int fields;
+
+    private Kryo kryo;
+    private Kryo interned;
+    private Output output;
+    private Input input;
+    private UUID uuid;
+    private ScoringRequestEnvelope envelope;
+    private ColumnarInstance columnar;
+
+    @Setup
+    public void setup() {
+        kryo = new Kryo();
+        kryo.addDefaultSerializer(UUID.class, new CustomUUIDSerializer());
+        interned = KryoFactory.create();
+        new UUIDRegistry().bindWriter(interned);
+        new UUIDRegistry().bindReader(interned);
+        output = new Output(4096, -1);
+        input = new Input();
+        uuid = UUID.randomUUID();
+
+        List<Attribute> attributes = new ArrayList<>(fields);
+        Object[] instance = new Object[fields];
+        for (int i = 0; i < fields; i++) {
+            if (i % 4 == 0) {
+                attributes.add(new CategoricalAttribute("field" + i, Arrays.asList("a", "b", "c")));
+                instance[i] = "b";
+            } else {
+                attributes.add(new NumericAttribute("field" + i));
+                instance[i] = (double) i;
+            }
+        }
+
+        envelope = new ScoringRequestEnvelope(Arrays.asList(uuid), instance);
+        columnar = new ColumnarEncoder(attributes).encode(instance);
+    }
+
+    @Benchmark
+    public UUID uuid() {
+        output.clear();
+        kryo.writeObject(output, uuid);
+        input.setBuffer(output.getBuffer(), 0, output.position());
+        return kryo.readObject(input, UUID.class);
+    }
+
+    @Benchmark
+    public ScoringRequestEnvelope envelope() {
+        output.clear();
+        kryo.writeObject(output, envelope);
+        input.setBuffer(output.getBuffer(), 0, output.position());
+        return kryo.readObject(input, ScoringRequestEnvelope.class);
+    }
+
+    @Benchmark
+    public UUID internedUuid() {
+        output.clear();
+        interned.writeObject(output, uuid);
+        input.setBuffer(output.getBuffer(), 0, output.position());
+        return interned.readObject(input, UUID.class);
+    }
+
+    @Benchmark
+    public ScoringRequestEnvelope internedEnvelope() {
+        output.clear();
+        interned.writeObject(output, envelope);
+        input.setBuffer(output.getBuffer(), 0, output.position());
+        return interned.readObject(input, ScoringRequestEnvelope.class);
+    }
+
+    @Benchmark
+    public ColumnarInstance columnar() {
+        output.clear();
+        kryo.writeObject(output, columnar);
+        input.setBuffer(output.getBuffer(), 0, output.position());
+        return kryo.readObject(input, ColumnarInstance.class);
+    }
+}
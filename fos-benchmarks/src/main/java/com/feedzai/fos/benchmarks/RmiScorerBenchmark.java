@@ -0,0 +1,106 @@
+/*
+ * $#
+ * FOS Benchmarks
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.benchmarks;
+
+import com.feedzai.fos.api.FOSException;
+import com.feedzai.fos.impl.dummy.DummyScorer;
+import com.feedzai.fos.server.remote.api.FOSScorerAdapter;
+import com.feedzai.fos.server.remote.impl.RemoteScorer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.ServerSocket;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of the {@link FOSScorerAdapter} to a {@link RemoteScorer} backed by a {@link DummyScorer}
+ * exported in a local RMI registry, the baseline for {@link KryoScorerBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class RmiScorerBenchmark {
+    /**
+     * The number of fields of the instance.
+     */
+    @Param({"10", "300"})
+    int fields;
+
+    private Registry registry;
+    private RemoteScorer remoteScorer;
+    private FOSScorerAdapter scorer;
+    private List<UUID> modelIds;
+    private Object[] instance;
+
+    @Setup
+    public void setup() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        registry = LocateRegistry.createRegistry(port);
+        remoteScorer = new RemoteScorer(new DummyScorer());
+        registry.rebind(com.feedzai.fos.server.remote.api.RemoteScorer.class.getSimpleName(), UnicastRemoteObject.exportObject(remoteScorer, 0));
+
+        com.feedzai.fos.server.remote.api.RemoteScorer stub = (com.feedzai.fos.server.remote.api.RemoteScorer)
+                LocateRegistry.getRegistry("localhost", port).lookup(com.feedzai.fos.server.remote.api.RemoteScorer.class.getSimpleName());
+        scorer = new FOSScorerAdapter(stub);
+
+        modelIds = Arrays.asList(UUID.randomUUID());
+        instance = new Object[fields];
+        for (int i = 0; i < fields; i++) {
+            instance[i] = (double) i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        UnicastRemoteObject.unexportObject(remoteScorer, true);
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+
+    @Benchmark
+    public List<double[]> score() throws FOSException {
+        return scorer.score(modelIds, instance);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * This class should be used to wrap batch scoring requests
+ * along with @{link KryoScorer}
+ * <p/>
+ * Every instance is scored against every model. The scores are returned model by model, i.e. the score of
+ * instance {@code i} with model {@code m} is at position {@code m * instances.size() + i}.
+ *
+ * @since 1.0.11
+ */
+public class BatchScoringRequestEnvelope {
+    /**
+     * List of classifier uuid to score
+     */
+    List<UUID> uuids;
+
+    /**
+     * Instances to score
+     */
+    List<Object[]> instances;
+
+    /**
+     * Maximum time in milliseconds the request may wait to be scored, 0 for the default of the server
+     */
+    int queueTimeout;
+
+    /**
+     * Empty constructor to allow kryo to create new instances
+     */
+    public BatchScoringRequestEnvelope() {
+    }
+
+    /**
+     * Creates a new batch scoring envelope
+     *
+     * @param uuids     List of classifier uuid to score
+     * @param instances instances to score
+     */
+    public BatchScoringRequestEnvelope(List<UUID> uuids,
+                                       List<Object[]> instances) {
+        this(uuids, instances, 0);
+    }
+
+    /**
+     * Creates a new batch scoring envelope with a queue timeout
+     *
+     * @param uuids        List of classifier uuid to score
+     * @param instances    instances to score
+     * @param queueTimeout maximum time in milliseconds the request may wait to be scored, 0 for the default of the server
+     */
+    public BatchScoringRequestEnvelope(List<UUID> uuids,
+                                       List<Object[]> instances,
+                                       int queueTimeout) {
+        this.uuids = uuids;
+        this.instances = instances;
+        this.queueTimeout = queueTimeout;
+    }
+
+    /**
+     * Returns the list of UUID to score
+     * @return list of UUID to score
+     */
+    public List<UUID> getUUIDs() {
+        return uuids;
+    }
+
+    /**
+     * Returns the instances to score
+     * @return the instances to score
+     */
+    public List<Object[]> getInstances() {
+        return instances;
+    }
+
+    /**
+     * Returns the maximum time the request may wait to be scored
+     * @return the queue timeout in milliseconds, 0 for the default of the server
+     */
+    public int getQueueTimeout() {
+        return queueTimeout;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An instance to score stored column by column in primitive arrays instead of boxed values.
+ * <p/>
+ * Numeric fields are stored in a {@code double[]}, categorical fields in an {@code int[]} with the index of the
+ * categorical value, and missing fields are flagged in a bitmap. Which fields are categorical is fixed when the
+ * instance is created (usually from the attributes of the model, see {@code com.feedzai.fos.api.ColumnarEncoder}),
+ * so an instance can be reused to score many rows of the same model.
+ * <p/>
+ * This class is not thread safe.
+ *
+ * @since 1.0.11
+ */
+@DefaultSerializer(ColumnarInstanceSerializer.class)
+public final class ColumnarInstance {
+    /**
+     * The external representation of a missing value, the same as {@code Attribute.MISSING_VALUE_STR}.
+     */
+    public static final String MISSING_VALUE_STR = "?";
+
+    /**
+     * The number of fields.
+     */
+    private final int size;
+
+    /**
+     * Bitmap of the categorical fields.
+     */
+    private final long[] categorical;
+
+    /**
+     * Bitmap of the missing fields.
+     */
+    private final long[] missing;
+
+    /**
+     * The values of the numeric fields, in field order.
+     */
+    private final double[] numerics;
+
+    /**
+     * The indexes of the values of the categorical fields, in field order.
+     */
+    private final int[] categoricals;
+
+    /**
+     * The position of each field in either {@link #numerics} or {@link #categoricals}.
+     */
+    private final int[] slots;
+
+    /**
+     * The {@link ModelSchema#getVersion() version of the schema} the instance was encoded with, {@code 0} if unknown.
+     */
+    private int schemaVersion;
+
+    /**
+     * Creates a new instance where every field is missing.
+     *
+     * @param size        the number of fields
+     * @param categorical the categorical fields
+     */
+    public ColumnarInstance(int size, BitSet categorical) {
+        this(size, Arrays.copyOf(checkNotNull(categorical, "Categorical fields cannot be null").toLongArray(), words(size)), null, null, null);
+        checkArgument(categorical.length() <= size, "Categorical field %s out of bounds", categorical.length() - 1);
+        Arrays.fill(missing, -1L);
+    }
+
+    /**
+     * Creates a new instance from its columns.
+     *
+     * @param size         the number of fields
+     * @param categorical  bitmap of the categorical fields
+     * @param missing      bitmap of the missing fields, or {@code null} to create a new one
+     * @param numerics     the values of the numeric fields, or {@code null} to create a new array
+     * @param categoricals the indexes of the categorical fields, or {@code null} to create a new array
+     */
+    ColumnarInstance(int size, long[] categorical, long[] missing, double[] numerics, int[] categoricals) {
+        checkArgument(size >= 0, "Size cannot be negative");
+        checkArgument(categorical.length == words(size), "Invalid categorical bitmap");
+        this.size = size;
+        this.categorical = categorical;
+        this.missing = missing != null ? missing : new long[words(size)];
+        this.slots = new int[size];
+
+        int categoricalCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (isCategorical(i)) {
+                slots[i] = categoricalCount++;
+            } else {
+                slots[i] = i - categoricalCount;
+            }
+        }
+
+        this.numerics = numerics != null ? numerics : new double[size - categoricalCount];
+        this.categoricals = categoricals != null ? categoricals : new int[categoricalCount];
+        checkArgument(this.missing.length == words(size), "Invalid missing bitmap");
+        checkArgument(this.numerics.length == size - categoricalCount, "Expected %s numeric fields", size - categoricalCount);
+        checkArgument(this.categoricals.length == categoricalCount, "Expected %s categorical fields", categoricalCount);
+    }
+
+    /**
+     * Gets the {@link ModelSchema#getVersion() version of the schema} the instance was encoded with.
+     * <p/>
+     * Scoring servers reject instances encoded with an outdated schema, unless the version is {@code 0}.
+     *
+     * @return the schema version, {@code 0} if unknown
+     */
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    /**
+     * Sets the {@link ModelSchema#getVersion() version of the schema} the instance was encoded with.
+     *
+     * @param schemaVersion the schema version, {@code 0} if unknown
+     */
+    public void setSchemaVersion(int schemaVersion) {
+        this.schemaVersion = schemaVersion;
+    }
+
+    /**
+     * Gets the number of fields.
+     *
+     * @return the number of fields
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the given field is categorical.
+     *
+     * @param field the position of the field
+     * @return {@code true} if the field is categorical, {@code false} if it is numeric
+     */
+    public boolean isCategorical(int field) {
+        checkElementIndex(field, size);
+        return (categorical[field >>> 6] & (1L << field)) != 0;
+    }
+
+    /**
+     * Checks if the given field is missing.
+     *
+     * @param field the position of the field
+     * @return {@code true} if the value of the field is missing
+     */
+    public boolean isMissing(int field) {
+        checkElementIndex(field, size);
+        return (missing[field >>> 6] & (1L << field)) != 0;
+    }
+
+    /**
+     * Gets the value of a numeric field.
+     *
+     * @param field the position of the field
+     * @return the value, meaningless if the field is missing
+     */
+    public double getNumeric(int field) {
+        checkArgument(!isCategorical(field), "Field %s is categorical", field);
+        return numerics[slots[field]];
+    }
+
+    /**
+     * Gets the index of the value of a categorical field.
+     *
+     * @param field the position of the field
+     * @return the index of the categorical value, meaningless if the field is missing
+     */
+    public int getCategorical(int field) {
+        checkArgument(isCategorical(field), "Field %s is numeric", field);
+        return categoricals[slots[field]];
+    }
+
+    /**
+     * Sets the value of a numeric field.
+     *
+     * @param field the position of the field
+     * @param value the value, {@link Double#NaN} for a missing value
+     */
+    public void setNumeric(int field, double value) {
+        checkArgument(!isCategorical(field), "Field %s is categorical", field);
+        numerics[slots[field]] = value;
+        setMissing(field, Double.isNaN(value));
+    }
+
+    /**
+     * Sets the value of a categorical field.
+     *
+     * @param field the position of the field
+     * @param index the index of the categorical value, negative for a missing value
+     */
+    public void setCategorical(int field, int index) {
+        checkArgument(isCategorical(field), "Field %s is numeric", field);
+        categoricals[slots[field]] = index;
+        setMissing(field, index < 0);
+    }
+
+    /**
+     * Flags the value of a field as missing.
+     *
+     * @param field the position of the field
+     */
+    public void setMissing(int field) {
+        checkElementIndex(field, size);
+        setMissing(field, true);
+    }
+
+    /**
+     * Flags every field as missing, so that the instance can be filled again.
+     */
+    public void clear() {
+        Arrays.fill(missing, -1L);
+    }
+
+    /**
+     * Converts the instance to the row representation used by {@link com.feedzai.fos.common.kryo.ScoringRequestEnvelope}.
+     * <p/>
+     * Numeric fields are converted to {@link Double}, categorical fields to {@link CategoricalIndex}
+     * and missing fields to {@link #MISSING_VALUE_STR}.
+     *
+     * @return the values of the fields
+     */
+    public Object[] toObjects() {
+        Object[] objects = new Object[size];
+        for (int i = 0; i < size; i++) {
+            if (isMissing(i)) {
+                objects[i] = MISSING_VALUE_STR;
+            } else if (isCategorical(i)) {
+                objects[i] = new CategoricalIndex(categoricals[slots[i]]);
+            } else {
+                objects[i] = numerics[slots[i]];
+            }
+        }
+        return objects;
+    }
+
+    long[] getCategoricalBitmap() {
+        return categorical;
+    }
+
+    long[] getMissingBitmap() {
+        return missing;
+    }
+
+    double[] getNumerics() {
+        return numerics;
+    }
+
+    int[] getCategoricals() {
+        return categoricals;
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("size", size)
+                .add("values", Arrays.toString(toObjects()))
+                .toString();
+    }
+
+    private void setMissing(int field, boolean isMissing) {
+        if (isMissing) {
+            missing[field >>> 6] |= 1L << field;
+        } else {
+            missing[field >>> 6] &= ~(1L << field);
+        }
+    }
+
+    /**
+     * Gets the number of words of a bitmap of the given size.
+     *
+     * @param size the number of bits
+     * @return the number of words
+     */
+    static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    /**
+     * The index of a categorical value, as produced by {@link #toObjects()}.
+     * <p/>
+     * Categorical attributes use the index directly instead of looking up the value.
+     */
+    public static final class CategoricalIndex {
+        private final int index;
+
+        /**
+         * Creates a new categorical index.
+         *
+         * @param index the index of the categorical value
+         */
+        public CategoricalIndex(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Gets the index of the categorical value.
+         *
+         * @return the index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CategoricalIndex && ((CategoricalIndex) o).index == index;
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + index;
+        }
+    }
+}
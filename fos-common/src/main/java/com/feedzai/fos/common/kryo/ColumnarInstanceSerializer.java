@@ -0,0 +1,67 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Writes a {@link ColumnarInstance} as raw primitive blocks: the number of fields, the schema version, the
+ * categorical and missing bitmaps, the numeric values and the (variable length) categorical indexes.
+ *
+ * @since 1.0.11
+ */
+public class ColumnarInstanceSerializer extends Serializer<ColumnarInstance> {
+
+    @Override
+    public void write(Kryo kryo, Output output, ColumnarInstance instance) {
+        output.writeInt(instance.size(), true);
+        output.writeInt(instance.getSchemaVersion());
+        output.writeLongs(instance.getCategoricalBitmap());
+        output.writeLongs(instance.getMissingBitmap());
+        output.writeDoubles(instance.getNumerics());
+        output.writeInts(instance.getCategoricals(), true);
+    }
+
+    @Override
+    public ColumnarInstance read(Kryo kryo, Input input, Class<ColumnarInstance> type) {
+        int size = input.readInt(true);
+        int schemaVersion = input.readInt();
+        int words = ColumnarInstance.words(size);
+        long[] categorical = input.readLongs(words);
+        long[] missing = input.readLongs(words);
+
+        int categoricalCount = 0;
+        for (long word : categorical) {
+            categoricalCount += Long.bitCount(word);
+        }
+
+        double[] numerics = input.readDoubles(size - categoricalCount);
+        int[] categoricals = input.readInts(categoricalCount, true);
+        ColumnarInstance instance = new ColumnarInstance(size, categorical, missing, numerics, categoricals);
+        instance.setSchemaVersion(schemaVersion);
+        return instance;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * This class should be used to wrap scoring requests
+ * of {@link ColumnarInstance columnar instances} along with @{link KryoScorer}
+ *
+ * @since 1.0.11
+ */
+public class ColumnarScoringRequestEnvelope {
+    /**
+     * List of classifier uuid to score
+     */
+    List<UUID> uuids;
+
+    /**
+     * Instance to score
+     */
+    ColumnarInstance instance;
+
+    /**
+     * Maximum time in milliseconds the request may wait to be scored, 0 for the default of the server
+     */
+    int queueTimeout;
+
+    /**
+     * Empty constructor to allow kryo to create new instances
+     */
+    public ColumnarScoringRequestEnvelope() {
+    }
+
+    /**
+     * Creates a new columnar scoring envelope
+     *
+     * @param uuids    List of classifier uuid to score
+     * @param instance instance to score
+     */
+    public ColumnarScoringRequestEnvelope(List<UUID> uuids,
+                                          ColumnarInstance instance) {
+        this(uuids, instance, 0);
+    }
+
+    /**
+     * Creates a new columnar scoring envelope with a queue timeout
+     *
+     * @param uuids        List of classifier uuid to score
+     * @param instance     instance to score
+     * @param queueTimeout maximum time in milliseconds the request may wait to be scored, 0 for the default of the server
+     */
+    public ColumnarScoringRequestEnvelope(List<UUID> uuids,
+                                          ColumnarInstance instance,
+                                          int queueTimeout) {
+        this.uuids = uuids;
+        this.instance = instance;
+        this.queueTimeout = queueTimeout;
+    }
+
+    /**
+     * Returns the list of UUID to score
+     * @return list of UUID to score
+     */
+    public List<UUID> getUUIDs() {
+        return uuids;
+    }
+
+    /**
+     * Returns the instance to score
+     * @return the instance to score
+     */
+    public ColumnarInstance getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the maximum time the request may wait to be scored
+     * @return the queue timeout in milliseconds, 0 for the default of the server
+     */
+    public int getQueueTimeout() {
+        return queueTimeout;
+    }
+}
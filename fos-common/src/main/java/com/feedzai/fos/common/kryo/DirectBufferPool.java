@@ -0,0 +1,128 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct {@link ByteBuffer buffers} for the Kryo scoring channel.
+ * <p/>
+ * Sockets read into and write from direct buffers without the intermediate copy made for heap buffers, but direct
+ * buffers are expensive to allocate and are only freed by the garbage collector, so they are reused.
+ * <p/>
+ * Buffers are pooled by size class (powers of two from {@link #MIN_CAPACITY} to {@link #MAX_CAPACITY}), up to
+ * {@link #MAX_POOLED_BYTES} in total. Larger buffers are allocated on demand and left to the garbage collector.
+ * <p/>
+ * This class is thread safe.
+ *
+ * @since 1.0.11
+ */
+public final class DirectBufferPool {
+    /**
+     * The capacity of the smallest pooled buffers.
+     */
+    public static final int MIN_CAPACITY = 1024;
+
+    /**
+     * The capacity of the largest pooled buffers.
+     */
+    public static final int MAX_CAPACITY = 1024 * 1024;
+
+    /**
+     * The maximum number of bytes held by idle buffers.
+     */
+    public static final long MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * The size class of the smallest pooled buffers.
+     */
+    private static final int MIN_CLASS = Integer.numberOfTrailingZeros(MIN_CAPACITY);
+
+    /**
+     * The idle buffers, by size class.
+     */
+    private static final List<Queue<ByteBuffer>> pools = newPools(Integer.numberOfTrailingZeros(MAX_CAPACITY) - MIN_CLASS + 1);
+
+    /**
+     * The number of bytes held by idle buffers.
+     */
+    private static final AtomicLong pooledBytes = new AtomicLong();
+
+    private DirectBufferPool() {
+    }
+
+    /**
+     * Takes a direct buffer with at least the given capacity from the pool, allocating a new one if none is idle.
+     * <p/>
+     * The buffer is cleared, and must be {@link #release(ByteBuffer) released} once no longer used.
+     *
+     * @param capacity the minimum capacity of the buffer
+     * @return a direct buffer
+     */
+    public static ByteBuffer acquire(int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        int sizeClass = Math.max(0, 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_CLASS);
+        ByteBuffer buffer = pools.get(sizeClass).poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(1 << (sizeClass + MIN_CLASS));
+        }
+        pooledBytes.addAndGet(-buffer.capacity());
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Heap buffers and buffers that do not fit in the pool are ignored.
+     * <p/>
+     * The buffer must not be used after being released.
+     *
+     * @param buffer the buffer, ignored if {@code null}
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() < MIN_CAPACITY || buffer.capacity() > MAX_CAPACITY) {
+            return;
+        }
+        if (pooledBytes.addAndGet(buffer.capacity()) > MAX_POOLED_BYTES) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            return;
+        }
+        // buffers allocated elsewhere may not be a power of two, they are pooled in the class they fully cover
+        pools.get(31 - Integer.numberOfLeadingZeros(buffer.capacity()) - MIN_CLASS).add(buffer);
+    }
+
+    private static List<Queue<ByteBuffer>> newPools(int classes) {
+        List<Queue<ByteBuffer>> pools = new ArrayList<>(classes);
+        for (int i = 0; i < classes; i++) {
+            pools.add(new ConcurrentLinkedQueue<>());
+        }
+        return pools;
+    }
+}
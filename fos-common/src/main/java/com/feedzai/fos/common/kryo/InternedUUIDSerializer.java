@@ -0,0 +1,55 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.util.UUID;
+
+/**
+ * Serializes {@link UUID UUIDs} as handles of the {@link UUIDRegistry} of the connection bound in the Kryo context.
+ * <p/>
+ * Every UUID is prefixed by a variable length tag: {@code 0} for a UUID sent in full and not registered, the handle
+ * plus one otherwise, followed by the UUID in full the first time the handle is used. Without a registry bound for
+ * writing every UUID is sent in full, so that the output can be read by any peer.
+ *
+ * @since 1.0.11
+ */
+public class InternedUUIDSerializer extends Serializer<UUID> {
+    public InternedUUIDSerializer() {
+        setImmutable(true);
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, UUID uuid) {
+        UUIDRegistry.write(kryo, output, uuid);
+    }
+
+    @Override
+    public UUID read(Kryo kryo, Input input, Class<UUID> uuidClass) {
+        return UUIDRegistry.read(kryo, input);
+    }
+}
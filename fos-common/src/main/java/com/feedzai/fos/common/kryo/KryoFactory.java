@@ -0,0 +1,163 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the {@link Kryo} instances of the Kryo scoring channel, shared by clients and servers.
+ * <p/>
+ * The messages of the channel and the classes they hold are registered with fixed ids, so that they are sent as a
+ * small id instead of the class name. Strings and boxed primitives use the registrations built into Kryo, other
+ * classes found in the instances are still sent by name. Ids must never be reused or renumbered: both ends of a
+ * connection must agree on them, new classes are appended.
+ * <p/>
+ * Creating and warming up a Kryo instance is expensive, connections {@link #borrow() borrow} them from a shared pool
+ * and {@link #release(Kryo) release} them when closed.
+ *
+ * @since 1.0.11
+ */
+public final class KryoFactory {
+    /**
+     * The first id of the classes registered by FOS, the lower ids are used by Kryo.
+     */
+    public static final int FIRST_ID = 20;
+
+    /**
+     * The maximum number of idle instances kept in the pool.
+     */
+    public static final int MAX_POOLED = 64;
+
+    /**
+     * The idle instances.
+     */
+    private static final Queue<Kryo> pool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of idle instances, bounds the pool.
+     */
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private KryoFactory() {
+    }
+
+    /**
+     * Creates a new Kryo instance configured for the Kryo scoring channel.
+     *
+     * @return a new Kryo instance
+     */
+    public static Kryo create() {
+        Kryo kryo = new Kryo();
+        int id = FIRST_ID;
+        kryo.register(UUID.class, new InternedUUIDSerializer(), id++);
+        kryo.register(ArrayList.class, id++);
+        // Arrays$ArrayList is missing a default constructor, it is read as ArrayList
+        kryo.register(Arrays.asList().getClass(), new ArrayListSerializer(), id++);
+        kryo.register(Collections.singletonList(null).getClass(), id++);
+        kryo.register(Object[].class, id++);
+        kryo.register(double[].class, id++);
+        kryo.register(int[].class, id++);
+        kryo.register(long[].class, id++);
+        kryo.register(String[].class, id++);
+        kryo.register(String[][].class, id++);
+        kryo.register(ScoringRequestEnvelope.class, id++);
+        kryo.register(BatchScoringRequestEnvelope.class, id++);
+        kryo.register(ColumnarScoringRequestEnvelope.class, id++);
+        kryo.register(ColumnarInstance.class, id++);
+        kryo.register(ModelSchema.class, id++);
+        return kryo;
+    }
+
+    /**
+     * Takes an instance from the pool, creating a new one if the pool is empty.
+     * <p/>
+     * The instance must be used by a single thread at a time and {@link #release(Kryo) released} when no longer
+     * needed.
+     *
+     * @return a Kryo instance configured for the Kryo scoring channel
+     */
+    public static Kryo borrow() {
+        Kryo kryo = pool.poll();
+        if (kryo == null) {
+            return create();
+        }
+        pooled.decrementAndGet();
+        return kryo;
+    }
+
+    /**
+     * Returns an instance to the pool, discarding the state bound to it (such as a {@link UUIDRegistry}).
+     *
+     * @param kryo an instance taken with {@link #borrow()}, ignored if {@code null}
+     */
+    public static void release(Kryo kryo) {
+        if (kryo == null) {
+            return;
+        }
+        kryo.reset();
+        kryo.getContext().clear();
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            pool.add(kryo);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reads lists as {@link ArrayList}, for the lists that Kryo cannot create (such as {@link Arrays#asList}).
+     * <p/>
+     * Lists are written as Kryo's {@code CollectionSerializer} does: the size followed by each element with its class.
+     */
+    private static class ArrayListSerializer extends Serializer<List<?>> {
+        @Override
+        public void write(Kryo kryo, Output output, List<?> list) {
+            output.writeVarInt(list.size(), true);
+            for (Object element : list) {
+                kryo.writeClassAndObject(output, element);
+            }
+        }
+
+        @Override
+        public List<?> read(Kryo kryo, Input input, Class<List<?>> type) {
+            int size = input.readVarInt(true);
+            List<Object> list = new ArrayList<>(size);
+            kryo.reference(list);
+            for (int i = 0; i < size; i++) {
+                list.add(kryo.readClassAndObject(input));
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Length prefixed framing for the Kryo scoring channel.
+ * <p/>
+ * Every message exchanged over the Kryo scoring channel is written as a 4 byte (big endian) payload
+ * length followed by the payload. Knowing the size of a message before decoding it allows
+ * non-blocking servers to accumulate bytes until a whole message is available, instead of parking a
+ * thread on the socket while Kryo pulls more data.
+ * <p/>
+ * The payload starts with a header made of the {@link #PROTOCOL_VERSION protocol version}, the message type and
+ * a (variable length) request id, followed by the Kryo encoded message. Responses carry the id of the request they
+ * answer, which allows clients to keep many requests in flight on a single connection and servers to answer
+ * them in any order.
+ * <p/>
+ * Model ids in requests are {@link InternedUUIDSerializer interned} per connection, so frames must be decoded in the
+ * order they were sent.
+ *
+ * @since 1.0.11
+ */
+public final class KryoFrames {
+    /**
+     * The size in bytes of the length prefix.
+     */
+    public static final int HEADER_SIZE = 4;
+
+    /**
+     * The default maximum accepted payload size in bytes. Anything larger is considered a corrupt stream.
+     */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The version of the wire protocol, sent at the start of every frame.
+     * <p/>
+     * Version 2 sends model ids as {@link UUIDRegistry} handles, version 3 registers the message classes with the
+     * fixed ids of {@link KryoFactory}, version 4 adds the queue timeout to the request envelopes and the
+     * {@link #OVERLOADED} response.
+     */
+    public static final byte PROTOCOL_VERSION = 4;
+
+    /**
+     * Request to score a {@link ScoringRequestEnvelope}.
+     */
+    public static final byte SCORE = 1;
+
+    /**
+     * Response with the list of scores (one {@code double[]} per model) of a scoring request,
+     * see {@link #writeScores(Output, ScoreBuffer)}.
+     */
+    public static final byte SCORES = 2;
+
+    /**
+     * Response with the error message of a request that could not be fulfilled.
+     */
+    public static final byte ERROR = 3;
+
+    /**
+     * Request to score a {@link BatchScoringRequestEnvelope}, answered with {@link #SCORES}.
+     */
+    public static final byte BATCH_SCORE = 4;
+
+    /**
+     * Request to score a {@link ColumnarScoringRequestEnvelope}, answered with {@link #SCORES}.
+     */
+    public static final byte COLUMNAR_SCORE = 5;
+
+    /**
+     * Request for the {@link ModelSchema} of the model whose {@link java.util.UUID} is the payload, answered with
+     * {@link #SCHEMA}.
+     */
+    public static final byte SCHEMA_REQUEST = 6;
+
+    /**
+     * Response with the {@link ModelSchema} of a model.
+     */
+    public static final byte SCHEMA = 7;
+
+    /**
+     * Response with the reason of a request that was not scored because the server is overloaded, the request can
+     * be retried later or on another server.
+     */
+    public static final byte OVERLOADED = 8;
+
+    private KryoFrames() {
+    }
+
+    /**
+     * Starts a new frame on the given {@link Output}, discarding any previous content,
+     * reserving space for the length prefix and writing the frame header.
+     *
+     * @param output    the output where the frame will be written to
+     * @param type      the message type
+     * @param requestId the id of the request (or of the request being answered)
+     */
+    public static void begin(Output output, byte type, int requestId) {
+        output.clear();
+        output.writeInt(0);
+        output.writeByte(PROTOCOL_VERSION);
+        output.writeByte(type);
+        output.writeInt(requestId, true);
+    }
+
+    /**
+     * Completes the frame started with {@link #begin(Output, byte, int)} by filling in the length prefix.
+     *
+     * @param output the output that holds the frame
+     */
+    public static void end(Output output) {
+        int end = output.position();
+        if (output instanceof ByteBufferOutput) {
+            // ByteBufferOutput#setPosition does not move the position of the underlying buffer
+            ((ByteBufferOutput) output).getByteBuffer().putInt(0, end - HEADER_SIZE);
+            return;
+        }
+        output.setPosition(0);
+        output.writeInt(end - HEADER_SIZE);
+        output.setPosition(end);
+    }
+
+    /**
+     * Writes the frame held by the given {@link Output} to the stream and flushes it.
+     *
+     * @param output the output that holds a completed frame
+     * @param os     the stream to write to
+     * @throws IOException when writing to the stream was not possible
+     */
+    public static void write(Output output, OutputStream os) throws IOException {
+        os.write(output.getBuffer(), 0, output.position());
+        os.flush();
+    }
+
+    /**
+     * Writes the frame held by the given {@link ByteBufferOutput} to a blocking channel.
+     * <p/>
+     * Frames encoded into a direct buffer are written by the socket without any intermediate copy.
+     *
+     * @param output  the output that holds a completed frame
+     * @param channel the channel to write to
+     * @throws IOException when writing to the channel was not possible
+     */
+    public static void write(ByteBufferOutput output, WritableByteChannel channel) throws IOException {
+        ByteBuffer frame = output.getByteBuffer().duplicate();
+        frame.limit(output.position());
+        frame.position(0);
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    /**
+     * Reads a whole frame from a blocking channel and sets it as the buffer of the given {@link ByteBufferInput}.
+     * <p/>
+     * The buffer of the input is reused when it is large enough to hold the frame, otherwise it is released to the
+     * {@link DirectBufferPool} and replaced by a larger one, so the input must hold a pooled buffer (or none).
+     *
+     * @param channel the channel to read from
+     * @param input   the input that will hold the frame payload
+     * @return {@code true} if a frame was read, {@code false} if the channel ended before a new frame started
+     * @throws IOException when the channel ended in the middle of a frame or the frame is invalid
+     */
+    public static boolean read(ReadableByteChannel channel, ByteBufferInput input) throws IOException {
+        ByteBuffer buffer = input.getByteBuffer();
+        if (buffer == null) {
+            buffer = DirectBufferPool.acquire(DirectBufferPool.MIN_CAPACITY);
+            input.setBuffer(buffer);
+        }
+
+        buffer.clear();
+        buffer.limit(HEADER_SIZE);
+        if (channel.read(buffer) < 0) {
+            return false;
+        }
+        readFully(channel, buffer);
+
+        int length = checkLength(buffer.getInt(0));
+        if (buffer.capacity() < length) {
+            DirectBufferPool.release(buffer);
+            buffer = DirectBufferPool.acquire(length);
+        }
+        buffer.clear();
+        buffer.limit(length);
+        readFully(channel, buffer);
+        buffer.flip();
+        input.setBuffer(buffer);
+        return true;
+    }
+
+    /**
+     * Reads a whole frame from the stream and sets it as the buffer of the given {@link Input}.
+     * <p/>
+     * The input buffer is reused when it is large enough to hold the frame.
+     *
+     * @param is    the stream to read from
+     * @param input the input that will hold the frame payload
+     * @return {@code true} if a frame was read, {@code false} if the stream ended before a new frame started
+     * @throws IOException when the stream ended in the middle of a frame or the frame is invalid
+     */
+    public static boolean read(InputStream is, Input input) throws IOException {
+        byte[] buffer = input.getBuffer();
+        if (buffer == null || buffer.length < HEADER_SIZE) {
+            buffer = new byte[HEADER_SIZE];
+        }
+
+        int first = is.read();
+        if (first < 0) {
+            return false;
+        }
+        buffer[0] = (byte) first;
+        readFully(is, buffer, 1, HEADER_SIZE - 1);
+
+        int length = checkLength(((buffer[0] & 0xFF) << 24)
+                | ((buffer[1] & 0xFF) << 16)
+                | ((buffer[2] & 0xFF) << 8)
+                | (buffer[3] & 0xFF));
+
+        if (buffer.length < length) {
+            buffer = new byte[length];
+        }
+        readFully(is, buffer, 0, length);
+        input.setBuffer(buffer, 0, length);
+        return true;
+    }
+
+    /**
+     * Reads the protocol version and the message type at the start of a frame payload.
+     * <p/>
+     * The request id follows and must be read next with {@link #readRequestId(Input)}.
+     *
+     * @param input the input holding the frame payload
+     * @return the message type
+     * @throws IOException if the frame was written with a different protocol version
+     */
+    public static byte readType(Input input) throws IOException {
+        byte version = input.readByte();
+        if (version != PROTOCOL_VERSION) {
+            throw new IOException(String.format("Unsupported Kryo scoring protocol version %d (expected %d)", version, PROTOCOL_VERSION));
+        }
+        return input.readByte();
+    }
+
+    /**
+     * Reads the request id of a frame, right after {@link #readType(Input)}.
+     *
+     * @param input the input holding the frame payload
+     * @return the request id
+     */
+    public static int readRequestId(Input input) {
+        return input.readInt(true);
+    }
+
+    /**
+     * Writes the payload of a {@link #SCORES} response: the number of score arrays followed by the (variable
+     * length) size and the values of each array.
+     * <p/>
+     * The scores are written as raw primitives so that clients can read them without allocating, see
+     * {@link #readScores(Input, ScoreBuffer)}.
+     *
+     * @param output the output where the scores will be written to
+     * @param scores the scores to write
+     */
+    public static void writeScores(Output output, ScoreBuffer scores) {
+        double[] values = scores.values();
+        output.writeInt(scores.size(), true);
+        for (int i = 0; i < scores.size(); i++) {
+            int offset = scores.offset(i);
+            int length = scores.length(i);
+            output.writeInt(length, true);
+            for (int j = offset; j < offset + length; j++) {
+                output.writeDouble(values[j]);
+            }
+        }
+    }
+
+    /**
+     * Reads the payload of a {@link #SCORES} response into the given buffer, replacing its contents.
+     *
+     * @param input  the input holding the scores
+     * @param scores the buffer to read the scores into
+     */
+    public static void readScores(Input input, ScoreBuffer scores) {
+        scores.clear();
+        int size = input.readInt(true);
+        for (int i = 0; i < size; i++) {
+            int length = input.readInt(true);
+            int offset = scores.append(length);
+            double[] values = scores.values();
+            for (int j = offset; j < offset + length; j++) {
+                values[j] = input.readDouble();
+            }
+        }
+    }
+
+    /**
+     * Reads the payload of a {@link #SCORES} response.
+     *
+     * @param input the input holding the scores
+     * @return a new list with the scores
+     */
+    public static List<double[]> readScores(Input input) {
+        int size = input.readInt(true);
+        List<double[]> scores = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            scores.add(input.readDoubles(input.readInt(true)));
+        }
+        return scores;
+    }
+
+    /**
+     * Validates a payload length read from the wire.
+     *
+     * @param length the payload length
+     * @return the given length
+     * @throws IOException if the length is negative or above {@link #MAX_FRAME_SIZE}
+     */
+    public static int checkLength(int length) throws IOException {
+        return checkLength(length, MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Validates a payload length read from the wire against the given maximum.
+     *
+     * @param length       the payload length
+     * @param maxFrameSize the maximum accepted payload size in bytes
+     * @return the given length
+     * @throws IOException if the length is negative or above the maximum
+     */
+    public static int checkLength(int length, int maxFrameSize) throws IOException {
+        if (length < 0 || length > maxFrameSize) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+        }
+    }
+
+    private static void readFully(InputStream is, byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = is.read(buffer, offset, length);
+            if (read < 0) {
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import com.google.common.base.Objects;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The fields a model expects, as published by a Kryo scoring server in answer to a {@link KryoFrames#SCHEMA} request.
+ * <p/>
+ * Holds the name of every field and, for categorical fields, the sorted list of their values, so that clients can
+ * send {@link ColumnarInstance columnar instances} with the index of each categorical value instead of the value
+ * itself. The {@link #getVersion() version} identifies the content of the schema: instances stamped with it are
+ * rejected by the server if the model was reconfigured in the meantime.
+ *
+ * @since 1.0.11
+ */
+public final class ModelSchema {
+    /**
+     * The id of the model.
+     */
+    private UUID modelId;
+
+    /**
+     * The version of the schema, derived from its content.
+     */
+    private int version;
+
+    /**
+     * The name of each field.
+     */
+    private String[] names;
+
+    /**
+     * The sorted values of each categorical field, {@code null} for numeric fields.
+     */
+    private String[][] categories;
+
+    /**
+     * Empty constructor to allow kryo to create new instances
+     */
+    private ModelSchema() {
+    }
+
+    /**
+     * Creates a new schema.
+     *
+     * @param modelId    the id of the model
+     * @param names      the name of each field
+     * @param categories the sorted values of each categorical field, {@code null} for numeric fields
+     */
+    public ModelSchema(UUID modelId, String[] names, String[][] categories) {
+        checkNotNull(modelId, "Model id cannot be null");
+        checkNotNull(names, "Names cannot be null");
+        checkArgument(categories.length == names.length, "Expected the categories of %s fields but got %s", names.length, categories.length);
+
+        this.modelId = modelId;
+        this.names = names;
+        this.categories = categories;
+        this.version = version(names, categories);
+    }
+
+    /**
+     * Gets the id of the model.
+     *
+     * @return the model id
+     */
+    public UUID getModelId() {
+        return modelId;
+    }
+
+    /**
+     * Gets the version of the schema, which changes when the fields or categorical values of the model change.
+     *
+     * @return the version, never {@code 0}
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the number of fields.
+     *
+     * @return the number of fields
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Gets the name of a field.
+     *
+     * @param field the index of the field
+     * @return the name of the field
+     */
+    public String getName(int field) {
+        return names[field];
+    }
+
+    /**
+     * Checks if a field is categorical.
+     *
+     * @param field the index of the field
+     * @return {@code true} if the field is categorical
+     */
+    public boolean isCategorical(int field) {
+        return categories[field] != null;
+    }
+
+    /**
+     * Gets the sorted values of a categorical field.
+     *
+     * @param field the index of the field
+     * @return a copy of the values, {@code null} if the field is not categorical
+     */
+    public String[] getCategories(int field) {
+        return categories[field] != null ? categories[field].clone() : null;
+    }
+
+    /**
+     * Computes the version of a schema.
+     *
+     * @param names      the name of each field
+     * @param categories the values of each categorical field
+     * @return a hash of the schema, never {@code 0} (which stands for no schema)
+     */
+    static int version(String[] names, String[][] categories) {
+        int hash = Arrays.hashCode(names) * 31 + Arrays.deepHashCode(categories);
+        // spread the bits, similar schemas should not get similar versions
+        hash *= 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return hash != 0 ? hash : 1;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).
+                add("modelId", modelId).
+                add("version", version).
+                add("names", Arrays.toString(names)).
+                toString();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link ByteBufferOutput} that encodes into {@link DirectBufferPool pooled} direct buffers.
+ * <p/>
+ * When the buffer is full it is replaced by a larger pooled buffer and released. This also works around
+ * {@link ByteBufferOutput} in Kryo 2.24, which copies the whole buffer when growing it instead of the bytes written
+ * so far, leaving a gap in the output when it grows before the buffer is completely full.
+ *
+ * @since 1.0.11
+ */
+public class PooledByteBufferOutput extends ByteBufferOutput {
+    /**
+     * Creates a new output with no maximum size.
+     *
+     * @param bufferSize the initial size of the buffer in bytes
+     */
+    public PooledByteBufferOutput(int bufferSize) {
+        super(DirectBufferPool.acquire(bufferSize), -1);
+    }
+
+    @Override
+    protected boolean require(int required) throws KryoException {
+        if (capacity - position >= required) {
+            return false;
+        }
+        if (required > maxCapacity - position) {
+            throw new KryoException("Buffer overflow. Max capacity: " + maxCapacity + ", required: " + required);
+        }
+
+        ByteBuffer grown = DirectBufferPool.acquire((int) Math.min(Integer.MAX_VALUE, Math.max(2L * capacity, (long) position + required)));
+        grown.order(niobuffer.order());
+        niobuffer.clear();
+        niobuffer.limit(position);
+        grown.put(niobuffer);
+        DirectBufferPool.release(niobuffer);
+
+        niobuffer = grown;
+        capacity = grown.capacity();
+        return true;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * Reusable holder of the scores of a request.
+ * <p/>
+ * The scores of every model (or instance) are stored one after the other in a single flat {@code double[]}
+ * that grows as needed and is kept between requests, so that scoring into the same buffer does not allocate
+ * once it is large enough.
+ * <p/>
+ * This class is not thread safe.
+ *
+ * @since 1.0.11
+ */
+public final class ScoreBuffer {
+    /**
+     * The scores, one array after the other.
+     */
+    private double[] values;
+
+    /**
+     * The offset in {@link #values} of each score array, followed by the offset of the end of the last one.
+     */
+    private int[] offsets;
+
+    /**
+     * The number of score arrays.
+     */
+    private int size;
+
+    /**
+     * Creates a new buffer with room for 8 score arrays of 2 scores.
+     */
+    public ScoreBuffer() {
+        this(8, 16);
+    }
+
+    /**
+     * Creates a new buffer with the given initial capacity.
+     *
+     * @param scores the number of score arrays
+     * @param values the total number of scores
+     */
+    public ScoreBuffer(int scores, int values) {
+        checkArgument(scores >= 0 && values >= 0, "Capacity cannot be negative");
+        this.values = new double[values];
+        this.offsets = new int[scores + 1];
+    }
+
+    /**
+     * Removes all the scores, keeping the allocated capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Gets the number of score arrays.
+     *
+     * @return the number of score arrays
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of scores in the score array at the given position.
+     *
+     * @param index the position of the score array
+     * @return the number of scores
+     */
+    public int length(int index) {
+        checkElementIndex(index, size);
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * Gets the offset in {@link #values()} of the score array at the given position.
+     *
+     * @param index the position of the score array
+     * @return the offset of the first score
+     */
+    public int offset(int index) {
+        checkElementIndex(index, size);
+        return offsets[index];
+    }
+
+    /**
+     * Gets a score.
+     *
+     * @param index the position of the score array
+     * @param score the position of the score in the array
+     * @return the score
+     */
+    public double get(int index, int score) {
+        checkElementIndex(score, length(index));
+        return values[offsets[index] + score];
+    }
+
+    /**
+     * Gets the backing array of the scores, valid until the buffer is changed.
+     *
+     * @return the scores, see {@link #offset(int)} and {@link #length(int)}
+     */
+    public double[] values() {
+        return values;
+    }
+
+    /**
+     * Appends a copy of the given scores.
+     *
+     * @param scores the scores to append
+     */
+    public void add(double[] scores) {
+        int offset = append(scores.length);
+        System.arraycopy(scores, 0, values, offset, scores.length);
+    }
+
+    /**
+     * Appends a copy of each of the given score arrays.
+     *
+     * @param scores the scores to append
+     */
+    public void addAll(List<double[]> scores) {
+        for (double[] score : scores) {
+            add(score);
+        }
+    }
+
+    /**
+     * Appends a new score array of the given length, to be filled by the caller.
+     *
+     * @param length the number of scores
+     * @return the offset in {@link #values()} where the scores must be written to
+     */
+    public int append(int length) {
+        checkArgument(length >= 0, "Length cannot be negative");
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(size + 2, offsets.length * 2));
+        }
+
+        int offset = offsets[size];
+        if (offset + length > values.length) {
+            values = Arrays.copyOf(values, Math.max(offset + length, values.length * 2));
+        }
+
+        offsets[++size] = offset + length;
+        return offset;
+    }
+
+    /**
+     * Copies the score array at the given position.
+     *
+     * @param index the position of the score array
+     * @return a new array with the scores
+     */
+    public double[] toArray(int index) {
+        return Arrays.copyOfRange(values, offset(index), offsets[index + 1]);
+    }
+
+    /**
+     * Copies all the score arrays.
+     *
+     * @return a new list with a new array for each score array
+     */
+    public List<double[]> toList() {
+        List<double[]> scores = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            scores.add(toArray(i));
+        }
+        return scores;
+    }
+}
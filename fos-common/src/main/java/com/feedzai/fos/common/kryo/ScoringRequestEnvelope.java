@@ -42,6 +42,11 @@ public class ScoringRequestEnvelope {
      */
     Object[] instance;
 
+    /**
+     * Maximum time in milliseconds the request may wait to be scored, 0 for the default of the server
+     */
+    int queueTimeout;
+
     /**
      * Empty constructor to allow kryo to create new instances
      */
@@ -72,8 +77,22 @@ public class ScoringRequestEnvelope {
      */
     public ScoringRequestEnvelope(List<UUID> uuids,
                                   Object[] instance) {
+        this(uuids, instance, 0);
+    }
+
+    /**
+     * Creates a new scoring envelope with a queue timeout
+     *
+     * @param uuids        List of classifier uuid to score
+     * @param instance     instance to score
+     * @param queueTimeout maximum time in milliseconds the request may wait to be scored, 0 for the default of the server
+     */
+    public ScoringRequestEnvelope(List<UUID> uuids,
+                                  Object[] instance,
+                                  int queueTimeout) {
         this.uuids = uuids;
         this.instance = instance;
+        this.queueTimeout = queueTimeout;
     }
 
     /**
@@ -91,5 +110,13 @@ public class ScoringRequestEnvelope {
     public Object[] getInstance() {
         return instance;
     }
+
+    /**
+     * Returns the maximum time the request may wait to be scored
+     * @return the queue timeout in milliseconds, 0 for the default of the server
+     */
+    public int getQueueTimeout() {
+        return queueTimeout;
+    }
 }
 
@@ -0,0 +1,198 @@
+/*
+ * $#
+ * FOS Common
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.common.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.ObjectMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Connection scoped table of the {@link UUID UUIDs} (model ids) already sent on a Kryo scoring connection.
+ * <p/>
+ * The first time a UUID is written it is assigned the next handle and sent in full, from then on only its
+ * (variable length) handle is sent. Both ends of the connection assign handles in the order the UUIDs are first
+ * seen, so the tables stay in sync as long as frames are read in the order they were written. A new connection
+ * starts with empty tables.
+ * <p/>
+ * A registry is {@link #bindWriter(Kryo) bound for writing} by the client and {@link #bindReader(Kryo) for reading}
+ * by the server in the context of the {@link Kryo} instance used for the connection, and used by
+ * {@link InternedUUIDSerializer}. Once {@link #MAX_SIZE} UUIDs are registered the others are always sent in full.
+ * <p/>
+ * This class is not thread safe, writers must hold the lock of the connection while encoding.
+ *
+ * @since 1.0.11
+ */
+public final class UUIDRegistry {
+    /**
+     * The maximum number of handles of a connection.
+     */
+    public static final int MAX_SIZE = 4096;
+
+    /**
+     * The key of the registry used for writing in the {@link Kryo#getContext() Kryo context}.
+     */
+    private static final String WRITER = UUIDRegistry.class.getName() + ".writer";
+
+    /**
+     * The key of the registry used for reading in the {@link Kryo#getContext() Kryo context}.
+     */
+    private static final String READER = UUIDRegistry.class.getName() + ".reader";
+
+    /**
+     * The registered UUIDs, by handle.
+     */
+    private final List<UUID> uuids = new ArrayList<>();
+
+    /**
+     * The handles of the registered UUIDs, only kept when writing.
+     */
+    private final Map<UUID, Integer> handles = new HashMap<>();
+
+    /**
+     * Uses this registry to write the UUIDs encoded by the given Kryo instance.
+     *
+     * @param kryo the Kryo instance that encodes the requests of the connection
+     */
+    public void bindWriter(Kryo kryo) {
+        context(kryo).put(WRITER, this);
+    }
+
+    /**
+     * Uses this registry to read the UUIDs decoded by the given Kryo instance.
+     * <p/>
+     * Kryo instances shared by several connections must be bound to the registry of each connection before
+     * decoding its frames.
+     *
+     * @param kryo the Kryo instance that decodes the requests of the connection
+     */
+    public void bindReader(Kryo kryo) {
+        context(kryo).put(READER, this);
+    }
+
+    /**
+     * Gets the number of registered UUIDs, to {@link #rollback(int) rollback} the ones registered by a frame that
+     * could not be sent.
+     *
+     * @return the number of registered UUIDs
+     */
+    public int size() {
+        return uuids.size();
+    }
+
+    /**
+     * Forgets the UUIDs registered after the registry had the given size.
+     *
+     * @param size the size of the registry before the frame that could not be sent was encoded
+     */
+    public void rollback(int size) {
+        while (uuids.size() > size) {
+            handles.remove(uuids.remove(uuids.size() - 1));
+        }
+    }
+
+    /**
+     * Writes a UUID with the registry bound for writing in the Kryo instance, or in full if none is bound.
+     *
+     * @param kryo   the Kryo instance
+     * @param output the output to write to
+     * @param uuid   the UUID to write
+     */
+    static void write(Kryo kryo, Output output, UUID uuid) {
+        UUIDRegistry registry = (UUIDRegistry) context(kryo).get(WRITER);
+        if (registry == null) {
+            output.writeVarInt(0, true);
+            writeUUID(output, uuid);
+            return;
+        }
+
+        Integer handle = registry.handles.get(uuid);
+        if (handle != null) {
+            output.writeVarInt(handle + 1, true);
+        } else if (registry.uuids.size() < MAX_SIZE) {
+            handle = registry.uuids.size();
+            registry.uuids.add(uuid);
+            registry.handles.put(uuid, handle);
+            output.writeVarInt(handle + 1, true);
+            writeUUID(output, uuid);
+        } else {
+            output.writeVarInt(0, true);
+            writeUUID(output, uuid);
+        }
+    }
+
+    /**
+     * Reads a UUID with the registry bound for reading in the Kryo instance.
+     *
+     * @param kryo  the Kryo instance
+     * @param input the input to read from
+     * @return the UUID
+     * @throws KryoException if the UUID was written with a handle unknown to the registry
+     */
+    static UUID read(Kryo kryo, Input input) {
+        int tag = input.readVarInt(true);
+        if (tag == 0) {
+            return readUUID(input);
+        }
+
+        UUIDRegistry registry = (UUIDRegistry) context(kryo).get(READER);
+        int handle = tag - 1;
+        if (registry == null) {
+            throw new KryoException("UUID handle " + handle + " received without a registry");
+        } else if (handle < registry.uuids.size()) {
+            return registry.uuids.get(handle);
+        } else if (handle == registry.uuids.size() && handle < MAX_SIZE) {
+            UUID uuid = readUUID(input);
+            registry.uuids.add(uuid);
+            return uuid;
+        }
+        throw new KryoException("Unknown UUID handle " + handle + ", " + registry.uuids.size() + " registered");
+    }
+
+    private static void writeUUID(Output output, UUID uuid) {
+        output.writeLong(uuid.getMostSignificantBits(), false);
+        output.writeLong(uuid.getLeastSignificantBits(), false);
+    }
+
+    private static UUID readUUID(Input input) {
+        return new UUID(input.readLong(false), input.readLong(false));
+    }
+
+    /**
+     * Gets the context of a Kryo instance, which holds the registries bound to it.
+     *
+     * @param kryo the Kryo instance
+     * @return the context
+     */
+    @SuppressWarnings("unchecked") // Kryo only exposes the context as a raw map
+    private static ObjectMap<Object, Object> context(Kryo kryo) {
+        return kryo.getContext();
+    }
+}
@@ -22,7 +22,14 @@
  */
 package com.feedzai.fos.server;
 
+import com.feedzai.fos.api.AdmissionControl;
+import com.feedzai.fos.api.FOSException;
+import com.feedzai.fos.api.KryoScoringServer;
+import com.feedzai.fos.api.ModelConfig;
+import com.feedzai.fos.api.ScoringExecutor;
 import com.feedzai.fos.api.config.FosConfig;
+import com.feedzai.fos.api.metrics.Metrics;
+import com.feedzai.fos.api.metrics.MetricsRegistry;
 import com.feedzai.fos.server.remote.api.IRemoteManager;
 import com.feedzai.fos.server.remote.api.RemoteScorer;
 import com.feedzai.fos.server.remote.impl.RemoteManager;
@@ -31,10 +38,13 @@ import org.apache.commons.configuration.ConfigurationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * Server that registers the classification implementation in the RMI registry.
@@ -45,32 +55,68 @@ public class FosServer {
     private final static Logger logger = LoggerFactory.getLogger(FosServer.class);
 
     private FosConfig parameters;
+    private final ScoringExecutor scoringExecutor;
+    private final AdmissionControl admission;
     private final RemoteManager remoteManager;
     private Registry registry;
+    private KryoScoringServer scoringServer;
 
     /**
      * Creates a new server with the given parameters.
      * <p/> Creates a new @{RemoteManager} from the configuration file defined in the parameters.
+     * <p/> Sets the {@link FosConfig#getMetricsRegistry() configured metrics registry} as the default for the scoring transports.
+     * <p/> Creates the {@link ScoringExecutor} shared by the scoring transports, with {@link FosConfig#getThreadPoolSize()} threads,
+     * and their {@link AdmissionControl}.
      *
      * @param parameters a list of parameters
      * @throws ConfigurationException when the configuration file specified in the parameters cannot be open/read.
      */
     public FosServer(FosConfig parameters) throws ConfigurationException {
         this.parameters = parameters;
-        this.remoteManager = new RemoteManagerFactory().createManager(parameters);
+        Metrics.setRegistry(createMetricsRegistry(parameters));
+        this.scoringExecutor = new ScoringExecutor(parameters);
+        this.admission = new AdmissionControl(parameters);
+        this.remoteManager = new RemoteManagerFactory().createManager(parameters, scoringExecutor, admission);
+    }
+
+    /**
+     * Instantiates the configured metrics registry.
+     *
+     * @param parameters the FOS configuration
+     * @return the metrics registry
+     */
+    private static MetricsRegistry createMetricsRegistry(FosConfig parameters) {
+        try {
+            return MetricsRegistry.class.cast(Class.forName(parameters.getMetricsRegistry()).newInstance());
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException e) {
+            throw new IllegalArgumentException("Could not instantiate metrics registry " + parameters.getMetricsRegistry(), e);
+        }
     }
 
     /**
      * Binds the Manager and Scorer to the RMI Registry.
+     * <p/> Publishes the attributes of the models already loaded to the metrics registry.
+     * <p/> Starts the Kryo scoring server if enabled in the configuration, scoring in the same executor as RMI.
      * <p/> Also registers a shutdown hook for closing and removing the items from the registry.
      *
      * @throws RemoteException when binding was not possible.
+     * @throws IOException     when the Kryo scoring server could not be started.
+     * @throws FOSException    when the scorer for the Kryo scoring server could not be obtained.
      */
-    public void bind() throws RemoteException {
+    public void bind() throws IOException, FOSException {
         registry = LocateRegistry.getRegistry(parameters.getRegistryPort());
         registry.rebind(IRemoteManager.class.getSimpleName(), UnicastRemoteObject.exportObject(remoteManager, parameters.getRegistryPort()));
         registry.rebind(RemoteScorer.class.getSimpleName(), UnicastRemoteObject.exportObject(remoteManager.getScorer(), parameters.getRegistryPort()));
 
+        for (Map.Entry<UUID, ? extends ModelConfig> model : remoteManager.getManager().listModels().entrySet()) {
+            Metrics.getRegistry().register(model.getKey(), model.getValue().getAttributes());
+        }
+
+        if (parameters.isScoringServer()) {
+            scoringServer = new KryoScoringServer(parameters, remoteManager.getLocalScorer(), remoteManager.getSchemas(), scoringExecutor, admission);
+            scoringServer.start();
+        }
+
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
@@ -97,6 +143,12 @@ public class FosServer {
             logger.trace("Could not unbind", e);
         }
 
+        if (scoringServer != null) {
+            scoringServer.close();
+        }
+
+        scoringExecutor.close();
+
         try {
             remoteManager.getScorer().close();
         } catch (Exception e) {
@@ -0,0 +1,171 @@
+/*
+ * $#
+ * FOS Server
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.server.remote.impl;
+
+import com.feedzai.fos.api.FOSException;
+import com.feedzai.fos.api.ModelDescriptor;
+import com.feedzai.fos.api.util.ManagerUtils;
+import com.feedzai.fos.server.remote.api.IRemoteManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A chunked upload of a classifier, see {@link IRemoteManager#beginModelUpload(ModelDescriptor.Format)}.
+ * <p/>
+ * Chunks are written straight to the file of the classifier in the model location, so the memory used by an upload
+ * does not depend on the size of the classifier.
+ * <p/>
+ * This class is thread safe.
+ *
+ * @since 1.0.11
+ */
+final class ModelUpload {
+    private final ModelDescriptor.Format format;
+    private final File file;
+    private final FileChannel channel;
+    /**
+     * The checksum of the chunks received so far.
+     */
+    private final CRC32 checksum = new CRC32();
+    /**
+     * The number of bytes received so far.
+     */
+    private long size;
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    /**
+     * Creates the file of a new upload.
+     *
+     * @param location the model location where the file is created
+     * @param id       the id of the upload
+     * @param format   the format in which the classifier is represented
+     * @throws IOException when the file could not be created
+     */
+    ModelUpload(File location, UUID id, ModelDescriptor.Format format) throws IOException {
+        this.format = checkNotNull(format, "The format of the model must be defined");
+        this.file = ManagerUtils.createModelFile(location, id, format);
+        this.channel = new FileOutputStream(file).getChannel();
+    }
+
+    /**
+     * Appends a chunk to the file, chunks that were already received are ignored.
+     *
+     * @param offset        the offset of the chunk in the classifier
+     * @param chunk         the bytes of the chunk
+     * @param chunkChecksum the CRC32 of the chunk
+     * @throws FOSException when the chunk is out of order, its checksum does not match or it could not be written
+     */
+    synchronized void append(long offset, byte[] chunk, long chunkChecksum) throws FOSException {
+        checkNotNull(chunk, "The chunk must be defined");
+        lastUsed = System.currentTimeMillis();
+
+        if (offset < size && offset + chunk.length <= size) {
+            return;
+        }
+        if (offset != size) {
+            throw new FOSException(String.format("Expected the chunk at offset %d of %s, got the one at offset %d", size, file.getName(), offset));
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(chunk);
+        if (crc.getValue() != chunkChecksum) {
+            throw new FOSException(String.format("Checksum mismatch in the chunk at offset %d of %s", offset, file.getName()));
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new FOSException("Could not write the chunk at offset " + offset + " of " + file.getName(), e);
+        }
+        checksum.update(chunk);
+        size += chunk.length;
+    }
+
+    /**
+     * Completes the upload.
+     * <p/>
+     * The file is deleted if the checksum of the classifier does not match.
+     *
+     * @param expected the CRC32 of the whole classifier
+     * @return the descriptor of the uploaded classifier
+     * @throws FOSException when the checksum does not match or the file could not be completed
+     */
+    synchronized ModelDescriptor commit(long expected) throws FOSException {
+        try {
+            channel.force(true);
+            channel.close();
+        } catch (IOException e) {
+            abort();
+            throw new FOSException("Could not complete " + file.getName(), e);
+        }
+
+        if (checksum.getValue() != expected) {
+            abort();
+            throw new FOSException(String.format("Checksum mismatch in %s after %d bytes, the upload was discarded", file.getName(), size));
+        }
+        return new ModelDescriptor(format, file.getAbsolutePath());
+    }
+
+    /**
+     * Discards the upload and deletes its file.
+     */
+    synchronized void abort() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the file is deleted anyway
+        }
+        file.delete();
+    }
+
+    /**
+     * Checks if the upload was not used for a given time.
+     *
+     * @param now     the current time in milliseconds
+     * @param timeout the inactivity period in milliseconds
+     * @return {@code true} if the upload was not used for longer than the timeout
+     */
+    boolean isExpired(long now, long timeout) {
+        return now - lastUsed > timeout;
+    }
+
+    /**
+     * Gets the file the classifier is written to.
+     *
+     * @return the file of the upload
+     */
+    File getFile() {
+        return file;
+    }
+}
@@ -23,6 +23,9 @@
 package com.feedzai.fos.server.remote.impl;
 
 import com.feedzai.fos.api.*;
+import com.feedzai.fos.api.config.FosConfig;
+import com.feedzai.fos.api.metrics.Metrics;
+import com.feedzai.fos.api.metrics.MetricsRegistry;
 import com.feedzai.fos.common.validation.NotBlank;
 import com.feedzai.fos.common.validation.NotNull;
 import com.feedzai.fos.server.remote.api.IRemoteManager;
@@ -30,64 +33,279 @@ import com.google.common.base.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.rmi.RemoteException;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Remote manager that encapsulates an underlying @{Manager}.
  * <p/>
  * Encapsulates the underlying implementation exceptions in RemoteExceptions.
+ * <p/>
+ * The attributes of the models added or reconfigured through this manager are {@link MetricsRegistry#register(UUID, List) published}
+ * to the metrics registry, and their cached {@link ModelSchemaCache schemas} are invalidated.
+ * <p/>
+ * Chunked {@link #beginModelUpload(ModelDescriptor.Format) uploads} are written to the model location and added to the
+ * underlying @{Manager} as {@link ModelDescriptor descriptors} once committed.
+ * <p/>
+ * Given an enabled {@link ModelWarmup}, new models are warmed up with the local @{Scorer} before their id is returned
+ * and their attributes and schema are published, so no client can score them cold. A new model that fails its warm-up
+ * is removed. Reconfigured models are swapped by the underlying @{Manager} itself, so their attributes and schema are
+ * published right after the swap and they are warmed before the reconfiguration returns, unless the implementation
+ * warms them before the swap (see {@link ModelWarmup#loader}). A reconfigured model that fails its warm-up stays live.
  *
  * @author Marco Jorge (marco.jorge@feedzai.com)
  */
 public class RemoteManager implements IRemoteManager {
     private static final Logger logger = LoggerFactory.getLogger(RemoteManager.class);
 
+    /**
+     * The inactivity period after which uploads are discarded.
+     */
+    static final long UPLOAD_TIMEOUT_MS = TimeUnit.HOURS.toMillis(1);
+
     private Manager manager;
+    private Scorer scorer;
     private RemoteScorer remoteScorer;
+    private MetricsRegistry metrics;
+    private ModelSchemaCache schemas;
+    private ModelWarmup warmup;
+    private File modelLocation;
+    private final ConcurrentMap<UUID, ModelUpload> uploads = new ConcurrentHashMap<>();
 
     /**
      * Creates a new @{Manager} that delegates all calls to the underlying @{Manager}.
+     * <p/>
+     * Uploads are written to the {@link FosConfig#DEFAULT_HEADER_LOCATION default model location}.
      *
      * @param manager the underlying manager
      * @throws Exception when retrieving the @{Scorer} from the underlying implementation
      */
     public RemoteManager(Manager manager) throws Exception {
+        this(manager, new File(FosConfig.DEFAULT_HEADER_LOCATION));
+    }
+
+    /**
+     * Creates a new @{Manager} that delegates all calls to the underlying @{Manager}.
+     *
+     * @param manager       the underlying manager
+     * @param modelLocation the location where uploads are written to
+     * @throws Exception when retrieving the @{Scorer} from the underlying implementation
+     */
+    public RemoteManager(Manager manager, File modelLocation) throws Exception {
+        this(manager, manager.getScorer(), modelLocation);
+    }
+
+    /**
+     * Creates a new @{Manager} that delegates all calls to the underlying @{Manager} and scores with the given
+     * @{Scorer}, usually a decorator of the scorer of the underlying @{Manager} (e.g. a {@link ParallelScorer}).
+     *
+     * @param manager       the underlying manager
+     * @param scorer        the scorer of the models of the underlying manager
+     * @param modelLocation the location where uploads are written to
+     */
+    public RemoteManager(Manager manager, Scorer scorer, File modelLocation) {
+        this(manager, scorer, null, modelLocation);
+    }
+
+    /**
+     * Creates a new @{Manager} that delegates all calls to the underlying @{Manager} and scores the RMI requests
+     * with the given @{Scorer} in the threads of a {@link ScoringExecutor}.
+     *
+     * @param manager       the underlying manager
+     * @param scorer        the scorer of the models of the underlying manager
+     * @param executor      the executor that scores the RMI requests, {@code null} to score them in the RMI threads
+     * @param modelLocation the location where uploads are written to
+     */
+    public RemoteManager(Manager manager, Scorer scorer, ScoringExecutor executor, File modelLocation) {
+        this(manager, scorer, executor, AdmissionControl.UNLIMITED, modelLocation);
+    }
+
+    /**
+     * Creates a new @{Manager} that delegates all calls to the underlying @{Manager} and scores the RMI requests
+     * admitted by an {@link AdmissionControl} with the given @{Scorer} in the threads of a {@link ScoringExecutor}.
+     *
+     * @param manager       the underlying manager
+     * @param scorer        the scorer of the models of the underlying manager
+     * @param executor      the executor that scores the RMI requests, {@code null} to score them in the RMI threads
+     * @param admission     the admission control of the RMI requests
+     * @param modelLocation the location where uploads are written to
+     */
+    public RemoteManager(Manager manager, Scorer scorer, ScoringExecutor executor, AdmissionControl admission, File modelLocation) {
+        this(manager, scorer, executor, admission, ModelWarmup.DISABLED, modelLocation);
+    }
+
+    /**
+     * Creates a new @{Manager} that delegates all calls to the underlying @{Manager}, warms up the models added or
+     * reconfigured through it and scores the RMI requests admitted by an {@link AdmissionControl} with the given
+     * @{Scorer} in the threads of a {@link ScoringExecutor}.
+     *
+     * @param manager       the underlying manager
+     * @param scorer        the scorer of the models of the underlying manager
+     * @param executor      the executor that scores the RMI requests, {@code null} to score them in the RMI threads
+     * @param admission     the admission control of the RMI requests
+     * @param warmup        the warm-up of the models added or reconfigured
+     * @param modelLocation the location where uploads are written to
+     */
+    public RemoteManager(Manager manager, Scorer scorer, ScoringExecutor executor, AdmissionControl admission, ModelWarmup warmup, File modelLocation) {
         this.manager = manager;
-        this.remoteScorer = new RemoteScorer(manager.getScorer());
+        this.scorer = scorer;
+        this.metrics = Metrics.getRegistry();
+        this.remoteScorer = new RemoteScorer(scorer, metrics, executor, admission);
+        this.schemas = new ModelSchemaCache(manager);
+        this.warmup = warmup;
+        this.modelLocation = modelLocation;
     }
 
 
+    /**
+     * Gets the underlying @{Manager} this remote manager delegates to.
+     *
+     * @return the underlying manager
+     */
+    public Manager getManager() {
+        return manager;
+    }
+
+    /**
+     * Gets the local @{Scorer} of the models, shared by the RMI and the Kryo transports.
+     *
+     * @return the scorer of the models
+     */
+    public Scorer getLocalScorer() {
+        return scorer;
+    }
+
+    /**
+     * Gets the schemas of the models of the underlying @{Manager}, kept up to date by this remote manager.
+     *
+     * @return the schemas of the models
+     */
+    public ModelSchemaCache getSchemas() {
+        return schemas;
+    }
+
     @Override
     public UUID addModel(ModelConfig config, Model model) throws RemoteException, FOSException {
-        return this.manager.addModel(config, model);
+        return register(warmupAdded(this.manager.addModel(config, model), config), config);
     }
 
     @Override
     public UUID addModel(ModelConfig config, @NotBlank ModelDescriptor descriptor) throws RemoteException, FOSException {
-        return this.manager.addModel(config, descriptor);
+        return register(warmupAdded(this.manager.addModel(config, descriptor), config), config);
+    }
+
+    @Override
+    public UUID beginModelUpload(ModelDescriptor.Format format) throws RemoteException, FOSException {
+        expireUploads();
+
+        UUID uploadId = UUID.randomUUID();
+        try {
+            uploads.put(uploadId, new ModelUpload(modelLocation, uploadId, format));
+        } catch (IOException e) {
+            throw new FOSException("Could not start the upload in " + modelLocation, e);
+        }
+        return uploadId;
+    }
+
+    @Override
+    public void uploadModelChunk(UUID uploadId, long offset, byte[] chunk, long checksum) throws RemoteException, FOSException {
+        ModelUpload upload = uploads.get(uploadId);
+        if (upload == null) {
+            throw new FOSException("Unknown upload " + uploadId + ", it may have expired");
+        }
+        upload.append(offset, chunk, checksum);
+    }
+
+    @Override
+    public UUID commitModelUpload(UUID uploadId, ModelConfig config, long checksum) throws RemoteException, FOSException {
+        ModelDescriptor descriptor = commitUpload(uploadId, checksum);
+        try {
+            return addModel(config, descriptor);
+        } catch (Exception e) {
+            new File(descriptor.getModelFilePath()).delete();
+            throw e;
+        }
+    }
+
+    @Override
+    public void commitModelUpload(UUID uploadId, UUID modelId, ModelConfig config, long checksum) throws RemoteException, FOSException {
+        ModelDescriptor descriptor = commitUpload(uploadId, checksum);
+        try {
+            this.manager.reconfigureModel(modelId, config, descriptor);
+        } catch (Exception e) {
+            new File(descriptor.getModelFilePath()).delete();
+            throw e;
+        }
+        reconfigured(modelId, config);
+    }
+
+    @Override
+    public void abortModelUpload(UUID uploadId) throws RemoteException, FOSException {
+        ModelUpload upload = uploads.remove(uploadId);
+        if (upload != null) {
+            upload.abort();
+        }
+    }
+
+    /**
+     * Completes an upload.
+     *
+     * @param uploadId the id of the upload
+     * @param checksum the CRC32 of the whole classifier
+     * @return the descriptor of the uploaded classifier
+     * @throws FOSException when the upload does not exist or could not be completed
+     */
+    private ModelDescriptor commitUpload(UUID uploadId, long checksum) throws FOSException {
+        ModelUpload upload = uploads.remove(uploadId);
+        if (upload == null) {
+            throw new FOSException("Unknown upload " + uploadId + ", it may have expired");
+        }
+        return upload.commit(checksum);
+    }
+
+    /**
+     * Discards the uploads that were not used for {@link #UPLOAD_TIMEOUT_MS}.
+     */
+    private void expireUploads() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<UUID, ModelUpload> upload : uploads.entrySet()) {
+            if (upload.getValue().isExpired(now, UPLOAD_TIMEOUT_MS) && uploads.remove(upload.getKey(), upload.getValue())) {
+                logger.warn("Discarding upload {} to {} after {} ms of inactivity", upload.getKey(), upload.getValue().getFile(), UPLOAD_TIMEOUT_MS);
+                upload.getValue().abort();
+            }
+        }
     }
 
     @Override
     public void removeModel(UUID modelId) throws RemoteException, FOSException {
         this.manager.removeModel(modelId);
+        this.metrics.remove(modelId);
+        this.schemas.invalidate(modelId);
     }
 
     @Override
     public void reconfigureModel(UUID modelId, ModelConfig config) throws RemoteException, FOSException {
         this.manager.reconfigureModel(modelId, config);
+        reconfigured(modelId, config);
     }
 
     @Override
     public void reconfigureModel(UUID modelId, ModelConfig config, Model model) throws RemoteException, FOSException {
         this.manager.reconfigureModel(modelId, config, model);
+        reconfigured(modelId, config);
     }
 
     @Override
     public void reconfigureModel(UUID modelId, ModelConfig config, ModelDescriptor descriptor) throws RemoteException, FOSException {
         this.manager.reconfigureModel(modelId, config, descriptor);
+        reconfigured(modelId, config);
     }
 
     @Override
@@ -97,6 +315,76 @@ public class RemoteManager implements IRemoteManager {
 
     }
 
+    /**
+     * Publishes a model that was just reconfigured and warms it up. The model is already live, so it is published
+     * first, keeping its schema in step with the model that is scoring even if the warm-up fails.
+     *
+     * @param modelId the id of the model
+     * @param config  the configuration of the model, may be {@code null}
+     * @throws FOSException if the model could not be warmed up
+     */
+    private void reconfigured(UUID modelId, ModelConfig config) throws FOSException {
+        register(modelId, config);
+        warmup(modelId, config);
+    }
+
+    /**
+     * Warms up a model that was just added, removing it if the warm-up fails.
+     *
+     * @param modelId the id of the model
+     * @param config  the configuration of the model, may be {@code null}
+     * @return the id of the model
+     * @throws FOSException if the model could not be warmed up
+     */
+    private UUID warmupAdded(UUID modelId, ModelConfig config) throws FOSException {
+        try {
+            warmup(modelId, config);
+        } catch (FOSException e) {
+            try {
+                this.manager.removeModel(modelId);
+            } catch (FOSException removal) {
+                e.addSuppressed(removal);
+            }
+            throw e;
+        }
+        return modelId;
+    }
+
+    /**
+     * Warms up a model by scoring instances that follow its attributes with the local @{Scorer}, if enabled.
+     *
+     * @param modelId the id of the model
+     * @param config  the configuration of the model, may be {@code null}
+     * @throws FOSException if the model could not score the warm-up instances
+     */
+    private void warmup(UUID modelId, ModelConfig config) throws FOSException {
+        if (!warmup.isEnabled() || modelId == null || config == null) {
+            return;
+        }
+        try {
+            warmup.warmup(modelId, this.scorer::score, warmup.instances(config.getAttributes()));
+        } catch (FOSException e) {
+            throw new FOSException("Model " + modelId + " failed its warm-up", e);
+        }
+    }
+
+    /**
+     * Publishes the attributes of a model to the metrics registry and invalidates its cached schema.
+     *
+     * @param modelId the id of the model
+     * @param config  the configuration of the model, may be {@code null}
+     * @return the id of the model
+     */
+    private UUID register(UUID modelId, ModelConfig config) {
+        if (modelId != null) {
+            this.schemas.invalidate(modelId);
+        }
+        if (modelId != null && config != null) {
+            this.metrics.register(modelId, config.getAttributes());
+        }
+        return modelId;
+    }
+
     @Override
     @NotNull
     public RemoteScorer getScorer() throws RemoteException {
@@ -105,19 +393,22 @@ public class RemoteManager implements IRemoteManager {
 
     @Override
     public void close() throws RemoteException, FOSException {
+        for (UUID uploadId : uploads.keySet()) {
+            abortModelUpload(uploadId);
+        }
         this.manager.close();
 
     }
 
     @Override
     public UUID trainAndAdd(ModelConfig config, List<Object[]> instances) throws RemoteException, FOSException {
-        return this.manager.trainAndAdd(config, instances);
+        return register(warmupAdded(this.manager.trainAndAdd(config, instances), config), config);
 
     }
 
     @Override
     public UUID trainAndAddFile(ModelConfig config, String path) throws RemoteException, FOSException {
-        return this.manager.trainAndAddFile(config, path);
+        return register(warmupAdded(this.manager.trainAndAddFile(config, path), config), config);
     }
 
     @Override
@@ -22,7 +22,13 @@
  */
 package com.feedzai.fos.server.remote.impl;
 
+import com.feedzai.fos.api.AdmissionControl;
+import com.feedzai.fos.api.Manager;
 import com.feedzai.fos.api.ManagerFactory;
+import com.feedzai.fos.api.ModelWarmup;
+import com.feedzai.fos.api.ParallelScorer;
+import com.feedzai.fos.api.Scorer;
+import com.feedzai.fos.api.ScoringExecutor;
 import com.feedzai.fos.api.config.FosConfig;
 import com.feedzai.fos.common.validation.NotNull;
 
@@ -41,12 +47,43 @@ public class RemoteManagerFactory {
      * <li>{@link FosConfig#FACTORY_NAME} the classname of the underlying {@link ManagerFactory} implementation</li>
      * </ul>
      * The <code>configuration</code> must also contain all required parameters for the underlying implementation.
+     * <p/> Models uploaded in chunks are written to {@link FosConfig#HEADER_LOCATION}.
+     * <p/> The models of a request and the chunks of a batch are scored in parallel if {@link FosConfig#SCORING_PARALLELISM} is positive.
+     * <p/> New and reconfigured models are warmed up if {@link FosConfig#WARMUP_INSTANCES} is positive.
      *
      * @param configuration the configuration parameters specific for an implementation
      * @return a <code>RemoteManager</code> that extends remote
      */
     @NotNull
     public RemoteManager createManager(FosConfig configuration) {
+        return createManager(configuration, null);
+    }
+
+    /**
+     * Creates a new RemoteManager that scores the RMI requests in the threads of a shared executor.
+     *
+     * @param configuration the configuration parameters specific for an implementation
+     * @param executor      the executor that scores the RMI requests, {@code null} to score them in the RMI threads
+     * @return a <code>RemoteManager</code> that extends remote
+     * @see #createManager(FosConfig)
+     */
+    @NotNull
+    public RemoteManager createManager(FosConfig configuration, ScoringExecutor executor) {
+        return createManager(configuration, executor, new AdmissionControl(configuration));
+    }
+
+    /**
+     * Creates a new RemoteManager that scores the RMI requests admitted by a shared admission control in the
+     * threads of a shared executor.
+     *
+     * @param configuration the configuration parameters specific for an implementation
+     * @param executor      the executor that scores the RMI requests, {@code null} to score them in the RMI threads
+     * @param admission     the admission control of the RMI requests
+     * @return a <code>RemoteManager</code> that extends remote
+     * @see #createManager(FosConfig)
+     */
+    @NotNull
+    public RemoteManager createManager(FosConfig configuration, ScoringExecutor executor, AdmissionControl admission) {
         ManagerFactory factory;
         try {
             factory = ManagerFactory.class.cast(Class.forName(configuration.getFactoryName()).newInstance());
@@ -55,7 +92,12 @@ public class RemoteManagerFactory {
         }
 
         try {
-            return new RemoteManager(factory.createManager(configuration));
+            Manager manager = factory.createManager(configuration);
+            Scorer scorer = manager.getScorer();
+            if (configuration.getScoringParallelism() > 0) {
+                scorer = new ParallelScorer(scorer, configuration.getScoringParallelism(), configuration.getScoringParallelThreshold(), configuration.getScoringBatchChunkSize(), configuration.getScoringDeadline());
+            }
+            return new RemoteManager(manager, scorer, executor, admission, new ModelWarmup(configuration), configuration.getHeaderLocation());
         } catch (Exception e) {
             throw new IllegalStateException(e);
         }
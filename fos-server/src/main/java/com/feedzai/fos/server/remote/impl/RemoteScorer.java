@@ -22,19 +22,48 @@
  */
 package com.feedzai.fos.server.remote.impl;
 
+import com.feedzai.fos.api.AdmissionControl;
+import com.feedzai.fos.api.OverloadedException;
 import com.feedzai.fos.api.Scorer;
+import com.feedzai.fos.api.ScoringExecutor;
+import com.feedzai.fos.api.metrics.Metrics;
+import com.feedzai.fos.api.metrics.MetricsRegistry;
+import com.feedzai.fos.api.metrics.Phase;
+import com.feedzai.fos.api.metrics.ScoringMetrics;
+import com.feedzai.fos.api.metrics.Transport;
 import com.feedzai.fos.common.validation.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.rmi.RemoteException;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * Remote scorer that encapsulates an underlying @{Scorer}.
  * <p/>
  * Encapsulates the underlying implementation exceptions in RemoteExceptions.
+ * <p/>
+ * The asynchronous methods are not part of the RMI interface (futures cannot be sent to RMI clients), they
+ * are meant for local transports such as the Kryo scoring server. They are admitted, scored and reported like the
+ * RMI requests, and fail with an {@link OverloadedException} when shed.
+ * <p/>
+ * RMI requests are reported to the {@link MetricsRegistry} as {@link Transport#RMI}. Only the {@link Phase#SCORE}
+ * latency is recorded, (de)serialization happens in the RMI runtime before and after this scorer is called.
+ * <p/>
+ * Given a {@link ScoringExecutor}, requests are scored by its threads instead of the RMI connection threads (which
+ * RMI creates on demand), so that the number of requests scored at once stays bounded. The recorded latency includes
+ * the time spent waiting in its queue.
+ * <p/>
+ * RMI requests go through an {@link AdmissionControl}, with a connection per client host. Requests over its limits, or
+ * that waited in the queue of the executor for longer than its queue timeout, fail right away with a
+ * {@link RemoteException} caused by an {@link OverloadedException}.
  *
  * @author Marco Jorge (marco.jorge@feedzai.com)
  */
@@ -43,48 +72,307 @@ public class RemoteScorer implements com.feedzai.fos.server.remote.api.RemoteSco
 
     private Scorer scorer;
 
+    private MetricsRegistry metrics;
+
+    private ScoringExecutor executor;
+
+    private AdmissionControl admission;
+
     /**
      * Creates a new @{Scorer} that delegates all calls to the underlying @{Scorer}.
      *
      * @param scorer the underlying scorer
      */
     public RemoteScorer(Scorer scorer) {
+        this(scorer, Metrics.getRegistry());
+    }
+
+    /**
+     * Creates a new @{Scorer} that delegates all calls to the underlying @{Scorer}.
+     *
+     * @param scorer  the underlying scorer
+     * @param metrics the registry to report the requests to
+     */
+    public RemoteScorer(Scorer scorer, MetricsRegistry metrics) {
+        this(scorer, metrics, null);
+    }
+
+    /**
+     * Creates a new @{Scorer} that delegates all calls to the underlying @{Scorer} from the threads of an executor.
+     *
+     * @param scorer   the underlying scorer
+     * @param metrics  the registry to report the requests to
+     * @param executor the executor that scores the requests, {@code null} to score them in the calling thread
+     */
+    public RemoteScorer(Scorer scorer, MetricsRegistry metrics, ScoringExecutor executor) {
+        this(scorer, metrics, executor, AdmissionControl.UNLIMITED);
+    }
+
+    /**
+     * Creates a new @{Scorer} that delegates the calls admitted by an admission control to the underlying @{Scorer}
+     * from the threads of an executor.
+     *
+     * @param scorer    the underlying scorer
+     * @param metrics   the registry to report the requests to
+     * @param executor  the executor that scores the requests, {@code null} to score them in the calling thread
+     * @param admission the admission control of the RMI requests
+     */
+    public RemoteScorer(Scorer scorer, MetricsRegistry metrics, ScoringExecutor executor, AdmissionControl admission) {
         this.scorer = scorer;
+        this.metrics = metrics;
+        this.executor = executor;
+        this.admission = admission;
     }
 
     @Override
     @NotNull
     public List<double[]> score(List<UUID> modelIds,Object[] scorable) throws RemoteException {
+        ScoringMetrics[] metrics = started(modelIds);
+        long start = System.nanoTime();
+        boolean failed = true;
+        AdmissionControl.Permit permit = null;
         try {
-            return this.scorer.score(modelIds, scorable);
+            permit = admission.admit(clientHost(), modelIds);
+            List<double[]> scores = run(modelIds.isEmpty() ? null : modelIds.get(0), () -> this.scorer.score(modelIds, scorable));
+            failed = false;
+            return scores;
+        } catch (OverloadedException e) {
+            throw overloaded(e);
         } catch (Exception e) {
             logger.error("Caught exception from underlying implementation",e);
             throw new RemoteException("Translated in RMI layer", e);
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+            finished(metrics, start, failed);
         }
     }
 
     @Override
     @NotNull
     public List<double[]> score(UUID modelId,List<Object[]> scorables) throws RemoteException {
+        ScoringMetrics[] metrics = started(Collections.singletonList(modelId));
+        long start = System.nanoTime();
+        boolean failed = true;
+        AdmissionControl.Permit permit = null;
         try {
-            return this.scorer.score(modelId, scorables);
+            permit = admission.admit(clientHost(), Collections.singletonList(modelId));
+            List<double[]> scores = run(modelId, () -> this.scorer.score(modelId, scorables));
+            failed = false;
+            return scores;
+        } catch (OverloadedException e) {
+            throw overloaded(e);
         } catch (Exception e) {
             logger.error("Caught exception from underlying implementation",e);
             throw new RemoteException("Translated in RMI layer", e);
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+            finished(metrics, start, failed);
         }
     }
 
     @Override
     @NotNull
     public double[] score(UUID modelId, Object[] scorable) throws RemoteException {
+        ScoringMetrics[] metrics = started(Collections.singletonList(modelId));
+        long start = System.nanoTime();
+        boolean failed = true;
+        AdmissionControl.Permit permit = null;
         try {
-            return this.scorer.score(modelId, scorable);
+            permit = admission.admit(clientHost(), Collections.singletonList(modelId));
+            double[] scores = run(modelId, () -> this.scorer.score(modelId, scorable));
+            failed = false;
+            return scores;
+        } catch (OverloadedException e) {
+            throw overloaded(e);
         } catch (Exception e) {
             logger.error("Caught exception from underlying implementation",e);
             throw new RemoteException("Translated in RMI layer", e);
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+            finished(metrics, start, failed);
+        }
+    }
+
+    /**
+     * Scores a request in the executor, if any, shedding it if it waits in the queue for longer than the queue timeout.
+     *
+     * @param modelId the model of the request, {@code null} if none
+     * @param task    scores the request
+     * @param <T>     the type of the scores
+     * @return the scores
+     * @throws OverloadedException when the executor rejected the request or it waited for too long
+     * @throws Exception           when scoring was not possible
+     */
+    private <T> T run(UUID modelId, final Callable<T> task) throws Exception {
+        if (executor == null) {
+            return task.call();
+        }
+        final long received = System.nanoTime();
+        final long queueTimeout = admission.queueTimeoutNanos(0);
+        return executor.call(modelId, () -> {
+            AdmissionControl.checkQueueTime(received, queueTimeout);
+            return task.call();
+        });
+    }
+
+    /**
+     * Gets the host of the RMI client, which identifies its connection to the admission control.
+     *
+     * @return the client host, {@code "local"} when not called through RMI
+     */
+    private static String clientHost() {
+        try {
+            return RemoteServer.getClientHost();
+        } catch (ServerNotActiveException e) {
+            return "local";
+        }
+    }
+
+    /**
+     * Translates a shed request, which is not logged as an error of the underlying implementation.
+     *
+     * @param e the reason the request was shed
+     * @return the exception to throw to the RMI client
+     */
+    private static RemoteException overloaded(OverloadedException e) {
+        logger.debug("Rejected scoring request: {}", e.getMessage());
+        return new RemoteException(e.getMessage(), e);
+    }
+
+    /**
+     * Reports an RMI request to the metrics of its models.
+     *
+     * @param modelIds the models of the request
+     * @return the metrics of each model
+     */
+    private ScoringMetrics[] started(List<UUID> modelIds) {
+        ScoringMetrics[] result = new ScoringMetrics[modelIds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = metrics.get(Transport.RMI, modelIds.get(i));
+            result[i].started();
         }
+        return result;
     }
 
+    /**
+     * Records the scoring latency of an RMI request and reports it as finished.
+     *
+     * @param metrics the metrics of each model of the request
+     * @param start   when scoring started, from {@link System#nanoTime()}
+     * @param failed  {@code true} if the request could not be scored
+     */
+    private static void finished(ScoringMetrics[] metrics, long start, boolean failed) {
+        long elapsed = System.nanoTime() - start;
+        for (ScoringMetrics metric : metrics) {
+            metric.record(Phase.SCORE, elapsed);
+            metric.finished(failed);
+        }
+    }
+
+
+    /**
+     * Asynchronous version of {@link #score(java.util.List, Object[])}.
+     *
+     * @param modelIds the list of models to score
+     * @param scorable the instance data to score
+     * @return a future completed with the scores of each model
+     * @see com.feedzai.fos.api.Scorer#scoreAsync(java.util.List, Object[])
+     */
+    @NotNull
+    public CompletableFuture<List<double[]>> scoreAsync(List<UUID> modelIds, Object[] scorable) {
+        return async(modelIds, () -> this.scorer.score(modelIds, scorable), () -> this.scorer.scoreAsync(modelIds, scorable));
+    }
+
+    /**
+     * Asynchronous version of {@link #score(java.util.UUID, java.util.List)}.
+     *
+     * @param modelId   the id of the model
+     * @param scorables an array of instances to score
+     * @return a future completed with the scores of each instance
+     * @see com.feedzai.fos.api.Scorer#scoreAsync(java.util.UUID, java.util.List)
+     */
+    @NotNull
+    public CompletableFuture<List<double[]>> scoreAsync(UUID modelId, List<Object[]> scorables) {
+        return async(Collections.singletonList(modelId), () -> this.scorer.score(modelId, scorables), () -> this.scorer.scoreAsync(modelId, scorables));
+    }
+
+    /**
+     * Asynchronous version of {@link #score(java.util.UUID, Object[])}.
+     *
+     * @param modelId  the id of the model
+     * @param scorable the instance data to score
+     * @return a future completed with the scores
+     * @see com.feedzai.fos.api.Scorer#scoreAsync(java.util.UUID, Object[])
+     */
+    @NotNull
+    public CompletableFuture<double[]> scoreAsync(UUID modelId, Object[] scorable) {
+        return async(Collections.singletonList(modelId), () -> this.scorer.score(modelId, scorable), () -> this.scorer.scoreAsync(modelId, scorable));
+    }
+
+    /**
+     * Scores a request asynchronously once admitted, holding its permit and reporting it to the metrics of its models
+     * until it completes, as the synchronous methods do.
+     *
+     * @param modelIds the models of the request
+     * @param task     scores the request in a thread of the executor
+     * @param direct   scores the request asynchronously with the underlying scorer, when there is no executor
+     * @param <T>      the type of the scores
+     * @return a future completed with the scores, or with an {@link OverloadedException} if the request was shed
+     */
+    private <T> CompletableFuture<T> async(List<UUID> modelIds, Callable<T> task, Supplier<CompletableFuture<T>> direct) {
+        final ScoringMetrics[] metrics = started(modelIds);
+        final long start = System.nanoTime();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        final AdmissionControl.Permit permit;
+        try {
+            permit = admission.admit(clientHost(), modelIds);
+        } catch (OverloadedException e) {
+            finished(metrics, start, true);
+            logger.debug("Rejected scoring request: {}", e.getMessage());
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        CompletableFuture<T> future;
+        if (executor != null) {
+            final long received = System.nanoTime();
+            final long queueTimeout = admission.queueTimeoutNanos(0);
+            future = executor.submit(modelIds.isEmpty() ? null : modelIds.get(0), () -> {
+                AdmissionControl.checkQueueTime(received, queueTimeout);
+                return task.call();
+            });
+        } else {
+            try {
+                future = direct.get();
+            } catch (RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+        }
+
+        future.whenComplete((scores, e) -> {
+            permit.close();
+            finished(metrics, start, e != null);
+            if (e == null) {
+                result.complete(scores);
+                return;
+            }
+            if (e instanceof OverloadedException) {
+                logger.debug("Rejected scoring request: {}", e.getMessage());
+            } else {
+                logger.error("Caught exception from underlying implementation", e);
+            }
+            result.completeExceptionally(e);
+        });
+        return result;
+    }
 
     @Override
     public void close() throws RemoteException {
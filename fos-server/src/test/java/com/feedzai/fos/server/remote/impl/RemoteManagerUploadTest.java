@@ -0,0 +1,154 @@
+/*
+ * $#
+ * FOS Server
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.server.remote.impl;
+
+import com.feedzai.fos.api.FOSException;
+import com.feedzai.fos.api.Manager;
+import com.feedzai.fos.api.ModelDescriptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RemoteManagerUploadTest {
+    private final UUID modelId = UUID.randomUUID();
+    private final List<ModelDescriptor> added = new ArrayList<>();
+    private File location;
+    private RemoteManager remote;
+
+    @Before
+    public void setup() throws Exception {
+        location = Files.createTempDirectory("fos-uploads").toFile();
+        Manager manager = (Manager) Proxy.newProxyInstance(Manager.class.getClassLoader(), new Class<?>[]{Manager.class}, (proxy, method, args) -> {
+            if (method.getName().equals("addModel")) {
+                added.add((ModelDescriptor) args[1]);
+                return modelId;
+            }
+            return null;
+        });
+        remote = new RemoteManager(manager, location);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : location.listFiles()) {
+            file.delete();
+        }
+        location.delete();
+    }
+
+    @Test
+    public void testUpload() throws Exception {
+        byte[] model = new byte[2500];
+        new Random(7).nextBytes(model);
+
+        UUID uploadId = remote.beginModelUpload(ModelDescriptor.Format.BINARY);
+        for (int offset = 0; offset < model.length; offset += 1000) {
+            byte[] chunk = Arrays.copyOfRange(model, offset, Math.min(model.length, offset + 1000));
+            remote.uploadModelChunk(uploadId, offset, chunk, crc(chunk));
+            // chunks sent again are ignored
+            remote.uploadModelChunk(uploadId, offset, chunk, crc(chunk));
+        }
+
+        assertEquals(modelId, remote.commitModelUpload(uploadId, null, crc(model)));
+        assertEquals(1, added.size());
+        assertEquals(ModelDescriptor.Format.BINARY, added.get(0).getFormat());
+        assertEquals(location, new File(added.get(0).getModelFilePath()).getParentFile());
+        assertArrayEquals(model, Files.readAllBytes(new File(added.get(0).getModelFilePath()).toPath()));
+    }
+
+    @Test
+    public void testRejectedChunks() throws Exception {
+        byte[] chunk = {1, 2, 3};
+        UUID uploadId = remote.beginModelUpload(ModelDescriptor.Format.PMML);
+
+        expectFailure(uploadId, 0, chunk, crc(chunk) + 1);
+        expectFailure(uploadId, 3, chunk, crc(chunk));
+        remote.uploadModelChunk(uploadId, 0, chunk, crc(chunk));
+        expectFailure(uploadId, 2, chunk, crc(chunk));
+    }
+
+    @Test
+    public void testChecksumMismatch() throws Exception {
+        byte[] chunk = {1, 2, 3};
+        UUID uploadId = remote.beginModelUpload(ModelDescriptor.Format.BINARY);
+        remote.uploadModelChunk(uploadId, 0, chunk, crc(chunk));
+
+        try {
+            remote.commitModelUpload(uploadId, null, crc(chunk) + 1);
+            fail("The checksum of the model does not match");
+        } catch (FOSException e) {
+            // expected
+        }
+        assertEquals(0, added.size());
+        assertEquals(0, location.listFiles().length);
+
+        // the upload was discarded
+        try {
+            remote.uploadModelChunk(uploadId, 3, chunk, crc(chunk));
+            fail("The upload was discarded");
+        } catch (FOSException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        UUID uploadId = remote.beginModelUpload(ModelDescriptor.Format.BINARY);
+        assertEquals(1, location.listFiles().length);
+
+        remote.abortModelUpload(uploadId);
+        assertEquals(0, location.listFiles().length);
+        assertEquals(0, added.size());
+        // unknown uploads are ignored
+        remote.abortModelUpload(uploadId);
+    }
+
+    private void expectFailure(UUID uploadId, long offset, byte[] chunk, long checksum) throws Exception {
+        try {
+            remote.uploadModelChunk(uploadId, offset, chunk, checksum);
+            fail("The chunk at offset " + offset + " should have been rejected");
+        } catch (FOSException e) {
+            // expected
+        }
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * $#
+ * FOS Server
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.server.remote.impl;
+
+import com.feedzai.fos.api.AdmissionControl;
+import com.feedzai.fos.api.Attribute;
+import com.feedzai.fos.api.CategoricalAttribute;
+import com.feedzai.fos.api.FOSException;
+import com.feedzai.fos.api.Manager;
+import com.feedzai.fos.api.Model;
+import com.feedzai.fos.api.ModelConfig;
+import com.feedzai.fos.api.ModelDescriptor;
+import com.feedzai.fos.api.ModelWarmup;
+import com.feedzai.fos.api.NumericAttribute;
+import com.feedzai.fos.api.Scorer;
+import com.feedzai.fos.common.kryo.ModelSchema;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RemoteManagerWarmupTest {
+    private final UUID modelId = UUID.randomUUID();
+    private final ModelConfig config = new ModelConfig(Arrays.<Attribute>asList(
+            new NumericAttribute("amount"),
+            new CategoricalAttribute("country", Arrays.asList("pt", "uk"))), new HashMap<String, String>());
+    /**
+     * The calls to the underlying manager and the scorer, in order.
+     */
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void testAddedModelIsWarm() throws Exception {
+        RemoteManager remote = remote(new ModelWarmup(50, 50, 0, null), false);
+
+        assertEquals(modelId, remote.addModel(config, (Model) null));
+
+        assertEquals("addModel", calls.get(0));
+        assertEquals(51, calls.size());
+        assertEquals(Collections.nCopies(50, "score"), calls.subList(1, calls.size()));
+    }
+
+    @Test
+    public void testFailedWarmupRemovesModel() throws Exception {
+        RemoteManager remote = remote(new ModelWarmup(50, 50, 0, null), true);
+
+        try {
+            remote.trainAndAdd(config, Collections.<Object[]>emptyList());
+            fail("The model cannot score its warm-up instances");
+        } catch (FOSException e) {
+            assertTrue(e.getMessage().contains(modelId.toString()));
+        }
+        assertEquals(Arrays.asList("trainAndAdd", "score", "removeModel"), calls);
+    }
+
+    @Test
+    public void testReconfiguredModelIsWarm() throws Exception {
+        RemoteManager remote = remote(new ModelWarmup(20, 20, 0, null), false);
+
+        remote.reconfigureModel(modelId, config);
+
+        assertEquals("reconfigureModel", calls.get(0));
+        assertEquals(Collections.nCopies(20, "score"), calls.subList(1, calls.size()));
+    }
+
+    @Test
+    public void testFailedWarmupPublishesReconfiguredModel() throws Exception {
+        RemoteManager remote = remote(new ModelWarmup(20, 20, 0, null), true);
+        ModelSchema schema = remote.getSchemas().get(modelId);
+
+        try {
+            remote.reconfigureModel(modelId, config);
+            fail("The model cannot score its warm-up instances");
+        } catch (FOSException e) {
+            assertTrue(e.getMessage().contains(modelId.toString()));
+        }
+        // the reconfigured model is live, so its schema must be loaded again
+        assertNotSame(schema, remote.getSchemas().get(modelId));
+        assertEquals(Arrays.asList("reconfigureModel", "score"), calls);
+    }
+
+    @Test
+    public void testFailedWarmupKeepsUploadedModel() throws Exception {
+        File location = Files.createTempDirectory("fos-uploads").toFile();
+        try {
+            RemoteManager remote = remote(new ModelWarmup(20, 20, 0, null), true, location);
+            UUID uploadId = remote.beginModelUpload(ModelDescriptor.Format.BINARY);
+            try {
+                remote.commitModelUpload(uploadId, modelId, config, new CRC32().getValue());
+                fail("The model cannot score its warm-up instances");
+            } catch (FOSException e) {
+                assertTrue(e.getMessage().contains(modelId.toString()));
+            }
+            // the uploaded model replaced the previous one, so its file stays
+            assertEquals(1, location.listFiles().length);
+        } finally {
+            for (File file : location.listFiles()) {
+                file.delete();
+            }
+            location.delete();
+        }
+    }
+
+    @Test
+    public void testWarmupDisabled() throws Exception {
+        RemoteManager remote = remote(ModelWarmup.DISABLED, false);
+
+        remote.addModel(config, (Model) null);
+        remote.reconfigureModel(modelId, config);
+
+        assertEquals(Arrays.asList("addModel", "reconfigureModel"), calls);
+    }
+
+    /**
+     * Creates a remote manager over a manager that adds {@link #modelId} and a scorer, both recording their calls.
+     *
+     * @param warmup the warm-up of the models
+     * @param fail   {@code true} if the scorer cannot score
+     * @return the remote manager
+     */
+    private RemoteManager remote(ModelWarmup warmup, boolean fail) {
+        return remote(warmup, fail, new File("models"));
+    }
+
+    /**
+     * Creates a remote manager over a manager that adds {@link #modelId} and a scorer, both recording their calls.
+     *
+     * @param warmup        the warm-up of the models
+     * @param fail          {@code true} if the scorer cannot score
+     * @param modelLocation the location where uploads are written to
+     * @return the remote manager
+     */
+    private RemoteManager remote(ModelWarmup warmup, boolean fail, File modelLocation) {
+        Manager manager = (Manager) Proxy.newProxyInstance(Manager.class.getClassLoader(), new Class<?>[]{Manager.class}, (proxy, method, args) -> {
+            if (method.getName().equals("listModels")) {
+                return Collections.singletonMap(modelId, config);
+            }
+            calls.add(method.getName());
+            return method.getReturnType() == UUID.class ? modelId : null;
+        });
+        Scorer scorer = (Scorer) Proxy.newProxyInstance(Scorer.class.getClassLoader(), new Class<?>[]{Scorer.class}, (proxy, method, args) -> {
+            calls.add(method.getName());
+            assertEquals(modelId, args[0]);
+            assertEquals(config.getAttributes().size(), ((Object[]) args[1]).length);
+            if (fail) {
+                throw new FOSException("Cannot score");
+            }
+            return new double[]{0.5, 0.5};
+        });
+        return new RemoteManager(manager, scorer, null, AdmissionControl.UNLIMITED, warmup, modelLocation);
+    }
+}
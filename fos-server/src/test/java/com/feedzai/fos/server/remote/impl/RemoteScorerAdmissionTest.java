@@ -0,0 +1,134 @@
+/*
+ * $#
+ * FOS Server
+ *  
+ * Copyright (C) 2013 Feedzai SA
+ *  
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ * 
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ * #$
+ */
+package com.feedzai.fos.server.remote.impl;
+
+import com.feedzai.fos.api.AdmissionControl;
+import com.feedzai.fos.api.FOSException;
+import com.feedzai.fos.api.OverloadedException;
+import com.feedzai.fos.api.Scorer;
+import com.feedzai.fos.api.ScoringExecutor;
+import com.feedzai.fos.api.metrics.MetricsRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.rmi.RemoteException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RemoteScorerAdmissionTest {
+    private final UUID modelId = UUID.randomUUID();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch scoring = new CountDownLatch(1);
+    private final AdmissionControl admission = new AdmissionControl(1, 0, 0);
+    private ScoringExecutor executor;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    @Test
+    public void testAsyncOverLimitInExecutor() throws Exception {
+        executor = new ScoringExecutor("test", 2, 0, ScoringExecutor.RejectionPolicy.ABORT, ScoringExecutor.Affinity.NONE);
+        testAsyncOverLimit(new RemoteScorer(new BlockingScorer(), MetricsRegistry.NONE, executor, admission));
+    }
+
+    @Test
+    public void testAsyncOverLimit() throws Exception {
+        testAsyncOverLimit(new RemoteScorer(new BlockingScorer(), MetricsRegistry.NONE, null, admission));
+    }
+
+    /**
+     * Checks that a request is rejected while another request of the same model holds the only slot of the model,
+     * asynchronously or not, and that the slot is given back once the first request completes.
+     *
+     * @param remote the remote scorer
+     */
+    private void testAsyncOverLimit(RemoteScorer remote) throws Exception {
+        CompletableFuture<double[]> first = remote.scoreAsync(modelId, new Object[]{1.0});
+        assertTrue(scoring.await(5, TimeUnit.SECONDS));
+        assertEquals(1, admission.getAdmitted(modelId));
+
+        CompletableFuture<double[]> second = remote.scoreAsync(modelId, new Object[]{2.0});
+        try {
+            second.get(5, TimeUnit.SECONDS);
+            fail("The model is at its limit");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OverloadedException);
+        }
+        try {
+            remote.score(modelId, new Object[]{3.0});
+            fail("The model is at its limit");
+        } catch (RemoteException e) {
+            assertTrue(e.getCause() instanceof OverloadedException);
+        }
+
+        release.countDown();
+        assertEquals(1.0, first.get(5, TimeUnit.SECONDS)[0], 0);
+        assertEquals(0, admission.getAdmitted(modelId));
+        assertEquals(4.0, remote.scoreAsync(modelId, new Object[]{4.0}).get(5, TimeUnit.SECONDS)[0], 0);
+    }
+
+    /**
+     * Scores each instance with its first field once released, asynchronously in a thread of its own.
+     */
+    private class BlockingScorer implements Scorer {
+        @Override
+        public double[] score(UUID modelId, Object[] scorable) throws FOSException {
+            scoring.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new FOSException(e);
+            }
+            return new double[]{(Double) scorable[0]};
+        }
+
+        @Override
+        public CompletableFuture<double[]> scoreAsync(UUID modelId, Object[] scorable) {
+            CompletableFuture<double[]> future = new CompletableFuture<>();
+            new Thread(() -> {
+                try {
+                    future.complete(score(modelId, scorable));
+                } catch (FOSException e) {
+                    future.completeExceptionally(e);
+                }
+            }).start();
+            return future;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}